@@ -7003,4 +7003,232 @@ public interface OdeMessages extends Messages {
   @DefaultMessage("SetCenter")
   @Description("")
   String SetCenterMethods();
+
+  @DefaultMessage("GameLoop")
+  @Description("")
+  String GameLoopProperties();
+
+  @DefaultMessage("UploadProgress")
+  @Description("")
+  String UploadProgressEvents();
+
+  @DefaultMessage("bytesSent")
+  @Description("")
+  String bytesSentParams();
+
+  @DefaultMessage("totalBytes")
+  @Description("")
+  String totalBytesParams();
+
+  @DefaultMessage("UseCache")
+  @Description("")
+  String UseCacheProperties();
+
+  @DefaultMessage("RequestTimeout")
+  @Description("")
+  String RequestTimeoutProperties();
+
+  @DefaultMessage("ReceiveInBackground")
+  @Description("")
+  String ReceiveInBackgroundProperties();
+
+  @DefaultMessage("DataReceived")
+  @Description("")
+  String DataReceivedEvents();
+
+  @DefaultMessage("messageCount")
+  @Description("")
+  String messageCountParams();
+
+  @DefaultMessage("DeliveryInterval")
+  @Description("")
+  String DeliveryIntervalProperties();
+
+  @DefaultMessage("WindowSize")
+  @Description("")
+  String WindowSizeProperties();
+
+  @DefaultMessage("BatchDelivery")
+  @Description("")
+  String BatchDeliveryProperties();
+
+  @DefaultMessage("Mean")
+  @Description("")
+  String MeanMethods();
+
+  @DefaultMessage("Minimum")
+  @Description("")
+  String MinimumMethods();
+
+  @DefaultMessage("Maximum")
+  @Description("")
+  String MaximumMethods();
+
+  @DefaultMessage("Variance")
+  @Description("")
+  String VarianceMethods();
+
+  @DefaultMessage("SamplesReceived")
+  @Description("")
+  String SamplesReceivedEvents();
+
+  @DefaultMessage("samples")
+  @Description("")
+  String samplesParams();
+
+  @DefaultMessage("axis")
+  @Description("")
+  String axisParams();
+
+  @DefaultMessage("Flush")
+  @Description("")
+  String FlushMethods();
+
+  @DefaultMessage("StoreValues")
+  @Description("")
+  String StoreValuesMethods();
+
+  @DefaultMessage("tags")
+  @Description("")
+  String tagsParams();
+
+  @DefaultMessage("valuesToStore")
+  @Description("")
+  String valuesToStoreParams();
+
+  @DefaultMessage("GotValues")
+  @Description("")
+  String GotValuesEvents();
+
+  @DefaultMessage("AddFeaturesFromURL")
+  @Description("")
+  String AddFeaturesFromURLMethods();
+
+  @DefaultMessage("FeaturesAdded")
+  @Description("")
+  String FeaturesAddedEvents();
+
+  @DefaultMessage("LoadProgress")
+  @Description("")
+  String LoadProgressEvents();
+
+  @DefaultMessage("featuresLoaded")
+  @Description("")
+  String featuresLoadedParams();
+
+  @DefaultMessage("FeaturesInBoundingBox")
+  @Description("")
+  String FeaturesInBoundingBoxMethods();
+
+  @DefaultMessage("NearestFeatures")
+  @Description("")
+  String NearestFeaturesMethods();
+
+  @DefaultMessage("north")
+  @Description("")
+  String northParams();
+
+  @DefaultMessage("west")
+  @Description("")
+  String westParams();
+
+  @DefaultMessage("south")
+  @Description("")
+  String southParams();
+
+  @DefaultMessage("east")
+  @Description("")
+  String eastParams();
+
+  @DefaultMessage("ClusterMarkers")
+  @Description("")
+  String ClusterMarkersProperties();
+
+  @DefaultMessage("ClusterClick")
+  @Description("")
+  String ClusterClickEvents();
+
+  @DefaultMessage("markers")
+  @Description("")
+  String markersParams();
+
+  @DefaultMessage("CacheSize")
+  @Description("")
+  String CacheSizeProperties();
+
+  @DefaultMessage("CacheOnly")
+  @Description("")
+  String CacheOnlyProperties();
+
+  @DefaultMessage("DownloadRegion")
+  @Description("")
+  String DownloadRegionMethods();
+
+  @DefaultMessage("DownloadProgress")
+  @Description("")
+  String DownloadProgressEvents();
+
+  @DefaultMessage("RegionDownloaded")
+  @Description("")
+  String RegionDownloadedEvents();
+
+  @DefaultMessage("minZoom")
+  @Description("")
+  String minZoomParams();
+
+  @DefaultMessage("maxZoom")
+  @Description("")
+  String maxZoomParams();
+
+  @DefaultMessage("tilesDone")
+  @Description("")
+  String tilesDoneParams();
+
+  @DefaultMessage("totalTiles")
+  @Description("")
+  String totalTilesParams();
+
+  @DefaultMessage("tilesDownloaded")
+  @Description("")
+  String tilesDownloadedParams();
+
+  @DefaultMessage("tilesFailed")
+  @Description("")
+  String tilesFailedParams();
+
+  @DefaultMessage("ReadCsvRows")
+  @Description("")
+  String ReadCsvRowsMethods();
+
+  @DefaultMessage("GotCsvRows")
+  @Description("")
+  String GotCsvRowsEvents();
+
+  @DefaultMessage("batchSize")
+  @Description("")
+  String batchSizeParams();
+
+  @DefaultMessage("rows")
+  @Description("")
+  String rowsParams();
+
+  @DefaultMessage("lastBatch")
+  @Description("")
+  String lastBatchParams();
+
+  @DefaultMessage("ReadLines")
+  @Description("")
+  String ReadLinesMethods();
+
+  @DefaultMessage("GotLines")
+  @Description("")
+  String GotLinesEvents();
+
+  @DefaultMessage("startLine")
+  @Description("")
+  String startLineParams();
+
+  @DefaultMessage("lines")
+  @Description("")
+  String linesParams();
 }
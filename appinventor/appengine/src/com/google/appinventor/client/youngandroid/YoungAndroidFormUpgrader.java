@@ -254,6 +254,9 @@ public final class YoungAndroidFormUpgrader {
       } else if (componentType.equals("Clock")) {
         srcCompVersion = upgradeClockProperties(componentProperties, srcCompVersion);
 
+      } else if (componentType.equals("CloudDB")) {
+        srcCompVersion = upgradeCloudDBProperties(componentProperties, srcCompVersion);
+
       } else if (componentType.equals("ContactPicker")) {
         srcCompVersion = upgradeContactPickerProperties(componentProperties, srcCompVersion);
 
@@ -320,6 +323,9 @@ public final class YoungAndroidFormUpgrader {
       } else if (componentType.equals("TimePicker")) {
         srcCompVersion = upgradeTimePickerProperties(componentProperties, srcCompVersion);
 
+      } else if (componentType.equals("TinyDB")) {
+        srcCompVersion = upgradeTinyDBProperties(componentProperties, srcCompVersion);
+
       } else if (componentType.equals("TinyWebDB")) {
         srcCompVersion = upgradeTinyWebDBProperties(componentProperties, srcCompVersion);
 
@@ -346,6 +352,8 @@ public final class YoungAndroidFormUpgrader {
 
       } else if (componentType.equals("WebViewer")) {
         srcCompVersion = upgradeWebViewerProperties(componentProperties, srcCompVersion);
+      } else if (componentType.equals("GyroscopeSensor")) {
+        srcCompVersion = upgradeGyroscopeSensorProperties(componentProperties, srcCompVersion);
       } else if (componentType.equals("FirebaseDB")) {
         srcCompVersion = upgradeFirebaseDBProperties(componentProperties, srcCompVersion);
       } else if (componentType.equals("Pedometer")) {
@@ -423,6 +431,13 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 4.
       srcCompVersion = 4;
     }
+    if (srcCompVersion < 5) {
+      // The DeliveryInterval, WindowSize and BatchDelivery properties were added.
+      // The Mean, Minimum, Maximum and Variance methods were added.
+      // The SamplesReceived event was added.
+      // No properties need to be modified to upgrade to version 5.
+      srcCompVersion = 5;
+    }
     return srcCompVersion;
   }
 
@@ -534,6 +549,11 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The BluetoothClient.ReceiveInBackground property and DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
 
@@ -560,6 +580,11 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The BluetoothServer.ReceiveInBackground property and DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
   private static int upgradeSliderProperties(Map<String, JSONValue> componentProperties,
@@ -702,6 +727,11 @@ public final class YoungAndroidFormUpgrader {
       componentProperties.put("TextAlignment", def);
       srcCompVersion = 10;
     }
+    if (srcCompVersion < 11) {
+      // The GameLoop property was added.
+      // No properties need to be modified to upgrade to version 11.
+      srcCompVersion = 11;
+    }
     return srcCompVersion;
   }
 
@@ -728,6 +758,16 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeCloudDBProperties(Map<String, JSONValue> componentProperties,
+      int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The GetValues and StoreValues functions and the GotValues event were added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradeContactPickerProperties(Map<String, JSONValue> componentProperties,
       int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -795,6 +835,17 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 2.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The ReadCsvRows method and GotCsvRows event were added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
+    if (srcCompVersion < 4) {
+      // The Flush and ReadLines methods and GotLines event were added.
+      // Appended text is buffered and written to each file in order.
+      // No properties need to be modified to upgrade to version 4.
+      srcCompVersion = 4;
+    }
     return srcCompVersion;
   }
 
@@ -1167,6 +1218,12 @@ public final class YoungAndroidFormUpgrader {
       // Properties related to this component have now been upgraded to version 2.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The DeliveryInterval and BatchDelivery properties were added.
+      // The SamplesReceived event was added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
     return srcCompVersion;
   }
 
@@ -1296,6 +1353,16 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeTinyDBProperties(Map<String, JSONValue> componentProperties,
+      int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The StoreValues, GetValues and Flush methods were added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradeTinyWebDBProperties(Map<String, JSONValue> componentProperties,
       int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -1461,6 +1528,16 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 4.
       srcCompVersion = 4;
     }
+    if (srcCompVersion < 5) {
+      // The UploadProgress event was added.
+      // No properties need to be modified to upgrade to version 5.
+      srcCompVersion = 5;
+    }
+    if (srcCompVersion < 6) {
+      // The UseCache and RequestTimeout properties were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
 
@@ -1492,6 +1569,18 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeGyroscopeSensorProperties(Map<String, JSONValue> componentProperties,
+    int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The DeliveryInterval, WindowSize and BatchDelivery properties were added.
+      // The Mean, Minimum, Maximum and Variance methods were added.
+      // The SamplesReceived event was added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradePedometerProperties(Map<String, JSONValue> componentProperties,
     int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -1511,6 +1600,29 @@ public final class YoungAndroidFormUpgrader {
       // Block event handlers were renamed
       srcCompVersion = 3;
     }
+    if (srcCompVersion < 4) {
+      // AddFeaturesFromURL method was added
+      // FeaturesAdded and LoadProgress events were added
+      // No properties need to be modified to upgrade to version 4.
+      srcCompVersion = 4;
+    }
+    if (srcCompVersion < 5) {
+      // The FeaturesInBoundingBox and NearestFeatures methods were added.
+      // No properties need to be modified to upgrade to version 5.
+      srcCompVersion = 5;
+    }
+    if (srcCompVersion < 6) {
+      // The ClusterMarkers property and ClusterClick event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
+    if (srcCompVersion < 7) {
+      // The CacheSize and CacheOnly properties were added.
+      // The DownloadRegion method was added.
+      // The DownloadProgress and RegionDownloaded events were added.
+      // No properties need to be modified to upgrade to version 7.
+      srcCompVersion = 7;
+    }
     return srcCompVersion;
   }
 
@@ -1533,6 +1645,17 @@ public final class YoungAndroidFormUpgrader {
       // The GotGeoJSON and GeoJSONError events were renamed in the blocks editor.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The AddFeaturesFromURL method was added.
+      // The FeaturesAdded and LoadProgress events were added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
+    if (srcCompVersion < 4) {
+      // The FeaturesInBoundingBox and NearestFeatures methods were added.
+      // No properties need to be modified to upgrade to version 4.
+      srcCompVersion = 4;
+    }
     return srcCompVersion;
   }
 
@@ -77,6 +77,7 @@ Blockly.Yail.YAIL_QUOTE = "'";
 Blockly.Yail.YAIL_RENAME_COMPONENT = "(rename-component ";
 Blockly.Yail.YAIL_SET_AND_COERCE_PROPERTY = "(set-and-coerce-property! ";
 Blockly.Yail.YAIL_SET_AND_COERCE_COMPONENT_TYPE_PROPERTY = "(set-and-coerce-property-and-check! ";
+Blockly.Yail.YAIL_SET_DESIGNER_PROPERTY = "(set-designer-property! ";
 Blockly.Yail.YAIL_SET_SUBFORM_LAYOUT_PROPERTY = "(%set-subform-layout-property! ";
 Blockly.Yail.YAIL_SET_VARIABLE = "(set-var! ";
 Blockly.Yail.YAIL_SET_THIS_FORM = "(set-this-form)\n ";
@@ -142,7 +143,8 @@ Blockly.Yail.getFormYail = function(formJson, packageName, forRepl, workspace) {
     var sourceType = jsonObject.Source;
     if (sourceType == "Form") {
       code = code.concat(Blockly.Yail.getComponentLines(formName, formProperties, null /*parent*/, 
-          componentMap, false /*forRepl*/, propertyNameConverter, workspace.getComponentDatabase()));
+          componentMap, false /*forRepl*/, propertyNameConverter, workspace.getComponentDatabase(),
+          !forRepl /*directSetters*/));
     } else {
       throw "Source type " + sourceType + " is invalid.";
     }
@@ -263,18 +265,21 @@ Blockly.Yail.getComponentInitializationString = function(formName, componentName
  * @param {function(string): string} nameConverter function that converts fully-qualified
  *    property names into YAIL names for invocation.
  * @param {!Blockly.ComponentDatabase} componentDb Component database, for type information
+ * @param {boolean=} opt_directSetters true to set the designer properties with direct calls to
+ *    their setters, which is only possible when the code is compiled into an apk.
  * @returns {Array} code strings
  * @private
  */
 Blockly.Yail.getComponentLines = function(formName, componentJson, parentName, componentMap, 
-  forRepl, nameConverter, componentDb) {
+  forRepl, nameConverter, componentDb, opt_directSetters) {
   var code = [], i, block, child;
   var componentName = componentJson.$Name;
   if (componentJson.$Type == 'Form') {
-    code = Blockly.Yail.getFormPropertiesLines(formName, componentJson, !forRepl, componentDb);
+    code = Blockly.Yail.getFormPropertiesLines(formName, componentJson, !forRepl, componentDb,
+      opt_directSetters);
   } else {
     code = Blockly.Yail.getComponentPropertiesLines(formName, componentJson, parentName, !forRepl,
-      nameConverter, componentDb);
+      nameConverter, componentDb, opt_directSetters);
   }
 
   if (!forRepl) {
@@ -292,7 +297,7 @@ Blockly.Yail.getComponentLines = function(formName, componentJson, parentName, c
     var children = componentJson.$Components;
     for (i = 0; child = children[i]; i++) {
       code = code.concat(Blockly.Yail.getComponentLines(formName, child, componentName,
-          componentMap, forRepl, nameConverter, componentDb));
+          componentMap, forRepl, nameConverter, componentDb, opt_directSetters));
     }
   }
   return code;  
@@ -311,11 +316,12 @@ Blockly.Yail.getComponentLines = function(formName, componentJson, parentName, c
  * @param {function(string): string} nameConverter function that converts a fully-qualified
  *    property name into a YAIL-compatible name.
  * @param {Blockly.ComponentDatabase} componentDb Component database, for type information
+ * @param {boolean=} opt_directSetters true to call the property setters directly
  * @returns {Array} code strings
  * @private
  */
 Blockly.Yail.getComponentPropertiesLines = function(formName, componentJson, parentName, 
-  includeComments, nameConverter, componentDb) {
+  includeComments, nameConverter, componentDb, opt_directSetters) {
   var code = [];
   var componentName = componentJson.$Name;
   var componentType = componentJson.$Type;
@@ -330,7 +336,8 @@ Blockly.Yail.getComponentPropertiesLines = function(formName, componentJson, par
   code.push(Blockly.Yail.YAIL_ADD_COMPONENT + parentName + Blockly.Yail.YAIL_SPACER +
     nameConverter(componentDb.getType(componentType).type) +
     Blockly.Yail.YAIL_SPACER + componentName + Blockly.Yail.YAIL_SPACER);
-  code = code.concat(Blockly.Yail.getPropertySettersLines(componentJson, componentName, componentDb));
+  code = code.concat(Blockly.Yail.getPropertySettersLines(componentJson, componentName, componentDb,
+    opt_directSetters));
   code.push(Blockly.Yail.YAIL_CLOSE_BLOCK);
   return code;
 };
@@ -341,15 +348,19 @@ Blockly.Yail.getComponentPropertiesLines = function(formName, componentJson, par
  * @param {String} formName
  * @param {String} componentJson JSON string describing the component
  * @param {Boolean} includeComments whether to include comments in the generated code
+ * @param {Blockly.ComponentDatabase} componentDb Component database, for type information
+ * @param {boolean=} opt_directSetters true to call the property setters directly
  * @returns {Array} code strings
  * @private
  */
-Blockly.Yail.getFormPropertiesLines = function(formName, componentJson, includeComments, componentDb) {
+Blockly.Yail.getFormPropertiesLines = function(formName, componentJson, includeComments, componentDb,
+    opt_directSetters) {
   var code = [];
   if (includeComments) {
     code.push(Blockly.Yail.YAIL_COMMENT_MAJOR + formName + Blockly.Yail.YAIL_LINE_FEED);
   }
-  var yailForComponentProperties = Blockly.Yail.getPropertySettersLines(componentJson, formName, componentDb);
+  var yailForComponentProperties = Blockly.Yail.getPropertySettersLines(componentJson, formName,
+    componentDb, opt_directSetters);
   if (yailForComponentProperties.length > 0) {
     // getPropertySettersLine returns an array of lines.  So we need to 
     // concatenate them (using join) before pushing them onto the Yail expression.
@@ -369,6 +380,7 @@ Blockly.Yail.getFormPropertiesLines = function(formName, componentJson, includeC
  * @param {String} componentName the name of the component (also present in the $Name field in
  *    componentJson)
  * @param {Blockly.ComponentDatabase} componentDb The workspace's database of components and types.
+ * @param {boolean=} opt_directSetters true to call the property setters directly
  * @returns {Array} code strings
  * @private
  *
@@ -378,12 +390,13 @@ Blockly.Yail.getFormPropertiesLines = function(formName, componentJson, includeC
  * companion (version > 2.41). Once such a Companion is deployed, the exception
  * for TutorialURL below (and this comment) can be removed.
  */
-Blockly.Yail.getPropertySettersLines = function(componentJson, componentName, componentDb) {
+Blockly.Yail.getPropertySettersLines = function(componentJson, componentName, componentDb,
+    opt_directSetters) {
   var code = [];
   for (var prop in componentJson) {
     if (prop.charAt(0) != "$" && prop != "Uuid" && prop != "TutorialURL") {
       code.push(Blockly.Yail.getPropertySetterString(componentName, componentJson.$Type, prop, 
-        componentJson[prop], componentDb));
+        componentJson[prop], componentDb, opt_directSetters));
     }
   }
   return code;
@@ -392,16 +405,30 @@ Blockly.Yail.getPropertySettersLines = function(componentJson, componentName, co
 /**
  * Generate the code to set a single property value.
  *
+ * When opt_directSetters is true, the code is a set-designer-property! form, which names the
+ * class of the component so that Kawa can resolve the setter when the screen is compiled,
+ * instead of set-and-coerce-property!, which looks the setter up by reflection when the screen
+ * starts. The REPL must use set-and-coerce-property!.
+ *
  * @param {String} componentName
  * @param {String} componentType
  * @param {String} propertyName
  * @param {String} propertyValue
  * @param {!Blockly.ComponentDatabase} componentDb Component database, for type information
+ * @param {boolean=} opt_directSetters true to call the property setter directly
  * @returns code string
  * @private
  */
 Blockly.Yail.getPropertySetterString = function(componentName, componentType, propertyName, 
-    propertyValue, componentDb) {
+    propertyValue, componentDb, opt_directSetters) {
+  if (opt_directSetters) {
+    var yailType = componentDb.getPropertyForType(componentType, propertyName).type;
+    return Blockly.Yail.YAIL_SET_DESIGNER_PROPERTY + componentName + Blockly.Yail.YAIL_SPACER +
+      componentDb.getType(componentType).type + Blockly.Yail.YAIL_SPACER + propertyName +
+      Blockly.Yail.YAIL_SPACER +
+      Blockly.Yail.getPropertyValueString(propertyValue, Blockly.Yail.YAIL_QUOTE + yailType) +
+      Blockly.Yail.YAIL_SPACER + yailType + Blockly.Yail.YAIL_CLOSE_BLOCK;
+  }
   var code = Blockly.Yail.YAIL_SET_AND_COERCE_PROPERTY + Blockly.Yail.YAIL_QUOTE + 
     componentName + Blockly.Yail.YAIL_SPACER + Blockly.Yail.YAIL_QUOTE + propertyName + 
     Blockly.Yail.YAIL_SPACER;
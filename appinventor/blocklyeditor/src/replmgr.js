@@ -244,6 +244,13 @@ Blockly.ReplMgr.resetYail = function(partial) {
 // pollphone processes the queue using Ajax calls. The completion of each
 // Ajax call looks to process the next entry in the queue. This continues
 // until the queue is empty.
+//
+// When the Companion supports it, pollphone instead sends the queue over
+// a WebSocket to its /_channel (see ReplChannel in the Companion). The
+// entries queued together are coalesced into one batch, sent as a message
+// with the same fields as a /_newblocks request without waiting for the
+// previous one, and return values are pushed back over the same connection
+// instead of being polled from /_values.
 
 Blockly.ReplMgr.putYail = (function() {
     var rs;
@@ -251,6 +258,9 @@ Blockly.ReplMgr.putYail = (function() {
     var conn;                   // XMLHttpRequest Object sending to Phone
     var rxhr;                   // XMLHttpRequest Object listening for returns
     var phonereceiving = false;
+    var channel;                // WebSocket to the Companion, when it supports one
+    var channelWork = {};       // Work sent over the channel recently, by seq
+    var channelPending = {};    // Work sent over the channel awaiting its result, by blockid
     var engine = {
         // Enqueue form for the phone
         'putYail' : function(code, block, success, failure) {
@@ -283,9 +293,69 @@ Blockly.ReplMgr.putYail = (function() {
                 engine.doversioncheck();
                 return;
             }
+            if (rs.phoneState.channel) {
+                engine.pollchannel();
+                return;
+            }
             if (!phonereceiving) {
                 engine.receivefromphone();
             }
+            var work = engine.nextwork(rs.phoneState.batch);
+            if (!work) {
+                rs.phoneState.ioRunning = false;
+                return;
+            }
+            var encoder = new goog.Uri.QueryData();
+            conn = goog.net.XmlHttp();
+            var blockid = engine.blockid(work);
+
+            conn.open('POST', rs.url, true);
+            conn.onreadystatechange = function() {
+                if (this.readyState == 4 && this.status == 200) {
+                    var json = goog.json.parse(this.response);
+                    if (json.status != 'OK') {
+                        if (work.failure)
+                            work.failure(Blockly.Msg.REPL_ERROR_FROM_COMPANION);
+                    } else {
+                        if (work.success)
+                            work.success();
+                    }
+                    context.processRetvals(json.values);
+                    rs.seq_count += 1;
+                    if (rs.phoneState.initialized) // Only continue if we are still initialized
+                        engine.pollphone(); // And on to the next!
+                } else {
+                    if (this.readyState == 4) {
+                        console.log("putYail(poller): status = " + this.status);
+                        if (work.failure) {
+                            work.failure(Blockly.Msg.REPL_NETWORK_CONNECTION_ERROR);
+                        }
+                        var dialog = new Blockly.Util.Dialog(Blockly.Msg.REPL_NETWORK_ERROR, Blockly.Msg.REPL_NETWORK_ERROR_RESTART, Blockly.Msg.REPL_OK, null, 0,
+                            function() {
+                                dialog.hide();
+                                context.hardreset(context.formName);
+                            });
+                        engine.resetcompanion();
+                    }
+                }
+
+            };
+            if (work.batch) {
+                encoder.add('mac', Blockly.ReplMgr.hmac(work.batch + rs.seq_count));
+                encoder.add('seq', rs.seq_count);
+                encoder.add('batch', work.batch);
+            } else {
+                encoder.add('mac', Blockly.ReplMgr.hmac(work.code + rs.seq_count + blockid));
+                encoder.add('seq', rs.seq_count);
+                encoder.add('code', work.code);
+                encoder.add('blockid', blockid);
+            }
+            var stuff = encoder.toString();
+            conn.send(stuff);
+        },
+        // Take the next work from the queue, if there is any. When batch is
+        // true, the work waiting is combined into one batch.
+        'nextwork' : function(batch) {
             var work;
             if (top.loadAll) {
                 var chunk;
@@ -305,8 +375,7 @@ Blockly.ReplMgr.putYail = (function() {
                     lastblock = chunk.block;
                 }
                 if (first) {               // There was no work to do
-                    rs.phoneState.ioRunning = false;
-                    return;
+                    return null;
                 }
                 work = { 'code' : allcode,
                          'block' : null,   // We cannot link this large code block
@@ -319,65 +388,209 @@ Blockly.ReplMgr.putYail = (function() {
                     console.log("Slow Path: " + allcode);
                     work.block = lastblock; // Only one block, so we can provide it
                 }
+            } else if (batch && rs.phoneState.phoneQueue.length > 1) {
+                // Send everything that is waiting in one request. The Companion
+                // evaluates it together and returns a result to each block.
+                work = engine.coalesce(rs.phoneState.phoneQueue);
+                rs.phoneState.phoneQueue = [];
             } else {
                 work = rs.phoneState.phoneQueue.shift();
-                if (!work) {
-                    rs.phoneState.ioRunning = false;
-                    return;
-                }
             }
-            var encoder = new goog.Uri.QueryData();
-            conn = goog.net.XmlHttp();
-            var blockid;
-            if (work.block) {
+            return work;
+        },
+        // The blockid sent with work, which the Companion returns with its result
+        'blockid' : function(work) {
+            if (work.batch) {
+                return "-1";
+            } else if (work.block) {
                 // Quote blockId as a string due to non-numeric identifiers generated from
                 // Blockly's soup {@see Blockly.utils.genUid.soup_}
-                blockid = '"' + work.block.id + '"';
+                return '"' + work.block.id + '"';
+            } else if (work.chunking) { // Used to indicate an error in when chunking
+                return "-2";
             } else {
-                if (work.chunking) { // Used to indicate an error in when chunking
-                    blockid = "-2";
+                return "-1";
+            }
+        },
+        // Send the queued work over the channel, opening it first if need be
+        'pollchannel' : function() {
+            if (!channel) {
+                engine.openchannel();
+                return;
+            }
+            if (channel.readyState != WebSocket.OPEN) {
+                return;         // onopen sends the queue
+            }
+            // Let the rest of the blocks being queued now join the queue, so
+            // that they are sent together.
+            var ws = channel;
+            setTimeout(function() {
+                if (channel === ws)
+                    engine.sendchannel();
+            }, 0);
+        },
+        'sendchannel' : function() {
+            var work;
+            while (rs.phoneState.initialized && (work = engine.nextwork(rs.phoneState.batch))) {
+                var update = { 'seq' : rs.seq_count };
+                if (work.batch) {
+                    update.batch = work.batch;
+                    update.mac = Blockly.ReplMgr.hmac(work.batch + rs.seq_count);
                 } else {
-                    blockid = "-1";
+                    var blockid = engine.blockid(work);
+                    update.blockid = blockid;
+                    update.code = work.code;
+                    update.mac = Blockly.ReplMgr.hmac(work.code + rs.seq_count + blockid);
                 }
-            }
-
-            conn.open('POST', rs.url, true);
-            conn.onreadystatechange = function() {
-                if (this.readyState == 4 && this.status == 200) {
-                    var json = goog.json.parse(this.response);
-                    if (json.status != 'OK') {
-                        if (work.failure)
-                            work.failure(Blockly.Msg.REPL_ERROR_FROM_COMPANION);
-                    } else {
-                        if (work.success)
-                            work.success();
-                    }
+                channel.send(goog.json.serialize(update));
+                // The Companion only answers an update itself when it refuses it, so
+                // keep the work for a while in case it does.
+                channelWork[rs.seq_count] = work;
+                delete channelWork[rs.seq_count - 100];
+                rs.seq_count += 1;
+                engine.awaitresult(work);
+            }
+            rs.phoneState.ioRunning = false;
+        },
+        'openchannel' : function() {
+            var opened = false;
+            var ws = new WebSocket(rs.channelurl);
+            channel = ws;
+            channelWork = {};
+            channelPending = {};
+            ws.onopen = function() {
+                opened = true;
+                engine.sendchannel();
+            };
+            ws.onmessage = function(event) {
+                var json = goog.json.parse(event.data);
+                if (json.status == 'OK') {
+                    engine.resolveresults(json.values);
                     context.processRetvals(json.values);
-                    rs.seq_count += 1;
-                    if (rs.phoneState.initialized) // Only continue if we are still initialized
-                        engine.pollphone(); // And on to the next!
                 } else {
-                    if (this.readyState == 4) {
-                        console.log("putYail(poller): status = " + this.status);
-                        if (work.failure) {
-                            work.failure(Blockly.Msg.REPL_NETWORK_CONNECTION_ERROR);
-                        }
-                        var dialog = new Blockly.Util.Dialog(Blockly.Msg.REPL_NETWORK_ERROR, Blockly.Msg.REPL_NETWORK_ERROR_RESTART, Blockly.Msg.REPL_OK, null, 0,
-                            function() {
-                                dialog.hide();
-                                context.hardreset(context.formName);
-                            });
-                        engine.resetcompanion();
+                    console.log("pollchannel: " + json.message);
+                    var work = channelWork[json.seq];
+                    if (work) {
+                        engine.forgetresult(work);
+                        if (work.failure)
+                            work.failure(Blockly.Msg.REPL_ERROR_FROM_COMPANION);
                     }
                 }
-
             };
-            encoder.add('mac', Blockly.ReplMgr.hmac(work.code + rs.seq_count + blockid));
-            encoder.add('seq', rs.seq_count);
-            encoder.add('code', work.code);
-            encoder.add('blockid', blockid);
-            var stuff = encoder.toString();
-            conn.send(stuff);
+            ws.onclose = function() {
+                if (channel !== ws) {
+                    return;     // Closed by reset
+                }
+                channel = null;
+                if (!opened) {
+                    // The Companion wouldn't take the channel, so go back to /_newblocks
+                    console.log("pollchannel: no channel, falling back to /_newblocks");
+                    rs.phoneState.channel = false;
+                    engine.pollphone();
+                    return;
+                }
+                console.log("pollchannel: connection lost");
+                var dialog = new Blockly.Util.Dialog(Blockly.Msg.REPL_NETWORK_ERROR, Blockly.Msg.REPL_NETWORK_ERROR_RESTART, Blockly.Msg.REPL_OK, null, 0,
+                    function() {
+                        dialog.hide();
+                        context.hardreset(context.formName);
+                    });
+                engine.resetcompanion();
+            };
+        },
+        // Over the channel, the Companion doesn't answer an update that it
+        // accepts, so the callbacks of the work sent wait for the result that
+        // is returned to its block.
+        'awaitresult' : function(work) {
+            var parts = work.parts || [work];
+            for (var i = 0; i < parts.length; i++) {
+                var part = parts[i];
+                if (!part.success && !part.failure) {
+                    continue;
+                }
+                if (part.code == "#f") { // Not evaluated, so it has no result
+                    if (part.success)
+                        part.success();
+                    continue;
+                }
+                var blockid = part.block ? part.block.id : (part.chunking ? "-2" : "-1");
+                if (!channelPending[blockid]) {
+                    channelPending[blockid] = [];
+                }
+                channelPending[blockid].push(part);
+            }
+        },
+        // Call the callbacks of the work waiting for these results. A result
+        // for a block answers all of the work sent for it, since each update
+        // of a block replaces the ones before it.
+        'resolveresults' : function(values) {
+            for (var i = 0; i < values.length; i++) {
+                var r = values[i];
+                if (r.type != "return" || !channelPending[r.blockid]) {
+                    continue;
+                }
+                var pending = channelPending[r.blockid];
+                delete channelPending[r.blockid];
+                for (var j = 0; j < pending.length; j++) {
+                    if (r.status == "OK") {
+                        if (pending[j].success)
+                            pending[j].success();
+                    } else if (pending[j].failure) {
+                        pending[j].failure(Blockly.Msg.REPL_ERROR_FROM_COMPANION + ": " + r.value);
+                    }
+                }
+            }
+        },
+        // Stop waiting for the result of work the Companion refused
+        'forgetresult' : function(work) {
+            var parts = work.parts || [work];
+            for (var blockid in channelPending) {
+                channelPending[blockid] = channelPending[blockid].filter(function(part) {
+                    return parts.indexOf(part) < 0;
+                });
+                if (channelPending[blockid].length == 0) {
+                    delete channelPending[blockid];
+                }
+            }
+        },
+        // Combine queued work into a single batch for the Companion. When the
+        // same block was queued more than once, only its latest code is sent,
+        // but the callbacks of all of the work are called.
+        'coalesce' : function(queue) {
+            var blocks = [];
+            var positions = {};
+            var callbacks = [];
+            for (var i = 0; i < queue.length; i++) {
+                var blockid = queue[i].block ? '"' + queue[i].block.id + '"' : "-1";
+                if (queue[i].block && positions[blockid] !== undefined) {
+                    blocks[positions[blockid]] = null; // Replaced by this code
+                }
+                positions[blockid] = blocks.length;
+                blocks.push({'blockid' : blockid, 'code' : queue[i].code});
+                callbacks.push(queue[i]);
+            }
+            var batch = [];
+            for (i = 0; i < blocks.length; i++) {
+                if (blocks[i]) {
+                    batch.push(blocks[i]);
+                }
+            }
+            return { 'batch' : goog.json.serialize(batch),
+                     'block' : null,
+                     'parts' : callbacks,
+                     'success' : function() {
+                         for (var i = 0; i < callbacks.length; i++) {
+                             if (callbacks[i].success)
+                                 callbacks[i].success();
+                         }
+                     },
+                     'failure' : function(message) {
+                         for (var i = 0; i < callbacks.length; i++) {
+                             if (callbacks[i].failure)
+                                 callbacks[i].failure(message);
+                         }
+                     }
+                   };
         },
         'doversioncheck' : function() {
             var conn = goog.net.XmlHttp();
@@ -412,6 +625,13 @@ Blockly.ReplMgr.putYail = (function() {
                         } else {
                             rs.phoneState.nofqcn = false;
                         }
+                        // Newer Companions accept the code for several blocks at once
+                        rs.phoneState.batch = !!json.batch;
+                        // and block updates over a WebSocket
+                        rs.phoneState.channel = !!json.channel && window.WebSocket !== undefined;
+                        if (json.imageCache) {
+                            console.log("Companion image cache: " + goog.json.serialize(json.imageCache));
+                        }
                     }
                     // We have to reset the yail state because
                     // we may have a queue of pending yail, yet we may
@@ -458,6 +678,11 @@ Blockly.ReplMgr.putYail = (function() {
             if (rxhr)
                 rxhr.abort();
             rxhr = null;
+            if (channel) {
+                var ws = channel;
+                channel = null; // So its onclose knows it was closed here
+                ws.close();
+            }
 //            if (conn)  // This seems to cause disconnects on project switch
 //                conn.abort();
 //            conn = null;
@@ -984,6 +1209,7 @@ Blockly.ReplMgr.startRepl = function(already, emulator, usb) {
             rs.url = 'http://127.0.0.1:8001/_newblocks';
             rs.rurl = 'http://127.0.0.1:8001/_values';
             rs.versionurl = 'http://127.0.0.1:8001/_getversion';
+            rs.channelurl = 'ws://127.0.0.1:8001/_channel';
             rs.baseurl = 'http://127.0.0.1:8001/';
             rs.extensionurl = rs.baseurl + '_extensions';
             rs.seq_count = 1;
@@ -1047,6 +1273,7 @@ Blockly.ReplMgr.getFromRendezvous = function() {
                 rs.url = 'http://' + json.ipaddr + ':8001/_newblocks';
                 rs.rurl = 'http://' + json.ipaddr + ':8001/_values';
                 rs.versionurl = 'http://' + json.ipaddr + ':8001/_getversion';
+                rs.channelurl = 'ws://' + json.ipaddr + ':8001/_channel';
                 rs.baseurl = 'http://' + json.ipaddr + ':8001/';
                 rs.extensionurl = rs.baseurl + '_extensions';
                 rs.state = Blockly.ReplMgr.rsState.ASSET;
@@ -1144,7 +1144,12 @@ Blockly.Versioning.AllUpgradeMaps =
     3: "noUpgrade",
 
     // AI2: LegacyMode property was added.
-    4: "noUpgrade"
+    4: "noUpgrade",
+
+    // AI2: The DeliveryInterval, WindowSize and BatchDelivery properties were added.
+    // The Mean, Minimum, Maximum and Variance methods were added.
+    // The SamplesReceived event was added.
+    5: "noUpgrade"
 
   }, // End Accelerometer upgraders
 
@@ -1241,7 +1246,10 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothClient.Secure property was added.
     // No blocks need to be modified to upgrade to version 5.
-    5: "noUpgrade"
+    5: "noUpgrade",
+
+    // AI2: The BluetoothClient.ReceiveInBackground property and DataReceived event were added.
+    6: "noUpgrade"
 
   }, // End BluetoothClient upgraders
 
@@ -1267,7 +1275,10 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothServer.Secure property was added.
     // No blocks need to be modified to upgrade to version 5.
-    5: "noUpgrade"
+    5: "noUpgrade",
+
+    // AI2: The BluetoothServer.ReceiveInBackground property and DataReceived event were added.
+    6: "noUpgrade"
 
   }, // End BluetoothServer upgraders
 
@@ -1372,7 +1383,10 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // AI2: No blocks need to be modified to upgrade to version 10
     // The default value of TextAlignment was changed from Normal (left) to Center
-    10: "noUpgrade"
+    10: "noUpgrade",
+
+    // AI2: The GameLoop property was added.
+    11: "noUpgrade"
 
   }, // End Canvas upgraders
 
@@ -1411,9 +1425,12 @@ Blockly.Versioning.AllUpgradeMaps =
   "CloudDB": {
 
     //This is initial version. Placeholder for future upgrades
-    1: "noUpgrade"
+    1: "noUpgrade",
 
-  },
+    // AI2: The GetValues and StoreValues functions and the GotValues event were added.
+    2: "noUpgrade"
+
+  }, // End CloudDB upgraders
 
   "ContactPicker": {
 
@@ -1481,14 +1498,32 @@ Blockly.Versioning.AllUpgradeMaps =
       Blockly.Versioning.changeEventName('FeatureCollection', 'GeoGeoJSON', 'GotFeatures'),
       Blockly.Versioning.changeEventName('FeatureCollection', 'ErrorLoadingFeatureCollection', 'LoadError'),
       Blockly.Versioning.changeEventName('FeatureCollection', 'LoadedFeatureCollection', 'GotFeatures')
-    ]
-  },
+    ],
+
+    // AI2:
+    // - The AddFeaturesFromURL method was added
+    // - The FeaturesAdded and LoadProgress events were added
+    3: "noUpgrade",
+
+    // AI2: The FeaturesInBoundingBox and NearestFeatures methods were added.
+    4: "noUpgrade"
+
+  }, // End FeatureCollection upgraders
 
   "File": {
 
     // AI2: The AfterFileSaved event was added.
     // No blocks need to be modified to upgrade to version 2.
-    2: "noUpgrade"
+    2: "noUpgrade",
+
+    // AI2: The ReadCsvRows method and GotCsvRows event were added.
+    // No blocks need to be modified to upgrade to version 3.
+    3: "noUpgrade",
+
+    // AI2: The Flush and ReadLines methods and GotLines event were added.
+    // Appended text is buffered and written to each file in order.
+    // No blocks need to be modified to upgrade to version 4.
+    4: "noUpgrade"
 
   }, // End File upgraders
 
@@ -1527,7 +1562,12 @@ Blockly.Versioning.AllUpgradeMaps =
   "GyroscopeSensor": {
 
     // This is initial version. Placeholder for future upgrades
-    1: "noUpgrade"
+    1: "noUpgrade",
+
+    // AI2: The DeliveryInterval, WindowSize and BatchDelivery properties were added.
+    // The Mean, Minimum, Maximum and Variance methods were added.
+    // The SamplesReceived event was added.
+    2: "noUpgrade"
 
   }, // End GyroscopeSensor upgraders
 
@@ -1845,7 +1885,23 @@ Blockly.Versioning.AllUpgradeMaps =
     3: [
       Blockly.Versioning.changeEventName('Map', 'GotGeoJSON', 'GotFeatures'),
       Blockly.Versioning.changeEventName('Map', 'GeoJSONError', 'LoadError')
-    ]
+    ],
+
+    // AI2:
+    // - The AddFeaturesFromURL method was added
+    // - The FeaturesAdded and LoadProgress events were added
+    4: "noUpgrade",
+
+    // AI2: The FeaturesInBoundingBox and NearestFeatures methods were added.
+    5: "noUpgrade",
+
+    // AI2: The ClusterMarkers property and ClusterClick event were added.
+    6: "noUpgrade",
+
+    // AI2: The CacheSize and CacheOnly properties were added.
+    // The DownloadRegion method was added.
+    // The DownloadProgress and RegionDownloaded events were added.
+    7: "noUpgrade"
 
   }, // End Map upgraders
 
@@ -2012,7 +2068,11 @@ Blockly.Versioning.AllUpgradeMaps =
         changeFirstMatchingSocketBlockConnectorLabel(block, "yaw", "azimuth");
       }
     */
-    2: "ai1CantDoUpgrade" // Just indicates we couldn't do upgrade even if we wanted to
+    2: "ai1CantDoUpgrade", // Just indicates we couldn't do upgrade even if we wanted to
+
+    // AI2: The DeliveryInterval and BatchDelivery properties were added.
+    // The SamplesReceived event was added.
+    3: "noUpgrade"
 
   }, // End OrientationSensor upgraders
 
@@ -2364,7 +2424,11 @@ Blockly.Versioning.AllUpgradeMaps =
   "TinyDB": {
 
     //This is initial version. Placeholder for future upgrades
-    1: "noUpgrade"
+    1: "noUpgrade",
+
+    // AI2: StoreValues, GetValues and Flush methods were added.
+    // Stored values are saved in the background, and saved values are cached.
+    2: "noUpgrade"
 
   }, // End TinyDB upgraders
 
@@ -2506,7 +2570,13 @@ Blockly.Versioning.AllUpgradeMaps =
     3: "ai1CantDoUpgrade", // Just indicates we couldn't do upgrade even if we wanted to
 
     // AI2: Added method XMLTextDecode
-    4: "noUpgrade"
+    4: "noUpgrade",
+
+    // AI2: The UploadProgress event was added.
+    5: "noUpgrade",
+
+    // AI2: The UseCache and RequestTimeout properties were added.
+    6: "noUpgrade"
 
   }, // End Web upgraders
 
@@ -13,6 +13,7 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import com.android.ide.common.internal.AaptCruncher;
@@ -236,6 +237,9 @@ public final class Compiler {
   private String dexCacheDir;
   private boolean hasSecondDex = false; // True if classes2.dex should be added to the APK
 
+  // Must match DexManifest.ASSET_NAME in the multidex runtime
+  private static final String MULTIDEX_MANIFEST = "multidex.manifest";
+
   private JSONArray simpleCompsBuildInfo;
   private JSONArray extCompsBuildInfo;
   private Set<String> simpleCompTypes;  // types needed by the project
@@ -1012,8 +1016,12 @@ public final class Compiler {
           new ApkBuilder(apkAbsolutePath, zipArchive,
             dexedClassesDir + File.separator + "classes.dex", null, System.out);
       if (hasSecondDex) {
-        apkBuilder.addFile(new File(dexedClassesDir + File.separator + "classes2.dex"),
-          "classes2.dex");
+        File secondDex = new File(dexedClassesDir + File.separator + "classes2.dex");
+        apkBuilder.addFile(secondDex, "classes2.dex");
+        File manifest = new File(dexedClassesDir + File.separator + MULTIDEX_MANIFEST);
+        Files.write(makeMultiDexManifest(Collections.singletonList(secondDex)), manifest,
+            Charsets.UTF_8);
+        apkBuilder.addFile(manifest, "assets/" + MULTIDEX_MANIFEST);
       }
       apkBuilder.sealApk();
       return true;
@@ -1027,6 +1035,25 @@ public final class Compiler {
     }
   }
 
+  /**
+   * Makes the manifest of secondary dex files that the multidex runtime reads
+   * from the APK's assets.  It lists the name, size and SHA-256 digest of
+   * each dex file, after an id that changes whenever they do, so that apps
+   * needn't compute the CRC of the APK on each launch to know whether to
+   * extract them again.
+   *
+   * @param secondaryDexes the secondary dex files, in order
+   */
+  @VisibleForTesting
+  static String makeMultiDexManifest(List<File> secondaryDexes) throws IOException {
+    StringBuilder entries = new StringBuilder();
+    for (File dex : secondaryDexes) {
+      entries.append(dex.getName()).append(' ').append(dex.length()).append(' ')
+          .append(Files.hash(dex, Hashing.sha256())).append('\n');
+    }
+    return "id " + Hashing.sha256().hashString(entries, Charsets.UTF_8) + "\n" + entries;
+  }
+
   /**
    * Creates a new YAIL compiler.
    *
@@ -28,8 +28,13 @@
 ;;; inside a phone, so components are not defined
 (define *testing* #f)
 
-(define (android-log message)
-  (when *debug* (android.util.Log:i "YAIL" message)))
+;;; (android-log message) is a macro, rather than a procedure, so that the
+;;; message, which is usually built with format, is only computed when
+;;; *debug* is set.
+(define-syntax android-log
+  (syntax-rules ()
+    ((_ message)
+     (when *debug* (android.util.Log:i "YAIL" message)))))
 
 ;;;; add-component
 (define-constant simple-component-package-name "com.google.appinventor.components.runtime")
@@ -77,7 +82,25 @@
            (add-to-components 'container
                               (gen-simple-component-type component-type)
                               'component-name
-                              (lambda () init-property-form ...)))))))
+                              (lambda () init-property-form ...)
+                              (designer-hidden? init-property-form ...)))))))
+
+;;; (designer-hidden? init-property-form ...) is #t if one of the designer
+;;; properties of a component, as generated for a built app, makes it
+;;; invisible, so that the runtime can tell which arrangements are hidden
+;;; when the screen starts before any properties are set.
+;;; Ex: (designer-hidden? (set-designer-property! VerticalArrangement1
+;;;                         com.google.appinventor.components.runtime.VerticalArrangement
+;;;                         Visible #f boolean))
+;;; ==> #t
+(define-syntax designer-hidden?
+  (syntax-rules (set-designer-property! Visible)
+    ((_) #f)
+    ((_ (set-designer-property! component-name component-type Visible #f property-type)
+        init-property-form ...)
+     #t)
+    ((_ other-form init-property-form ...)
+     (designer-hidden? init-property-form ...))))
 
 ;; The following code will create a new instance of a component, bind
 ;; it to its name, then create and register a thunk to set any
@@ -317,13 +340,14 @@
          (gnu.mapping.Environment:make (symbol->string 'form-name)))
 
        (define (add-to-form-environment name :: gnu.mapping.Symbol object)
-         (android-log-form (format #f "Adding ~A to env ~A with value ~A" name form-environment object))
+         (when *debug-form*
+           (android-log-form (format #f "Adding ~A to env ~A with value ~A" name form-environment object)))
          (gnu.mapping.Environment:put form-environment name object))
 
        (define (lookup-in-form-environment name :: gnu.mapping.Symbol #!optional (default-value #f))
          (if (and (not (eq? form-environment #!null))
                   (gnu.mapping.Environment:isBound form-environment name))
-             (gnu.mapping.Environment:get form-environment name)
+             (get-component-in-environment form-environment name)
              default-value))
 
        (define (is-bound-in-form-environment name :: gnu.mapping.Symbol)
@@ -335,7 +359,8 @@
                                         "-global-vars")))
 
        (define (add-to-global-var-environment name :: gnu.mapping.Symbol object)
-         (android-log-form (format #f "Adding ~A to env ~A with value ~A" name global-var-environment object))
+         (when *debug-form*
+           (android-log-form (format #f "Adding ~A to env ~A with value ~A" name global-var-environment object)))
          (gnu.mapping.Environment:put global-var-environment name object))
 
        ;; Simple wants there to be a variable named the same as the class.  It will
@@ -350,7 +375,8 @@
 
        ;; List of components to get created in the $define method.
        ;; Each component item is the component is represented as a list
-       ;; (container-name component-type component-name init-thunk)
+       ;; (container-name component-type component-name init-thunk hidden)
+       ;; where hidden is #t if the component is invisible in the designer.
        (define components-to-create  :: gnu.lists.LList '())
 
        ;; A call to add-to-events is generated by define-event to add the event to
@@ -362,9 +388,10 @@
 
        ;; A call to add-to-components is generated by add-component to add the component to
        ;; components-to-create
-       (define (add-to-components container-name component-type component-name init-thunk)
+       (define (add-to-components container-name component-type component-name init-thunk
+                                  #!optional (hidden #f))
          (set! components-to-create
-               (cons (list container-name component-type component-name init-thunk)
+               (cons (list container-name component-type component-name init-thunk hidden)
                      components-to-create)))
 
        ;; List of global variables to be initialized in the $define method.
@@ -419,7 +446,7 @@
            ;; for event handlers and component names.
            (let ((registeredObject (string->symbol registeredComponentName)))
                  (if (is-bound-in-form-environment registeredObject)
-                     (if (eq? (lookup-in-form-environment registeredObject) componentObject)
+                     (if (is-registered-component? form-environment registeredObject componentObject)
                         (let ((handler (lookup-handler registeredComponentName eventName)))
                                 ;; Note: This try-catch was originally part of the
                                 ;; generated handler from define-event.  It was moved
@@ -477,45 +504,83 @@
                          (add-to-global-var-environment var (val-thunk))))
                      var-val-pairs))
 
-         ;; Create each component and set its corresponding field
-         (define (init-components component-descriptors)
-           (for-each (lambda (component-info)
-                       (let ((component-name (caddr component-info))
-                             (init-thunk (cadddr component-info))
-                             (component-type (cadr component-info))
-                             (component-container (lookup-in-form-environment (car component-info))))
-                         ;; (android-log-form
-                         ;;  (format #f "making component: ~A of type: ~A with container: ~A (container-name: ~A)"
-                         ;;          component-name component-type component-container (car component-info)))
-                         (let ((component-object (make component-type component-container)))
-                           ;; Construct the component and assign it to its corresponding field
-                           (set! (field (this) component-name) component-object)
-                           ;; Add the mapping from component name -> component object to the
-                           ;; form-environment
-                           (add-to-form-environment component-name component-object))))
-                     component-descriptors)
-           ;; Now that all the components are constructed we can call
-           ;; their init-thunk and their Initialize methods.  We need
-           ;; to do this after all the construction steps because the
-           ;; init-thunk (i.e. design-time initializations) and
-           ;; Initialize methods may contain references to other
-           ;; components.
-           ;;
+         ;; Create a component and set its corresponding field
+         (define (create-component component-info)
+           (let ((component-name (caddr component-info))
+                 (component-type (cadr component-info))
+                 (component-container (lookup-in-form-environment (car component-info))))
+             ;; (android-log-form
+             ;;  (format #f "making component: ~A of type: ~A with container: ~A (container-name: ~A)"
+             ;;          component-name component-type component-container (car component-info)))
+             (let ((component-object (make component-type component-container)))
+               ;; Construct the component and assign it to its corresponding field
+               (set! (field (this) component-name) component-object)
+               ;; Add the mapping from component name -> component object to the
+               ;; form-environment
+               (add-to-form-environment component-name component-object)
+               component-object)))
+
+         ;; Call the init-thunk and then the Initialize method of each of the created
+         ;; components.  We need to do this after all the construction steps because the
+         ;; init-thunk (i.e. design-time initializations) and Initialize methods may
+         ;; contain references to other components.
+         (define (initialize-components component-descriptors)
            ;; First all the init-thunks
            (for-each (lambda (component-info)
-                       (let ((component-name (caddr component-info))
-                             (init-thunk (cadddr component-info)))
+                       (let ((init-thunk (cadddr component-info)))
                          ;; Execute the component's init-thunk.
                          (when init-thunk (init-thunk))))
                      component-descriptors)
            ;; Now the Initialize methods
            (for-each (lambda (component-info)
-                       (let ((component-name (caddr component-info))
-                             (init-thunk (cadddr component-info)))
+                       (let ((component-name (caddr component-info)))
                          ;; Invoke the component's Initialize() method
                          ((this):callInitialize (field (this) component-name))))
                      component-descriptors))
 
+         ;; Create and initialize components put off by init-components.  The form calls
+         ;; this, at most once for each hidden arrangement, when the arrangement is made
+         ;; visible or one of its components is looked up.
+         (define (create-deferred-components component-descriptors)
+           (for-each create-component component-descriptors)
+           (initialize-components component-descriptors))
+
+         ;; Create each component and set its corresponding field, then initialize them.
+         ;;
+         ;; Creating the components inside an arrangement that is hidden when the screen
+         ;; starts is put off until the arrangement is made visible or one of them is looked
+         ;; up, with a DeferredComponent standing in for each in the form-environment.  They
+         ;; are then created and initialized as they would have been here.  See
+         ;; plan-deferred-components for which components are put off.
+         (define (init-components component-descriptors)
+           (define-alias DeferredComponent <com.google.appinventor.components.runtime.util.DeferredComponent>)
+           (let* ((plan (if isrepl
+                            (cons component-descriptors '())
+                            (plan-deferred-components
+                             component-descriptors
+                             (lambda (component-type) (DeferredComponent:canDefer component-type))
+                             (lambda (component-type)
+                               (DeferredComponent:canHoldDeferred component-type)))))
+                  (created (car plan)))
+             (for-each create-component created)
+             ;; Have the form create the components put off when their arrangement is shown
+             (for-each (lambda (deferred)
+                         (let* ((arrangement (lookup-in-form-environment (car deferred)))
+                                (component-descriptors (cdr deferred))
+                                (stand-in (DeferredComponent
+                                           (runnable (lambda ()
+                                                       ((this):$createDeferredComponents
+                                                        arrangement))))))
+                           (for-each (lambda (component-info)
+                                       (add-to-form-environment (caddr component-info) stand-in))
+                                     component-descriptors)
+                           ((this):$deferComponents
+                            arrangement
+                            (runnable (lambda ()
+                                        (create-deferred-components component-descriptors))))))
+                       (cdr plan))
+             (initialize-components created)))
+
          ;; A helper function
          (define (symbol-append . symbols)
            (string->symbol
@@ -712,9 +777,83 @@
                  ;; The following is just for testing. In normal situations *this-form* should be non-null
                  *test-environment*)))
     (if (gnu.mapping.Environment:isBound env name)
-        (gnu.mapping.Environment:get env name)
+        (get-component-in-environment env name)
         default-value)))
 
+;;; Returns the value bound to name in env.  A component in an arrangement
+;;; that was hidden when the screen started is created the first time it is
+;;; looked up, in place of the DeferredComponent standing in for it.
+(define (get-component-in-environment env :: gnu.mapping.Environment name :: gnu.mapping.Symbol)
+  (let ((value (gnu.mapping.Environment:get env name)))
+    (if (instance? value com.google.appinventor.components.runtime.util.DeferredComponent)
+        (begin
+          ((as com.google.appinventor.components.runtime.util.DeferredComponent value):create)
+          (gnu.mapping.Environment:get env name))
+        value)))
+
+;;; Returns whether component is the component bound to name in env, which
+;;; is how a form checks that the component raising an event is the one the
+;;; event handler was defined for.  Unlike looking the name up, this never
+;;; creates the components put off in a hidden arrangement, since their
+;;; stand-ins can't have raised the event.
+(define (is-registered-component? env :: gnu.mapping.Environment name :: gnu.mapping.Symbol component)
+  (eq? (gnu.mapping.Environment:get env name) component))
+
+;;; Decides which components of a screen to create when it starts, given the
+;;; component descriptors that add-component makes, in designer order.
+;;;
+;;; The components inside an arrangement that is hidden in the designer are
+;;; put off, including those in arrangements nested inside it, so that they
+;;; are created together when the arrangement is shown.  If one of them
+;;; can't be put off, because its Initialize method must run when the screen
+;;; starts, none in the arrangement are, so that Initialize methods run in
+;;; the same order as always.
+;;;
+;;; Returns a pair whose car is the descriptors of the components to create
+;;; now and whose cdr is a list of (arrangement-name descriptor ...) for
+;;; each hidden arrangement with components put off, all in designer order.
+;;; can-defer? and can-hold-deferred? are applied to a component type to
+;;; tell whether the component can be put off, and whether it is an
+;;; arrangement whose components can be.
+(define (plan-deferred-components component-descriptors can-defer? can-hold-deferred?)
+  (let ((hidden-arrangement-of (java.util.HashMap))  ; component name -> hidden arrangement holding it
+        (put-off (java.util.HashMap))  ; hidden arrangement name -> its descriptors, in reverse
+        (hidden-arrangements '())
+        (created '()))
+    (for-each
+     (lambda (component-info)
+       (let* ((container-name (car component-info))
+              (component-type (cadr component-info))
+              (component-name (caddr component-info))
+              (hidden (and (> (length component-info) 4) (list-ref component-info 4)))
+              (arrangement-name (hidden-arrangement-of:get container-name))
+              (in-hidden-arrangement (and (not (eq? arrangement-name #!null))
+                                          (put-off:containsKey arrangement-name))))
+         (cond ((and in-hidden-arrangement (can-defer? component-type))
+                (hidden-arrangement-of:put component-name arrangement-name)
+                (put-off:put arrangement-name (cons component-info (put-off:get arrangement-name))))
+               (else
+                (when in-hidden-arrangement
+                  ;; This component can't be put off, so none in its arrangement are.  The
+                  ;; descriptors inside an arrangement are all together, right after its own,
+                  ;; so those put off so far come right before this one.
+                  (set! created (append (put-off:remove arrangement-name) created)))
+                (set! created (cons component-info created))
+                (when (and hidden (can-hold-deferred? component-type))
+                  (hidden-arrangement-of:put component-name component-name)
+                  (put-off:put component-name '())
+                  (set! hidden-arrangements (cons component-name hidden-arrangements)))))))
+     component-descriptors)
+    (cons (reverse created)
+          (let loop ((names (reverse hidden-arrangements))
+                     (deferred '()))
+            (cond ((null? names) (reverse deferred))
+                  ((and (put-off:containsKey (car names))
+                        (not (null? (put-off:get (car names)))))
+                   (loop (cdr names)
+                         (cons (cons (car names) (reverse (put-off:get (car names)))) deferred)))
+                  (else (loop (cdr names) deferred)))))))
+
 (define (delete-from-current-form-environment name :: gnu.mapping.Symbol)
   (if (not (eq? *this-form* #!null))
       (gnu.mapping.Environment:remove (*:.form-environment *this-form*) name)
@@ -807,6 +946,7 @@
 (define-alias String <java.lang.String>)
 (define-alias Pattern <java.util.regex.Pattern>)
 (define-alias YailList <com.google.appinventor.components.runtime.util.YailList>)
+(define-alias YailListIndex <com.google.appinventor.components.runtime.util.YailListIndex>)
 (define-alias YailNumberToString <com.google.appinventor.components.runtime.util.YailNumberToString>)
 (define-alias YailRuntimeError <com.google.appinventor.components.runtime.errors.YailRuntimeError>)
 (define-alias JavaJoinListOfStrings <com.google.appinventor.components.runtime.util.JavaJoinListOfStrings>)
@@ -955,11 +1095,37 @@
 
 (define (call-yail-primitive prim arglist typelist codeblocks-name)
   ;; (android-log (format #f "applying procedure: ~A to ~A" codeblocks-name arglist))
-  (let ((coerced-args (coerce-args codeblocks-name arglist typelist)))
-    (if (all-coercible? coerced-args)
-        ;; note that we don't need to sanitize because this is coming from a Yail primitive
-        (apply prim coerced-args)
-        (generate-runtime-type-error codeblocks-name arglist))))
+  (if (all-real-number-args? arglist typelist)
+      ;; Fast path for arithmetic and comparisons: every argument is already a
+      ;; Kawa real number where a number is expected, so coercion would return
+      ;; the arguments unchanged.  Skipping it avoids allocating a coerced copy
+      ;; of the argument list and an argument array for apply.
+      (call-with-number-args prim arglist)
+      (let ((coerced-args (coerce-args codeblocks-name arglist typelist)))
+        (if (all-coercible? coerced-args)
+            ;; note that we don't need to sanitize because this is coming from a Yail primitive
+            (apply prim coerced-args)
+            (generate-runtime-type-error codeblocks-name arglist)))))
+
+;;; True if arglist is non-empty, has the same length as typelist, all of the
+;;; types are number, and all of the arguments are Kawa real numbers.  This
+;;; allocates nothing.
+(define (all-real-number-args? arglist typelist)
+  (and (pair? arglist)
+       (let loop ((args arglist) (types typelist))
+         (cond ((null? args) (null? types))
+               ((null? types) #f)
+               ((and (eq? (car types) 'number)
+                     (instance? (car args) gnu.math.RealNum))
+                (loop (cdr args) (cdr types)))
+               (else #f)))))
+
+;;; Call prim on the one- and two-argument lists produced by arithmetic and
+;;; comparison blocks without going through apply.
+(define (call-with-number-args prim arglist)
+  (cond ((null? (cdr arglist)) (prim (car arglist)))
+        ((null? (cddr arglist)) (prim (car arglist) (cadr arglist)))
+        (else (apply prim arglist))))
 
 
 ;;; Sanitization
@@ -1072,6 +1238,36 @@
         (apply func coerced-args)
         (generate-runtime-type-error codeblocks-name arglist))))
 
+;;; Set a property of a component to the value given in the designer,
+;;; calling the setter directly.  When an app is built, the blocks editor
+;;; generates these for the designer properties of each component instead of
+;;; set-and-coerce-property!.  Since the component type and property name are
+;;; known when the screen is compiled, Kawa resolves the setter and the
+;;; conversion of the value to its parameter type then, so that starting the
+;;; screen doesn't look up each setter by reflection.  The Companion still
+;;; uses set-and-coerce-property!, since it evaluates the code it is sent
+;;; rather than compiling a screen.
+;;; Ex: (set-designer-property! Button3 com.google.appinventor.components.runtime.Button
+;;;                             FontSize 14 number)
+(define-syntax set-designer-property!
+  (syntax-rules ()
+    ((_ component-name component-type prop-name property-value property-type)
+     (let ((coerced-arg (coerce-designer-value property-value property-type)))
+       (if (eq? coerced-arg *non-coercible-value*)
+           (generate-runtime-type-error 'prop-name (list property-value))
+           (invoke (as component-type (get-component component-name)) 'prop-name coerced-arg))))))
+
+;;; Choose the coercion for a designer property value when the screen is
+;;; compiled, rather than dispatching on the type each time as coerce-arg does.
+(define-syntax coerce-designer-value
+  (syntax-rules (number text boolean component any)
+    ((_ value number) (coerce-to-number value))
+    ((_ value text) (coerce-to-text value))
+    ((_ value boolean) (coerce-to-boolean value))
+    ((_ value component) (coerce-to-component value))
+    ((_ value any) value)
+    ((_ value type) (coerce-arg value 'type))))
+
 ;;; Call a component's property setter method with argument coercion
 ;;; Ex: (%set-and-coerce-property! Button3 'FontSize 14 'number)
 (define (%set-and-coerce-property! comp prop-name property-value property-type)
@@ -1403,7 +1599,11 @@
 ;;; Notice that this procedure works on the yail-list type
 ;;; because a yail-list is implemented as an ordinary list, with a tag
 (define (yail-equal? x1 x2)
-  (cond ((and (null? x1) (null? x2)) #t)
+  (cond ((and (instance? x1 gnu.math.RealNum) (instance? x2 gnu.math.RealNum))
+         ;; Fast path for numbers, which would otherwise go through as-number.
+         ;; equal? is still needed for NaN, which is not = to itself.
+         (or (= x1 x2) (equal? x1 x2)))
+        ((and (null? x1) (null? x2)) #t)
         ((or (null? x1) (null? x2)) #f)
         ((and (not (pair? x1)) (not (pair? x2)))
          (yail-atomic-equal? x1 x2))
@@ -1823,6 +2023,7 @@ list, use the make-yail-list constructor with no arguments.
   (cdr yail-list))
 
 (define (set-yail-list-contents! yail-list contents)
+  (YailListIndex:changed yail-list)
   (set-cdr! yail-list contents))
 
 
@@ -1949,10 +2150,13 @@ list, use the make-yail-list constructor with no arguments.
 ;; returns the 1-based index of the object in the list
 ;; returns 0 if object not in list
 (define (yail-list-index object yail-list)
-  (let loop ((i 1) (list (yail-list-contents yail-list)))
-    (cond ((null? list) 0)
-          ((yail-equal? object (car list)) i)
-          (else (loop (+ i 1) (cdr list))))))
+  (let ((index (yail-list-item-index yail-list)))
+    (if (eq? index #!null)
+        (let loop ((i 1) (list (yail-list-contents yail-list)))
+          (cond ((null? list) 0)
+                ((yail-equal? object (car list)) i)
+                (else (loop (+ i 1) (cdr list)))))
+        (indexed-position index object (lambda (item) item)))))
 
 ;; Implements the Blocks get list item operation
 (define (yail-list-get-item yail-list index)
@@ -1989,6 +2193,7 @@ list, use the make-yail-list constructor with no arguments.
                  len
                  (get-display-representation yail-list))
          "List index too large")))
+  (YailListIndex:changed yail-list)
   (set-car! (list-tail (yail-list-contents yail-list) (- index 1)) value))
 
 
@@ -2021,6 +2226,7 @@ list, use the make-yail-list constructor with no arguments.
                    (get-display-representation yail-list))
            "List index too large"))
       (let ((pair-pointing-to-deletion (list-tail yail-list (- index2 1))))
+        (YailListIndex:changed yail-list)
         (set-cdr! pair-pointing-to-deletion (cddr pair-pointing-to-deletion))))))
 
 
@@ -2054,6 +2260,7 @@ list, use the make-yail-list constructor with no arguments.
         (if (= index2 1)
             (set-yail-list-contents! yail-list (cons item contents))
             (let ((at-item (list-tail contents (- index2 2))))
+              (YailListIndex:changed yail-list)
               (set-cdr! at-item (cons item (cdr at-item)))))))))
 
 ;; Extends list A by appending the elements of list B to it
@@ -2070,6 +2277,7 @@ list, use the make-yail-list constructor with no arguments.
     (cons (car l) (list-copy (cdr l)))))
   ;; We have to operate on the yail-list itself, not the contents, because
   ;; the contents might be empty
+  (YailListIndex:changed yail-list-A)
   (set-cdr! (list-tail yail-list-A (length (yail-list-contents yail-list-A)))
         (list-copy (yail-list-contents yail-list-B))))
 
@@ -2086,8 +2294,11 @@ list, use the make-yail-list constructor with no arguments.
 ;; Implements the blocks member? operation
 ;; This returns true or false (unlike Scheme's member primitive)
 (define (yail-list-member? object yail-list)
-  (let ((result (member object (yail-list-contents yail-list) yail-equal?)))
-    (if result #t #f)))
+  (let ((index (yail-list-item-index yail-list)))
+    (if (eq? index #!null)
+        (let ((result (member object (yail-list-contents yail-list) yail-equal?)))
+          (if result #t #f))
+        (> (indexed-position index object (lambda (item) item)) 0))))
 
 
 ;; Returns an element chosen at random from the list
@@ -2195,18 +2406,28 @@ list, use the make-yail-list constructor with no arguments.
 ;;; JSON objects and whether jsonutils.decode.
 
 (define (yail-alist-lookup key yail-list-of-pairs default)
-  (android-log
-   (format #f "List alist lookup key is  ~A and table is ~A" key yail-list-of-pairs))
-  (let loop ((pairs-to-check (yail-list-contents yail-list-of-pairs)))
-    (cond ((null? pairs-to-check) default)
-          ((not (pair-ok? (car pairs-to-check)))
-           (signal-runtime-error
-            (format #f "Lookup in pairs: the list ~A is not a well-formed list of pairs"
-                    (get-display-representation yail-list-of-pairs))
-            "Invalid list of pairs"))
-          ((yail-equal? key (car (yail-list-contents (car pairs-to-check))))
-           (cadr (yail-list-contents (car pairs-to-check))))
-          (else (loop (cdr pairs-to-check))))))
+  ;; Formatting the table takes time proportional to its size, so don't do
+  ;; it unless it will be logged.
+  (when *debug*
+    (android-log
+     (format #f "List alist lookup key is  ~A and table is ~A" key yail-list-of-pairs)))
+  (let ((index (yail-list-pair-index yail-list-of-pairs)))
+    (if (eq? index #!null)
+        (let loop ((pairs-to-check (yail-list-contents yail-list-of-pairs)))
+          (cond ((null? pairs-to-check) default)
+                ((not (pair-ok? (car pairs-to-check)))
+                 (signal-runtime-error
+                  (format #f "Lookup in pairs: the list ~A is not a well-formed list of pairs"
+                          (get-display-representation yail-list-of-pairs))
+                  "Invalid list of pairs"))
+                ((yail-equal? key (car (yail-list-contents (car pairs-to-check))))
+                 (cadr (yail-list-contents (car pairs-to-check))))
+                (else (loop (cdr pairs-to-check)))))
+        (let ((position (indexed-position index key
+                                          (lambda (pair) (car (yail-list-contents pair))))))
+          (if (= position 0)
+              default
+              (cadr (yail-list-contents (index:get position))))))))
 
 
 
@@ -2214,6 +2435,76 @@ list, use the make-yail-list constructor with no arguments.
   (and (yail-list? candidate-pair)
        (= (length (yail-list-contents candidate-pair)) 2)))
 
+;;; Hash indexes for lookups in large lists
+;;;
+;;; Apps use lists of pairs as dictionaries and search lists in loops, so
+;;; the lookup procedures above use a hash index (see YailListIndex.java)
+;;; for a list that is searched repeatedly without changing.  Every list
+;;; primitive that changes a list must call YailListIndex:changed on it.
+
+;;; Returns the hash key of a list item.  Items that are yail-equal? have
+;;; equal keys: numbers, and strings that are numbers, are keyed by their
+;;; value as a double, and other strings by their characters.  All lists
+;;; share one key, since they are compared item by item.
+(define (yail-hash-key x)
+  (cond ((pair? x) *yail-list*)
+        ((as-number x)
+         => (lambda (n)
+              (if (real? n)
+                  ;; Adding 0.0 turns -0.0, which is = to 0, into 0.0.
+                  (+ (exact->inexact n) 0.0)
+                  *yail-list*)))
+        ((string? x) (x:toString))
+        (else x)))
+
+;;; Returns the index of the items of yail-list, building it if needed, or
+;;; #!null if the list should be searched linearly.
+(define (yail-list-item-index yail-list) :: YailListIndex
+  (if (not (instance? yail-list YailList))
+      #!null
+      (let ((index :: YailListIndex (YailListIndex:forItems yail-list)))
+        (when (and (not (eq? index #!null)) (not (index:isBuilt)))
+          (for-each (lambda (item) (index:add (yail-hash-key item) item))
+                    (yail-list-contents yail-list))
+          (index:setBuilt))
+        index)))
+
+;;; Returns the index of the pairs of yail-list-of-pairs by their first
+;;; items, building it if needed, or #!null if the list should be searched
+;;; linearly, including when it is not a well-formed list of pairs so that
+;;; the linear search can report the error.
+(define (yail-list-pair-index yail-list-of-pairs) :: YailListIndex
+  (if (not (instance? yail-list-of-pairs YailList))
+      #!null
+      (let ((index :: YailListIndex (YailListIndex:forPairs yail-list-of-pairs)))
+        (if (or (eq? index #!null) (index:isBuilt))
+            index
+            (let loop ((pairs (yail-list-contents yail-list-of-pairs)))
+              (cond ((null? pairs)
+                     (index:setBuilt)
+                     index)
+                    ((pair-ok? (car pairs))
+                     (index:add (yail-hash-key (car (yail-list-contents (car pairs))))
+                                (car pairs))
+                     (loop (cdr pairs)))
+                    (else
+                     (index:setUnusable)
+                     #!null)))))))
+
+;;; Returns the 1-based position of the first item of index whose key, as
+;;; given by key-of, is yail-equal? to object, or 0 if there is none.
+(define (indexed-position (index :: YailListIndex) object key-of)
+  (let ((start (index:positionOf (yail-hash-key object)))
+        (size (index:size)))
+    (if (= start 0)
+        0
+        ;; Items after the first one with the same hash key need not have the
+        ;; same key, but any that are yail-equal? do.
+        (let loop ((i start))
+          (cond ((> i size) 0)
+                ((yail-equal? object (key-of (index:get i))) i)
+                (else (loop (+ i 1))))))))
+
 
 
 
@@ -2522,6 +2813,17 @@ list, use the make-yail-list constructor with no arguments.
     ((_ blockid expr)
      (in-ui blockid (delay expr)))))
 
+;;; process-repl-batch
+;;; Takes the input for several blocks, sent together by the blocks
+;;; editor, and runs it in one trip to the phone's UI thread. Each block's
+;;; result is returned on its own, as for process-repl-input, and an
+;;; error in one block doesn't keep the blocks after it from running.
+
+(define-syntax process-repl-batch
+  (syntax-rules ()
+    ((_ (blockid expr) ...)
+     (in-ui-batch (list (cons blockid (delay expr)) ...)))))
+
 ;; This code causes the evaluation of the code sent to the phone. Output
 ;; is normally generated by "Report Execution" balloons attached to blocks
 ;; which cause "(report <return-tag> <exp>)" expressions to surround
@@ -2533,23 +2835,33 @@ list, use the make-yail-list constructor with no arguments.
   (set! *this-is-the-repl* #t)          ;; Should do this somewhere else...
   (*ui-handler*:post
    (runnable (lambda ()
-               (send-to-block blockid
-                (try-catch
-                 (try-catch
-                  (list "OK"
-                        (get-display-representation (force promise)))
-                  (exception YailRuntimeError
-                             (android-log (exception:getMessage))
-                             (list "NOK"
-                                   (exception:getMessage))))
-                 (exception java.lang.Throwable
-                            (android-log (exception:getMessage))
-                            (exception:printStackTrace)
-                            (list
-                             "NOK"
-                             (if (instance? exception java.lang.Error)
-                                 (exception:toString)
-                                 (exception:getMessage))))))))))
+               (send-to-block blockid (force-repl-result promise))))))
+
+(define (in-ui-batch blocks)
+  (set! *this-is-the-repl* #t)
+  (*ui-handler*:post
+   (runnable (lambda ()
+               (for-each (lambda (block)
+                           (send-to-block (car block) (force-repl-result (cdr block))))
+                         blocks)))))
+
+(define (force-repl-result promise)
+  (try-catch
+   (try-catch
+    (list "OK"
+          (get-display-representation (force promise)))
+    (exception YailRuntimeError
+               (android-log (exception:getMessage))
+               (list "NOK"
+                     (exception:getMessage))))
+   (exception java.lang.Throwable
+              (android-log (exception:getMessage))
+              (exception:printStackTrace)
+              (list
+               "NOK"
+               (if (instance? exception java.lang.Error)
+                   (exception:toString)
+                   (exception:getMessage))))))
 
 ;; send-to-block is used for all communication back to the blocks editor
 ;; Calls on report are also generated for code from the blocks compiler
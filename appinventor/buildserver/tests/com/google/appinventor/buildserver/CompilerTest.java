@@ -6,10 +6,15 @@
 
 package com.google.appinventor.buildserver;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 import junit.framework.TestCase;
 
+import java.io.File;
 import java.util.Map;
 import java.util.Set;
 
@@ -115,4 +120,32 @@ public class CompilerTest extends TestCase {
     // Finally, test for the name attribute of the <intent-filter>'s <action> subelement
     assertTrue(activityElementString.contains("name=\"android.intent.action.MAIN\""));
   }
+
+  public void testMakeMultiDexManifest() throws Exception {
+    File dir = Files.createTempDir();
+    try {
+      File second = new File(dir, "classes2.dex");
+      File third = new File(dir, "classes3.dex");
+      Files.write("dex\n035\0second", second, Charsets.UTF_8);
+      Files.write("dex\n035\0third", third, Charsets.UTF_8);
+
+      String manifest = Compiler.makeMultiDexManifest(Lists.newArrayList(second, third));
+      String[] lines = manifest.split("\n");
+      assertEquals(3, lines.length);
+      assertEquals("classes2.dex 14 " + Files.hash(second, Hashing.sha256()), lines[1]);
+      assertEquals("classes3.dex 13 " + Files.hash(third, Hashing.sha256()), lines[2]);
+      String entries = lines[1] + "\n" + lines[2] + "\n";
+      assertEquals("id " + Hashing.sha256().hashString(entries, Charsets.UTF_8), lines[0]);
+
+      // The id changes with the dex files.
+      Files.write("dex\n035\0changed", third, Charsets.UTF_8);
+      String changed = Compiler.makeMultiDexManifest(Lists.newArrayList(second, third));
+      assertFalse(lines[0].equals(changed.split("\n")[0]));
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
 }
@@ -0,0 +1,86 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import gnu.mapping.Environment;
+import gnu.mapping.Procedure;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+
+/**
+ * Benchmarks for setting the designer properties of a screen with 500
+ * components, run by the BuildServerBenchmarks target.  One benchmark sets
+ * them with set-designer-property!, which the blocks editor generates for
+ * built apps, and the other with %set-and-coerce-property!, which every
+ * designer property went through before.  Both are compiled, as they are in
+ * a screen, and then run several times, so that the times in the test
+ * report mostly measure setting the properties rather than compiling them.
+ * YailEvalTest.testSetDesignerProperty checks set-designer-property!.
+ *
+ * Threads stand in for the components, since the runtime only needs
+ * objects with setters.
+ *
+ */
+public class DesignerPropertyBenchmark extends TestCase {
+  private static final int COMPONENTS = 500;
+  private static final int COMPONENTS_PER_PROCEDURE = 50;
+  private static final int RUNS = 50;
+
+  private Scheme scheme;
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = new Scheme();
+    try {
+      scheme.eval("(load \"" + Compiler.getResource(Compiler.YAIL_RUNTIME) + "\")");
+      scheme.eval("(set! *testing* #t)");
+      for (int i = 0; i < COMPONENTS; i++) {
+        scheme.eval("(add-to-current-form-environment 'Thread" + i + " (java.lang.Thread))");
+      }
+    } catch (Exception e) {
+      throw e;
+    } catch (Throwable throwable) {
+      throw new RuntimeException(throwable);
+    }
+    Environment.setCurrent(scheme.getEnvironment());
+  }
+
+  /*
+   * Compiles procedures that set three properties of each component with the given format,
+   * whose arguments are the component's name, the setter and the value and type of the
+   * property, and calls them RUNS times.  Each procedure sets the properties of
+   * COMPONENTS_PER_PROCEDURE components, since the code for all of them would be too large
+   * for one method.
+   */
+  private void setProperties(String format) throws Throwable {
+    Procedure[] procedures = new Procedure[COMPONENTS / COMPONENTS_PER_PROCEDURE];
+    for (int p = 0; p < procedures.length; p++) {
+      StringBuilder sb = new StringBuilder("(lambda ()");
+      for (int i = p * COMPONENTS_PER_PROCEDURE; i < (p + 1) * COMPONENTS_PER_PROCEDURE; i++) {
+        String name = "Thread" + i;
+        sb.append(String.format(format, name, "setName", "\"Worker\"", "text"));
+        sb.append(String.format(format, name, "setPriority", "\"7\"", "number"));
+        sb.append(String.format(format, name, "setDaemon", "#t", "boolean"));
+      }
+      sb.append(")");
+      procedures[p] = (Procedure) scheme.eval(sb.toString());
+    }
+    for (int i = 0; i < RUNS; i++) {
+      for (Procedure procedure : procedures) {
+        procedure.apply0();
+      }
+    }
+  }
+
+  public void testSetDesignerProperty() throws Throwable {
+    setProperties(" (set-designer-property! %1$s java.lang.Thread %2$s %3$s %4$s)");
+  }
+
+  public void testSetAndCoerceProperty() throws Throwable {
+    setProperties(" (%%set-and-coerce-property! (get-component %1$s) '%2$s %3$s '%4$s)");
+  }
+}
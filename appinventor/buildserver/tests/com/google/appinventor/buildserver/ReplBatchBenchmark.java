@@ -0,0 +1,68 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import static com.google.appinventor.buildserver.ReplBatchEvalTest.batch;
+import static com.google.appinventor.buildserver.ReplBatchEvalTest.blockid;
+import static com.google.appinventor.buildserver.ReplBatchEvalTest.eval;
+import static com.google.appinventor.buildserver.ReplBatchEvalTest.fetchValues;
+
+import com.google.appinventor.components.runtime.util.ReplBatch;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+
+/**
+ * Benchmarks for evaluating 200 global definitions sent by the Blocks
+ * Editor, run by the BuildServerBenchmarks target: one process-repl-input
+ * at a time, as for a request each to /_newblocks, and as a single batch,
+ * which compiles them together.  The batch's time in the test report
+ * should be a fraction of the other's.  ReplBatchEvalTest checks the
+ * results of batches.
+ *
+ */
+public class ReplBatchBenchmark extends TestCase {
+  private static final int DEFINITIONS = 200;
+  private static final int RUNS = 3;
+
+  private Scheme scheme;
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = ReplBatchEvalTest.newReplScheme();
+  }
+
+  private static String definition(int i, int run) {
+    return "(begin (def g$v" + i + " (* " + i + " " + run + ")) (get-var g$v" + i + "))";
+  }
+
+  public void testDefinitionsOneAtATime() throws Exception {
+    for (int run = 1; run <= RUNS; run++) {
+      for (int i = 0; i < DEFINITIONS; i++) {
+        eval(scheme, "(process-repl-input " + blockid(i) + " (begin " + definition(i, run) +
+            " ))");
+      }
+      assertEquals(DEFINITIONS, fetchValues().size());
+    }
+  }
+
+  public void testDefinitionsAsBatch() throws Exception {
+    for (int run = 1; run <= RUNS; run++) {
+      String[] blocks = new String[2 * DEFINITIONS];
+      for (int i = 0; i < DEFINITIONS; i++) {
+        blocks[2 * i] = blockid(i);
+        blocks[2 * i + 1] = definition(i, run);
+      }
+      eval(scheme, ReplBatch.toYail(batch(blocks)));
+      Map<String, String> values = fetchValues();
+      assertEquals(DEFINITIONS, values.size());
+      assertEquals(String.valueOf((DEFINITIONS - 1) * run), values.get(blockid(DEFINITIONS - 1)
+          .replace("\"", "")));
+    }
+  }
+}
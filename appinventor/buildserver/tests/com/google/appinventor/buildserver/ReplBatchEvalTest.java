@@ -0,0 +1,171 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.components.runtime.util.ReplBatch;
+import com.google.appinventor.components.runtime.util.RetValManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Tests evaluating the code for several blocks as a batch, as the Companion
+ * does for /_newblocks.
+ *
+ */
+public class ReplBatchEvalTest extends TestCase {
+  private Scheme scheme;
+
+  /**
+   * Stands in for the Companion's UI thread handler, running what is posted
+   * to it straight away.
+   */
+  public static class ImmediateHandler {
+    public boolean post(Runnable runnable) {
+      runnable.run();
+      return true;
+    }
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = newReplScheme();
+  }
+
+  /*
+   * Returns an interpreter with the YAIL runtime loaded, set up as the Companion's is.
+   */
+  static Scheme newReplScheme() throws Exception {
+    Scheme scheme = new Scheme();
+    eval(scheme, "(load \"" + Compiler.getResource(Compiler.YAIL_RUNTIME) + "\")");
+    eval(scheme, "(set! *testing* #t)");
+    eval(scheme, "(set! *this-is-the-repl* #t)");
+    eval(scheme, "(set! *ui-handler* (" + ImmediateHandler.class.getName() + "))");
+    RetValManager.fetch(false);  // Discard values left by other tests
+    return scheme;
+  }
+
+  static Object eval(Scheme scheme, String yail) throws Exception {
+    try {
+      return scheme.eval(yail);
+    } catch (Exception e) {
+      throw e;
+    } catch (Throwable throwable) {
+      throw new RuntimeException(throwable);
+    }
+  }
+
+  private Object eval(String yail) throws Exception {
+    return eval(scheme, yail);
+  }
+
+  static String blockid(int i) {
+    return "\"b" + i + "\"";
+  }
+
+  static String batch(String... blocks) throws Exception {
+    JSONArray batch = new JSONArray();
+    for (int i = 0; i < blocks.length; i += 2) {
+      JSONObject block = new JSONObject();
+      block.put("blockid", blocks[i]);
+      block.put("code", blocks[i + 1]);
+      batch.put(block);
+    }
+    return batch.toString();
+  }
+
+  /*
+   * Returns the values returned since the last call, by blockid.
+   */
+  static Map<String, String> fetchValues() throws Exception {
+    JSONArray values = new JSONObject(RetValManager.fetch(false)).getJSONArray("values");
+    Map<String, String> result = new HashMap<String, String>();
+    for (int i = 0; i < values.length(); i++) {
+      JSONObject value = values.getJSONObject(i);
+      assertEquals("OK", value.getString("status"));
+      assertNull("Value returned twice", result.put(value.getString("blockid"),
+          value.getString("value")));
+    }
+    return result;
+  }
+
+  public void testBatchReturnsValuePerBlock() throws Exception {
+    eval(ReplBatch.toYail(batch(blockid(1), "(+ 1 2)", blockid(2), "(string-append \"a\" \"b\")",
+        "-1", "#f")));
+    Map<String, String> values = fetchValues();
+    assertEquals(2, values.size());
+    assertEquals("3", values.get("b1"));
+    assertEquals("\"ab\"", values.get("b2"));
+  }
+
+  public void testRedefinitionReplacesEarlierCode() throws Exception {
+    eval("(def g$count 0)");
+    String increment = "(begin (set-var! g$count (+ (get-var g$count) 1)) (get-var g$count))";
+    eval(ReplBatch.toYail(batch(blockid(1), increment, blockid(2), "(get-var g$count)",
+        blockid(1), increment)));
+    Map<String, String> values = fetchValues();
+    assertEquals("1", values.get("b1"));
+    // The block replaced takes the place of its last code, after b2.
+    assertEquals("0", values.get("b2"));
+    assertEquals("1", eval("(get-var g$count)").toString());
+  }
+
+  public void testCodeWithoutBlockIsKept() throws Exception {
+    eval("(def g$count 0)");
+    String increment = "(set-var! g$count (+ (get-var g$count) 1))";
+    eval(ReplBatch.toYail(batch("-1", increment, "-1", increment)));
+    assertEquals("2", eval("(get-var g$count)").toString());
+  }
+
+  public void testErrorDoesNotStopBatch() throws Exception {
+    eval(ReplBatch.toYail(batch(blockid(1), "(car '())", blockid(2), "(+ 1 2)")));
+    JSONArray values = new JSONObject(RetValManager.fetch(false)).getJSONArray("values");
+    assertEquals(2, values.length());
+    assertEquals("NOK", values.getJSONObject(0).getString("status"));
+    assertEquals("3", values.getJSONObject(1).getString("value"));
+  }
+
+  public void testBatchThatCantBeCompiled() throws Exception {
+    // The batch as a whole is unbalanced, so its blocks are evaluated one at a time.
+    ReplBatch.eval(batch(blockid(1), "(+ 1 2)", blockid(2), "(+ 1", blockid(3), "(* 2 3)"),
+        new ReplBatch.Evaluator() {
+          @Override
+          public void eval(String yail) throws Throwable {
+            scheme.eval(yail);
+          }
+        });
+    JSONArray values = new JSONObject(RetValManager.fetch(false)).getJSONArray("values");
+    assertEquals(3, values.length());
+    assertEquals("b1", values.getJSONObject(0).getString("blockid"));
+    assertEquals("3", values.getJSONObject(0).getString("value"));
+    // The error goes to the block it came from.
+    assertEquals("b2", values.getJSONObject(1).getString("blockid"));
+    assertEquals("BAD", values.getJSONObject(1).getString("status"));
+    assertEquals("b3", values.getJSONObject(2).getString("blockid"));
+    assertEquals("6", values.getJSONObject(2).getString("value"));
+  }
+
+  public void testBatchEvaluatedOnce() throws Exception {
+    final int[] evals = { 0 };
+    ReplBatch.eval(batch(blockid(1), "(+ 1 2)", blockid(2), "(* 2 3)"),
+        new ReplBatch.Evaluator() {
+          @Override
+          public void eval(String yail) throws Throwable {
+            evals[0]++;
+            scheme.eval(yail);
+          }
+        });
+    assertEquals(1, evals[0]);
+    Map<String, String> values = fetchValues();
+    assertEquals("3", values.get("b1"));
+    assertEquals("6", values.get("b2"));
+  }
+}
@@ -0,0 +1,30 @@
+;;; Builders for large lists of numbers and lists of pairs, and the linear
+;;; searches that yail-list-index and yail-alist-lookup made before they
+;;; used a hash index, for the list lookup tests and benchmarks.
+
+(define (make-test-pairs n)
+  (let loop ((i n) (pairs '()))
+    (if (= i 0)
+        (YailList:makeList pairs)
+        (loop (- i 1) (cons (make-yail-list (string-append "key" (number->string i))
+                                            i)
+                            pairs)))))
+
+(define (make-test-list n)
+  (let loop ((i n) (items '()))
+    (if (= i 0)
+        (YailList:makeList items)
+        (loop (- i 1) (cons (* i 1.0) items)))))
+
+(define (yail-alist-lookup-linear key yail-list-of-pairs default)
+  (let loop ((pairs-to-check (yail-list-contents yail-list-of-pairs)))
+    (cond ((null? pairs-to-check) default)
+          ((yail-equal? key (car (yail-list-contents (car pairs-to-check))))
+           (cadr (yail-list-contents (car pairs-to-check))))
+          (else (loop (cdr pairs-to-check))))))
+
+(define (yail-list-index-linear object yail-list)
+  (let loop ((i 1) (list (yail-list-contents yail-list)))
+    (cond ((null? list) 0)
+          ((yail-equal? object (car list)) i)
+          (else (loop (+ i 1) (cdr list))))))
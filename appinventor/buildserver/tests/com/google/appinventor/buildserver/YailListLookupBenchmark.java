@@ -0,0 +1,92 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import gnu.mapping.Procedure;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+
+/**
+ * Benchmarks for looking up items in lists of 1,000, 10,000 and 100,000
+ * items, run by the BuildServerBenchmarks target.  Each benchmark makes the
+ * same number of lookups, with the runtime's indexed lookup or with the
+ * linear search it used before, so the times in the test report can be
+ * compared directly.  The time to build each list and its index is
+ * included.  YailListLookupTest checks that both find the same items.
+ *
+ */
+public class YailListLookupBenchmark extends TestCase {
+  // Few enough that a linear search of the largest list finishes in seconds.
+  private static final int LOOKUPS = 200;
+
+  private Scheme scheme;
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = YailListLookupTest.loadRuntime();
+  }
+
+  private void lookUpPairs(String procedure, int size) throws Throwable {
+    Object list = ((Procedure) scheme.eval("make-test-pairs")).apply1(size);
+    YailListLookupTest.lookUp((Procedure) scheme.eval(procedure), list,
+        YailListLookupTest.keys(size, LOOKUPS, true), "nothing");
+  }
+
+  private void indexInList(String procedure, int size) throws Throwable {
+    Object list = ((Procedure) scheme.eval("make-test-list")).apply1(size);
+    YailListLookupTest.lookUp((Procedure) scheme.eval(procedure), list,
+        YailListLookupTest.keys(size, LOOKUPS, false));
+  }
+
+  public void testAListLookupIndexed1000() throws Throwable {
+    lookUpPairs("yail-alist-lookup", 1000);
+  }
+
+  public void testAListLookupLinear1000() throws Throwable {
+    lookUpPairs("yail-alist-lookup-linear", 1000);
+  }
+
+  public void testAListLookupIndexed10000() throws Throwable {
+    lookUpPairs("yail-alist-lookup", 10000);
+  }
+
+  public void testAListLookupLinear10000() throws Throwable {
+    lookUpPairs("yail-alist-lookup-linear", 10000);
+  }
+
+  public void testAListLookupIndexed100000() throws Throwable {
+    lookUpPairs("yail-alist-lookup", 100000);
+  }
+
+  public void testAListLookupLinear100000() throws Throwable {
+    lookUpPairs("yail-alist-lookup-linear", 100000);
+  }
+
+  public void testListIndexIndexed1000() throws Throwable {
+    indexInList("yail-list-index", 1000);
+  }
+
+  public void testListIndexLinear1000() throws Throwable {
+    indexInList("yail-list-index-linear", 1000);
+  }
+
+  public void testListIndexIndexed10000() throws Throwable {
+    indexInList("yail-list-index", 10000);
+  }
+
+  public void testListIndexLinear10000() throws Throwable {
+    indexInList("yail-list-index-linear", 10000);
+  }
+
+  public void testListIndexIndexed100000() throws Throwable {
+    indexInList("yail-list-index", 100000);
+  }
+
+  public void testListIndexLinear100000() throws Throwable {
+    indexInList("yail-list-index-linear", 100000);
+  }
+}
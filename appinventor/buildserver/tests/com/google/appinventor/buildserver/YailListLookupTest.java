@@ -0,0 +1,142 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.common.testutils.TestUtils;
+import com.google.appinventor.components.runtime.util.YailList;
+import com.google.appinventor.components.runtime.util.YailListIndex;
+
+import gnu.expr.Language;
+import gnu.mapping.Environment;
+import gnu.mapping.Procedure;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+
+/**
+ * Tests that looking up items in a large list, which the YAIL runtime does
+ * with a hash index once the list is searched repeatedly, finds the same
+ * items as the linear searches in YailListLookup.scm.
+ *
+ */
+public class YailListLookupTest extends TestCase {
+  private static final String YAIL_LIST_LOOKUP_DEFINITIONS = TestUtils.APP_INVENTOR_ROOT_DIR +
+      "/buildserver/tests/com/google/appinventor/buildserver/YailListLookup.scm";
+
+  private static final int SIZE = 1000;
+  private static final int LOOKUPS = 500;
+
+  private Scheme scheme;
+
+  /**
+   * Returns an interpreter with the YAIL runtime and the list builders and
+   * linear searches loaded.
+   */
+  static Scheme loadRuntime() throws Exception {
+    Scheme scheme = new Scheme();
+    try {
+      scheme.eval("(load \"" + Compiler.getResource(Compiler.YAIL_RUNTIME) + "\")");
+      scheme.eval("(load \"" + YAIL_LIST_LOOKUP_DEFINITIONS + "\")");
+      scheme.eval("(set! *testing* #t)");
+    } catch (Exception e) {
+      throw e;
+    } catch (Throwable throwable) {
+      throw new RuntimeException(throwable);
+    }
+    // The runtime's procedures look up each other in the current environment,
+    // and some need the current language.
+    Environment.setCurrent(scheme.getEnvironment());
+    Language.setCurrentLanguage(scheme);
+    return scheme;
+  }
+
+  /**
+   * Returns count keys for a list of the given size.  Some are strings and
+   * some numbers, so that yail-equal? has to convert between them, and some
+   * are missing from the list.
+   */
+  static Object[] keys(int size, int count, boolean pairs) {
+    Random random = new Random(size);
+    Object[] keys = new Object[count];
+    for (int i = 0; i < count; i++) {
+      int n = random.nextInt(size + size / 10) + 1;
+      if (pairs) {
+        keys[i] = "key" + n;
+      } else {
+        keys[i] = (i % 2 == 0) ? Integer.toString(n) : Double.valueOf(n);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Looks up each of the keys with the given procedure, which is called with
+   * the key, the list and the extra arguments, and returns the results.
+   */
+  static Object[] lookUp(Procedure proc, Object list, Object[] keys, Object... extra)
+      throws Throwable {
+    Object[] args = new Object[2 + extra.length];
+    args[1] = list;
+    System.arraycopy(extra, 0, args, 2, extra.length);
+    Object[] results = new Object[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      args[0] = keys[i];
+      results[i] = proc.applyN(args);
+    }
+    return results;
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = loadRuntime();
+  }
+
+  private void assertSameResults(boolean pairs, String indexed, String linear,
+      Object... extra) throws Throwable {
+    Object list = ((Procedure) scheme.eval(pairs ? "make-test-pairs" : "make-test-list"))
+        .apply1(SIZE);
+    Object[] keys = keys(SIZE, LOOKUPS, pairs);
+    Object[] expected = lookUp((Procedure) scheme.eval(linear), list, keys, extra);
+    Object[] actual = lookUp((Procedure) scheme.eval(indexed), list, keys, extra);
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(keys[i].toString(), expected[i].toString(), actual[i].toString());
+    }
+  }
+
+  public void testAListLookup() throws Throwable {
+    assertSameResults(true, "yail-alist-lookup", "yail-alist-lookup-linear", "nothing");
+  }
+
+  public void testListIndex() throws Throwable {
+    assertSameResults(false, "yail-list-index", "yail-list-index-linear");
+  }
+
+  public void testIndexKeptWhenOtherListChanges() throws Throwable {
+    Procedure index = (Procedure) scheme.eval("yail-list-index");
+    YailList list = (YailList) ((Procedure) scheme.eval("make-test-list")).apply1(SIZE);
+    Object other = ((Procedure) scheme.eval("make-test-list")).apply1(3);
+    index.apply2(1.0, list);
+    index.apply2(2.0, list);
+    ((Procedure) scheme.eval("yail-list-add-to-list!")).apply2(other, 4.0);
+    assertEquals("3", index.apply2(3.0, list).toString());
+    YailListIndex itemIndex = YailListIndex.forItems(list);
+    assertNotNull(itemIndex);
+    assertTrue(itemIndex.isBuilt());
+  }
+
+  public void testChangedPairFound() throws Throwable {
+    Procedure lookup = (Procedure) scheme.eval("yail-alist-lookup");
+    Object pairs = ((Procedure) scheme.eval("make-test-pairs")).apply1(SIZE);
+    lookup.apply3("key1", pairs, "nothing");
+    lookup.apply3("key2", pairs, "nothing");
+    Object pair = ((Procedure) scheme.eval("yail-list-get-item")).apply2(pairs, 5);
+    ((Procedure) scheme.eval("yail-list-set-item!")).apply3(pair, 1, "changed");
+    assertEquals("5", lookup.apply3("changed", pairs, "nothing").toString());
+    assertEquals("nothing", lookup.apply3("key5", pairs, "nothing").toString());
+  }
+}
@@ -0,0 +1,15 @@
+;;; The coercing paths that every primitive call and equality test took before
+;;; call-yail-primitive and yail-equal? had a fast path for numbers.  The
+;;; numeric tests check that the fast paths give the same results, and the
+;;; numeric benchmarks time both.
+
+(define (call-yail-primitive-generic prim arglist typelist codeblocks-name)
+  (let ((coerced-args (coerce-args codeblocks-name arglist typelist)))
+    (if (all-coercible? coerced-args)
+        (apply prim coerced-args)
+        (generate-runtime-type-error codeblocks-name arglist))))
+
+(define (yail-equal-generic? x1 x2)
+  (cond ((and (null? x1) (null? x2)) #t)
+        ((or (null? x1) (null? x2)) #f)
+        (else (yail-atomic-equal? x1 x2))))
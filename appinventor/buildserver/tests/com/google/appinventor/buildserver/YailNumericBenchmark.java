@@ -0,0 +1,128 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import gnu.mapping.Procedure;
+
+import java.lang.management.ManagementFactory;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+
+/**
+ * Microbenchmarks for the numeric paths of the YAIL runtime, run by the
+ * BuildServerBenchmarks target.  Each benchmark applies an operation many
+ * times, either through call-yail-primitive (or yail-equal?) or through the
+ * generic coercing path that it used before it had a fast path for numbers,
+ * so the times of each pair in the test report can be compared.
+ * YailNumericTest checks that both paths give the same results.
+ *
+ * Each benchmark also measures the bytes allocated for each application
+ * once warmed up, and fails, giving the count, if it is more than
+ * {@link #MAX_BYTES_PER_OP}.  The counts of a pair can be compared by
+ * lowering it.
+ *
+ * Note that here the runtime is loaded from source rather than compiled
+ * ahead of time as it is for an app, so every procedure call it makes is
+ * comparatively expensive and the times are only indicative.
+ *
+ */
+public class YailNumericBenchmark extends TestCase {
+  private static final int WARMUP_ITERATIONS = 20000;
+  private static final int ITERATIONS = 200000;
+  // About twice what the paths allocate with the runtime loaded from source, which is mostly
+  // the interpreter's own frames and the boxed results
+  private static final long MAX_BYTES_PER_OP = 1024;
+
+  private Scheme scheme;
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = YailNumericTest.loadRuntime();
+  }
+
+  /*
+   * Returns the bytes allocated by this thread so far, or -1 if the JVM can't tell.
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)
+        || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /*
+   * Applies the procedure many times, checking the bytes it allocates for each application
+   * once warmed up.
+   */
+  private void run(String procedure, Object[] args) throws Throwable {
+    Procedure proc = (Procedure) scheme.eval(procedure);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      proc.applyN(args);
+    }
+    long before = allocatedBytes();
+    for (int i = 0; i < ITERATIONS; i++) {
+      proc.applyN(args);
+    }
+    long after = allocatedBytes();
+    if (before >= 0 && after >= 0) {
+      long bytesPerOp = (after - before) / ITERATIONS;
+      assertTrue(procedure + " allocated " + bytesPerOp + " bytes per op",
+          bytesPerOp <= MAX_BYTES_PER_OP);
+    }
+  }
+
+  private void runPrimitive(String procedure, String prim) throws Throwable {
+    run(procedure, YailNumericTest.primitiveArgs(scheme, prim));
+  }
+
+  private void runEquality(String procedure) throws Throwable {
+    run(procedure, new Object[] { scheme.eval("2.5"), scheme.eval("3") });
+  }
+
+  public void testAdditionFast() throws Throwable {
+    runPrimitive("call-yail-primitive", "+");
+  }
+
+  public void testAdditionGeneric() throws Throwable {
+    runPrimitive("call-yail-primitive-generic", "+");
+  }
+
+  public void testMultiplicationFast() throws Throwable {
+    runPrimitive("call-yail-primitive", "*");
+  }
+
+  public void testMultiplicationGeneric() throws Throwable {
+    runPrimitive("call-yail-primitive-generic", "*");
+  }
+
+  public void testLessThanFast() throws Throwable {
+    runPrimitive("call-yail-primitive", "<");
+  }
+
+  public void testLessThanGeneric() throws Throwable {
+    runPrimitive("call-yail-primitive-generic", "<");
+  }
+
+  public void testDivideFast() throws Throwable {
+    runPrimitive("call-yail-primitive", "yail-divide");
+  }
+
+  public void testDivideGeneric() throws Throwable {
+    runPrimitive("call-yail-primitive-generic", "yail-divide");
+  }
+
+  public void testEqualityFast() throws Throwable {
+    runEquality("yail-equal?");
+  }
+
+  public void testEqualityGeneric() throws Throwable {
+    runEquality("yail-equal-generic?");
+  }
+}
@@ -0,0 +1,102 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.common.testutils.TestUtils;
+
+import gnu.mapping.Environment;
+import gnu.mapping.Procedure;
+
+import junit.framework.TestCase;
+import kawa.standard.Scheme;
+
+/**
+ * Tests that the fast paths for numbers in call-yail-primitive and
+ * yail-equal? give the same results as the generic coercing paths in
+ * YailNumeric.scm, and that other arguments still take the generic path.
+ *
+ */
+public class YailNumericTest extends TestCase {
+  private static final String YAIL_NUMERIC_DEFINITIONS = TestUtils.APP_INVENTOR_ROOT_DIR +
+      "/buildserver/tests/com/google/appinventor/buildserver/YailNumeric.scm";
+
+  private Scheme scheme;
+
+  /**
+   * Returns an interpreter with the YAIL runtime and the generic paths loaded.
+   */
+  static Scheme loadRuntime() throws Exception {
+    Scheme scheme = new Scheme();
+    try {
+      scheme.eval("(load \"" + Compiler.getResource(Compiler.YAIL_RUNTIME) + "\")");
+      scheme.eval("(load \"" + YAIL_NUMERIC_DEFINITIONS + "\")");
+      scheme.eval("(set! *testing* #t)");
+    } catch (Exception e) {
+      throw e;
+    } catch (Throwable throwable) {
+      throw new RuntimeException(throwable);
+    }
+    // The runtime's procedures look up each other in the current environment.
+    Environment.setCurrent(scheme.getEnvironment());
+    return scheme;
+  }
+
+  /**
+   * Returns the arguments for applying call-yail-primitive, or the generic
+   * path, to prim with a double and an integer.
+   */
+  static Object[] primitiveArgs(Scheme scheme, String prim) throws Throwable {
+    return new Object[] {
+        scheme.eval(prim),
+        scheme.eval("(*list-for-runtime* 2.5 3)"),
+        scheme.eval("'(number number)"),
+        prim
+    };
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    scheme = loadRuntime();
+  }
+
+  private void assertSameResult(String fast, String generic, Object[] args) throws Throwable {
+    Object expected = ((Procedure) scheme.eval(generic)).applyN(args);
+    Object actual = ((Procedure) scheme.eval(fast)).applyN(args);
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  private void assertSamePrimitiveResult(String prim) throws Throwable {
+    assertSameResult("call-yail-primitive", "call-yail-primitive-generic",
+        primitiveArgs(scheme, prim));
+  }
+
+  public void testAddition() throws Throwable {
+    assertSamePrimitiveResult("+");
+  }
+
+  public void testMultiplication() throws Throwable {
+    assertSamePrimitiveResult("*");
+  }
+
+  public void testLessThan() throws Throwable {
+    assertSamePrimitiveResult("<");
+  }
+
+  public void testDivide() throws Throwable {
+    assertSamePrimitiveResult("yail-divide");
+  }
+
+  public void testEquality() throws Throwable {
+    assertSameResult("yail-equal?", "yail-equal-generic?",
+        new Object[] { scheme.eval("2.5"), scheme.eval("3") });
+  }
+
+  public void testFallsBackForStrings() throws Throwable {
+    assertEquals("5.5", scheme.eval("(call-yail-primitive + (*list-for-runtime* \"2.5\" 3)"
+        + " '(number number) \"+\")").toString());
+    assertEquals("true", scheme.eval("(yail-equal? 3 \"3.0\")").toString());
+  }
+}
@@ -421,8 +421,40 @@ public class YaVersion {
   // - FEATURE_COLLECTION_COMPONENT_VERSION was incremented to 2
   // For YOUNG_ANDROID_VERSION 167:
   // - FORM_COMPONENT_VERSION was incremented to 23
-
-  public static final int YOUNG_ANDROID_VERSION = 167;
+  // For YOUNG_ANDROID_VERSION 168:
+  // - CANVAS_COMPONENT_VERSION was incremented to 11
+  // For YOUNG_ANDROID_VERSION 169:
+  // - WEB_COMPONENT_VERSION was incremented to 5
+  // For YOUNG_ANDROID_VERSION 170:
+  // - WEB_COMPONENT_VERSION was incremented to 6
+  // For YOUNG_ANDROID_VERSION 171:
+  // - BLUETOOTHCLIENT_COMPONENT_VERSION was incremented to 6
+  // - BLUETOOTHSERVER_COMPONENT_VERSION was incremented to 6
+  // For YOUNG_ANDROID_VERSION 172:
+  // - ACCELEROMETERSENSOR_COMPONENT_VERSION was incremented to 5
+  // - GYROSCOPESENSOR_COMPONENT_VERSION was incremented to 2
+  // For YOUNG_ANDROID_VERSION 173:
+  // - TINYDB_COMPONENT_VERSION was incremented to 2
+  // For YOUNG_ANDROID_VERSION 174:
+  // - CLOUDDB_COMPONENT_VERSION was incremented to 2
+  // For YOUNG_ANDROID_VERSION 175:
+  // - MAP_COMPONENT_VERSION was incremented to 4
+  // - FEATURE_COLLECTION_COMPONENT_VERSION was incremented to 3
+  // For YOUNG_ANDROID_VERSION 176:
+  // - MAP_COMPONENT_VERSION was incremented to 5
+  // - FEATURE_COLLECTION_COMPONENT_VERSION was incremented to 4
+  // For YOUNG_ANDROID_VERSION 177:
+  // - MAP_COMPONENT_VERSION was incremented to 6
+  // For YOUNG_ANDROID_VERSION 178:
+  // - MAP_COMPONENT_VERSION was incremented to 7
+  // For YOUNG_ANDROID_VERSION 179:
+  // - FILE_COMPONENT_VERSION was incremented to 3
+  // For YOUNG_ANDROID_VERSION 180:
+  // - FILE_COMPONENT_VERSION was incremented to 4
+  // For YOUNG_ANDROID_VERSION 181:
+  // - ORIENTATIONSENSOR_COMPONENT_VERSION was incremented to 3
+
+  public static final int YOUNG_ANDROID_VERSION = 181;
 
   // ............................... Blocks Language Version Number ...............................
 
@@ -532,7 +564,11 @@ public class YaVersion {
   // - AccelerometerSensor.Sensitivty property was added.
   //For ACCELEROMETERSENSOR_COMPONENT_VERSION 4:
   // - Added the LegacyMode property.
-  public static final int ACCELEROMETERSENSOR_COMPONENT_VERSION = 4;
+  // For ACCELEROMETERSENSOR_COMPONENT_VERSION 5:
+  // - The DeliveryInterval, WindowSize and BatchDelivery properties were added.
+  // - The Mean, Minimum, Maximum and Variance methods were added.
+  // - The SamplesReceived event was added.
+  public static final int ACCELEROMETERSENSOR_COMPONENT_VERSION = 5;
 
   // For ACTIVITYSTARTER_COMPONENT_VERSION 2:
   // - The ActivityStarter.DataType, ActivityStarter.ResultType, and ActivityStarter.ResultUri
@@ -573,7 +609,9 @@ public class YaVersion {
   // - The BluetoothClient.DelimiterByte property was added.
   // For BLUETOOTHCLIENT_COMPONENT_VERSION 5:
   // - The BluetoothClient.Secure property was added.
-  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 5;
+  // For BLUETOOTHCLIENT_COMPONENT_VERSION 6:
+  // - The BluetoothClient.ReceiveInBackground property and DataReceived event were added.
+  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 6;
 
   // For BLUETOOTHSERVER_COMPONENT_VERSION 2:
   // - The BluetoothServer.Enabled property was added.
@@ -583,7 +621,9 @@ public class YaVersion {
   // - The BluetoothServer.DelimiterByte property was added.
   // For BLUETOOTHSERVER_COMPONENT_VERSION 5:
   // - The BluetoothServer.Secure property was added.
-  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 5;
+  // For BLUETOOTHSERVER_COMPONENT_VERSION 6:
+  // - The BluetoothServer.ReceiveInBackground property and DataReceived event were added.
+  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 6;
 
   // For BUTTON_COMPONENT_VERSION 2:
   // - The Alignment property was renamed to TextAlignment.
@@ -630,7 +670,9 @@ public class YaVersion {
   // - DrawCircle has new fourth parameter (for isFilled), due to Evan Thomas
   // For CANVAS_COMPONENT_VERSION 10:
   // - The default value of the TextAlignment property was changed to Component.ALIGNMENT_CENTER
-  public static final int CANVAS_COMPONENT_VERSION = 10;
+  // For CANVAS_COMPONENT_VERSION 11:
+  // - The GameLoop property was added.
+  public static final int CANVAS_COMPONENT_VERSION = 11;
 
   // For CHECKBOX_COMPONENT_VERSION 2:
   // - The Value property was renamed to Checked.
@@ -681,11 +723,21 @@ public class YaVersion {
   // - GotGeoJSON event was renamed to GotFeatures
   // - ErrorLoadingFeatureCollection event was removed
   // - LoadedFeatureCollection event was removed
-  public static final int FEATURE_COLLECTION_COMPONENT_VERSION = 2;
+  // For FEATURE_COLLECTION_COMPONENT_VERSION 3:
+  // - AddFeaturesFromURL method was added
+  // - FeaturesAdded and LoadProgress events were added
+  // For FEATURE_COLLECTION_COMPONENT_VERSION 4:
+  // - The FeaturesInBoundingBox and NearestFeatures methods were added.
+  public static final int FEATURE_COLLECTION_COMPONENT_VERSION = 4;
 
   // For FILE_COMPONENT_VERSION 2:
   // - The AfterFileSaved event was added.
-  public static final int FILE_COMPONENT_VERSION = 2;
+  // For FILE_COMPONENT_VERSION 3:
+  // - The ReadCsvRows method and GotCsvRows event were added.
+  // For FILE_COMPONENT_VERSION 4:
+  // - The Flush and ReadLines methods and GotLines event were added.
+  // - Appended text is buffered and written to each file in order.
+  public static final int FILE_COMPONENT_VERSION = 4;
 
   // For FORM_COMPONENT_VERSION 2:
   // - The Screen.Scrollable property was added.
@@ -750,7 +802,11 @@ public class YaVersion {
 
   public static final int GAMECLIENT_COMPONENT_VERSION = 1;
 
-  public static final int GYROSCOPESENSOR_COMPONENT_VERSION = 1;
+  // For GYROSCOPESENSOR_COMPONENT_VERSION 2:
+  // - The DeliveryInterval, WindowSize and BatchDelivery properties were added.
+  // - The Mean, Minimum, Maximum and Variance methods were added.
+  // - The SamplesReceived event was added.
+  public static final int GYROSCOPESENSOR_COMPONENT_VERSION = 2;
 
   // For HORIZONTALARRANGEMENT_COMPONENT_VERSION 2:
   // - The AlignHorizontal property was added
@@ -852,7 +908,18 @@ public class YaVersion {
   // For MAP_COMPONENT_VERSION 3:
   // - GotGeoJSON was renamed to GotFeatures
   // - GeoJSONError was renamed to LoadError
-  public static final int MAP_COMPONENT_VERSION = 3;
+  // For MAP_COMPONENT_VERSION 4:
+  // - AddFeaturesFromURL method was added
+  // - FeaturesAdded and LoadProgress events were added
+  // For MAP_COMPONENT_VERSION 5:
+  // - The FeaturesInBoundingBox and NearestFeatures methods were added.
+  // For MAP_COMPONENT_VERSION 6:
+  // - The ClusterMarkers property and ClusterClick event were added.
+  // For MAP_COMPONENT_VERSION 7:
+  // - The CacheSize and CacheOnly properties were added.
+  // - The DownloadRegion method was added.
+  // - The DownloadProgress and RegionDownloaded events were added.
+  public static final int MAP_COMPONENT_VERSION = 7;
 
   // For MARKER_COMPONENT_VERSION 1:
   // - Initial Marker implementation using OpenStreetMap
@@ -904,7 +971,10 @@ public class YaVersion {
   // For ORIENTATIONSENSOR_COMPONENT_VERSION = 2:
   // - The Yaw property was renamed to Azimuth.
   // - The yaw parameter to OrientationChanged was renamed to azimuth.
-  public static final int ORIENTATIONSENSOR_COMPONENT_VERSION = 2;
+  // For ORIENTATIONSENSOR_COMPONENT_VERSION = 3:
+  // - The DeliveryInterval and BatchDelivery properties were added.
+  // - The SamplesReceived event was added.
+  public static final int ORIENTATIONSENSOR_COMPONENT_VERSION = 3;
 
   // For PASSWORDTEXTBOX_COMPONENT_VERSION 2:
   // - The Alignment property was renamed to TextAlignment.
@@ -1030,7 +1100,10 @@ public class YaVersion {
   // - SetTimeToDisplayFromInstant, and Instant property are added.
   public static final int TIMEPICKER_COMPONENT_VERSION = 3;
 
-  public static final int TINYDB_COMPONENT_VERSION = 1;
+  // For TINYDB_COMPONENT_VERSION 2:
+  // - StoreValues, GetValues and Flush methods were added.
+  // - Stored values are saved in the background, and saved values are cached.
+  public static final int TINYDB_COMPONENT_VERSION = 2;
 
   // For TINYWEBDB_COMPONENT_VERSION 2:
   // - The TinyWebDB.ShowAlert method was removed. Notifier.ShowAlert should be used instead.
@@ -1047,7 +1120,10 @@ public class YaVersion {
 
   // For CLOUDDB_COMPONENT_VERSION 1:
   // - CloudDB component introduced
-  public static final int CLOUDDB_COMPONENT_VERSION = 1;
+  // For CLOUDDB_COMPONENT_VERSION 2:
+  // - The GetValues and StoreValues functions and the GotValues event were added.
+  // - Commands are sent to the server together, in one round trip.
+  public static final int CLOUDDB_COMPONENT_VERSION = 2;
 
   // For TWITTER_COMPONENT_VERSION 2:
   // - The Authorize method and IsAuthorized event handler were added to support
@@ -1108,7 +1184,11 @@ public class YaVersion {
   // - PUT and DELETE Actions added (PutText, PutTextWithEncoding, PutFile, and Delete).
   // For WEB_COMPONENT_VERSION 4:
   // - Added method XMLTextDecode
-  public static final int WEB_COMPONENT_VERSION = 4;
+  // For WEB_COMPONENT_VERSION 5:
+  // - The UploadProgress event was added.
+  // For WEB_COMPONENT_VERSION 6:
+  // - The UseCache and RequestTimeout properties were added.
+  public static final int WEB_COMPONENT_VERSION = 6;
 
   // For WEBVIEWER_COMPONENT_VERSION 2:
   // - The CanGoForward and CanGoBack methods were added
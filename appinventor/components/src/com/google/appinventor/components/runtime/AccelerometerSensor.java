@@ -18,6 +18,8 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.SensorPipeline;
+import com.google.appinventor.components.runtime.util.YailList;
 
 import android.content.Context;
 import android.content.res.Configuration;
@@ -95,6 +97,9 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
   private final Queue<Float> Y_CACHE = new LinkedList<Float>();
   private final Queue<Float> Z_CACHE = new LinkedList<Float>();
 
+  // Number of samples over which Mean, Minimum, Maximum and Variance are computed
+  private static final int DEFAULT_WINDOW_SIZE = 10;
+
   // Backing for sensor values
   private float xAccel;
   private float yAccel;
@@ -126,6 +131,9 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
   // Used to launch Runnables on the UI Thread after a delay
   private final Handler androidUIHandler;
 
+  // Decides which samples raise events, and keeps statistics over the last samples
+  private final SensorPipeline pipeline = new SensorPipeline(DEFAULT_WINDOW_SIZE);
+
   /**
    * Creates a new AccelerometerSensor component.
    *
@@ -147,6 +155,93 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
     Sensitivity(Component.ACCELEROMETER_SENSITIVITY_MODERATE);
   }
 
+  /**
+   * Returns the minimum interval between AccelerationChanged or
+   * SamplesReceived events, in milliseconds.
+   *
+   * @return  delivery interval in ms
+   */
+  @SimpleProperty(
+      category = PropertyCategory.BEHAVIOR,
+      description = "The minimum interval, in milliseconds, between AccelerationChanged " +
+      "events, or between SamplesReceived events if BatchDelivery is true. Samples that " +
+      "arrive in between still count towards the window statistics. If 0, every sample " +
+      "raises an event.")
+  public int DeliveryInterval() {
+    return pipeline.getInterval();
+  }
+
+  /**
+   * Specifies the minimum interval between AccelerationChanged or
+   * SamplesReceived events, in milliseconds.
+   *
+   * @param interval  delivery interval in ms
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void DeliveryInterval(int interval) {
+    pipeline.setInterval(interval);
+  }
+
+  /**
+   * Returns the number of most recent samples over which the Mean, Minimum,
+   * Maximum and Variance functions are computed.
+   *
+   * @return  window size in samples
+   */
+  @SimpleProperty(
+      category = PropertyCategory.BEHAVIOR,
+      description = "The number of most recent samples over which the Mean, Minimum, " +
+      "Maximum and Variance functions are computed, from 1 to " +
+      SensorPipeline.MAX_WINDOW_SIZE + ".")
+  public int WindowSize() {
+    return pipeline.getWindowSize();
+  }
+
+  /**
+   * Specifies the number of most recent samples over which the Mean,
+   * Minimum, Maximum and Variance functions are computed.  Changing it
+   * discards the samples collected so far.
+   *
+   * @param size  window size in samples
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = DEFAULT_WINDOW_SIZE + "")
+  @SimpleProperty
+  public void WindowSize(int size) {
+    pipeline.setWindowSize(size);
+  }
+
+  /**
+   * Returns whether samples are delivered in batches by the SamplesReceived
+   * event instead of one at a time by the AccelerationChanged event.
+   *
+   * @return  {@code true} if samples are batched
+   */
+  @SimpleProperty(
+      category = PropertyCategory.BEHAVIOR,
+      description = "If true, the samples that arrive during each DeliveryInterval are " +
+      "delivered together by the SamplesReceived event, and AccelerationChanged is not " +
+      "raised.")
+  public boolean BatchDelivery() {
+    return pipeline.isBatching();
+  }
+
+  /**
+   * Specifies whether samples are delivered in batches by the
+   * SamplesReceived event instead of one at a time by the
+   * AccelerationChanged event.
+   *
+   * @param batch  {@code true} to batch samples
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void BatchDelivery(boolean batch) {
+    pipeline.setBatching(batch);
+  }
+
 
   /**
    * Returns the minimum interval required between calls to Shaking(),
@@ -219,25 +314,41 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
    */
   @SimpleEvent
   public void AccelerationChanged(float xAccel, float yAccel, float zAccel) {
-    this.xAccel = xAccel;
-    this.yAccel = yAccel;
-    this.zAccel = zAccel;
+    EventDispatcher.dispatchEvent(this, "AccelerationChanged", xAccel, yAccel, zAccel);
+  }
+
+  /**
+   * Indicates that samples arrived while BatchDelivery is true.
+   *
+   * @param samples  a list of samples, each a list of the X, Y and Z
+   *                 accelerations and the timestamp in nanoseconds
+   */
+  @SimpleEvent(description = "Indicates that samples arrived while BatchDelivery is true. " +
+      "The samples parameter is a list of the samples since the last SamplesReceived event, " +
+      "oldest first, each a list of the X, Y and Z accelerations and the time in nanoseconds " +
+      "at which the sample was taken. At most " + SensorPipeline.MAX_BATCH_SIZE +
+      " samples are kept, so if more arrive the oldest are dropped.")
+  public void SamplesReceived(YailList samples) {
+    EventDispatcher.dispatchEvent(this, "SamplesReceived", samples);
+  }
 
+  /*
+   * Checks whether the phone is shaking and the minimum interval has elapsed
+   * since the last Shaking event.  This is done for every sample, whether or
+   * not it is delivered.
+   */
+  private void checkShaking() {
     addToSensorCache(X_CACHE, xAccel);
     addToSensorCache(Y_CACHE, yAccel);
     addToSensorCache(Z_CACHE, zAccel);
 
     long currentTime = System.currentTimeMillis();
 
-    //Checks whether the phone is shaking and the minimum interval
-    //has elapsed since the last registered a shaking event.
     if ((isShaking(X_CACHE, xAccel) || isShaking(Y_CACHE, yAccel) || isShaking(Z_CACHE, zAccel))
         && (timeLastShook == 0 || currentTime >= timeLastShook + minimumInterval)){
       timeLastShook = currentTime;
       Shaking();
     }
-
-    EventDispatcher.dispatchEvent(this, "AccelerationChanged", xAccel, yAccel, zAccel);
   }
 
 public int getDeviceDefaultOrientation() {
@@ -314,6 +425,7 @@ public int getDeviceDefaultOrientation() {
   // Assumes that sensorManager has been initialized, which happens in constructor
   private void stopListening() {
     sensorManager.unregisterListener(this);
+    pipeline.clear();
   }
 
   /**
@@ -375,6 +487,63 @@ public int getDeviceDefaultOrientation() {
     return zAccel;
   }
 
+  /**
+   * Returns the mean acceleration along the given axis over the last
+   * WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the mean acceleration along the given axis " +
+      "(1 = X, 2 = Y, 3 = Z) over the last WindowSize samples.")
+  public double Mean(int axis) {
+    return checkAxis("Mean", axis) ? pipeline.mean(axis - 1) : 0;
+  }
+
+  /**
+   * Returns the smallest acceleration along the given axis in the last
+   * WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the smallest acceleration along the given axis " +
+      "(1 = X, 2 = Y, 3 = Z) in the last WindowSize samples.")
+  public double Minimum(int axis) {
+    return checkAxis("Minimum", axis) ? pipeline.minimum(axis - 1) : 0;
+  }
+
+  /**
+   * Returns the largest acceleration along the given axis in the last
+   * WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the largest acceleration along the given axis " +
+      "(1 = X, 2 = Y, 3 = Z) in the last WindowSize samples.")
+  public double Maximum(int axis) {
+    return checkAxis("Maximum", axis) ? pipeline.maximum(axis - 1) : 0;
+  }
+
+  /**
+   * Returns the variance of the acceleration along the given axis over the
+   * last WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the variance of the acceleration along the given " +
+      "axis (1 = X, 2 = Y, 3 = Z) over the last WindowSize samples.")
+  public double Variance(int axis) {
+    return checkAxis("Variance", axis) ? pipeline.variance(axis - 1) : 0;
+  }
+
+  private boolean checkAxis(String functionName, int axis) {
+    if (axis < 1 || axis > SensorPipeline.AXES) {
+      form.dispatchErrorOccurredEvent(this, functionName,
+          ErrorMessages.ERROR_BAD_VALUE_FOR_SENSOR_AXIS, axis);
+      return false;
+    }
+    return true;
+  }
+
   /*
    * Updating sensor cache, replacing oldest values.
    */
@@ -450,7 +619,14 @@ public int getDeviceDefaultOrientation() {
       }
       zAccel = values[2];
       accuracy = sensorEvent.accuracy;
-      AccelerationChanged(xAccel, yAccel, zAccel);
+      checkShaking();
+      if (pipeline.add(sensorEvent.timestamp, xAccel, yAccel, zAccel)) {
+        if (pipeline.isBatching()) {
+          SamplesReceived(pipeline.takeBatch());
+        } else {
+          AccelerationChanged(xAccel, yAccel, zAccel);
+        }
+      }
     }
   }
 
@@ -70,6 +70,10 @@ public abstract class AndroidViewComponent extends VisibleComponent {
   @SimpleProperty(description = "Specifies whether the component should be visible on the screen. "
       + "Value is true if the component is showing and false if hidden.")
   public void Visible(boolean visibility) {
+    if (visibility) {
+      // An arrangement hidden when the screen started may not have its components yet.
+      container.$form().$createDeferredComponents(this);
+    }
     // The principle of least astonishment suggests we not offer the
     // Android option INVISIBLE.
     getView().setVisibility(visibility ? View.VISIBLE : View.GONE);
@@ -14,6 +14,7 @@ import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.util.BluetoothReflection;
+import com.google.appinventor.components.runtime.util.ByteRingBuffer;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.SdkLevel;
 import com.google.appinventor.components.runtime.util.YailList;
@@ -22,14 +23,19 @@ import android.util.Log;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * An abstract base class for the BluetoothClient and BluetoothServer
@@ -41,6 +47,15 @@ import java.util.List;
 public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     implements Component, OnDestroyListener, Deleteable {
 
+  // The number of bytes that can be received in the background before the app reads them.
+  private static final int RECEIVE_BUFFER_SIZE = 0x10000;
+  // How long the background thread and a waiting read sleep before checking the stream or the
+  // buffer again, in case a wakeup was missed.
+  private static final long RECEIVE_WAIT_NANOS = 10 * 1000 * 1000;
+  // How long a read in the background waits for more bytes to arrive before giving up, so that
+  // a read on the UI thread can't hang the app.
+  private static final long RECEIVE_TIMEOUT_NANOS = 3000L * 1000 * 1000;
+
   protected final String logTag;
   private final List<BluetoothConnectionListener> bluetoothConnectionListeners =
       new ArrayList<BluetoothConnectionListener>();
@@ -49,10 +64,12 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   private String encoding;
   private byte delimiter;
   protected boolean secure;
+  private boolean receiveInBackground;
 
   private Object connectedBluetoothSocket;
   private InputStream inputStream;
   private OutputStream outputStream;
+  private volatile BackgroundReceiver receiver;
 
   /**
    * Creates a new BluetoothConnectionBase.
@@ -70,6 +87,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     CharacterEncoding("UTF-8");
     DelimiterByte(0);
     Secure(true);
+    ReceiveInBackground(false);
   }
 
   /**
@@ -128,6 +146,28 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     form.dispatchErrorOccurredEvent(this, functionName, errorNumber, messageArgs);
   }
 
+  /**
+   * Runs the given runnable on the UI thread.  This is called by the thread
+   * that receives data in the background.
+   */
+  protected void runOnUiThread(Runnable runnable) {
+    form.runOnUiThread(runnable);
+  }
+
+  /**
+   * Indicates that messages ending with the delimiter byte have been received
+   * in the background.
+   *
+   * @param messageCount the number of messages that can be received
+   */
+  @SimpleEvent(description = "Indicates that one or more messages ending with the delimiter " +
+      "byte have been received in the background. Each message can be read with ReceiveText, " +
+      "ReceiveSignedBytes or ReceiveUnsignedBytes with numberOfBytes less than 0. If messages " +
+      "arrive faster than this event is handled, one event reports all of them.")
+  public void DataReceived(int messageCount) {
+    EventDispatcher.dispatchEvent(this, "DataReceived", messageCount);
+  }
+
   /**
    * Returns true if Bluetooth is available on the device, false otherwise.
    *
@@ -166,6 +206,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
         BluetoothReflection.getInputStream(connectedBluetoothSocket));
     outputStream = new BufferedOutputStream(
         BluetoothReflection.getOutputStream(connectedBluetoothSocket));
+    if (receiveInBackground) {
+      startReceiving();
+    }
     fireAfterConnectEvent();
   }
 
@@ -176,6 +219,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   public final void Disconnect() {
     if (connectedBluetoothSocket != null) {
       fireBeforeDisconnectEvent();
+      stopReceiving();
       try {
         BluetoothReflection.closeBluetoothSocket(connectedBluetoothSocket);
         Log.i(logTag, "Disconnected from Bluetooth device.");
@@ -220,6 +264,39 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     this.secure = secure;
   }
 
+  /**
+   * Returns whether data is received in the background.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether to receive data in the background as soon as it arrives. " +
+      "If true, the Receive blocks don't wait for data: they return the requested number " +
+      "of bytes, or a message ending with the delimiter byte, only if all of it has already " +
+      "been received, and otherwise return nothing (or 0) and leave the data to be " +
+      "received later. A request for more bytes than can be held in the background (65536), " +
+      "or for a longer message, takes the bytes as they arrive instead. The DataReceived " +
+      "event reports the messages that have been received. Setting this while connected " +
+      "takes effect immediately.")
+  public boolean ReceiveInBackground() {
+    return receiveInBackground;
+  }
+
+  /**
+   * Specifies whether data is received in the background.
+   *
+   * @param receiveInBackground {@code true} to receive data in the background
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void ReceiveInBackground(boolean receiveInBackground) {
+    this.receiveInBackground = receiveInBackground;
+    if (receiveInBackground && receiver == null && IsConnected()) {
+      startReceiving();
+    } else if (!receiveInBackground && receiver != null) {
+      stopReceiving();
+    }
+  }
+
   /**
    * Returns true if numbers are sent and received with the most significant
    * byte first.
@@ -537,6 +614,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return 0;
     }
 
+    BackgroundReceiver r = receiver;
+    if (r != null) {
+      return r.buffer.available();
+    }
+
     try {
       return inputStream.available();
     } catch (IOException e) {
@@ -557,9 +639,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive text from the connected Bluetooth device. " +
       "If numberOfBytes is less than 0, read until a delimiter byte value is received.")
   public String ReceiveText(int numberOfBytes) {
-    byte[] bytes = read("ReceiveText", numberOfBytes);
+    byte[] bytes = receive("ReceiveText", numberOfBytes);
     try {
-      if (numberOfBytes < 0) {
+      if (bytes.length == 0) {
+        return "";
+      } else if (numberOfBytes < 0) {
         // bytes contains a trailing delimiter byte that we ignore when converting to String.
         return new String(bytes, 0, bytes.length - 1, encoding);
       } else {
@@ -577,7 +661,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive a signed 1-byte number from the connected " +
       "Bluetooth device.")
   public int ReceiveSigned1ByteNumber() {
-    byte[] bytes = read("ReceiveSigned1ByteNumber", 1);
+    byte[] bytes = receive("ReceiveSigned1ByteNumber", 1);
     if (bytes.length != 1) {
       return 0; // an error occurred
     }
@@ -591,7 +675,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive an unsigned 1-byte number from the connected " +
       "Bluetooth device.")
   public int ReceiveUnsigned1ByteNumber() {
-    byte[] bytes = read("ReceiveUnsigned1ByteNumber", 1);
+    byte[] bytes = receive("ReceiveUnsigned1ByteNumber", 1);
     if (bytes.length != 1) {
       return 0; // an error occurred
     }
@@ -605,7 +689,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive a signed 2-byte number from the connected " +
       "Bluetooth device.")
   public int ReceiveSigned2ByteNumber() {
-    byte[] bytes = read("ReceiveSigned2ByteNumber", 2);
+    byte[] bytes = receive("ReceiveSigned2ByteNumber", 2);
     if (bytes.length != 2) {
       return 0; // an error occurred
     }
@@ -623,7 +707,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive a unsigned 2-byte number from the connected " +
       "Bluetooth device.")
   public int ReceiveUnsigned2ByteNumber() {
-    byte[] bytes = read("ReceiveUnsigned2ByteNumber", 2);
+    byte[] bytes = receive("ReceiveUnsigned2ByteNumber", 2);
     if (bytes.length != 2) {
       return 0; // an error occurred
     }
@@ -641,7 +725,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive a signed 4-byte number from the connected " +
       "Bluetooth device.")
   public long ReceiveSigned4ByteNumber() {
-    byte[] bytes = read("ReceiveSigned4ByteNumber", 4);
+    byte[] bytes = receive("ReceiveSigned4ByteNumber", 4);
     if (bytes.length != 4) {
       return 0; // an error occurred
     }
@@ -665,7 +749,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   @SimpleFunction(description = "Receive a unsigned 4-byte number from the connected " +
       "Bluetooth device.")
   public long ReceiveUnsigned4ByteNumber() {
-    byte[] bytes = read("ReceiveUnsigned4ByteNumber", 4);
+    byte[] bytes = receive("ReceiveUnsigned4ByteNumber", 4);
     if (bytes.length != 4) {
       return 0; // an error occurred
     }
@@ -697,7 +781,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       "Bluetooth device. If numberOfBytes is less than 0, read until a delimiter byte value " +
       "is received.")
   public List<Integer> ReceiveSignedBytes(int numberOfBytes) {
-    byte[] bytes = read("ReceiveSignedBytes", numberOfBytes);
+    byte[] bytes = receive("ReceiveSignedBytes", numberOfBytes);
     List<Integer> list = new ArrayList<Integer>();
     for (int i = 0; i < bytes.length; i++) {
       int n = bytes[i];
@@ -720,7 +804,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       "Bluetooth device. If numberOfBytes is less than 0, read until a delimiter byte value " +
       "is received.")
   public List<Integer> ReceiveUnsignedBytes(int numberOfBytes) {
-    byte[] bytes = read("ReceiveUnsignedBytes", numberOfBytes);
+    byte[] bytes = receive("ReceiveUnsignedBytes", numberOfBytes);
     List<Integer> list = new ArrayList<Integer>();
     for (int i = 0; i < bytes.length; i++) {
       int n = bytes[i] & 0xFF;
@@ -746,6 +830,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return new byte[0];
     }
 
+    BackgroundReceiver r = receiver;
+    if (r != null) {
+      return r.read(functionName, numberOfBytes, true);
+    }
+
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
     if (numberOfBytes >= 0) {
@@ -793,6 +882,278 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return buffer.toByteArray();
   }
 
+  /**
+   * Reads a number of bytes for one of the Receive functions.  This is the
+   * same as {@link #read(String, int)}, except that if data is received in
+   * the background, it doesn't wait for the bytes: it returns an empty array
+   * if they haven't all been received yet.
+   */
+  private byte[] receive(String functionName, int numberOfBytes) {
+    BackgroundReceiver r = receiver;
+    if (r != null && IsConnected()) {
+      return r.read(functionName, numberOfBytes, false);
+    }
+    return read(functionName, numberOfBytes);
+  }
+
+  private void startReceiving() {
+    BackgroundReceiver r = new BackgroundReceiver(inputStream);
+    Thread thread = new Thread(r, "BluetoothReceiver");
+    thread.setDaemon(true);
+    r.thread = thread;
+    receiver = r;
+    thread.start();
+  }
+
+  /*
+   * Stops the background thread and waits for it to end.  The bytes it has
+   * received that haven't been read yet are put back in front of the input
+   * stream, so that they are read first if the connection stays open.
+   */
+  private void stopReceiving() {
+    BackgroundReceiver r = receiver;
+    if (r != null) {
+      receiver = null;
+      r.stopped = true;
+      LockSupport.unpark(r.thread);
+      try {
+        // The thread never blocks in the input stream, so it ends promptly.
+        r.thread.join(RECEIVE_TIMEOUT_NANOS / 1000000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      ByteArrayOutputStream unread = new ByteArrayOutputStream();
+      byte[] bytes = new byte[r.buffer.available()];
+      unread.write(bytes, 0, r.buffer.read(bytes, 0, bytes.length));
+      if (r.unwritten != null) {
+        unread.write(r.unwritten, 0, r.unwritten.length);
+      }
+      if (unread.size() > 0 && inputStream != null) {
+        inputStream = new SequenceInputStream(
+            new ByteArrayInputStream(unread.toByteArray()), inputStream);
+      }
+    }
+  }
+
+  /*
+   * Reads from the input stream on a separate thread into a buffer, from
+   * which the Receive functions take the bytes on the UI thread.  The buffer
+   * is written only by the receiving thread and read only by the UI thread,
+   * so neither thread ever waits for the other except when the buffer is
+   * full or a read needs bytes that haven't arrived yet.
+   *
+   * The thread only reads the bytes that the stream says are available, so
+   * it never blocks in the stream and can be stopped while the connection
+   * stays open.
+   */
+  private final class BackgroundReceiver implements Runnable {
+    final ByteRingBuffer buffer = new ByteRingBuffer(RECEIVE_BUFFER_SIZE);
+    private final InputStream in;
+    private final AtomicBoolean eventPending = new AtomicBoolean();
+    volatile Thread thread;
+    volatile boolean stopped;
+    // The bytes read from the stream that didn't fit in the buffer before the thread was stopped.
+    byte[] unwritten;
+    // The thread waiting in read for bytes to arrive, if any.
+    private volatile Thread waitingThread;
+    // Set when the input stream has ended or failed.
+    private volatile boolean finished;
+    private volatile int errorNumber;
+    private volatile String errorMessage;
+
+    BackgroundReceiver(InputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public void run() {
+      byte[] bytes = new byte[1024];
+      try {
+        while (!stopped) {
+          int available = in.available();
+          if (available <= 0) {
+            LockSupport.parkNanos(this, RECEIVE_WAIT_NANOS);
+            continue;
+          }
+          int n = in.read(bytes, 0, Math.min(available, bytes.length));
+          if (n == -1) {
+            errorNumber = ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM;
+            break;
+          }
+          boolean message = false;
+          byte d = delimiter;
+          for (int i = 0; i < n; i++) {
+            if (bytes[i] == d) {
+              message = true;
+              break;
+            }
+          }
+          int offset = 0;
+          while (!stopped) {
+            offset += buffer.write(bytes, offset, n - offset);
+            wake(waitingThread);
+            if (offset == n) {
+              break;
+            }
+            // The buffer is full.  Wait for the app to read from it.
+            LockSupport.parkNanos(this, RECEIVE_WAIT_NANOS);
+          }
+          if (offset < n) {
+            unwritten = Arrays.copyOfRange(bytes, offset, n);
+          }
+          if (message && !stopped) {
+            postDataReceived();
+          }
+        }
+      } catch (IOException e) {
+        if (!stopped) {
+          errorNumber = ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ;
+          errorMessage = e.getMessage();
+        }
+      } finally {
+        finished = true;
+        wake(waitingThread);
+      }
+    }
+
+    private void wake(Thread waiting) {
+      if (waiting != null) {
+        LockSupport.unpark(waiting);
+      }
+    }
+
+    // Posts a DataReceived event, unless one is waiting to be handled already.
+    private void postDataReceived() {
+      if (eventPending.compareAndSet(false, true)) {
+        runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            eventPending.set(false);
+            if (receiver == BackgroundReceiver.this) {
+              int count = buffer.count(delimiter);
+              if (count > 0) {
+                DataReceived(count);
+              }
+            }
+          }
+        });
+      }
+    }
+
+    /*
+     * Takes the requested bytes from the buffer, as read(String, int) takes
+     * them from the input stream.  If the bytes haven't all been received
+     * yet, this waits for them if wait is true, and otherwise returns an
+     * empty array.  A request that can't fit in the buffer is passed to
+     * readThrough.
+     */
+    byte[] read(String functionName, int numberOfBytes, boolean wait) {
+      waitingThread = Thread.currentThread();
+      try {
+        long deadline = System.nanoTime() + RECEIVE_TIMEOUT_NANOS;
+        while (true) {
+          // Check whether the stream has ended before looking at the buffer, so that no bytes
+          // received before the end are missed.
+          boolean ended = finished;
+          int available = buffer.available();
+          int length = numberOfBytes;
+          if (numberOfBytes < 0) {
+            // The message includes the delimiter byte.
+            length = buffer.indexOf(delimiter) + 1;
+          }
+          if (length > 0 && available >= length) {
+            return take(length);
+          } else if (numberOfBytes == 0) {
+            return new byte[0];
+          }
+          if (ended) {
+            reportEnd(functionName);
+            return take(available);
+          }
+          if (numberOfBytes > buffer.capacity()
+              || (numberOfBytes < 0 && available == buffer.capacity())) {
+            return readThrough(functionName, numberOfBytes);
+          }
+          if (!wait) {
+            return new byte[0];
+          }
+          if (System.nanoTime() - deadline >= 0) {
+            reportTimeout(functionName);
+            return new byte[0];
+          }
+          LockSupport.parkNanos(this, RECEIVE_WAIT_NANOS);
+        }
+      } finally {
+        waitingThread = null;
+      }
+    }
+
+    /*
+     * Takes the requested bytes from the buffer as they arrive, for a request
+     * that is larger than the buffer or a message that is longer than it.
+     * As when reading from the stream, if the stream ends or no more bytes
+     * arrive in time, the error is reported and the bytes taken so far are
+     * returned.
+     */
+    private byte[] readThrough(String functionName, int numberOfBytes) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      long deadline = System.nanoTime() + RECEIVE_TIMEOUT_NANOS;
+      while (true) {
+        boolean ended = finished;
+        int available = buffer.available();
+        boolean complete;
+        int length;
+        if (numberOfBytes < 0) {
+          length = buffer.indexOf(delimiter) + 1;
+          complete = length > 0;
+          if (!complete) {
+            length = available;
+          }
+        } else {
+          length = Math.min(available, numberOfBytes - bytes.size());
+          complete = length == numberOfBytes - bytes.size();
+        }
+        if (length > 0) {
+          byte[] taken = take(length);
+          bytes.write(taken, 0, taken.length);
+          deadline = System.nanoTime() + RECEIVE_TIMEOUT_NANOS;
+        }
+        if (complete) {
+          return bytes.toByteArray();
+        }
+        if (ended) {
+          reportEnd(functionName);
+          return bytes.toByteArray();
+        }
+        if (System.nanoTime() - deadline >= 0) {
+          reportTimeout(functionName);
+          return bytes.toByteArray();
+        }
+        LockSupport.parkNanos(this, RECEIVE_WAIT_NANOS);
+      }
+    }
+
+    private void reportEnd(String functionName) {
+      if (errorNumber == ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ) {
+        bluetoothError(functionName, errorNumber, errorMessage);
+      } else {
+        bluetoothError(functionName, ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM);
+      }
+    }
+
+    private void reportTimeout(String functionName) {
+      bluetoothError(functionName, ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ,
+          "No data received in time");
+    }
+
+    private byte[] take(int length) {
+      byte[] bytes = new byte[length];
+      buffer.read(bytes, 0, length);
+      wake(thread);
+      return bytes;
+    }
+  }
+
   // OnDestroyListener implementation
 
   @Override
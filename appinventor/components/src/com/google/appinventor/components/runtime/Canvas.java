@@ -24,8 +24,11 @@ import com.google.appinventor.components.runtime.collect.Sets;
 import com.google.appinventor.components.runtime.util.BoundingBox;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
+import com.google.appinventor.components.runtime.util.JellybeanUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.PaintUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.ZOrderedList;
 
 import android.app.Activity;
 import android.content.Context;
@@ -36,6 +39,7 @@ import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -47,7 +51,6 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -94,7 +97,8 @@ import java.util.Set;
 @SimpleObject
 @UsesPermissions(permissionNames = "android.permission.INTERNET," +
                  "android.permission.WRITE_EXTERNAL_STORAGE")
-public final class Canvas extends AndroidViewComponent implements ComponentContainer {
+public final class Canvas extends AndroidViewComponent
+    implements ComponentContainer, OnDestroyListener, OnPauseListener, OnResumeListener {
   private static final String LOG_TAG = "Canvas";
 
   private final Activity context;
@@ -118,10 +122,24 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   private static final int DEFAULT_BACKGROUND_COLOR = Component.COLOR_WHITE;
   private static final int DEFAULT_TEXTALIGNMENT = Component.ALIGNMENT_CENTER;
   private static final int FLING_INTERVAL = 1000;  // ms
+  private static final boolean DEFAULT_GAME_LOOP = false;
 
-  // Keep track of enclosed sprites.  This list should always be
-  // sorted by increasing sprite.Z().
-  private final List<Sprite> sprites;
+  // Frame period used for the game loop on devices that predate the
+  // Choreographer (API level 16).
+  private static final int FALLBACK_FRAME_INTERVAL = 16;  // ms
+
+  // Keep track of enclosed sprites, ordered by increasing sprite.Z().
+  // Iteration goes from back to front; hit-testing uses frontToBack().
+  private final ZOrderedList<Sprite> sprites;
+
+  // Support for the game loop, in which a single per-frame callback moves
+  // all of the sprites instead of each sprite posting its own timer events.
+  private boolean gameLoop = DEFAULT_GAME_LOOP;
+  private final FrameLoop frameLoop = new FrameLoop();
+
+  // Scratch rectangles for computing the areas changed by sprites.
+  private final Rect dirtyBounds = new Rect();
+  private final Rect frameDirtyBounds = new Rect();
 
   // Handle touches and drags
   private final MotionEventParser motionEventParser;
@@ -250,7 +268,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
           lastY = y;
           drag = false;
           isDrag = false;
-          for (Sprite sprite : sprites) {
+          for (Sprite sprite : sprites.frontToBack()) {
             if (sprite.Enabled() && sprite.Visible() && sprite.intersectsWith(rect)) {
               draggedSprites.add(sprite);
               sprite.TouchDown(startX, startY);
@@ -277,7 +295,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
 
           // Update draggedSprites by adding any that are currently being
           // touched.
-          for (Sprite sprite : sprites) {
+          for (Sprite sprite : sprites.frontToBack()) {
             if (!draggedSprites.contains(sprite)
                 && sprite.Enabled() && sprite.Visible()
                 && sprite.intersectsWith(rect)) {
@@ -341,6 +359,51 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     }
   }
 
+  /**
+   * Per-frame callback driving the game loop.  On Jelly Bean and later it is
+   * scheduled through the view's Choreographer so that it is synchronized
+   * with the display; on older devices it falls back to a fixed delay.
+   */
+  private final class FrameLoop implements Runnable {
+    private boolean running = false;
+    private long lastFrameTime;
+
+    void start() {
+      if (!running) {
+        running = true;
+        lastFrameTime = SystemClock.uptimeMillis();
+        schedule();
+      }
+    }
+
+    void stop() {
+      running = false;
+      view.removeCallbacks(this);
+    }
+
+    private void schedule() {
+      if (SdkLevel.getLevel() >= SdkLevel.LEVEL_JELLYBEAN) {
+        JellybeanUtil.postOnAnimation(view, this);
+      } else {
+        view.postDelayed(this, FALLBACK_FRAME_INTERVAL);
+      }
+    }
+
+    @Override
+    public void run() {
+      if (!running) {
+        return;
+      }
+      long now = SystemClock.uptimeMillis();
+      advanceFrame(now - lastFrameTime);
+      lastFrameTime = now;
+      // advanceFrame raises events, which may have turned the loop off.
+      if (running) {
+        schedule();
+      }
+    }
+  }
+
   /**
    * Panel for drawing and manipulating sprites.
    *
@@ -353,6 +416,10 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     // Support for background images
     private BitmapDrawable backgroundDrawable;
 
+    // Scratch rectangles for onDraw(), allocated once to avoid garbage.
+    private final Rect clipBounds = new Rect();
+    private final Rect spriteBounds = new Rect();
+
     // Support for GetBackgroundPixelColor() and GetPixelColor().
 
     // scaledBackgroundBitmap is a scaled version of backgroundDrawable that
@@ -360,10 +427,10 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     // to null whenever the canvas size or backgroundDrawable changes.
     private Bitmap scaledBackgroundBitmap;
 
-    // completeCache is created if the user calls getPixelColor().  It is set
-    // back to null whenever the view is redrawn.  If available, it is used
-    // when the Canvas is saved to a file.
-    private Bitmap completeCache;
+    // A single pixel onto which getPixelColor() draws the sprites covering
+    // the requested point, so that it needn't render the whole view.
+    private Bitmap pixelBitmap;
+    private android.graphics.Canvas pixelCanvas;
 
     public CanvasView(Context context) {
       super(context);
@@ -397,8 +464,6 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
 
     @Override
     public void onDraw(android.graphics.Canvas canvas0) {
-      completeCache = null;
-
       // This will draw the background image and color, if present.
       super.onDraw(canvas0);
 
@@ -406,10 +471,20 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
       // such as lines and circles but not Sprites.
       canvas0.drawBitmap(bitmap, 0, 0, null);
 
+      // When only part of the view was invalidated, the clip bounds cover
+      // just that part, and sprites outside of it needn't be drawn.
+      if (!canvas0.getClipBounds(clipBounds)) {
+        clipBounds.set(0, 0, getWidth(), getHeight());
+      }
+
       // sprites is sorted by Z level, so sprites with low Z values will be
       // drawn first, potentially being hidden by Sprites with higher Z values.
       for (Sprite sprite : sprites) {
-        sprite.onDraw(canvas0);
+        sprite.getDrawBounds(spriteBounds);
+        if (Rect.intersects(clipBounds, spriteBounds)) {
+          sprite.onDraw(canvas0);
+        }
+        sprite.setDrawnBounds(spriteBounds);
       }
       drawn = true;
     }
@@ -649,37 +724,35 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
         return Component.COLOR_NONE;
       }
 
-      // If the cache isn't available, try to avoid rebuilding it.
-      if (completeCache == null) {
-        // If there are no visible sprites, just call getBackgroundPixelColor().
-        boolean anySpritesVisible = false;
-        for (Sprite sprite : sprites) {
-          if (sprite.Visible()) {
-            anySpritesVisible = true;
-            break;
-          }
+      int background = getBackgroundPixelColor(x, y);
+
+      // Composite only the sprites that cover (x, y), from back to front, onto
+      // a single pixel holding the background color.
+      boolean covered = false;
+      for (Sprite sprite : sprites) {
+        sprite.getDrawBounds(spriteBounds);
+        if (!spriteBounds.contains(x, y)) {
+          continue;
         }
-        if (!anySpritesVisible) {
-          return getBackgroundPixelColor(x, y);
+        if (!covered) {
+          if (pixelBitmap == null) {
+            pixelBitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+            pixelCanvas = new android.graphics.Canvas(pixelBitmap);
+          }
+          pixelCanvas.drawColor(background == Component.COLOR_NONE ? Color.TRANSPARENT
+              : background, PorterDuff.Mode.SRC);
+          pixelCanvas.save();
+          pixelCanvas.translate(-x, -y);
+          covered = true;
         }
-
-        // TODO(user): If needed for efficiency, check whether there are any
-        // sprites overlapping (x, y).  If not, we can just call getBackgroundPixelColor().
-        // If so, maybe we can just draw those sprites instead of building a full
-        // cache of the view.
-
-        completeCache = buildCache();
+        sprite.onDraw(pixelCanvas);
       }
-
-      // Check the complete cache.
-      try {
-        return completeCache.getPixel(x, y);
-      } catch (IllegalArgumentException e) {
-        // This should never occur, since we have checked bounds.
-        Log.e(LOG_TAG,
-            String.format("Returning COLOR_NONE (exception) from getPixelColor."));
-        return Component.COLOR_NONE;
+      if (!covered) {
+        return background;
       }
+      pixelCanvas.restore();
+      int color = pixelBitmap.getPixel(0, 0);
+      return color == Color.TRANSPARENT ? Component.COLOR_NONE : color;
     }
   }
 
@@ -701,9 +774,13 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     TextAlignment(DEFAULT_TEXTALIGNMENT);
     FontSize(Component.FONT_DEFAULT_SIZE);
 
-    sprites = new LinkedList<Sprite>();
+    sprites = new ZOrderedList<Sprite>();
     motionEventParser = new MotionEventParser();
     mGestureDetector = new GestureDetector(context, new FlingGestureListener());
+
+    container.$form().registerForOnDestroy(this);
+    container.$form().registerForOnPause(this);
+    container.$form().registerForOnResume(this);
   }
 
   @Override
@@ -748,21 +825,13 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the sprite to add
    */
   void addSprite(Sprite sprite) {
-    // Add before first element with greater Z value.
+    // Add in front of all elements with a lesser or equal Z value.
     // This ensures not only that items are in increasing Z value
     // but that sprites whose Z values are always equal are
     // ordered by creation time.  While we don't wish to guarantee
     // this behavior going forward, it does provide consistency
     // with how things worked before Z layering was added.
-    for (int i = 0; i < sprites.size(); i++) {
-      if (sprites.get(i).Z() > sprite.Z()) {
-        sprites.add(i, sprite);
-        return;
-      }
-    }
-
-    // Add to end if it has the highest Z value.
-    sprites.add(sprite);
+    sprites.add(sprite, sprite.Z());
   }
 
   /**
@@ -771,6 +840,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the sprite to remove
    */
   void removeSprite(Sprite sprite) {
+    invalidateSprite(sprite);
     sprites.remove(sprite);
   }
 
@@ -781,9 +851,8 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the Sprite whose Z property has changed
    */
   void changeSpriteLayer(Sprite sprite) {
-    removeSprite(sprite);
-    addSprite(sprite);
-    view.invalidate();
+    sprites.move(sprite, sprite.Z());
+    invalidateSprite(sprite);
   }
 
   @Override
@@ -820,10 +889,53 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the sprite whose location, size, or appearance has changed
    */
   void registerChange(Sprite sprite) {
-    view.invalidate();
+    invalidateSprite(sprite);
     findSpriteCollisions(sprite);
   }
 
+  /**
+   * Invalidates just the part of the view affected by a change to a sprite:
+   * where it was last drawn and where it is now.
+   *
+   * @param sprite the sprite that has changed
+   */
+  private void invalidateSprite(Sprite sprite) {
+    sprite.getDirtyBounds(dirtyBounds);
+    if (!dirtyBounds.isEmpty()) {
+      view.invalidate(dirtyBounds);
+    }
+  }
+
+  /**
+   * Advances the game loop by one frame: moves every enabled sprite that is
+   * due to move, then checks the sprites that moved for collisions and
+   * redraws the view once.
+   *
+   * @param elapsedMillis milliseconds since the previous frame
+   */
+  void advanceFrame(long elapsedMillis) {
+    // Iteration is over a snapshot, since event handlers may add, remove, or
+    // reorder sprites.
+    List<Sprite> movedSprites = new ArrayList<Sprite>();
+    for (Sprite sprite : sprites) {
+      if (sprite.advanceFrame(elapsedMillis)) {
+        movedSprites.add(sprite);
+      }
+    }
+    if (movedSprites.isEmpty()) {
+      return;
+    }
+    frameDirtyBounds.setEmpty();
+    for (Sprite sprite : movedSprites) {
+      findSpriteCollisions(sprite);
+      sprite.getDirtyBounds(dirtyBounds);
+      frameDirtyBounds.union(dirtyBounds);
+    }
+    if (!frameDirtyBounds.isEmpty()) {
+      view.invalidate(frameDirtyBounds);
+    }
+  }
+
 
   // Methods for detecting collisions
 
@@ -873,6 +985,35 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   }
 
 
+  // OnDestroyListener implementation
+
+  @Override
+  public void onDestroy() {
+    frameLoop.stop();
+  }
+
+  // OnPauseListener implementation
+
+  @Override
+  public void onPause() {
+    // Stop asking for frames while the screen is not shown; the time paused is not counted
+    // when the loop is started again.
+    frameLoop.stop();
+  }
+
+  // OnResumeListener implementation
+
+  @Override
+  public void onResume() {
+    if (gameLoop) {
+      frameLoop.start();
+    }
+  }
+
+  boolean isFrameLoopRunning() {
+    return frameLoop.running;
+  }
+
   // Properties
 
  /**
@@ -1022,6 +1163,47 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     }
   }
 
+  /**
+   * Returns whether sprites on this Canvas are moved by the game loop.
+   *
+   * @return {@code true} if the game loop is in use, {@code false} if each
+   *         sprite moves on its own timer
+   */
+  @SimpleProperty(
+      description = "When true, all of the sprites on the canvas are moved together " +
+      "once per screen refresh, and the canvas is redrawn and checked for collisions " +
+      "once per refresh rather than once per sprite move.  Each sprite still moves " +
+      "Speed pixels every Interval milliseconds.  This allows smoother animation " +
+      "with many sprites.",
+      category = PropertyCategory.BEHAVIOR)
+  public boolean GameLoop() {
+    return gameLoop;
+  }
+
+  /**
+   * Specifies whether sprites on this Canvas are moved by the game loop.
+   *
+   * @param enabled {@code true} to move all sprites once per display frame,
+   *                {@code false} to have each sprite use its own timer
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = DEFAULT_GAME_LOOP ? "True" : "False")
+  @SimpleProperty
+  public void GameLoop(boolean enabled) {
+    if (enabled == gameLoop) {
+      return;
+    }
+    gameLoop = enabled;
+    for (Sprite sprite : sprites) {
+      sprite.setFrameDriven(enabled);
+    }
+    if (enabled) {
+      frameLoop.start();
+    } else {
+      frameLoop.stop();
+    }
+  }
+
   @SimpleProperty(
       description = "The font size of text drawn on the canvas.",
       category = PropertyCategory.APPEARANCE)
@@ -1422,7 +1604,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
       boolean success = false;
       FileOutputStream fos = new FileOutputStream(file);
       // Don't cache, in order to save memory.  It seems unlikely to be used again soon.
-      Bitmap bitmap = (view.completeCache == null ? view.buildCache() : view.completeCache);
+      Bitmap bitmap = view.buildCache();
       try {
         success = bitmap.compress(format,
             100,  // quality: ignored for png
@@ -1473,7 +1655,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
 
       boolean spriteHandledFling = false;
 
-      for (Sprite sprite : sprites) {
+      for (Sprite sprite : sprites.frontToBack()) {
         if (sprite.Enabled() && sprite.Visible() &&
             sprite.intersectsWith(rect)) {
           sprite.Flung(x, y, speed, heading, vx, vy);
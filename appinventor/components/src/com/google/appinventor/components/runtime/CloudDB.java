@@ -38,6 +38,7 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 
 import com.google.appinventor.components.runtime.util.CloudDBJedisListener;
+import com.google.appinventor.components.runtime.util.CloudDBPipeline;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.YailList;
 
@@ -55,13 +56,11 @@ import java.security.cert.X509Certificate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -72,6 +71,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
@@ -239,31 +240,15 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
 
   // Store can be called frequenly and quickly in some situations. For example
   // using store inside of a Canvas Drag event (for realtime updating of a remote
-  // canvas). Or in a handler for the Accelerometer (gasp!). To make storing as
-  // effecient as possible, we have a queue of pending store requests and we
-  // have a background task that drains this queue as fast as possible and
-  // iterates over the queue until it is drained.
-  private final List<storedValue> storeQueue = Collections.synchronizedList(new ArrayList());
+  // canvas). Or in a handler for the Accelerometer (gasp!). Apps also often get
+  // many values at once, when a screen opens. So rather than make a round trip
+  // to the server for each operation, we queue the operations as commands, and
+  // the background task sends all of the commands queued so far to the server
+  // together and reads their replies, until the queue is drained.
+  private final CloudDBPipeline pipeline = new CloudDBPipeline();
 
   private ConnectivityManager cm;
 
-  private static class storedValue {
-    private String tag;
-    private JSONArray  valueList;
-    storedValue(String tag, JSONArray valueList) {
-      this.tag = tag;
-      this.valueList = valueList;
-    }
-
-    public String getTag() {
-      return tag;
-    }
-
-    public JSONArray getValueList() {
-      return valueList;
-    }
-  }
-
   /**
    * Creates a new CloudDB component.
    * @param container the Form that this component is contained in.
@@ -570,16 +555,7 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
 
     try {
-      if (valueToStore != null) {
-        String strval = valueToStore.toString();
-        if (strval.startsWith("file:///") || strval.startsWith("/storage")) {
-          value = JsonUtil.getJsonRepresentation(readFile(strval));
-        } else {
-          value = JsonUtil.getJsonRepresentation(valueToStore);
-        }
-      } else {
-        value = "";
-      }
+      value = getJsonToStore(valueToStore);
     } catch(JSONException e) {
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
@@ -588,125 +564,108 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
       if (DEBUG) {
         Log.d(LOG_TAG,"Device is online...");
       }
-      synchronized(storeQueue) {
-        boolean kickit = false;
-        if (storeQueue.size() == 0) { // Need to kick off the background task
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue is zero length, kicking background");
-          }
-          kickit = true;
-        } else {
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
-          }
-        }
-        JSONArray valueList = new JSONArray();
-        try {
-          valueList.put(0, value);
-        } catch (JSONException e) {
-          throw new YailRuntimeError("JSON Error putting value.", "value is not convertable");
-        }
-        storedValue work  = new storedValue(tag, valueList);
-        storeQueue.add(work);
-        if (kickit) {
-          background.submit(new Runnable() {
-              public void run() {
-                JSONArray pendingValueList = null;
-                String pendingTag = null;
-                String pendingValue = null;
-                try {
-                  storedValue work;
-                  if (DEBUG) {
-                    Log.d(LOG_TAG, "store background task running.");
-                  }
-                  while (true) {
-                    synchronized(storeQueue) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "store: In background synchronized block");
-                      }
-                      int size = storeQueue.size();
-                      if (size == 0) {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store background task exiting.");
-                        }
-                        work = null;
-                      } else {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: storeQueue.size() == " + size);
-                        }
-                        work = storeQueue.remove(0);
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: got work.");
-                        }
-                      }
-                    }
-                    if (DEBUG) {
-                      Log.d(LOG_TAG, "store: left synchronized block");
-                    }
-                    if (work == null) {
-                      try {
-                        if (pendingTag != null) {
-                          String jsonValueList = pendingValueList.toString();
-                          if (DEBUG) {
-                            Log.d(LOG_TAG, "Workqueue empty, sending pendingTag, valueListLength = " + pendingValueList.length());
-                          }
-                          jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                        }
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                      }
-                      return;
-                    }
-
-                    String tag = work.getTag();
-                    JSONArray valueList = work.getValueList();
-                    if (tag == null || valueList == null) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Either tag or value is null!");
-                      }
-                    } else {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Got Work: tag = " + tag + " value = " + valueList.get(0));
-                      }
-                    }
-                    if (pendingTag == null) { // First time through this invocation
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    } else if (pendingTag.equals(tag)) { // work is for the same tag
-                      pendingValue = valueList.getString(0);
-                      pendingValueList.put(pendingValue);
-                    } else {    // Work is for a different tag, send what we have
-                      try {     // and add the new tag,incoming valuelist for the next round
-                        String jsonValueList = pendingValueList.toString();
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "pendingTag changed sending pendingTag, valueListLength = " + pendingValueList.length());
-                        }
-                        jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                        storeQueue.clear(); // Flush pending changes, we are in
-                        return;             // an error state
-                      }
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    }
-                  }
-                } catch (Exception e) {
-                Log.e(LOG_TAG, "Exception in store worker!", e);
-                }
-              }
-            });
-        }
-      }
+      queueCommand(new StoreCommand(tag, value));
     } else {
       CloudDBError("Cannot store values off-line.");
     }
   }
 
+  /**
+   * Asks CloudDB to store each of the given values under the corresponding tag.
+   *
+   * @param tags The tags to use
+   * @param valuesToStore The values to store, one for each tag
+   */
+  @SimpleFunction(description = "Store each value in the valuesToStore list under the tag " +
+      "in the same position of the tags list. The two lists must be the same length.")
+  public void StoreValues(YailList tags, YailList valuesToStore) {
+    checkProjectIDNotBlank();
+    Object[] tagArray = tags.toArray();
+    Object[] valueArray = valuesToStore.toArray();
+    if (tagArray.length != valueArray.length) {
+      throw new YailRuntimeError("The number of values to store (" + valueArray.length +
+          ") is not the same as the number of tags (" + tagArray.length + ").",
+          "Invalid Arguments.");
+    }
+    if (!CloudConnected()) {
+      CloudDBError("Cannot store values off-line.");
+      return;
+    }
+    List<StoreCommand> commands = new ArrayList<StoreCommand>(tagArray.length);
+    try {
+      for (int i = 0; i < tagArray.length; i++) {
+        commands.add(new StoreCommand(YailList.YailListElementToString(tagArray[i]),
+            getJsonToStore(valueArray[i])));
+      }
+    } catch (JSONException e) {
+      throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
+    }
+    // Queue the commands together, so that the background task can't send some before the
+    // rest are queued.
+    queueCommands(commands);
+  }
+
+  /*
+   * Returns the JSON to store for a value. The contents of files are stored rather than
+   * their names.
+   */
+  private String getJsonToStore(Object valueToStore) throws JSONException {
+    if (valueToStore == null) {
+      return "";
+    }
+    String strval = valueToStore.toString();
+    if (strval.startsWith("file:///") || strval.startsWith("/storage")) {
+      return JsonUtil.getJsonRepresentation(readFile(strval));
+    }
+    return JsonUtil.getJsonRepresentation(valueToStore);
+  }
+
+  /*
+   * Stores a value under a tag and publishes it to the listeners. Stores to the same
+   * tag queued one after another are combined into one, which publishes all of the
+   * values but sets only the last.
+   */
+  private class StoreCommand extends CloudDBPipeline.ScriptCommand {
+    private final String tag;
+    private String value;
+    private final JSONArray valueList = new JSONArray();
+
+    StoreCommand(String tag, String value) {
+      super(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1);
+      this.tag = tag;
+      this.value = value;
+      valueList.put(value);
+    }
+
+    @Override
+    protected int keyCount() {
+      return 1;
+    }
+
+    @Override
+    protected String[] arguments() {
+      if (DEBUG) {
+        Log.d(LOG_TAG, "Sending tag = " + tag + ", valueListLength = " + valueList.length());
+      }
+      return new String[] { tag, value, valueList.toString(), projectID };
+    }
+
+    @Override
+    protected void failed(JedisDataException e) {
+      CloudDBError(e.getMessage());
+    }
+
+    @Override
+    protected boolean merge(CloudDBPipeline.Command next) {
+      if (next instanceof StoreCommand && ((StoreCommand) next).tag.equals(tag)) {
+        value = ((StoreCommand) next).value;
+        valueList.put(value);
+        return true;
+      }
+      return false;
+    }
+  }
+
   /**
    * GetValue asks CloudDB to get the value stored under the given tag.
    * It will pass valueIfTagNotThere to GotValue if there is no value stored
@@ -724,60 +683,42 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     if (DEBUG) {
       Log.d(LOG_TAG, "getting value ... for tag: " + tag);
     }
-    final AtomicReference<Object> value = new AtomicReference<Object>();
-    Cursor cursor = null;
-    SQLiteDatabase db = null;
     NetworkInfo networkInfo = cm.getActiveNetworkInfo();
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
 
     if (isConnected) {
-      // Set value to either the JSON from the CloudDB
-      // or the JSON representation of valueIfTagNotThere
-      background.submit(new Runnable() {
-          public void run() {
-            Jedis jedis = getJedis();
+      queueCommand(new CloudDBPipeline.Command() {
+          @Override
+          protected Response<?> send(Pipeline pipeline) {
+            return pipeline.get(projectID + ":" + tag);
+          }
+
+          @Override
+          protected void done(Object reply) {
+            // Set value to either the JSON from the CloudDB
+            // or the JSON representation of valueIfTagNotThere
+            final String value;
             try {
-              if (DEBUG) {
-                Log.d(LOG_TAG,"about to call jedis.get()");
-              }
-              String returnValue = jedis.get(projectID + ":" + tag);
-              if (DEBUG) {
-                Log.d(LOG_TAG, "finished call jedis.get()");
-              }
-              if (returnValue != null) {
-                String val = getJsonRepresenationIfValueFileName(returnValue);
-                if(val != null) value.set(val);
-                else value.set(returnValue);
-              }
-              else {
-                if (DEBUG) {
-                  Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
-                }
-                value.set(JsonUtil.getJsonRepresentation(valueIfTagNotThere));
-              }
+              value = getValueJson((String) reply, valueIfTagNotThere);
             } catch (JSONException e) {
               CloudDBError("JSON conversion error for " + tag);
               return;
-            } catch (NullPointerException e) {
-              CloudDBError("System Error getting tag " + tag);
-              flushJedis(true);
-              return;
-            } catch (JedisException e) {
-              Log.e(LOG_TAG, "Exception in GetValue", e);
-              CloudDBError(e.getMessage());
-              flushJedis(true);
-              return;
             }
-
             androidUIHandler.post(new Runnable() {
                 public void run() {
                   // Signal an event to indicate that the value was
                   // received.  We post this to run in the Application's main
                   // UI thread.
-                  GotValue(tag, value.get());
+                  GotValue(tag, value);
                 }
               });
           }
+
+          @Override
+          protected void failed(JedisDataException e) {
+            Log.e(LOG_TAG, "Exception in GetValue", e);
+            CloudDBError(e.getMessage());
+          }
         });
     } else {
       if (DEBUG) {
@@ -787,6 +728,85 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     }
   }
 
+  /**
+   * GetValues asks CloudDB to get the values stored under the given tags.
+   * It will pass valueIfTagNotThere to GotValues in place of the value of
+   * each tag that is not there.
+   *
+   * @param tags The tags whose values are to be retrieved.
+   * @param valueIfTagNotThere The value to pass to the event for each tag
+   *                           that does not exist.
+   */
+  @SimpleFunction(description = "Get the values for a list of tags, doesn't return the " +
+    "values but will cause a GotValues event to fire when the values are looked up. " +
+    "All of the values are looked up at once, which is much faster than using GetValue " +
+    "for each tag.")
+  public void GetValues(YailList tags, final Object valueIfTagNotThere) {
+    checkProjectIDNotBlank();
+    final List<String> tagList = new ArrayList<String>(tags.size());
+    for (Object tag : tags.toArray()) {
+      tagList.add(YailList.YailListElementToString(tag));
+    }
+    if (!CloudConnected()) {
+      CloudDBError("Cannot fetch variables while off-line.");
+      return;
+    }
+    if (tagList.isEmpty()) {
+      GotValues(tagList, new ArrayList<String>());
+      return;
+    }
+    queueCommand(new CloudDBPipeline.Command() {
+        @Override
+        protected Response<?> send(Pipeline pipeline) {
+          String[] keys = new String[tagList.size()];
+          for (int i = 0; i < keys.length; i++) {
+            keys[i] = projectID + ":" + tagList.get(i);
+          }
+          return pipeline.mget(keys);
+        }
+
+        @Override
+        protected void done(Object reply) {
+          final List<String> values = new ArrayList<String>(tagList.size());
+          try {
+            for (Object returnValue : (List<?>) reply) {
+              values.add(getValueJson((String) returnValue, valueIfTagNotThere));
+            }
+          } catch (JSONException e) {
+            CloudDBError("JSON conversion error for " + tagList);
+            return;
+          }
+          androidUIHandler.post(new Runnable() {
+              public void run() {
+                GotValues(tagList, values);
+              }
+            });
+        }
+
+        @Override
+        protected void failed(JedisDataException e) {
+          Log.e(LOG_TAG, "Exception in GetValues", e);
+          CloudDBError(e.getMessage());
+        }
+      });
+  }
+
+  /*
+   * Returns the JSON for a value read from the server, or for valueIfTagNotThere if the
+   * value is null.
+   */
+  private String getValueJson(String returnValue, Object valueIfTagNotThere)
+      throws JSONException {
+    if (returnValue == null) {
+      if (DEBUG) {
+        Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
+      }
+      return JsonUtil.getJsonRepresentation(valueIfTagNotThere);
+    }
+    String val = getJsonRepresenationIfValueFileName(returnValue);
+    return val != null ? val : returnValue;
+  }
+
   @SimpleFunction(description = "returns True if we are on the network and will likely " +
     "be able to connect to the CloudDB server.")
   public boolean CloudConnected() {
@@ -851,15 +871,25 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
 
     final String key = tag;
 
-    background.submit(new Runnable() {
-        public void run() {
-          Jedis jedis = getJedis();
-          try {
-            FirstRemoved(jEval(POP_FIRST_SCRIPT, POP_FIRST_SCRIPT_SHA1, 1, key, projectID));
-          } catch (JedisException e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
+    queueCommand(new CloudDBPipeline.ScriptCommand(POP_FIRST_SCRIPT, POP_FIRST_SCRIPT_SHA1) {
+        @Override
+        protected int keyCount() {
+          return 1;
+        }
+
+        @Override
+        protected String[] arguments() {
+          return new String[] { key, projectID };
+        }
+
+        @Override
+        protected void done(Object reply) {
+          FirstRemoved(reply);
+        }
+
+        @Override
+        protected void failed(JedisDataException e) {
+          CloudDBError(e.getMessage());
         }
       });
   }
@@ -909,15 +939,20 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     final String item = (String) itemObject;
     final String key = tag;
 
-    background.submit(new Runnable() {
-        public void run() {
-          Jedis jedis = getJedis();
-          try {
-            jEval(APPEND_SCRIPT, APPEND_SCRIPT_SHA1, 1, key, item, projectID);
-          } catch(JedisException e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
+    queueCommand(new CloudDBPipeline.ScriptCommand(APPEND_SCRIPT, APPEND_SCRIPT_SHA1) {
+        @Override
+        protected int keyCount() {
+          return 1;
+        }
+
+        @Override
+        protected String[] arguments() {
+          return new String[] { key, item, projectID };
+        }
+
+        @Override
+        protected void failed(JedisDataException e) {
+          CloudDBError(e.getMessage());
         }
       });
   }
@@ -957,6 +992,29 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     EventDispatcher.dispatchEvent(this, "GotValue", tag, value);
   }
 
+  /**
+   * Indicates that a GetValues request has succeeded.
+   *
+   * @param tags the tags whose values were looked up.
+   * @param values the values that were returned, one for each tag.
+   */
+  @SimpleEvent(description = "Event triggered by the \"GetValues\" function, with the list " +
+      "of tags that were looked up and the list of their values.")
+  public void GotValues(List<String> tags, List<String> values) {
+    checkProjectIDNotBlank();
+    List<Object> valueObjects = new ArrayList<Object>(values.size());
+    try {
+      for (String value : values) {
+        valueObjects.add(JsonUtil.getObjectFromJson(value));
+      }
+    } catch(JSONException e) {
+      throw new YailRuntimeError("Value failed to convert from JSON.", "JSON Retrieval Error.");
+    }
+
+    // Invoke the application's "GotValues" event handler
+    EventDispatcher.dispatchEvent(this, "GotValues", tags, valueObjects);
+  }
+
   /**
    * Asks CloudDB to forget (delete or set to "null") a given tag.
    *
@@ -965,15 +1023,15 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
   @SimpleFunction(description = "Remove the tag from CloudDB")
   public void ClearTag(final String tag) {
     checkProjectIDNotBlank();
-    background.submit(new Runnable() {
-        public void run() {
-          try {
-            Jedis jedis = getJedis();
-            jedis.del(projectID + ":" + tag);
-          } catch (Exception e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
+    queueCommand(new CloudDBPipeline.Command() {
+        @Override
+        protected Response<?> send(Pipeline pipeline) {
+          return pipeline.del(projectID + ":" + tag);
+        }
+
+        @Override
+        protected void failed(JedisDataException e) {
+          CloudDBError(e.getMessage());
         }
       });
   }
@@ -991,19 +1049,15 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     NetworkInfo networkInfo = cm.getActiveNetworkInfo();
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
     if (isConnected) {
-      background.submit(new Runnable() {
-          public void run() {
+      queueCommand(new CloudDBPipeline.Command() {
+          @Override
+          protected Response<?> send(Pipeline pipeline) {
+            return pipeline.keys(projectID + ":*");
+          }
 
-            Jedis jedis = getJedis();
-            Set<String> value = null;
-            try {
-              value = jedis.keys(projectID + ":*");
-            } catch (JedisException e) {
-              CloudDBError(e.getMessage());
-              flushJedis(true);
-              return;
-            }
-            final List<String> listValue = new ArrayList<String>(value);
+          @Override
+          protected void done(Object reply) {
+            final List<String> listValue = new ArrayList<String>((Set<String>) reply);
 
             for(int i = 0; i < listValue.size(); i++){
               listValue.set(i, listValue.get(i).substring((projectID + ":").length()));
@@ -1016,6 +1070,11 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
                 }
               });
           }
+
+          @Override
+          protected void failed(JedisDataException e) {
+            CloudDBError(e.getMessage());
+          }
         });
     } else {
       CloudDBError("Not connected to the Internet, cannot list tags");
@@ -1167,6 +1226,8 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
       // XXX
     }
     INSTANCE = null;
+    pipeline.reset();           // The next connection may be to a server
+                                // that hasn't seen our scripts
     // We are now going to kill the executor, as it may
     // have hung tasks. We do this on the UI thread as a
     // way to synchronize things.
@@ -1176,6 +1237,7 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
           if (DEBUG) {
             Log.d(LOG_TAG, "Killing background executor, returned tasks = " + tasks);
           }
+          pipeline.clear();     // The task draining it is gone
           background = Executors.newSingleThreadExecutor();
         }
       });
@@ -1328,6 +1390,62 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     return background;
   }
 
+  /**
+   * Returns the number of round trips made to the server, the commands sent
+   * in them and how long they took, for debugging.
+   */
+  public CloudDBPipeline.Stats getPipelineStats() {
+    return pipeline.getStats();
+  }
+
+  /*
+   * Queues a command, starting a background task to send the queued commands if one
+   * isn't running already.
+   */
+  private void queueCommand(CloudDBPipeline.Command command) {
+    if (pipeline.add(command)) {
+      startSending();
+    }
+  }
+
+  /*
+   * Queues several commands together, starting a background task to send the queued
+   * commands if one isn't running already.
+   */
+  private void queueCommands(List<? extends CloudDBPipeline.Command> commands) {
+    if (pipeline.addAll(commands)) {
+      startSending();
+    }
+  }
+
+  /*
+   * Starts a background task that sends the queued commands until there are none left.
+   */
+  private void startSending() {
+    background.submit(new Runnable() {
+        public void run() {
+          try {
+            Jedis jedis = getJedis();
+            if (jedis == null) {  // getJedis has signaled the error
+              pipeline.clear();
+              return;
+            }
+            while (pipeline.execute(jedis)) {
+              if (DEBUG) {
+                Log.d(LOG_TAG, "Sent commands: " + pipeline);
+              }
+            }
+          } catch (JedisException e) {
+            CloudDBError(e.getMessage());
+            flushJedis(true);
+          } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception in command worker!", e);
+            pipeline.clear();
+          }
+        }
+      });
+  }
+
   public Object jEval(String script, String scriptsha1, int argcount, String... args) throws JedisException {
     Jedis jedis = getJedis();
     try {
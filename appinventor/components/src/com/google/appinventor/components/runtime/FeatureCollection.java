@@ -60,6 +60,14 @@ public class FeatureCollection extends MapFeatureContainerBase implements MapFea
     super.GotFeatures(url, features);
   }
 
+  @Override
+  @SimpleEvent(description = "The features read from url by AddFeaturesFromURL have all been " +
+      "added to the collection. The new features are provided as a list in features.")
+  public void FeaturesAdded(String url, YailList features) {
+    source = url;
+    super.FeaturesAdded(url, features);
+  }
+
   @Override
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_GEOJSON_TYPE)
   public void Source(String source) {
@@ -18,8 +18,11 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
+import com.google.appinventor.components.runtime.util.CsvUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
+import com.google.appinventor.components.runtime.util.FileWriteQueue;
+import com.google.appinventor.components.runtime.util.YailList;
 import com.google.appinventor.components.runtime.Form;
 import com.google.appinventor.components.runtime.ReplForm;
 
@@ -29,13 +32,14 @@ import android.os.Environment;
 import android.util.Log;
 
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Component for working with files and directories on the device.
@@ -53,12 +57,37 @@ import java.io.StringWriter;
     iconName = "images/file.png")
 @SimpleObject
 @UsesPermissions(permissionNames = "android.permission.WRITE_EXTERNAL_STORAGE, android.permission.READ_EXTERNAL_STORAGE")
-public class File extends AndroidNonvisibleComponent implements Component {
+public class File extends AndroidNonvisibleComponent implements Component, OnPauseListener,
+    OnDestroyListener {
   public static final String NO_ASSETS = "No_Assets";
   private final Activity activity;
   private boolean isRepl = false;
   private final int BUFFER_LENGTH = 4096;
   private static final String LOG_TAG = "FileComponent";
+  // The most batches of CSV rows read ahead of the GotCsvRows events that deliver them, so that
+  // a large file is never held in memory all at once.
+  private static final int CSV_BATCHES_AHEAD = 2;
+  // How often a CSV read waiting for the GotCsvRows events to catch up checks whether the app
+  // has been closed, after which the events will never run
+  private static final long CSV_CLOSED_CHECK_MS = 1000;
+  // How long after text is appended to a file it is written, if the file isn't flushed sooner
+  private static final long FLUSH_DELAY_MS = 1000;
+
+  // Writes to files in the order they are made, keeping the files being appended to open.  There
+  // is one queue for the app, like TinyDB's flusher, so that File components on different
+  // screens writing the same file share its writer and their writes stay in order.
+  private static final FileWriteQueue writeQueue = new FileWriteQueue(FLUSH_DELAY_MS);
+
+  // Receives the results of this component's writes
+  private final FileWriteQueue.Listener writeListener;
+  private volatile boolean destroyed = false;
+
+  /*
+   * Reads a file opened by readAfterWrites.
+   */
+  private interface StreamReader {
+    void read(InputStream inputStream);
+  }
 
   /**
    * Creates a new File component.
@@ -70,6 +99,28 @@ public class File extends AndroidNonvisibleComponent implements Component {
       isRepl = true;
     }
     activity = (Activity) container.$context();
+    writeListener = new FileWriteQueue.Listener() {
+      @Override
+      public void onWritten(final String fileName, boolean append) {
+        activity.runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            AfterFileSaved(fileName);
+          }
+        });
+      }
+
+      @Override
+      public void onError(String fileName, boolean append, IOException e) {
+        Log.e(LOG_TAG, "IOException", e);
+        form.dispatchErrorOccurredEvent(File.this, append ? "AppendTo" : "SaveFile",
+            e instanceof FileNotFoundException ? ErrorMessages.ERROR_CANNOT_CREATE_FILE
+                : ErrorMessages.ERROR_CANNOT_WRITE_TO_FILE,
+            AbsoluteFileName(fileName));
+      }
+    };
+    form.registerForOnPause(this);
+    form.registerForOnDestroy(this);
   }
 
   /**
@@ -104,7 +155,10 @@ public class File extends AndroidNonvisibleComponent implements Component {
    * @param fileName the file to which the text will be stored
    */
   @SimpleFunction(description = "Appends text to the end of a file storage, creating the file if it does not exist. " +
-      "See the help text under SaveFile for information about where files are written.")
+      "See the help text under SaveFile for information about where files are written. " +
+      "Appended text is written to the file shortly afterwards, when Flush is called, and when " +
+      "the app is paused or closed. Reading, saving or deleting the file waits for the text " +
+      "appended to it first.")
   public void AppendToFile(String text, String fileName) {
     if (fileName.startsWith("/")) {
       FileUtil.checkExternalStorageWriteable(); // Only check if writing to sdcard
@@ -127,39 +181,105 @@ public class File extends AndroidNonvisibleComponent implements Component {
       "slash, it will be read from the applications private storage (for packaged " +
       "apps) and from /sdcard/AppInventor/data for the Companion.")
   public void ReadFrom(final String fileName) {
-    try {
-      InputStream inputStream;
-      if (fileName.startsWith("//")) {
-        if (isRepl) {
-          inputStream = new FileInputStream(Environment.getExternalStorageDirectory().getPath() +
-              "/AppInventor/assets/" + fileName);
-        } else {
-          inputStream = form.getAssets().open(fileName.substring(2));
-        }
-      } else {
-        String filepath = AbsoluteFileName(fileName);
-        Log.d(LOG_TAG, "filepath = " + filepath);
-        inputStream = new FileInputStream(filepath);
+    readAfterWrites("ReadFrom", fileName, new StreamReader() {
+      @Override
+      public void read(InputStream inputStream) {
+        AsyncRead(inputStream, fileName);
       }
+    });
+  }
 
-      final InputStream asyncInputStream = inputStream;
-      AsynchUtil.runAsynchronously(new Runnable() {
-          @Override
-          public void run() {
-            AsyncRead(asyncInputStream, fileName);
-          }
-        });
-    } catch (FileNotFoundException e) {
-      Log.e(LOG_TAG, "FileNotFoundException", e);
-      form.dispatchErrorOccurredEvent(File.this, "ReadFrom",
-          ErrorMessages.ERROR_CANNOT_FIND_FILE, fileName);
-    } catch (IOException e) {
-      Log.e(LOG_TAG, "IOException", e);
-      form.dispatchErrorOccurredEvent(File.this, "ReadFrom",
-          ErrorMessages.ERROR_CANNOT_FIND_FILE, fileName);
+  /**
+   * Reads a CSV table from a file a batch of rows at a time, so that tables
+   * too large to read with ReadFrom and the list from csv table block can be
+   * processed. The file is read and parsed in the background, and each batch
+   * is given to the GotCsvRows event in order.
+   *
+   * @param fileName the file from which the table is read, as for ReadFrom
+   * @param batchSize the most rows in each batch
+   */
+  @SimpleFunction(description = "Reads a CSV table from a file in storage, a batch of rows at a " +
+      "time. The GotCsvRows event is run with each batch of at most batchSize rows, in order, " +
+      "until the last batch. Use this instead of ReadFrom and the list from csv table block for " +
+      "files too large to hold in memory at once. See the help text under ReadFrom for " +
+      "information about where files are read from.")
+  public void ReadCsvRows(final String fileName, final int batchSize) {
+    if (batchSize <= 0) {
+      form.dispatchErrorOccurredEvent(File.this, "ReadCsvRows",
+          ErrorMessages.ERROR_INVALID_BATCH_SIZE, batchSize);
+      return;
     }
+    readAfterWrites("ReadCsvRows", fileName, new StreamReader() {
+      @Override
+      public void read(InputStream inputStream) {
+        AsyncReadCsvRows(inputStream, fileName, batchSize);
+      }
+    });
   }
 
+  /**
+   * Reads some of the lines of a file, without reading the whole file into
+   * memory at once.
+   *
+   * @param fileName the file from which the lines are read, as for ReadFrom
+   * @param startLine the number of the first line to read, where the first
+   *     line of the file is 1
+   * @param count the most lines to read
+   */
+  @SimpleFunction(description = "Reads count lines of a file in storage, starting at line " +
+      "startLine, where the first line of the file is 1. The GotLines event is run with a list " +
+      "of the lines read, which is shorter than count if the file ends first. See the help " +
+      "text under ReadFrom for information about where files are read from.")
+  public void ReadLines(final String fileName, final int startLine, final int count) {
+    if (startLine < 1 || count < 0) {
+      form.dispatchErrorOccurredEvent(File.this, "ReadLines",
+          ErrorMessages.ERROR_INVALID_LINE_RANGE, startLine, count);
+      return;
+    }
+    readAfterWrites("ReadLines", fileName, new StreamReader() {
+      @Override
+      public void read(InputStream inputStream) {
+        AsyncReadLines(inputStream, fileName, startLine, count);
+      }
+    });
+  }
+
+  /**
+   * Writes the text appended to files to the files, in the background
+   * after the writes queued before.
+   */
+  @SimpleFunction(description = "Writes the text appended to files that has not been written " +
+      "yet, in the background after the files saved before it. Appended text is written " +
+      "shortly after it is appended, and when the app is paused or closed, so this is only " +
+      "needed to have it written sooner.")
+  public void Flush() {
+    writeQueue.flush();
+  }
+
+  // OnPauseListener implementation
+
+  @Override
+  public void onPause() {
+    // Queue the flush rather than wait for it, so that pausing isn't held up by the disk.
+    writeQueue.flush();
+  }
+
+  // OnDestroyListener implementation
+
+  @Override
+  public void onDestroy() {
+    destroyed = true;
+    // The queue is shared with the other File components and outlives this one, so it isn't
+    // shut down; it writes the appended text in the background and its thread ends when idle.
+    writeQueue.flush();
+  }
+
+  /*
+   * Waits at most the given time for the writes queued so far to be done, for tests.
+   */
+  static boolean awaitWrites(long timeoutMs) {
+    return FileWriteQueue.await(writeQueue.flush(), timeoutMs);
+  }
 
   /**
    * Delete the specified file.
@@ -178,12 +298,17 @@ public class File extends AndroidNonvisibleComponent implements Component {
       return;
     }
     String filepath = AbsoluteFileName(fileName);
-    java.io.File file = new java.io.File(filepath);
-    file.delete();
+    final java.io.File file = new java.io.File(filepath);
+    writeQueue.afterWrites(file, new Runnable() {
+      @Override
+      public void run() {
+        file.delete();
+      }
+    });
   }
 
   /**
-   * Writes to the specified file.
+   * Writes to the specified file, after the writes to it made before.
    * @param filename the file to write
    * @param text to write to the file
    * @param append determines whether text should be appended to the file,
@@ -200,51 +325,12 @@ public class File extends AndroidNonvisibleComponent implements Component {
       }
       return;
     }
-    AsynchUtil.runAsynchronously(new Runnable() {
-      @Override
-      public void run() {
-        final String filepath = AbsoluteFileName(filename);
-        final java.io.File file = new java.io.File(filepath);
-
-        if(!file.exists()){
-          try {
-            file.createNewFile();
-          } catch (IOException e) {
-            if (append) {
-              form.dispatchErrorOccurredEvent(File.this, "AppendTo",
-                  ErrorMessages.ERROR_CANNOT_CREATE_FILE, filepath);
-            } else {
-              form.dispatchErrorOccurredEvent(File.this, "SaveFile",
-                  ErrorMessages.ERROR_CANNOT_CREATE_FILE, filepath);
-            }
-            return;
-          }
-        }
-        try {
-          FileOutputStream fileWriter = new FileOutputStream(file, append);
-          OutputStreamWriter out = new OutputStreamWriter(fileWriter);
-          out.write(text);
-          out.flush();
-          out.close();
-          fileWriter.close();
-
-          activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-              AfterFileSaved(filename);
-            }
-          });
-        } catch (IOException e) {
-          if (append) {
-            form.dispatchErrorOccurredEvent(File.this, "AppendTo",
-                ErrorMessages.ERROR_CANNOT_WRITE_TO_FILE, filepath);
-          } else {
-            form.dispatchErrorOccurredEvent(File.this, "SaveFile",
-                ErrorMessages.ERROR_CANNOT_WRITE_TO_FILE, filepath);
-          }
-        }
-      }
-    });
+    java.io.File file = new java.io.File(AbsoluteFileName(filename));
+    if (append) {
+      writeQueue.append(file, filename, text, writeListener);
+    } else {
+      writeQueue.save(file, filename, text, writeListener);
+    }
   }
 
   /**
@@ -315,6 +401,131 @@ public class File extends AndroidNonvisibleComponent implements Component {
     }
   }
 
+  /**
+   * Asynchronously parses the CSV table in the given stream, posting each
+   * batch of rows to the main event thread. The parser stays at most
+   * CSV_BATCHES_AHEAD batches ahead of the GotCsvRows events, and stops if
+   * the app is closed while it waits for them. Errors are posted after the
+   * batches read before them.
+   *
+   * @param fileInput the stream to read from
+   * @param fileName the file to read
+   * @param batchSize the most rows in each batch
+   */
+  private void AsyncReadCsvRows(InputStream fileInput, final String fileName, int batchSize) {
+    final Semaphore batchesAhead = new Semaphore(CSV_BATCHES_AHEAD);
+    InputStreamReader input = new InputStreamReader(fileInput);
+    try {
+      CsvUtil.readCsvRows(input, batchSize, new CsvUtil.RowHandler() {
+        @Override
+        public void gotRows(final YailList rows, final boolean last) throws InterruptedException {
+          while (!batchesAhead.tryAcquire(CSV_CLOSED_CHECK_MS, TimeUnit.MILLISECONDS)) {
+            if (destroyed) {
+              throw new InterruptedException();
+            }
+          }
+          activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                GotCsvRows(fileName, rows, last);
+              } finally {
+                batchesAhead.release();
+              }
+            }
+          });
+        }
+      });
+    } catch (InterruptedException e) {
+      Log.w(LOG_TAG, "Stopped reading " + fileName);
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "IOException", e);
+      if (e.getMessage() != null && e.getMessage().startsWith("Syntax Error")) {
+        form.dispatchErrorOccurredEvent(File.this, "ReadCsvRows",
+            ErrorMessages.ERROR_CANNOT_PARSE_CSV, fileName, e.getMessage());
+      } else {
+        form.dispatchErrorOccurredEvent(File.this, "ReadCsvRows",
+            ErrorMessages.ERROR_CANNOT_READ_FILE, fileName);
+      }
+    } catch (Exception e) {
+      Log.e(LOG_TAG, "Exception", e);
+      form.dispatchErrorOccurredEvent(File.this, "ReadCsvRows",
+          ErrorMessages.ERROR_CANNOT_PARSE_CSV, fileName, e.getMessage());
+    } finally {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // do nothing...
+      }
+    }
+  }
+
+  /**
+   * Asynchronously reads lines from the given file, and calls the main
+   * event thread with them.
+   *
+   * @param fileInput the stream to read from
+   * @param fileName the file to read
+   * @param startLine the number of the first line to read
+   * @param count the most lines to read
+   */
+  private void AsyncReadLines(InputStream fileInput, final String fileName, final int startLine,
+      int count) {
+    InputStreamReader input = new InputStreamReader(fileInput);
+    try {
+      final List<String> lines = FileUtil.readLines(input, startLine, count);
+      activity.runOnUiThread(new Runnable() {
+        @Override
+        public void run() {
+          GotLines(fileName, startLine, YailList.makeList(lines));
+        }
+      });
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "IOException", e);
+      form.dispatchErrorOccurredEvent(File.this, "ReadLines",
+          ErrorMessages.ERROR_CANNOT_READ_FILE, fileName);
+    } finally {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // do nothing...
+      }
+    }
+  }
+
+  /*
+   * Opens the file once the writes queued for it are done, so that it is read as written, and
+   * reads it on another thread.  Assets are never written, so they are opened right away.
+   */
+  private void readAfterWrites(final String functionName, final String fileName,
+      final StreamReader reader) {
+    Runnable open = new Runnable() {
+      @Override
+      public void run() {
+        final InputStream inputStream;
+        try {
+          inputStream = openForReading(fileName);
+        } catch (IOException e) {
+          Log.e(LOG_TAG, "IOException", e);
+          form.dispatchErrorOccurredEvent(File.this, functionName,
+              ErrorMessages.ERROR_CANNOT_FIND_FILE, fileName);
+          return;
+        }
+        AsynchUtil.runAsynchronously(new Runnable() {
+          @Override
+          public void run() {
+            reader.read(inputStream);
+          }
+        });
+      }
+    };
+    if (fileName.startsWith("//")) {
+      open.run();
+    } else {
+      writeQueue.afterWrites(new java.io.File(AbsoluteFileName(fileName)), open);
+    }
+  }
+
   /**
    * Event indicating that a request has finished.
    *
@@ -337,6 +548,56 @@ public class File extends AndroidNonvisibleComponent implements Component {
     EventDispatcher.dispatchEvent(this, "AfterFileSaved", fileName);
   }
 
+  /**
+   * Event giving the lines read by ReadLines.
+   *
+   * @param fileName the file the lines were read from
+   * @param startLine the number of the first line read
+   * @param lines the lines read, without their line ends
+   */
+  @SimpleEvent (description = "Event giving the lines read from a file by ReadLines, starting " +
+      "at line startLine. The lines do not include their line ends.")
+  public void GotLines(String fileName, int startLine, YailList lines) {
+    // invoke the application's "GotLines" event handler.
+    EventDispatcher.dispatchEvent(this, "GotLines", fileName, startLine, lines);
+  }
+
+  /**
+   * Event giving a batch of the rows of a CSV table read by ReadCsvRows.
+   *
+   * @param fileName the file the rows were read from
+   * @param rows the rows in the batch, each a list of the cells in the row
+   * @param lastBatch true if there are no more rows in the table
+   */
+  @SimpleEvent (description = "Event giving a batch of rows read from a CSV table by " +
+      "ReadCsvRows. Each row is a list of its cells. lastBatch is true for the last batch of " +
+      "the table, which may be empty.")
+  public void GotCsvRows(String fileName, YailList rows, boolean lastBatch) {
+    // invoke the application's "GotCsvRows" event handler.
+    EventDispatcher.dispatchEvent(this, "GotCsvRows", fileName, rows, lastBatch);
+  }
+
+  /**
+   * Opens the given file for reading, as described for ReadFrom.
+   *
+   * @param fileName the file to open
+   * @throws IOException if the file cannot be opened
+   */
+  private InputStream openForReading(String fileName) throws IOException {
+    if (fileName.startsWith("//")) {
+      if (isRepl) {
+        return new FileInputStream(Environment.getExternalStorageDirectory().getPath() +
+            "/AppInventor/assets/" + fileName);
+      } else {
+        return form.getAssets().open(fileName.substring(2));
+      }
+    } else {
+      String filepath = AbsoluteFileName(fileName);
+      Log.d(LOG_TAG, "filepath = " + filepath);
+      return new FileInputStream(filepath);
+    }
+  }
+
   /**
    * Returns absolute file path.
    *
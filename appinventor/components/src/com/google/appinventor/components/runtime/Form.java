@@ -191,6 +191,10 @@ public class Form extends AppInventorCompatActivity
   // AppInventor lifecycle: listeners for the Initialize Event
   private final Set<OnInitializeListener> onInitializeListeners = Sets.newHashSet();
 
+  // The components inside arrangements hidden at startup that haven't been created yet, as
+  // runnables that create them, by arrangement
+  private final Map<Component, Runnable> deferredComponents = Maps.newHashMap();
+
   // Listeners for options menu.
   private final Set<OnCreateOptionsMenuListener> onCreateOptionsMenuListeners = Sets.newHashSet();
   private final Set<OnOptionsItemSelectedListener> onOptionsItemSelectedListeners = Sets.newHashSet();
@@ -674,6 +678,19 @@ public class Form extends AppInventorCompatActivity
     }
   }
 
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    // The images can be decoded again when they are next needed.
+    MediaUtil.clearBitmapCache();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    MediaUtil.trimBitmapCache(level);
+  }
+
   public void registerForOnDestroy(OnDestroyListener component) {
     onDestroyListeners.add(component);
   }
@@ -2158,6 +2175,33 @@ public class Form extends AppInventorCompatActivity
     return false;
   }
 
+  /**
+   * Puts off creating the components inside an arrangement that is hidden
+   * when the screen starts.  This is used by runtime.scm.
+   *
+   * @param arrangement the hidden arrangement
+   * @param create creates and initializes the components in the arrangement
+   */
+  public void $deferComponents(Component arrangement, Runnable create) {
+    deferredComponents.put(arrangement, create);
+  }
+
+  /**
+   * Creates the components inside the given arrangement if they were put off
+   * by {@link #$deferComponents} and haven't been created since.  This is
+   * called when the arrangement is first made visible, and by runtime.scm
+   * when one of its components is first used.
+   */
+  public void $createDeferredComponents(Component arrangement) {
+    if (deferredComponents.isEmpty()) {
+      return;
+    }
+    Runnable create = deferredComponents.remove(arrangement);
+    if (create != null) {
+      create.run();
+    }
+  }
+
   // This is used by runtime.scm to call the Initialize of a component.
   public void callInitialize(Object component) throws Throwable {
     Method method;
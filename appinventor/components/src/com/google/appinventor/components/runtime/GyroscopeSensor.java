@@ -10,11 +10,15 @@ import com.google.appinventor.components.annotations.DesignerComponent;
 import com.google.appinventor.components.annotations.DesignerProperty;
 import com.google.appinventor.components.annotations.PropertyCategory;
 import com.google.appinventor.components.annotations.SimpleEvent;
+import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.SensorPipeline;
+import com.google.appinventor.components.runtime.util.YailList;
 
 import android.content.Context;
 import android.hardware.Sensor;
@@ -49,6 +53,10 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
   private final Sensor gyroSensor;
   private boolean listening;
 
+  // Decides which samples raise events, and keeps statistics over the last samples
+  private static final int DEFAULT_WINDOW_SIZE = 10;
+  private final SensorPipeline pipeline = new SensorPipeline(DEFAULT_WINDOW_SIZE);
+
   /**
    * Creates a new GyroscopeSensor component.
    */
@@ -83,6 +91,7 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
       xAngularVelocity = 0;
       yAngularVelocity = 0;
       zAngularVelocity = 0;
+      pipeline.clear();
     }
   }
 
@@ -99,6 +108,77 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
         xAngularVelocity, yAngularVelocity, zAngularVelocity, timestamp);
   }
 
+  /**
+   * SamplesReceived event handler.
+   */
+  @SimpleEvent(description = "Indicates that samples arrived while BatchDelivery is true. " +
+      "The samples parameter is a list of the samples since the last SamplesReceived event, " +
+      "oldest first, each a list of the X, Y and Z angular velocities and the time in " +
+      "nanoseconds at which the sample was taken. At most " + SensorPipeline.MAX_BATCH_SIZE +
+      " samples are kept, so if more arrive the oldest are dropped.")
+  public void SamplesReceived(YailList samples) {
+    EventDispatcher.dispatchEvent(this, "SamplesReceived", samples);
+  }
+
+  // Functions
+
+  /**
+   * Returns the mean angular velocity around the given axis over the last
+   * WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the mean angular velocity around the given axis " +
+      "(1 = X, 2 = Y, 3 = Z) over the last WindowSize samples.")
+  public double Mean(int axis) {
+    return checkAxis("Mean", axis) ? pipeline.mean(axis - 1) : 0;
+  }
+
+  /**
+   * Returns the smallest angular velocity around the given axis in the last
+   * WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the smallest angular velocity around the given axis " +
+      "(1 = X, 2 = Y, 3 = Z) in the last WindowSize samples.")
+  public double Minimum(int axis) {
+    return checkAxis("Minimum", axis) ? pipeline.minimum(axis - 1) : 0;
+  }
+
+  /**
+   * Returns the largest angular velocity around the given axis in the last
+   * WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the largest angular velocity around the given axis " +
+      "(1 = X, 2 = Y, 3 = Z) in the last WindowSize samples.")
+  public double Maximum(int axis) {
+    return checkAxis("Maximum", axis) ? pipeline.maximum(axis - 1) : 0;
+  }
+
+  /**
+   * Returns the variance of the angular velocity around the given axis over
+   * the last WindowSize samples.
+   *
+   * @param axis  1 for X, 2 for Y or 3 for Z
+   */
+  @SimpleFunction(description = "Returns the variance of the angular velocity around the " +
+      "given axis (1 = X, 2 = Y, 3 = Z) over the last WindowSize samples.")
+  public double Variance(int axis) {
+    return checkAxis("Variance", axis) ? pipeline.variance(axis - 1) : 0;
+  }
+
+  private boolean checkAxis(String functionName, int axis) {
+    if (axis < 1 || axis > SensorPipeline.AXES) {
+      form.dispatchErrorOccurredEvent(this, functionName,
+          ErrorMessages.ERROR_BAD_VALUE_FOR_SENSOR_AXIS, axis);
+      return false;
+    }
+    return true;
+  }
+
   // Properties
 
   /**
@@ -146,6 +226,79 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
     }
   }
 
+  /**
+   * DeliveryInterval property getter method.
+   *
+   * @return  minimum interval between events in ms
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public int DeliveryInterval() {
+    return pipeline.getInterval();
+  }
+
+  /**
+   * DeliveryInterval property setter method.
+   *
+   * @param interval  minimum interval between events in ms
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty(description = "The minimum interval, in milliseconds, between " +
+      "GyroscopeChanged events, or between SamplesReceived events if BatchDelivery is true. " +
+      "Samples that arrive in between still count towards the window statistics. If 0, " +
+      "every sample raises an event.")
+  public void DeliveryInterval(int interval) {
+    pipeline.setInterval(interval);
+  }
+
+  /**
+   * WindowSize property getter method.
+   *
+   * @return  window size in samples
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public int WindowSize() {
+    return pipeline.getWindowSize();
+  }
+
+  /**
+   * WindowSize property setter method.
+   *
+   * @param size  window size in samples
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = DEFAULT_WINDOW_SIZE + "")
+  @SimpleProperty(description = "The number of most recent samples over which the Mean, " +
+      "Minimum, Maximum and Variance functions are computed, from 1 to " +
+      SensorPipeline.MAX_WINDOW_SIZE + ". Changing it discards the samples collected so far.")
+  public void WindowSize(int size) {
+    pipeline.setWindowSize(size);
+  }
+
+  /**
+   * BatchDelivery property getter method.
+   *
+   * @return  {@code true} if samples are delivered in batches
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public boolean BatchDelivery() {
+    return pipeline.isBatching();
+  }
+
+  /**
+   * BatchDelivery property setter method.
+   *
+   * @param batch  {@code true} to deliver samples in batches
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty(description = "If true, the samples that arrive during each " +
+      "DeliveryInterval are delivered together by the SamplesReceived event, and " +
+      "GyroscopeChanged is not raised.")
+  public void BatchDelivery(boolean batch) {
+    pipeline.setBatching(batch);
+  }
+
   /**
    * XAngularVelocity property getter method (read-only property).
    *
@@ -200,9 +353,16 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
       yAngularVelocity = (float) Math.toDegrees(sensorEvent.values[1]);
       zAngularVelocity = (float) Math.toDegrees(sensorEvent.values[2]);
 
-      // Raise event.
-      GyroscopeChanged(xAngularVelocity, yAngularVelocity, zAngularVelocity,
-          sensorEvent.timestamp);
+      // Raise event, if it is time to.
+      if (pipeline.add(sensorEvent.timestamp, xAngularVelocity, yAngularVelocity,
+          zAngularVelocity)) {
+        if (pipeline.isBatching()) {
+          SamplesReceived(pipeline.takeBatch());
+        } else {
+          GyroscopeChanged(xAngularVelocity, yAngularVelocity, zAngularVelocity,
+              sensorEvent.timestamp);
+        }
+      }
     }
   }
 
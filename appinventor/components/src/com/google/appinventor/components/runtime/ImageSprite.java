@@ -9,6 +9,9 @@ package com.google.appinventor.components.runtime;
 import java.io.IOException;
 
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.util.Log;
 
@@ -58,6 +61,21 @@ public class ImageSprite extends Sprite {
   private String picturePath = "";  // Picture property
   private boolean rotates;
 
+  // The picture scaled to the sprite's size in pixels.  This is rebuilt only
+  // when the picture or the size changes, rather than on every draw.
+  private Bitmap scaledBitmap;
+
+  // Rotation of scaledBitmap about its center for the heading given by
+  // matrixHeading.  This is recomputed only when the heading or size changes.
+  private final Matrix rotationMatrix = new Matrix();
+  private double matrixHeading = Double.NaN;
+  private int matrixWidth;
+  private int matrixHeight;
+
+  // Reused when drawing so that drawing doesn't allocate.
+  private final Matrix drawMatrix = new Matrix();
+  private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
 
   /**
    * Constructor for ImageSprite.
@@ -81,24 +99,65 @@ public class ImageSprite extends Sprite {
       int yinit = (int) (Math.round(yTop) * form.deviceDensity());
       int w = (int)(Width() * form.deviceDensity());
       int h = (int)(Height() * form.deviceDensity());
-      drawable.setBounds(xinit, yinit, xinit + w, yinit + h);
-      // If the sprite doesn't rotate, just draw the drawable
+      if (w <= 0 || h <= 0) {
+        return;
+      }
+      Bitmap bitmap = getScaledBitmap(w, h);
+      // If the sprite doesn't rotate, just draw the bitmap
       // within the bounds of the sprite rectangle
+      // Drawing through a matrix, unlike drawBitmap(bitmap, left, top, paint),
+      // doesn't rescale the bitmap by its density.
       if (!rotates) {
-        drawable.draw(canvas);
+        drawMatrix.setTranslate(xinit, yinit);
+        canvas.drawBitmap(bitmap, drawMatrix, bitmapPaint);
       } else {
-        // if the sprite does rotate, draw the sprite on the canvas
-        // that has been rotated in the opposite direction
-        // Still within those same image bounds.
-        canvas.save();
-        // rotate the canvas for drawing.  This pivot point of the
-        // rotation will be the center of the sprite
-        canvas.rotate((float) (- Heading()), xinit + w/2, yinit + h/2);
-        drawable.draw(canvas);
-        canvas.restore();
+        // if the sprite does rotate, draw the bitmap rotated about the
+        // center of the sprite, still within those same image bounds.
+        if (matrixHeading != Heading() || matrixWidth != w || matrixHeight != h) {
+          rotationMatrix.setRotate((float) (- Heading()), w/2, h/2);
+          matrixHeading = Heading();
+          matrixWidth = w;
+          matrixHeight = h;
+        }
+        drawMatrix.set(rotationMatrix);
+        drawMatrix.postTranslate(xinit, yinit);
+        canvas.drawBitmap(bitmap, drawMatrix, bitmapPaint);
       }
     }
   }
+
+  /**
+   * Returns the picture scaled to the given size, reusing the previous result
+   * if the size hasn't changed.
+   */
+  private Bitmap getScaledBitmap(int w, int h) {
+    if (scaledBitmap == null || scaledBitmap.getWidth() != w || scaledBitmap.getHeight() != h) {
+      Bitmap original = drawable.getBitmap();
+      if (original.getWidth() == w && original.getHeight() == h) {
+        scaledBitmap = original;
+      } else {
+        scaledBitmap = Bitmap.createScaledBitmap(original, w, h, true);
+      }
+    }
+    return scaledBitmap;
+  }
+
+  /**
+   * Extends the sprite's bounds to cover its corners when the picture is
+   * rotated.
+   */
+  @Override
+  protected void getDrawBounds(Rect out) {
+    super.getDrawBounds(out);
+    if (rotates && !out.isEmpty() && Heading() % 180 != 0) {
+      // A rotated rectangle stays within the circle through its corners.
+      int halfDiagonal = (int) Math.ceil(Math.hypot(out.width(), out.height()) / 2);
+      int centerX = out.centerX();
+      int centerY = out.centerY();
+      out.set(centerX - halfDiagonal, centerY - halfDiagonal,
+          centerX + halfDiagonal, centerY + halfDiagonal);
+    }
+  }
  
   /**
    * Returns the path of the sprite's picture
@@ -131,6 +190,7 @@ public class ImageSprite extends Sprite {
       Log.e("ImageSprite", "Unable to load " + picturePath);
       drawable = null;
     }
+    scaledBitmap = null;
     // note: drawable can be null!
     registerChange();
   }
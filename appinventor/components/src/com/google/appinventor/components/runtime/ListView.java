@@ -9,17 +9,18 @@ package com.google.appinventor.components.runtime;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
 import android.text.Editable;
-import android.text.Spannable;
-import android.text.SpannableString;
 import android.text.TextWatcher;
-import android.text.style.AbsoluteSizeSpan;
-import android.text.style.ForegroundColorSpan;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
+import android.widget.Filter;
+import android.widget.Filterable;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 
 import android.widget.LinearLayout.LayoutParams;
 import com.google.appinventor.components.annotations.DesignerComponent;
@@ -60,10 +61,9 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
   protected final ComponentContainer container;
   private final LinearLayout listViewLayout;
 
-  // The adapter contains spannables rather than strings, since we will be changing the item
-  // colors using ForegroundColorSpan
-  private ArrayAdapter<Spannable> adapter;
-  private ArrayAdapter<Spannable> adapterCopy;
+  // The adapter formats the items as they are shown, so that a long list of items doesn't have
+  // to be converted all at once
+  private final ElementsAdapter adapter;
   private YailList items;
   private int selectionIndex;
   private String selection;
@@ -83,6 +83,9 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
   private int textSize;
   private static final int DEFAULT_TEXT_SIZE = 22;
 
+  // The text size in pixels, as it is displayed
+  private int displayTextSize;
+
   /**
    * Creates a new ListView component.
    * @param container  container that the component will be placed in
@@ -94,6 +97,8 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
     // initialize selectionIndex which also sets selection
     SelectionIndex(0);
     view = new android.widget.ListView(container.$context());
+    adapter = new ElementsAdapter();
+    view.setAdapter(adapter);
     view.setOnItemClickListener(this);
     view.setChoiceMode(android.widget.ListView.CHOICE_MODE_SINGLE);
     view.setScrollingCacheEnabled(false);
@@ -258,39 +263,146 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
    * Sets the items of the ListView through an adapter
    */
   public void setAdapterData(){
-    adapter = new ArrayAdapter<Spannable>(container.$context(), android.R.layout.simple_list_item_1,
-        itemsToColoredText());
-    view.setAdapter(adapter);
-
-    adapterCopy = new ArrayAdapter<Spannable>(container.$context(), android.R.layout.simple_list_item_1);
-    for (int i = 0; i < adapter.getCount(); ++i) {
-      adapterCopy.insert(adapter.getItem(i), i);
-    }
+    adapter.setElements(items.toArray());
   }
 
-  public Spannable[] itemsToColoredText() {
+  /*
+   * Updates the text color and size of the items, which are shared by all of the rows.
+   */
+  private void setAdapterStyle() {
     // TODO(hal): Generalize this so that different items could have different
     // colors and even fonts and sizes
-    int size = items.size();
-    int displayTextSize = textSize;
-    Spannable [] objects = new Spannable[size];
-    for (int i = 1; i <= size; i++) {
+    displayTextSize = textSize;
+    if (!container.$form().getCompatibilityMode()) {
+      displayTextSize = (int) (textSize * container.$form().deviceDensity());
+    }
+    adapter.notifyDataSetChanged();
+  }
+
+  /*
+   * The adapter for the items.  A row is formatted only when it is shown, in the TextView
+   * recycled from a row that is no longer shown, and all rows share the text color and size.
+   * Filtering keeps the positions of the matching items rather than a copy of them.
+   */
+  private class ElementsAdapter extends BaseAdapter implements Filterable {
+    private final LayoutInflater inflater = LayoutInflater.from(container.$context());
+    private final Filter filter = new ElementsFilter();
+
+    // The items, which the filter reads on a background thread
+    private volatile Object[] elements = new Object[0];
+
+    // The positions in elements of the rows shown, or null if every item is shown
+    private int[] shown;
+
+    void setElements(Object[] elements) {
+      this.elements = elements;
+      shown = null;
+      notifyDataSetChanged();
+      if (txtSearchBox != null && txtSearchBox.getText().length() > 0) {
+        filter.filter(txtSearchBox.getText());
+      }
+    }
+
+    @Override
+    public int getCount() {
+      return shown == null ? elements.length : shown.length;
+    }
+
+    @Override
+    public String getItem(int position) {
       // Note that the ListPicker and otherPickers pickers convert Yail lists to string by calling
       // YailList.ToStringArray.
       // ListView however, does the string conversion via the adapter, so we must ensure
       // that the adapter uses YailListElementToSring
-      String itemString = YailList.YailListElementToString(items.get(i));
-      // Is there a more efficient way to do conversion to spannable strings that does not
-      // need to allocate new objects?
-      Spannable chars = new SpannableString(itemString);
-      chars.setSpan(new ForegroundColorSpan(textColor),0,chars.length(),0);
-      if (!container.$form().getCompatibilityMode()) {
-        displayTextSize = (int) (textSize * container.$form().deviceDensity());
+      return YailList.YailListElementToString(elements[(int) getItemId(position)]);
+    }
+
+    /*
+     * Returns the position of the row's item in Elements, counting from 0.
+     */
+    @Override
+    public long getItemId(int position) {
+      return shown == null ? position : shown[position];
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+      TextView row = (TextView) convertView;
+      if (row == null) {
+        row = (TextView) inflater.inflate(android.R.layout.simple_list_item_1, parent, false);
+      }
+      row.setText(getItem(position));
+      row.setTextColor(textColor);
+      row.setTextSize(TypedValue.COMPLEX_UNIT_PX, displayTextSize);
+      return row;
+    }
+
+    @Override
+    public Filter getFilter() {
+      return filter;
+    }
+
+    // The matching positions for the elements that were filtered
+    private class Matches {
+      final Object[] elements;
+      final int[] positions;
+
+      Matches(Object[] elements, int[] positions) {
+        this.elements = elements;
+        this.positions = positions;
+      }
+    }
+
+    /*
+     * Matches the items as ArrayAdapter does: an item matches if it, or any of its words,
+     * starts with the text in the filter bar, ignoring case.
+     */
+    private class ElementsFilter extends Filter {
+      @Override
+      protected FilterResults performFiltering(CharSequence constraint) {
+        Object[] elements = ElementsAdapter.this.elements;
+        int[] positions = null;
+        if (constraint != null && constraint.length() > 0) {
+          String prefix = constraint.toString().toLowerCase();
+          positions = new int[elements.length];
+          int count = 0;
+          for (int i = 0; i < elements.length; i++) {
+            if (matches(YailList.YailListElementToString(elements[i]).toLowerCase(), prefix)) {
+              positions[count++] = i;
+            }
+          }
+          int[] matched = new int[count];
+          System.arraycopy(positions, 0, matched, 0, count);
+          positions = matched;
+        }
+        FilterResults results = new FilterResults();
+        results.values = new Matches(elements, positions);
+        results.count = positions == null ? elements.length : positions.length;
+        return results;
+      }
+
+      private boolean matches(String text, String prefix) {
+        if (text.startsWith(prefix)) {
+          return true;
+        }
+        for (String word : text.split(" ")) {
+          if (word.startsWith(prefix)) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      @Override
+      protected void publishResults(CharSequence constraint, FilterResults results) {
+        Matches matches = (Matches) results.values;
+        // Ignore the results if the items were changed while they were being filtered.
+        if (matches.elements == elements) {
+          shown = matches.positions;
+          notifyDataSetChanged();
+        }
       }
-      chars.setSpan(new AbsoluteSizeSpan(displayTextSize),0,chars.length(),0);
-      objects[i - 1] = chars;
     }
-    return objects;
   }
 
   /**
@@ -352,9 +464,8 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
    */
   @Override
   public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-    Spannable item = (Spannable) parent.getAdapter().getItem(position);
-    this.selection = item.toString();
-    this.selectionIndex = adapterCopy.getPosition(item) + 1; // AI lists are 1-based
+    this.selection = adapter.getItem(position);
+    this.selectionIndex = (int) adapter.getItemId(position) + 1; // AI lists are 1-based
 
     AfterPicking();
   }
@@ -474,7 +585,7 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
   @SimpleProperty
   public void TextColor(int argb) {
       textColor = argb;
-      setAdapterData();
+      setAdapterStyle();
   }
 
   /**
@@ -502,7 +613,7 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
         textSize = 999;
       else
         textSize = fontSize;
-      setAdapterData();
+      setAdapterStyle();
   }
 
 }
@@ -11,6 +11,7 @@ import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.GeoJSONUtil;
 import com.google.appinventor.components.runtime.util.MapFactory;
+import com.google.appinventor.components.runtime.util.TileDownloader;
 import com.google.appinventor.components.runtime.util.YailList;
 import org.osmdroid.util.BoundingBox;
 
@@ -82,6 +83,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   private static final String TAG = Map.class.getSimpleName();
 
   private static final String ERROR_INVALID_NUMBER = "%s is not a valid number.";
+  private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
   private static final String ERROR_LATITUDE_OUT_OF_BOUNDS = "Latitude %f is out of bounds.";
   private static final String ERROR_LONGITUDE_OUT_OF_BOUNDS = "Longitude %f is out of bounds.";
 
@@ -118,7 +120,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   public View getView() {
     if (mapController == null) {
-      mapController = MapFactory.newMap(container.$form());
+      mapController = MapFactory.newMap(container.$form(), index);
       mapController.addEventListener(this);
     }
     return mapController.getView();
@@ -400,6 +402,71 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     return mapController.isPanEnabled();
   }
 
+  /**
+   * Enable grouping markers that would be drawn close together into clusters.
+   *
+   * @param cluster True if nearby markers should be shown as a cluster, otherwise false.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void ClusterMarkers(boolean cluster) {
+    mapController.setClusterMarkersEnabled(cluster);
+  }
+
+  @SimpleProperty(category = PropertyCategory.APPEARANCE,
+      description = "If set to true, markers that would be drawn close together are shown as a " +
+          "single cluster labeled with the number of markers in it. Clusters split apart as the " +
+          "user zooms in. Tapping a cluster raises the ClusterClick event.")
+  public boolean ClusterMarkers() {
+    return mapController.isClusterMarkersEnabled();
+  }
+
+  /**
+   * Set the most space, in megabytes, used to keep map tiles on the device.
+   *
+   * @param megabytes The size of the tile cache, in megabytes.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "50")
+  @SimpleProperty
+  public void CacheSize(int megabytes) {
+    if (mapController.getTileCacheSize() == 0) {
+      $form().dispatchErrorOccurredEvent(this, "CacheSize",
+          ErrorMessages.ERROR_UNABLE_TO_CREATE_TILE_CACHE);
+      return;
+    }
+    mapController.setTileCacheSize(Math.max(1, megabytes) * BYTES_PER_MEGABYTE);
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The most space, in megabytes, used to keep map tiles on the device so " +
+          "that they need not be downloaded again. When the cache is full, the tiles used least " +
+          "recently are deleted to make room for new ones. The smallest size is 1 megabyte.")
+  public int CacheSize() {
+    return (int) (mapController.getTileCacheSize() / BYTES_PER_MEGABYTE);
+  }
+
+  /**
+   * Set whether the map shows only tiles already kept on the device.
+   *
+   * @param cacheOnly True if the map should not download tiles, otherwise false.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void CacheOnly(boolean cacheOnly) {
+    mapController.setCacheOnly(cacheOnly);
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "If set to true, the map shows only tiles that are already kept on the " +
+          "device, such as those saved with DownloadRegion, and does not use the network for " +
+          "tiles.")
+  public boolean CacheOnly() {
+    return mapController.isCacheOnly();
+  }
+
   @SimpleProperty
   public void BoundingBox(YailList boundingbox) {
     double latNorth = (Double)((YailList)boundingbox.get(1)).get(1);
@@ -463,6 +530,41 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     return marker;
   }
 
+  @SimpleFunction(description = "Download the map tiles covering the region with the given " +
+      "north, west, south, and east edges, at each zoom level from minZoom to maxZoom, so that " +
+      "the map can be used there without a data connection. The DownloadProgress event is " +
+      "raised as tiles are downloaded, and the RegionDownloaded event when the download is " +
+      "done. Tiles are kept in the cache, whose size is set by CacheSize.")
+  public void DownloadRegion(double north, double west, double south, double east, int minZoom,
+      int maxZoom) {
+    if (north < -90 || north > 90) {
+      $form().dispatchErrorOccurredEvent(this, "DownloadRegion",
+          ErrorMessages.ERROR_INVALID_LATITUDE, north);
+    } else if (south < -90 || south > north) {
+      $form().dispatchErrorOccurredEvent(this, "DownloadRegion",
+          ErrorMessages.ERROR_INVALID_LATITUDE, south);
+    } else if (west < -180 || west > 180) {
+      $form().dispatchErrorOccurredEvent(this, "DownloadRegion",
+          ErrorMessages.ERROR_INVALID_LONGITUDE, west);
+    } else if (east < -180 || east > 180) {
+      $form().dispatchErrorOccurredEvent(this, "DownloadRegion",
+          ErrorMessages.ERROR_INVALID_LONGITUDE, east);
+    } else if (minZoom < TileDownloader.MIN_ZOOM || maxZoom > TileDownloader.MAX_ZOOM
+        || minZoom > maxZoom) {
+      $form().dispatchErrorOccurredEvent(this, "DownloadRegion",
+          ErrorMessages.ERROR_INVALID_ZOOM_RANGE, minZoom, maxZoom, TileDownloader.MIN_ZOOM,
+          TileDownloader.MAX_ZOOM);
+    } else {
+      int tiles = TileDownloader.countTiles(north, west, south, east, minZoom, maxZoom);
+      if (tiles > TileDownloader.MAX_TILES) {
+        $form().dispatchErrorOccurredEvent(this, "DownloadRegion",
+            ErrorMessages.ERROR_TOO_MANY_TILES, tiles, TileDownloader.MAX_TILES);
+      } else {
+        mapController.downloadRegion(north, west, south, east, minZoom, maxZoom);
+      }
+    }
+  }
+
   @SimpleFunction(description = "Save the contents of the Map to the specified path.")
   public void Save(final String path) {
     final List<MapFeature> featuresToSave = new ArrayList<MapFeature>(features);
@@ -524,6 +626,27 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     EventDispatcher.dispatchEvent(this, "LongPressAtPoint", latitude, longitude);
   }
 
+  @SimpleEvent(description = "The user tapped on a cluster of markers. The markers parameter " +
+      "is a list of the markers in the cluster, and latitude and longitude give the location " +
+      "where the cluster is drawn.")
+  public void ClusterClick(YailList markers, double latitude, double longitude) {
+    EventDispatcher.dispatchEvent(this, "ClusterClick", markers, latitude, longitude);
+  }
+
+  @SimpleEvent(description = "Tiles requested with DownloadRegion are being downloaded. " +
+      "tilesDone is the number of tiles downloaded or already on the device so far, out of " +
+      "totalTiles.")
+  public void DownloadProgress(int tilesDone, int totalTiles) {
+    EventDispatcher.dispatchEvent(this, "DownloadProgress", tilesDone, totalTiles);
+  }
+
+  @SimpleEvent(description = "The download started by DownloadRegion is done. " +
+      "tilesDownloaded is the number of tiles downloaded, and tilesFailed is the number that " +
+      "could not be downloaded, such as when the device is offline.")
+  public void RegionDownloaded(int tilesDownloaded, int tilesFailed) {
+    EventDispatcher.dispatchEvent(this, "RegionDownloaded", tilesDownloaded, tilesFailed);
+  }
+
   public MapController getController() {
     return mapController;
   }
@@ -639,6 +762,27 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     });
   }
 
+  @Override
+  public void onClusterClick(final List<MapMarker> markers, final double latitude,
+      final double longitude) {
+    container.$form().runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        ClusterClick(YailList.makeList(markers), latitude, longitude);
+      }
+    });
+  }
+
+  @Override
+  public void onRegionDownloadProgress(int done, int total) {
+    DownloadProgress(done, total);
+  }
+
+  @Override
+  public void onRegionDownloaded(int downloaded, int failed) {
+    RegionDownloaded(downloaded, failed);
+  }
+
   @Override
   public Map getMap() {
     return this;
@@ -649,6 +793,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapMarker marker) {
     features.add(marker);
+    index.add(marker);
     marker.setMap(this);
     mapController.addFeature(marker);
   }
@@ -656,6 +801,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapLineString lineString) {
     features.add(lineString);
+    index.add(lineString);
     lineString.setMap(this);
     mapController.addFeature(lineString);
   }
@@ -663,6 +809,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapPolygon polygon) {
     features.add(polygon);
+    index.add(polygon);
     polygon.setMap(this);
     mapController.addFeature(polygon);
   }
@@ -670,6 +817,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapRectangle rectangle) {
     features.add(rectangle);
+    index.add(rectangle);
     rectangle.setMap(this);
     mapController.addFeature(rectangle);
   }
@@ -677,6 +825,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapCircle circle) {
     features.add(circle);
+    index.add(circle);
     circle.setMap(this);
     mapController.addFeature(circle);
   }
@@ -684,6 +833,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   public void removeFeature(MapFeature feature) {
     features.remove(feature);
+    index.remove(feature);
     mapController.removeFeature(feature);
   }
 }
@@ -324,9 +324,15 @@ public abstract class MapFeatureBase implements MapFeature, HasStroke {
   }
 
   @SuppressWarnings("WeakerAccess")
-  protected final synchronized void clearGeometry() {
-    centroid = null;
-    geometry = null;
+  protected final void clearGeometry() {
+    synchronized (this) {
+      centroid = null;
+      geometry = null;
+    }
+    // Not while holding the lock, since the container's index locks the features it reads
+    if (container != null) {
+      container.onFeatureGeometryChanged(this);
+    }
   }
 
   protected abstract Geometry computeGeometry();
@@ -6,6 +6,8 @@
 package com.google.appinventor.components.runtime;
 
 import android.app.Activity;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import com.google.appinventor.components.annotations.PropertyCategory;
 import com.google.appinventor.components.annotations.SimpleEvent;
@@ -13,22 +15,24 @@ import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
+import com.google.appinventor.components.runtime.util.GeoJSONReader;
 import com.google.appinventor.components.runtime.util.MapFactory;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
+import com.google.appinventor.components.runtime.util.MapFeatureIndex;
 import com.google.appinventor.components.runtime.util.YailList;
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -46,11 +50,9 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
   private static final String ERROR_MALFORMED_URL = "The URL is malformed";
   private static final String ERROR_IO_EXCEPTION = "Unable to download content from URL";
   private static final String ERROR_MALFORMED_GEOJSON = "Malformed GeoJSON response. Expected FeatureCollection as root element.";
-  private static final String ERROR_UNKNOWN_TYPE = "Unrecognized/invalid type in JSON object";
-  private static final String GEOJSON_TYPE = "type";
-  private static final String GEOJSON_FEATURECOLLECTION = "FeatureCollection";
-  private static final String GEOJSON_GEOMETRYCOLLECTION = "GeometryCollection";
-  private static final String GEOJSON_FEATURES = "features";
+
+  // The time spent handling loaded features on the UI thread before letting it draw a frame
+  private static final long BATCH_TIME_MS = 16;
 
   /**
    * <p>List of {@link MapFactory.MapFeature features} associated with this map, including those that are
@@ -58,6 +60,11 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
    */
   protected List<MapFeature> features = new CopyOnWriteArrayList<MapFeature>();
 
+  /**
+   * Spatial index of {@link #features}, used to find the features in an area or near a point.
+   */
+  protected final MapFeatureIndex index = new MapFeatureIndex();
+
   private final MapFactory.MapFeatureVisitor<Void> featureAdder = new MapFactory.MapFeatureVisitor<Void>() {
     @Override
     public Void visit(MapFactory.MapMarker marker, Object... arguments) {
@@ -90,6 +97,8 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     }
   };
 
+  private final Handler androidUIHandler = new Handler();
+
   @SuppressWarnings("WeakerAccess")
   protected MapFeatureContainerBase(ComponentContainer container) {
     super(container);
@@ -106,6 +115,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
       feature.removeFromMap();
     }
     this.features.clear();
+    index.clear();
     ListIterator<?> it = features.listIterator(1);
     while (it.hasNext()) {
       Object o = it.next();
@@ -186,7 +196,32 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
   public void LoadFromURL(final String url) {
     AsynchUtil.runAsynchronously(new Runnable() {
       public void run() {
-        performGet(url);
+        performGet(new FeatureLoader(url, false));
+      }
+    });
+  }
+
+  /**
+   * Load a feature collection in GeoJSON format from the given url and add its features to this
+   * container. The features are read in the background and added a batch at a time, with a
+   * LoadProgress event after each batch, so that the map stays responsive while thousands of
+   * features load. When all of the features have been added, the event FeaturesAdded will be
+   * raised with the given url and a list of the new features. On failure, the LoadError event
+   * will be raised with any applicable HTTP response code and error message.
+   *
+   * @param url The URL from which to read a GeoJSON-encoded feature collection
+   */
+  @SimpleFunction(description = "<p>Load a feature collection in " +
+      "<a href=\"https://en.wikipedia.org/wiki/GeoJSON\">GeoJSON</a> format from the given " +
+      "url and add its features. The features are added a batch at a time as they are read, " +
+      "with a LoadProgress event after each batch. When all of the features have been added, " +
+      "the event FeaturesAdded will be raised with the given url and a list of the new " +
+      "features. On failure, the LoadError event will be raised with any applicable HTTP " +
+      "response code and error message.</p>")
+  public void AddFeaturesFromURL(final String url) {
+    AsynchUtil.runAsynchronously(new Runnable() {
+      public void run() {
+        performGet(new FeatureLoader(url, true));
       }
     });
   }
@@ -220,12 +255,60 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     }
   }
 
+  /**
+   * Get the features that lie at least partly within the area bounded by the given latitudes
+   * and longitudes. The features are found using a spatial index, so this is much faster than
+   * checking each of the features in turn when there are many of them.
+   *
+   * @param north The latitude of the north edge of the area
+   * @param west The longitude of the west edge of the area
+   * @param south The latitude of the south edge of the area
+   * @param east The longitude of the east edge of the area
+   * @return A YailList of the features in the area, in no particular order
+   */
+  @SimpleFunction(description = "Returns a list of the features that lie at least partly " +
+      "within the area bounded by the given north and south latitudes and west and east " +
+      "longitudes. The features are listed in no particular order.")
+  public YailList FeaturesInBoundingBox(double north, double west, double south, double east) {
+    return YailList.makeList(index.featuresInBoundingBox(north, west, south, east));
+  }
+
+  /**
+   * Get the features nearest to the given point, nearest first. The distance to a feature is
+   * measured to its edge, as by the feature's DistanceToPoint method with centroid false.
+   *
+   * @param latitude The latitude of the point
+   * @param longitude The longitude of the point
+   * @param count The number of features to return
+   * @return A YailList of at most count features, nearest first
+   */
+  @SimpleFunction(description = "Returns a list of the count features nearest to the point " +
+      "given by latitude and longitude, nearest first. The distance to a feature is measured " +
+      "to its nearest edge. If there are fewer than count features, all of them are returned.")
+  public YailList NearestFeatures(double latitude, double longitude, int count) {
+    return YailList.makeList(index.nearestFeatures(latitude, longitude, count));
+  }
+
   @SimpleEvent(description = "A GeoJSON document was successfully read from url. The features " +
       "specified in the document are provided as a list in features.")
   public void GotFeatures(String url, YailList features) {
     EventDispatcher.dispatchEvent(this, "GotFeatures", url, features);
   }
 
+  @SimpleEvent(description = "The features of a GeoJSON document read from url by " +
+      "AddFeaturesFromURL have all been added. The new features are provided as a list in " +
+      "features.")
+  public void FeaturesAdded(String url, YailList features) {
+    EventDispatcher.dispatchEvent(this, "FeaturesAdded", url, features);
+  }
+
+  @SimpleEvent(description = "Another batch of the features of the GeoJSON document at url has " +
+      "been read by LoadFromURL, or added by AddFeaturesFromURL. featuresLoaded is the number " +
+      "of features read or added so far.")
+  public void LoadProgress(String url, int featuresLoaded) {
+    EventDispatcher.dispatchEvent(this, "LoadProgress", url, featuresLoaded);
+  }
+
   @SimpleEvent(description = "An error was encountered while processing a GeoJSON document at " +
       "the given url. The responseCode parameter will contain an HTTP status code and the " +
       "errorMessage parameter will contain a detailed error message.")
@@ -260,31 +343,37 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
 
   public void removeFeature(MapFactory.MapFeature feature) {
     features.remove(feature);
+    index.remove(feature);
     getMap().removeFeature(feature);
   }
 
   void addFeature(MapFactory.MapMarker marker) {
     features.add(marker);
+    index.add(marker);
     getMap().addFeature(marker);
   }
 
   void addFeature(MapFactory.MapLineString polyline) {
     features.add(polyline);
+    index.add(polyline);
     getMap().addFeature(polyline);
   }
 
   void addFeature(MapFactory.MapPolygon polygon) {
     features.add(polygon);
+    index.add(polygon);
     getMap().addFeature(polygon);
   }
 
   void addFeature(MapFactory.MapCircle circle) {
     features.add(circle);
+    index.add(circle);
     getMap().addFeature(circle);
   }
 
   void addFeature(MapFactory.MapRectangle rectangle) {
     features.add(rectangle);
+    index.add(rectangle);
     getMap().addFeature(rectangle);
   }
 
@@ -293,13 +382,25 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     feature.accept(featureAdder);
   }
 
-  private void performGet(final String url) {
+  @Override
+  public void onFeatureGeometryChanged(MapFactory.MapFeature feature) {
+    index.update(feature);
+    if (getMap() != this) {
+      getMap().onFeatureGeometryChanged(feature);
+    }
+  }
+
+  private void performGet(final FeatureLoader loader) {
     try {
-      String jsonContent = loadUrl(url);
-      if (jsonContent == null) {
+      Reader reader = openUrl(loader.url);
+      if (reader == null) {
         return;
       }
-      processGeoJSON(url, jsonContent);
+      try {
+        loadGeoJSON(loader, reader);
+      } finally {
+        reader.close();
+      }
     } catch(Exception e) {
       Log.e(TAG, "Exception retreiving GeoJSON", e);
       $form().dispatchErrorOccurredEvent(this, "LoadFromURL", ERROR_CODE_UNKNOWN_TYPE,
@@ -307,7 +408,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     }
   }
 
-  private String loadUrl(final String url) {
+  private Reader openUrl(final String url) {
     try {
       URLConnection connection = new URL(url).openConnection();
       connection.connect();
@@ -325,16 +426,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
           return null;
         }
       }
-      BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
-            "UTF-8"));
-      StringBuilder content = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        content.append(line);
-        content.append("\n");
-      }
-      reader.close();
-      return content.toString();
+      return new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
     } catch(MalformedURLException e) {
       $form().runOnUiThread(new Runnable() {
         public void run() {
@@ -353,11 +445,51 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     return null;
   }
 
+  /*
+   * Reads a GeoJSON document, passing its features to the loader as they are read once its type
+   * is known to be a collection, so that nothing is added for a document of the wrong type. This
+   * is called on a background thread.
+   */
+  private void loadGeoJSON(final FeatureLoader loader, Reader reader)
+      throws IOException, JSONException {
+    String type = null;
+    try {
+      type = new GeoJSONReader(reader).readFeatureCollection(loader);
+    } finally {
+      if (type == null) {
+        loader.cancel();
+      }
+    }
+    if (!GeoJSONReader.isCollectionType(type)) {
+      loader.cancel();
+      $form().runOnUiThread(new Runnable() {
+        public void run() {
+          MapFeatureContainerBase.this.LoadError(loader.url, ERROR_CODE_MALFORMED_GEOJSON,
+              ERROR_MALFORMED_GEOJSON);
+        }
+      });
+      return;
+    }
+    loader.finish();
+  }
+
   @SuppressWarnings("WeakerAccess")
   protected void processGeoJSON(final String url, final String content) throws JSONException {
-    JSONObject parsedData = new JSONObject(content);
-    String type = parsedData.optString(GEOJSON_TYPE);
-    if (!GEOJSON_FEATURECOLLECTION.equals(type) && !GEOJSON_GEOMETRYCOLLECTION.equals(type)) {
+    String type;
+    final List<YailList> yailFeatures = new ArrayList<YailList>();
+    try {
+      type = new GeoJSONReader(new StringReader(content)).readFeatureCollection(
+          new GeoJSONReader.FeatureHandler() {
+            @Override
+            public void onFeature(YailList feature) {
+              yailFeatures.add(feature);
+            }
+          });
+    } catch (IOException e) {
+      // A StringReader doesn't throw IOException
+      throw new JSONException(e.getMessage());
+    }
+    if (!GeoJSONReader.isCollectionType(type)) {
       $form().runOnUiThread(new Runnable() {
         public void run() {
           MapFeatureContainerBase.this.LoadError(url, ERROR_CODE_MALFORMED_GEOJSON,
@@ -366,11 +498,6 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
       });
       return;
     }
-    JSONArray features = parsedData.getJSONArray(GEOJSON_FEATURES);
-    final List<YailList> yailFeatures = new ArrayList<YailList>();
-    for (int i = 0; i < features.length(); i++) {
-      yailFeatures.add(jsonObjectToYail(features.getJSONObject(i)));
-    }
     $form().runOnUiThread(new Runnable() {
       public void run() {
         MapFeatureContainerBase.this.GotFeatures(url, YailList.makeList(yailFeatures));
@@ -378,51 +505,111 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     });
   }
 
-  private YailList jsonObjectToYail(JSONObject object) throws JSONException {
-    List<YailList> pairs = new ArrayList<YailList>();
-    @SuppressWarnings("unchecked")  // json only allows String keys
-        Iterator<String> j = object.keys();
-    while (j.hasNext()) {
-      String key = j.next();
-      Object value = object.get(key);
-      if (value instanceof Boolean ||
-          value instanceof Integer ||
-          value instanceof Long ||
-          value instanceof Double ||
-          value instanceof String) {
-        pairs.add(YailList.makeList(new Object[] { key, value }));
-      } else if (value instanceof JSONArray) {
-        pairs.add(YailList.makeList(new Object[] { key, jsonArrayToYail((JSONArray) value)}));
-      } else if (value instanceof JSONObject) {
-        pairs.add(YailList.makeList(new Object[] { key, jsonObjectToYail((JSONObject) value)}));
-      } else {
-        Log.wtf(TAG, ERROR_UNKNOWN_TYPE);
-        throw new IllegalArgumentException(ERROR_UNKNOWN_TYPE);
+  /**
+   * Takes the features read from a GeoJSON document on a background thread and handles them on
+   * the UI thread, a batch at a time. Each batch ends when the UI thread has spent
+   * {@link #BATCH_TIME_MS} on it, so that a frame can be drawn between batches. When creating
+   * features, the overlays for a batch are added to the map together, before the next frame.
+   */
+  private class FeatureLoader implements GeoJSONReader.FeatureHandler, Runnable {
+    private final String url;
+    private final boolean create;
+
+    // The features read but not yet handled, and the state of the reading, guarded by this
+    private final LinkedList<YailList> pending = new LinkedList<YailList>();
+    private boolean finished;
+    private boolean cancelled;
+    private boolean posted;
+
+    // The features handled so far, on the UI thread
+    private final List<Object> loaded = new ArrayList<Object>();
+
+    FeatureLoader(String url, boolean create) {
+      this.url = url;
+      this.create = create;
+    }
+
+    @Override
+    public void onFeature(YailList feature) {
+      synchronized (this) {
+        pending.add(feature);
+        post();
       }
     }
-    return YailList.makeList(pairs);
-  }
-
-  private YailList jsonArrayToYail(JSONArray array) throws JSONException {
-    List<Object> items = new ArrayList<Object>();
-    for (int i = 0; i < array.length(); i++) {
-      Object value = array.get(i);
-      if (value instanceof Boolean ||
-          value instanceof Integer ||
-          value instanceof Long ||
-          value instanceof Double ||
-          value instanceof String) {
-        items.add(value);
-      } else if (value instanceof JSONArray) {
-        items.add(jsonArrayToYail((JSONArray) value));
-      } else if (value instanceof JSONObject) {
-        items.add(jsonObjectToYail((JSONObject) value));
-      } else {
-        Log.wtf(TAG, ERROR_UNKNOWN_TYPE);
-        throw new IllegalArgumentException(ERROR_UNKNOWN_TYPE);
+
+    /*
+     * Called when all of the features have been read.
+     */
+    synchronized void finish() {
+      finished = true;
+      post();
+    }
+
+    /*
+     * Called if the document can't be read. The features already added are left in place.
+     */
+    synchronized void cancel() {
+      cancelled = true;
+      pending.clear();
+    }
+
+    // Must be called holding the lock on this
+    private void post() {
+      if (!posted) {
+        posted = true;
+        androidUIHandler.post(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      long end = SystemClock.uptimeMillis() + BATCH_TIME_MS;
+      int count = loaded.size();
+      boolean done;
+      while (true) {
+        YailList description;
+        synchronized (this) {
+          if (cancelled) {
+            posted = false;
+            return;
+          }
+          if (pending.isEmpty()) {
+            posted = false;
+            done = finished;
+            break;
+          }
+          if (SystemClock.uptimeMillis() > end) {
+            androidUIHandler.post(this);  // Continue after the next frame
+            done = false;
+            break;
+          }
+          description = pending.removeFirst();
+        }
+        handle(description);
+      }
+      if (loaded.size() > count) {
+        LoadProgress(url, loaded.size());
+      }
+      if (done) {
+        if (create) {
+          FeaturesAdded(url, YailList.makeList(loaded));
+        } else {
+          GotFeatures(url, YailList.makeList(loaded));
+        }
       }
     }
-    return YailList.makeList(items);
-  }
 
+    private void handle(YailList description) {
+      if (!create) {
+        loaded.add(description);
+        return;
+      }
+      try {
+        loaded.add(processGeoJSONFeature(TAG, MapFeatureContainerBase.this, description));
+      } catch(IllegalArgumentException e) {
+        $form().dispatchErrorOccurredEvent(MapFeatureContainerBase.this, "AddFeaturesFromURL",
+            ERROR_CODE_MALFORMED_GEOJSON, e.getMessage());
+      }
+    }
+  }
 }
@@ -18,6 +18,8 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.FroyoUtil;
 import com.google.appinventor.components.runtime.util.OrientationSensorUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.SensorPipeline;
+import com.google.appinventor.components.runtime.util.YailList;
 
 import android.content.Context;
 import android.hardware.Sensor;
@@ -95,6 +97,10 @@ public class OrientationSensor extends AndroidNonvisibleComponent
   private final float[] inclinationMatrix = new float[DIMENSIONS * DIMENSIONS];
   private final float[] values = new float[DIMENSIONS];
 
+  // Decides which samples raise events.  Its window statistics are not offered, since the mean
+  // or extremes of angles that wrap around, such as 359 and 1 degrees of azimuth, mislead.
+  private final SensorPipeline pipeline = new SensorPipeline(1);
+
   /**
    * Creates a new OrientationSensor component.
    *
@@ -135,6 +141,7 @@ public class OrientationSensor extends AndroidNonvisibleComponent
       // Throw out sensor information that will go stale.
       accelsFilled = false;
       magsFilled = false;
+      pipeline.clear();
     }
   }
 
@@ -155,6 +162,18 @@ public class OrientationSensor extends AndroidNonvisibleComponent
     EventDispatcher.dispatchEvent(this, "OrientationChanged", azimuth, pitch, roll);
   }
 
+  /**
+   * SamplesReceived event handler.
+   */
+  @SimpleEvent(description = "Indicates that samples arrived while BatchDelivery is true. " +
+      "The samples parameter is a list of the samples since the last SamplesReceived event, " +
+      "oldest first, each a list of the azimuth, pitch and roll and the time in nanoseconds " +
+      "at which the sample was taken. At most " + SensorPipeline.MAX_BATCH_SIZE +
+      " samples are kept, so if more arrive the oldest are dropped.")
+  public void SamplesReceived(YailList samples) {
+    EventDispatcher.dispatchEvent(this, "SamplesReceived", samples);
+  }
+
   // Properties
 
   /**
@@ -200,6 +219,55 @@ public class OrientationSensor extends AndroidNonvisibleComponent
     }
   }
 
+  /**
+   * DeliveryInterval property getter method.
+   *
+   * @return  minimum interval between events in ms
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public int DeliveryInterval() {
+    return pipeline.getInterval();
+  }
+
+  /**
+   * DeliveryInterval property setter method.
+   *
+   * @param interval  minimum interval between events in ms
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty(description = "The minimum interval, in milliseconds, between " +
+      "OrientationChanged events, or between SamplesReceived events if BatchDelivery is " +
+      "true. The Azimuth, Pitch and Roll properties still follow every sample. If 0, every " +
+      "sample raises an event.")
+  public void DeliveryInterval(int interval) {
+    pipeline.setInterval(interval);
+  }
+
+  /**
+   * BatchDelivery property getter method.
+   *
+   * @return  {@code true} if samples are delivered in batches
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public boolean BatchDelivery() {
+    return pipeline.isBatching();
+  }
+
+  /**
+   * BatchDelivery property setter method.
+   *
+   * @param batch  {@code true} to deliver samples in batches
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty(description = "If true, the samples that arrive during each " +
+      "DeliveryInterval are delivered together by the SamplesReceived event, and " +
+      "OrientationChanged is not raised.")
+  public void BatchDelivery(boolean batch) {
+    pipeline.setBatching(batch);
+  }
+
   /**
    * Pitch property getter method (read-only property).
    *
@@ -396,8 +464,14 @@ public class OrientationSensor extends AndroidNonvisibleComponent
             break;
         }
 
-        // Raise event.
-        OrientationChanged(azimuth, pitch, roll);
+        // Raise event, if it is time to.
+        if (pipeline.add(sensorEvent.timestamp, azimuth, pitch, roll)) {
+          if (pipeline.isBatching()) {
+            SamplesReceived(pipeline.takeBatch());
+          } else {
+            OrientationChanged(azimuth, pitch, roll);
+          }
+        }
       }
     }
   }
@@ -18,6 +18,7 @@ import com.google.appinventor.components.runtime.errors.IllegalArgumentError;
 import com.google.appinventor.components.runtime.util.BoundingBox;
 import com.google.appinventor.components.runtime.util.TimerInternal;
 
+import android.graphics.Rect;
 import android.os.Handler;
 import android.util.Log;
 
@@ -45,6 +46,11 @@ public abstract class Sprite extends VisibleComponent
   private static final boolean DEFAULT_VISIBLE = true;
   private static final double DEFAULT_Z = 1.0;
 
+  // Upper bound on the number of moves made for one frame of the Canvas game
+  // loop, so that a long stall (e.g., a garbage collection) doesn't make
+  // sprites jump across the screen.
+  private static final int MAX_MOVES_PER_FRAME = 4;
+
   protected final Canvas canvas;              // enclosing Canvas
   private final TimerInternal timerInternal;  // timer to control movement
   private final Handler androidUIHandler;     // for posting actions
@@ -62,6 +68,7 @@ public abstract class Sprite extends VisibleComponent
   // Properties: These are protected, instead of private, both so they
   // can be used by subclasses and tests.
   protected int interval;      // number of milliseconds until next move
+  protected boolean enabled = true;
   protected boolean visible = true;
   // TODO(user): Convert to have co-ordinates be center, not upper left.
   // Note that this would simplify pointTowards to remove the adjustment
@@ -71,6 +78,14 @@ public abstract class Sprite extends VisibleComponent
   protected double zLayer;     // z-coordinate, higher values go in front
   protected float speed;       // magnitude in pixels
 
+  // Milliseconds accumulated toward the next move while this sprite is driven
+  // by the enclosing Canvas's game loop instead of its own timer.
+  private long frameTimeAccumulated;
+
+  // Area of the Canvas view, in pixels, that this sprite covered the last
+  // time the Canvas was drawn.  Used to limit redrawing to what changed.
+  private final Rect drawnBounds = new Rect();
+
   protected Form form;
 
   /**
@@ -158,7 +173,7 @@ public abstract class Sprite extends VisibleComponent
       description = "Controls whether the sprite moves when its speed is non-zero.",
       category = PropertyCategory.BEHAVIOR)
   public boolean Enabled() {
-    return timerInternal.Enabled();
+    return enabled;
   }
 
   /**
@@ -171,7 +186,10 @@ public abstract class Sprite extends VisibleComponent
       defaultValue = DEFAULT_ENABLED ? "True" : "False")
   @SimpleProperty
       public void Enabled(boolean enabled) {
-    timerInternal.Enabled(enabled);
+    this.enabled = enabled;
+    // When the Canvas runs its game loop, it moves the sprite on each frame,
+    // so the per-sprite timer stays off.
+    timerInternal.Enabled(enabled && !canvas.GameLoop());
   }
 
   /**
@@ -908,6 +926,105 @@ public abstract class Sprite extends VisibleComponent
 
   // Convenience methods for dealing with hitting the screen edge and collisions
 
+  // Support for limiting Canvas redraws to the areas that changed
+
+  /**
+   * Computes the area of the Canvas view, in pixels, that this sprite covers
+   * when drawn at its current position.  The result is empty if the sprite is
+   * not visible.  Subclasses that draw outside of their width and height,
+   * such as rotated images, should override this method.
+   *
+   * @param out the rectangle in which to store the result
+   */
+  protected void getDrawBounds(Rect out) {
+    if (!visible) {
+      out.setEmpty();
+      return;
+    }
+    float density = form.deviceDensity();
+    // Pad by a pixel to allow for anti-aliasing.
+    out.set((int) Math.floor(xLeft * density) - 1,
+        (int) Math.floor(yTop * density) - 1,
+        (int) Math.ceil((xLeft + Width()) * density) + 1,
+        (int) Math.ceil((yTop + Height()) * density) + 1);
+  }
+
+  /**
+   * Computes the area of the Canvas view that must be redrawn to show this
+   * sprite's latest change: the union of where it was last drawn and where
+   * it will be drawn now.
+   *
+   * @param out the rectangle in which to store the result
+   */
+  void getDirtyBounds(Rect out) {
+    getDrawBounds(out);
+    out.union(drawnBounds);
+  }
+
+  /**
+   * Records where this sprite was drawn, as computed by
+   * {@link #getDrawBounds(Rect)}.  Called by the Canvas when it is drawn.
+   */
+  void setDrawnBounds(Rect bounds) {
+    drawnBounds.set(bounds);
+  }
+
+  // Support for the Canvas game loop
+
+  /**
+   * Switches between moving on this sprite's own timer and being moved by
+   * the enclosing Canvas on each display frame.
+   *
+   * @param frameDriven {@code true} if the Canvas game loop moves the sprite
+   */
+  void setFrameDriven(boolean frameDriven) {
+    frameTimeAccumulated = 0;
+    timerInternal.Enabled(enabled && !frameDriven);
+  }
+
+  /**
+   * Called by the Canvas game loop once per frame.  Moves the sprite once for
+   * every {@link #Interval()} milliseconds that have elapsed, so that the
+   * sprite covers the same distance as it would on its own timer, and raises
+   * {@link #EdgeReached(int)} if needed.  Unlike {@link #alarm()}, this
+   * neither redraws the Canvas nor checks for collisions; the Canvas does
+   * both once for all of the sprites that moved during the frame.
+   *
+   * @param elapsedMillis milliseconds since the previous frame
+   * @return {@code true} if the sprite moved, {@code false} otherwise
+   */
+  boolean advanceFrame(long elapsedMillis) {
+    if (!initialized || !enabled || speed == 0) {
+      frameTimeAccumulated = 0;
+      return false;
+    }
+    int moves = 0;
+    int interval = Interval();
+    if (interval <= 0) {
+      // A zero interval moves as often as possible, i.e., once per frame.
+      updateCoordinates();
+      moves = 1;
+    } else {
+      frameTimeAccumulated += elapsedMillis;
+      while (frameTimeAccumulated >= interval && moves < MAX_MOVES_PER_FRAME) {
+        updateCoordinates();
+        frameTimeAccumulated -= interval;
+        moves++;
+      }
+      if (moves == MAX_MOVES_PER_FRAME) {
+        frameTimeAccumulated = 0;  // drop the backlog
+      }
+    }
+    if (moves == 0) {
+      return false;
+    }
+    int edge = hitEdge();
+    if (edge != Component.DIRECTION_NONE) {
+      EdgeReached(edge);
+    }
+    return true;
+  }
+
   // AlarmHandler implementation
 
   /**
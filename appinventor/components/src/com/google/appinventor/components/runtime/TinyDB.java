@@ -16,13 +16,19 @@ import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 import com.google.appinventor.components.runtime.util.JsonUtil;
+import com.google.appinventor.components.runtime.util.YailList;
 
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -61,7 +67,47 @@ import org.json.JSONException;
     iconName = "images/tinyDB.png")
 
 @SimpleObject
-public class TinyDB extends AndroidNonvisibleComponent implements Component, Deleteable {
+public class TinyDB extends AndroidNonvisibleComponent implements Component, Deleteable,
+    OnPauseListener, OnDestroyListener {
+
+  // How long after a value is stored the pending values are committed
+  private static final long FLUSH_DELAY_MS = 100;
+
+  // How long the flusher's thread waits for more writes before it ends
+  private static final long FLUSHER_IDLE_TIMEOUT_MS = 10000;
+
+  // Stored values are kept as pending writes and committed together on a background thread a
+  // little later, so that storing many values doesn't block the UI thread with a commit each.
+  // There is only one data store per app, so the pending writes and the decoded values are
+  // shared by all TinyDB components.  The static fields are guarded by lock.
+  private static final Object lock = new Object();
+
+  // The JSON text of each value stored but not yet committed, by tag.  A null text means that
+  // the tag was cleared.
+  private static final Map<String, String> pendingWrites = new HashMap<String, String>();
+
+  // Whether ClearAll was called since the last commit, and how many times it has been called
+  private static boolean pendingClear;
+  private static int clearCount;
+
+  private static boolean flushScheduled;
+  private static ScheduledThreadPoolExecutor flusher;
+
+  // Held while committing, so that commits are made in order
+  private static final Object flushLock = new Object();
+
+  // The decoded value for each tag that has been read, with the JSON text it was decoded from
+  private static final Map<String, CachedValue> decodedValues = new HashMap<String, CachedValue>();
+
+  private static class CachedValue {
+    final String json;
+    final Object value;
+
+    CachedValue(String json, Object value) {
+      this.json = json;
+      this.value = value;
+    }
+  }
 
   private SharedPreferences sharedPreferences;
 
@@ -77,6 +123,8 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
     super(container.$form());
     context = (Context) container.$context();
     sharedPreferences = context.getSharedPreferences("TinyDB1", Context.MODE_PRIVATE);
+    form.registerForOnPause(this);
+    form.registerForOnDestroy(this);
   }
 
   /**
@@ -89,13 +137,48 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public void StoreValue(final String tag, final Object valueToStore) {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
+    String json;
     try {
-      sharedPrefsEditor.putString(tag, JsonUtil.getJsonRepresentation(valueToStore));
-      sharedPrefsEditor.commit();
+      json = JsonUtil.getJsonRepresentation(valueToStore);
+    } catch (JSONException e) {
+      throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
+    }
+    synchronized (lock) {
+      pendingWrites.put(tag, json);
+      scheduleFlush();
+    }
+  }
+
+  /**
+   * Store each of the given values under the corresponding tag.
+   *
+   * @param tags The tags to use
+   * @param valuesToStore The values to store, one for each tag
+   */
+  @SimpleFunction(description = "Store each value in the valuesToStore list under the tag in " +
+      "the same position of the tags list. The two lists must be the same length.")
+  public void StoreValues(YailList tags, YailList valuesToStore) {
+    Object[] tagArray = tags.toArray();
+    Object[] valueArray = valuesToStore.toArray();
+    if (tagArray.length != valueArray.length) {
+      throw new YailRuntimeError("The number of values to store (" + valueArray.length +
+          ") is not the same as the number of tags (" + tagArray.length + ").",
+          "Invalid Arguments.");
+    }
+    String[] jsons = new String[valueArray.length];
+    try {
+      for (int i = 0; i < valueArray.length; i++) {
+        jsons[i] = JsonUtil.getJsonRepresentation(valueArray[i]);
+      }
     } catch (JSONException e) {
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
+    synchronized (lock) {
+      for (int i = 0; i < tagArray.length; i++) {
+        pendingWrites.put(YailList.YailListElementToString(tagArray[i]), jsons[i]);
+      }
+      scheduleFlush();
+    }
   }
 
   /**
@@ -109,15 +192,32 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   @SimpleFunction
   public Object GetValue(final String tag, final Object valueIfTagNotThere) {
     try {
-      String value = sharedPreferences.getString(tag, "");
+      String value = getJson(tag);
       // If there's no entry with tag as a key then return the empty string.
       //    was  return (value.length() == 0) ? "" : JsonUtil.getObjectFromJson(value);
-      return (value.length() == 0) ? valueIfTagNotThere : JsonUtil.getObjectFromJson(value);
+      return (value.length() == 0) ? valueIfTagNotThere : decode(tag, value);
     } catch (JSONException e) {
       throw new YailRuntimeError("Value failed to convert from JSON.", "JSON Creation Error.");
     }
   }
 
+  /**
+   * Retrieve the values stored under the given tags.
+   *
+   * @param tags The tags to use
+   * @param valueIfTagNotThere The value returned for each tag not in TinyDB
+   * @return a list of the values stored under the tags
+   */
+  @SimpleFunction(description = "Retrieve a list of the values stored under the given tags, " +
+      "with valueIfTagNotThere in place of the value for each tag that isn't there.")
+  public Object GetValues(YailList tags, Object valueIfTagNotThere) {
+    List<Object> values = new ArrayList<Object>(tags.size());
+    for (Object tag : tags.toArray()) {
+      values.add(GetValue(YailList.YailListElementToString(tag), valueIfTagNotThere));
+    }
+    return values;
+  }
+
    /**
    * Return a list of all the tags in the data store
    *
@@ -126,12 +226,20 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public Object GetTags() {
-    List<String> keyList = new ArrayList<String>();
-    Map<String,?> keyValues = sharedPreferences.getAll();
-    // here is the simple way to get keys
-    keyList.addAll(keyValues.keySet());
-    java.util.Collections.sort(keyList);
-    return keyList;
+    Set<String> keys = new TreeSet<String>();
+    synchronized (lock) {
+      if (!pendingClear) {
+        keys.addAll(sharedPreferences.getAll().keySet());
+      }
+      for (Map.Entry<String, String> write : pendingWrites.entrySet()) {
+        if (write.getValue() == null) {
+          keys.remove(write.getKey());
+        } else {
+          keys.add(write.getKey());
+        }
+      }
+    }
+    return new ArrayList<String>(keys);
   }
 
   /**
@@ -140,9 +248,13 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public void ClearAll() {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    synchronized (lock) {
+      pendingWrites.clear();
+      pendingClear = true;
+      clearCount++;
+      decodedValues.clear();
+      scheduleFlush();
+    }
   }
 
   /**
@@ -152,15 +264,148 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public void ClearTag(final String tag) {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.remove(tag);
-    sharedPrefsEditor.commit();
+    synchronized (lock) {
+      pendingWrites.put(tag, null);
+      decodedValues.remove(tag);
+      scheduleFlush();
+    }
+  }
+
+  /**
+   * Save the values that have been stored but not saved yet.
+   */
+  @SimpleFunction(description = "Save the values that have been stored but not saved yet. " +
+      "Stored values are saved shortly after they are stored, and when the app is paused or " +
+      "closed, so this is only needed to be sure that they have been saved at a given point.")
+  public void Flush() {
+    flush(sharedPreferences);
   }
 
   @Override
   public void onDelete() {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    ClearAll();
+    Flush();
+  }
+
+  // OnPauseListener implementation
+
+  @Override
+  public void onPause() {
+    Flush();
+  }
+
+  // OnDestroyListener implementation
+
+  @Override
+  public void onDestroy() {
+    Flush();
+  }
+
+  /*
+   * Returns the JSON text stored under the tag, or the empty string if there is none, taking
+   * the pending writes into account.
+   */
+  private String getJson(String tag) {
+    synchronized (lock) {
+      if (pendingWrites.containsKey(tag)) {
+        String json = pendingWrites.get(tag);
+        return json == null ? "" : json;
+      }
+      if (pendingClear) {
+        return "";
+      }
+    }
+    return sharedPreferences.getString(tag, "");
+  }
+
+  /*
+   * Decodes the JSON text stored under the tag, reusing the last value decoded for the tag if
+   * the text hasn't changed.  The decoded values are Java lists rather than YailLists, which the
+   * runtime copies into new YailLists each time they are returned, so the cached values can't be
+   * changed by the app.
+   */
+  private static Object decode(String tag, String json) throws JSONException {
+    synchronized (lock) {
+      CachedValue cached = decodedValues.get(tag);
+      if (cached != null && cached.json.equals(json)) {
+        return cached.value;
+      }
+    }
+    Object value = JsonUtil.getObjectFromJson(json);
+    synchronized (lock) {
+      decodedValues.put(tag, new CachedValue(json, value));
+    }
+    return value;
+  }
+
+  /*
+   * Arranges for the pending writes to be committed soon.  The caller must hold lock.
+   */
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    if (flusher == null) {
+      flusher = new ScheduledThreadPoolExecutor(1);
+      // The flusher is shared by every TinyDB and never shut down, so let its thread end when
+      // there is nothing to commit rather than keeping the app's process alive.
+      flusher.setKeepAliveTime(FLUSHER_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      flusher.allowCoreThreadTimeOut(true);
+    }
+    final SharedPreferences preferences = sharedPreferences;
+    flusher.schedule(new Runnable() {
+      @Override
+      public void run() {
+        flush(preferences);
+      }
+    }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    flushScheduled = true;
+  }
+
+  /*
+   * Commits the pending writes.  Until the commit is done, the writes stay pending so that
+   * GetValue finds them.
+   */
+  private static void flush(SharedPreferences preferences) {
+    synchronized (flushLock) {
+      Map<String, String> writes;
+      boolean clear;
+      int clears;
+      synchronized (lock) {
+        flushScheduled = false;
+        if (pendingWrites.isEmpty() && !pendingClear) {
+          return;
+        }
+        writes = new HashMap<String, String>(pendingWrites);
+        clear = pendingClear;
+        clears = clearCount;
+      }
+
+      SharedPreferences.Editor sharedPrefsEditor = preferences.edit();
+      if (clear) {
+        sharedPrefsEditor.clear();
+      }
+      for (Map.Entry<String, String> write : writes.entrySet()) {
+        if (write.getValue() == null) {
+          sharedPrefsEditor.remove(write.getKey());
+        } else {
+          sharedPrefsEditor.putString(write.getKey(), write.getValue());
+        }
+      }
+      sharedPrefsEditor.commit();
+
+      synchronized (lock) {
+        // Forget the writes that were committed, unless the tags have been written again since.
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+          String tag = write.getKey();
+          if (pendingWrites.containsKey(tag) && pendingWrites.get(tag) == write.getValue()) {
+            pendingWrites.remove(tag);
+          }
+        }
+        if (clearCount == clears) {
+          pendingClear = false;
+        }
+      }
+    }
   }
 }
@@ -25,31 +25,34 @@ import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
 import com.google.appinventor.components.runtime.util.GingerbreadUtil;
+import com.google.appinventor.components.runtime.util.HttpUtil;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.XmlUtil;
 import com.google.appinventor.components.runtime.util.YailList;
+import com.google.common.annotations.VisibleForTesting;
 
 import android.app.Activity;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
 import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.XML;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.CookieHandler;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -131,6 +134,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     final boolean allowCookies;
     final boolean saveResponse;
     final String responseFileName;
+    final boolean useCache;
+    final int timeout;
     final Map<String, List<String>> requestHeaders;
     final Map<String, List<String>> cookies;
 
@@ -140,6 +145,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       allowCookies = web.allowCookies;
       saveResponse = web.saveResponse;
       responseFileName = web.responseFileName;
+      useCache = web.useCache;
+      timeout = web.timeout;
       requestHeaders = processRequestHeaders(web.requestHeaders);
 
       Map<String, List<String>> cookiesTemp = null;
@@ -158,6 +165,12 @@ public class Web extends AndroidNonvisibleComponent implements Component {
 
   private static final String LOG_TAG = "Web";
 
+  // Size of the buffer used when uploading and downloading.
+  private static final int BUFFER_LENGTH = 0x2000;
+
+  // Minimum time between UploadProgress events, in milliseconds.
+  static final long UPLOAD_PROGRESS_INTERVAL = 100;
+
   private static final Map<String, String> mimeTypeToExtension;
   static {
     mimeTypeToExtension = Maps.newHashMap();
@@ -184,6 +197,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private YailList requestHeaders = new YailList();
   private boolean saveResponse;
   private String responseFileName = "";
+  private boolean useCache;
+  private int timeout;
 
   /**
    * Creates a new Web component.
@@ -323,6 +338,40 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     this.responseFileName = responseFileName;
   }
 
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether responses may be stored in, and returned from, a cache on the " +
+      "device. The cache follows the caching headers sent by the server, and checks with the " +
+      "server whether a cached response is still current when the headers say so. The cache " +
+      "is only supported on Android version 4.0 or greater.")
+  public boolean UseCache() {
+    return useCache;
+  }
+
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "false")
+  @SimpleProperty
+  public void UseCache(boolean useCache) {
+    this.useCache = useCache;
+    if (useCache) {
+      HttpUtil.installCache(activity);
+    }
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of milliseconds to wait while connecting to the server and " +
+      "while waiting for data from it before the request fails with a timeout error. " +
+      "If 0, requests wait indefinitely.")
+  public int RequestTimeout() {
+    return timeout;
+  }
+
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void RequestTimeout(int timeout) {
+    this.timeout = Math.max(0, timeout);
+  }
+
   @SimpleFunction(description = "Clears all cookies for this Web component.")
   public void ClearCookies() {
     if (cookieHandler != null) {
@@ -359,6 +408,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         } catch (FileUtil.FileException e) {
           form.dispatchErrorOccurredEvent(Web.this, "Get",
               e.getErrorMessageNumber());
+        } catch (SocketTimeoutException e) {
+          form.dispatchErrorOccurredEvent(Web.this, "Get",
+              ErrorMessages.ERROR_WEB_REQUEST_TIMED_OUT, webProps.urlString);
         } catch (Exception e) {
           Log.e(LOG_TAG, "ERROR_UNABLE_TO_GET", e);
           form.dispatchErrorOccurredEvent(Web.this, "Get",
@@ -430,6 +482,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         } catch (FileUtil.FileException e) {
           form.dispatchErrorOccurredEvent(Web.this, "PostFile",
               e.getErrorMessageNumber());
+        } catch (SocketTimeoutException e) {
+          form.dispatchErrorOccurredEvent(Web.this, "PostFile",
+              ErrorMessages.ERROR_WEB_REQUEST_TIMED_OUT, webProps.urlString);
         } catch (Exception e) {
           form.dispatchErrorOccurredEvent(Web.this, "PostFile",
               ErrorMessages.ERROR_WEB_UNABLE_TO_POST_OR_PUT_FILE, path, webProps.urlString);
@@ -500,6 +555,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         } catch (FileUtil.FileException e) {
           form.dispatchErrorOccurredEvent(Web.this, "PutFile",
               e.getErrorMessageNumber());
+        } catch (SocketTimeoutException e) {
+          form.dispatchErrorOccurredEvent(Web.this, "PutFile",
+              ErrorMessages.ERROR_WEB_REQUEST_TIMED_OUT, webProps.urlString);
         } catch (Exception e) {
           form.dispatchErrorOccurredEvent(Web.this, "PutFile",
               ErrorMessages.ERROR_WEB_UNABLE_TO_POST_OR_PUT_FILE, path, webProps.urlString);
@@ -534,6 +592,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         } catch (FileUtil.FileException e) {
           form.dispatchErrorOccurredEvent(Web.this, "Delete",
               e.getErrorMessageNumber());
+        } catch (SocketTimeoutException e) {
+          form.dispatchErrorOccurredEvent(Web.this, "Delete",
+              ErrorMessages.ERROR_WEB_REQUEST_TIMED_OUT, webProps.urlString);
         } catch (Exception e) {
           form.dispatchErrorOccurredEvent(Web.this, "Delete",
               ErrorMessages.ERROR_WEB_UNABLE_TO_DELETE, webProps.urlString);
@@ -589,6 +650,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         } catch (FileUtil.FileException e) {
           form.dispatchErrorOccurredEvent(Web.this, functionName,
               e.getErrorMessageNumber());
+        } catch (SocketTimeoutException e) {
+          form.dispatchErrorOccurredEvent(Web.this, functionName,
+              ErrorMessages.ERROR_WEB_REQUEST_TIMED_OUT, webProps.urlString);
         } catch (Exception e) {
           form.dispatchErrorOccurredEvent(Web.this, functionName,
               ErrorMessages.ERROR_WEB_UNABLE_TO_POST_OR_PUT, text, webProps.urlString);
@@ -627,6 +691,21 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     EventDispatcher.dispatchEvent(this, "GotFile", url, responseCode, responseType, fileName);
   }
 
+  /**
+   * Event indicating the progress of a PostFile or PutFile request.
+   *
+   * @param bytesSent the number of bytes of the file that have been sent
+   * @param totalBytes the size of the file in bytes, or -1 if it is not known
+   */
+  @SimpleEvent(description = "Event indicating the progress of a PostFile or PutFile request. " +
+      "bytesSent is the number of bytes of the file that have been sent so far, and totalBytes " +
+      "is the size of the file, or -1 if it is not known. This event is triggered at most ten " +
+      "times a second, and once more when the whole file has been sent.")
+  public void UploadProgress(long bytesSent, long totalBytes) {
+    // invoke the application's "UploadProgress" event handler.
+    EventDispatcher.dispatchEvent(this, "UploadProgress", bytesSent, totalBytes);
+  }
+
 
   /**
    * Converts a list of two-element sublists, representing name and value pairs, to a
@@ -709,10 +788,10 @@ public class Web extends AndroidNonvisibleComponent implements Component {
    * @return the decoded text
    */
   @SimpleFunction
-  // This returns an object, which in general will be a Java ArrayList, String, Boolean, Integer,
-  // or Double.
-  // The object will be sanitized to produce the corresponding Yail data by call-component-method.
-  // That mechanism would need to be extended if we ever change JSON decoding to produce
+  // This returns an object, which in general will be a YailList, String, Boolean, or number.
+  // Lists are decoded straight into YailLists whose items are already sanitized, so that
+  // call-component-method doesn't have to copy a large decoded response again.
+  // The decoding would need to be changed if we ever decode JSON objects to produce
   // dictionaries rather than lists
   // TOOD(hal): Provide an alternative way to decode JSON objects to dictionaries.  Maybe with 
   // renaming this JsonTextDecodeWithPairs and making JsonTextDecode the one to use
@@ -737,7 +816,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   // VisibleForTesting
   static Object decodeJsonText(String jsonText) throws IllegalArgumentException {
     try {
-      return JsonUtil.getObjectFromJson(jsonText);
+      return JsonUtil.getYailObjectFromJson(jsonText);
     } catch (JSONException e) {
       throw new IllegalArgumentException("jsonText is not a legal JSON value");
     }
@@ -763,7 +842,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
    * @param jsonText the JSON text to decode
    * @return the decoded text
    */
-   // This method works by by first converting the XML to JSON and then decoding the JSON.
+   // This method decodes the XML as if it had been converted to JSON with org.json.XML and the
+   // JSON then decoded, but in a single pass; see XmlUtil.
   @SimpleFunction(description = "Decodes the given XML string to produce a list structure.  " +
       "See the App Inventor documentation on \"Other topics, notes, and details\" for information.")
   // The above description string is punted because I can't figure out how to write the
@@ -771,12 +851,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   // HTML for the component documentation on the Web.  It's too long for a tooltip, anyway.
   public Object XMLTextDecode(String XmlText) {
     try {
-      JSONObject json = XML.toJSONObject(XmlText);
-      return JsonTextDecode(json.toString());
+      return XmlUtil.getYailListFromXml(XmlText);
     } catch (JSONException e) {
-      // We could be more precise and signal different errors for the conversion to JSON
-      // versus the decoding of that JSON, but showing the actual error message should
-      // be good enough.
       Log.e("Exception in XMLTextDecode", e.getMessage());
       form.dispatchErrorOccurredEvent(this, "XMLTextDecode",
           ErrorMessages.ERROR_WEB_JSON_TEXT_DECODE_FAILED, e.getMessage());
@@ -836,64 +912,66 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private void performRequest(final CapturedProperties webProps, byte[] postData, String postFile, String httpVerb)
       throws IOException {
 
-    // Open the connection.
-    HttpURLConnection connection = openConnection(webProps, httpVerb);
-    if (connection != null) {
-      try {
-        if (postData != null) {
-          writeRequestData(connection, postData);
-        } else if (postFile != null) {
-          writeRequestFile(connection, postFile);
-        }
-
-        // Get the response.
-        final int responseCode = connection.getResponseCode();
-        final String responseType = getResponseType(connection);
-        processResponseCookies(connection);
-
-        if (saveResponse) {
-          final String path = saveResponseContent(connection, webProps.responseFileName,
-              responseType);
-
-          // Dispatch the event.
-          activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-              GotFile(webProps.urlString, responseCode, responseType, path);
-            }
-          });
-        } else {
-          final String responseContent = getResponseContent(connection);
-
-          // Dispatch the event.
-          activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-              GotText(webProps.urlString, responseCode, responseType, responseContent);
-            }
-          });
-        }
+    // Open the connection.  Once it is open, it must be finished however the request ends, so
+    // that the response cache is not left enabled for later requests made by this thread.
+    HttpURLConnection connection = HttpUtil.openConnection(webProps.url, webProps.timeout,
+        webProps.useCache);
+    boolean responseRead = false;
+    try {
+      setRequestProperties(connection, webProps, httpVerb);
+      if (postData != null) {
+        writeRequestData(connection, postData);
+      } else if (postFile != null) {
+        writeRequestFile(connection, postFile);
+      }
 
-      } finally {
-        connection.disconnect();
+      // Get the response.
+      final int responseCode = connection.getResponseCode();
+      final String responseType = getResponseType(connection);
+      processResponseCookies(connection);
+
+      if (saveResponse) {
+        final String path = saveResponseContent(connection, webProps.responseFileName,
+            responseType);
+        responseRead = true;
+
+        // Dispatch the event.
+        activity.runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            GotFile(webProps.urlString, responseCode, responseType, path);
+          }
+        });
+      } else {
+        final String responseContent = getResponseContent(connection);
+        responseRead = true;
+
+        // Dispatch the event.
+        activity.runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            GotText(webProps.urlString, responseCode, responseType, responseContent);
+          }
+        });
       }
+
+    } finally {
+      // Unless something went wrong, leave the connection open to be reused.
+      HttpUtil.finish(connection, responseRead);
     }
   }
 
   /**
-   * Open a connection to the resource and set the HTTP action to PUT or DELETE if it is one of
-   * them. GET would be the default, and POST is set in writeRequestData or writeRequestFile
+   * Set the HTTP action of a connection to PUT or DELETE if it is one of them, and add the
+   * request headers and cookies. GET would be the default, and POST is set in writeRequestData
+   * or writeRequestFile
+   * @param connection the connection, as opened by HttpUtil.openConnection
    * @param webProps the properties of the connection, set as properties in the component
    * @param httpVerb One of GET/POST/PUT/DELETE
-   * @return a HttpURL Connection
-   * @throws IOException
-   * @throws ClassCastException
    * @throws ProtocolException thrown if the method in setRequestMethod is not correct
    */
-  private static HttpURLConnection openConnection(CapturedProperties webProps, String httpVerb)
-      throws IOException, ClassCastException, ProtocolException {
-
-    HttpURLConnection connection = (HttpURLConnection) webProps.url.openConnection();
+  private static void setRequestProperties(HttpURLConnection connection,
+      CapturedProperties webProps, String httpVerb) throws ProtocolException {
 
     if (httpVerb.equals("PUT") || httpVerb.equals("DELETE")){
       // Set the Request Method; GET is the default, and if it is a POST, it will be marked as such
@@ -918,8 +996,6 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         }
       }
     }
-
-    return connection;
   }
 
   private static void writeRequestData(HttpURLConnection connection, byte[] postData)
@@ -944,7 +1020,17 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       throws IOException {
     // Use MediaUtil.openMedia to open the file. This means that path could be file on the SD card,
     // an asset, a contact picture, etc.
-    BufferedInputStream in = new BufferedInputStream(MediaUtil.openMedia(form, path));
+    long totalBytes = MediaUtil.getMediaLength(form, path);
+    writeRequestFile(connection, MediaUtil.openMedia(form, path), totalBytes);
+  }
+
+  /*
+   * Writes the file's data from the stream, which is closed afterwards. totalBytes is the length
+   * of the file, or -1 if it is not known.
+   */
+  @VisibleForTesting
+  void writeRequestFile(HttpURLConnection connection, InputStream in, long totalBytes)
+      throws IOException {
     try {
       // Write the file's data.
       // According to the documentation at
@@ -952,17 +1038,30 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       // HttpURLConnection uses the GET method by default. It will use POST if setDoOutput(true) has
       // been called.
       connection.setDoOutput(true); // This makes it something other than a HTTP GET.
-      connection.setChunkedStreamingMode(0);
-      BufferedOutputStream out = new BufferedOutputStream(connection.getOutputStream());
+      if (totalBytes >= 0 && totalBytes <= Integer.MAX_VALUE) {
+        // When the length is known, send it in the Content-Length header rather than chunking the
+        // body, which some servers don't accept for uploads.
+        connection.setFixedLengthStreamingMode((int) totalBytes);
+      } else {
+        connection.setChunkedStreamingMode(0); // Use the default chunk length.
+      }
+      OutputStream out = connection.getOutputStream();
       try {
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
+        byte[] buffer = new byte[BUFFER_LENGTH];
+        long bytesSent = 0;
+        long lastProgressTime = SystemClock.uptimeMillis();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+          bytesSent += read;
+          long now = SystemClock.uptimeMillis();
+          if (now - lastProgressTime >= UPLOAD_PROGRESS_INTERVAL) {
+            lastProgressTime = now;
+            dispatchUploadProgress(bytesSent, totalBytes);
           }
-          out.write(b);
         }
         out.flush();
+        dispatchUploadProgress(bytesSent, totalBytes);
       } finally {
         out.close();
       }
@@ -971,6 +1070,15 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
   }
 
+  private void dispatchUploadProgress(final long bytesSent, final long totalBytes) {
+    activity.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        UploadProgress(bytesSent, totalBytes);
+      }
+    });
+  }
+
   private static String getResponseType(HttpURLConnection connection) {
     String responseType = connection.getContentType();
     return (responseType != null) ? responseType : "";
@@ -995,7 +1103,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     if (encoding == null) {
       encoding = "UTF-8";
     }
-    InputStreamReader reader = new InputStreamReader(getConnectionStream(connection), encoding);
+    InputStreamReader reader = new InputStreamReader(HttpUtil.getResponseStream(connection), encoding);
     try {
       int contentLength = connection.getContentLength();
       StringBuilder sb = (contentLength != -1)
@@ -1016,17 +1124,16 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       String responseFileName, String responseType) throws IOException {
     File file = createFile(responseFileName, responseType);
 
-    BufferedInputStream in = new BufferedInputStream(getConnectionStream(connection), 0x1000);
+    // The response is copied a block at a time, so it is never held in memory as a whole.
+    InputStream in = HttpUtil.getResponseStream(connection);
     try {
-      BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file), 0x1000);
+      OutputStream out = new FileOutputStream(file);
       try {
         // Copy the contents from the input stream to the output stream.
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
+        byte[] buffer = new byte[BUFFER_LENGTH];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
         }
         out.flush();
       } finally {
@@ -1039,18 +1146,6 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     return file.getAbsolutePath();
   }
 
-  private static InputStream getConnectionStream(HttpURLConnection connection) {
-    // According to the Android reference documentation for HttpURLConnection: If the HTTP response
-    // indicates that an error occurred, getInputStream() will throw an IOException. Use
-    // getErrorStream() to read the error response.
-    try {
-      return connection.getInputStream();
-    } catch (IOException e1) {
-      // Use the error response.
-      return connection.getErrorStream();
-    }
-  }
-
   private static File createFile(String fileName, String responseType)
       throws IOException, FileUtil.FileException {
     // If a fileName was specified, use it.
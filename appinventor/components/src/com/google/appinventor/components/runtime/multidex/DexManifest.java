@@ -0,0 +1,314 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.multidex;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The list of secondary dex files in an APK, which the buildserver puts in
+ * the APK's assets as {@link #ASSET_NAME}.
+ *
+ * The manifest is a line giving its id, followed by a line for each
+ * secondary dex file with its name, size and SHA-256 digest:
+ *
+ * <pre>
+ * id 3f9c...
+ * classes2.dex 1843320 a61e...
+ * </pre>
+ *
+ * The id is the SHA-256 digest of the lines that follow it, so it changes
+ * whenever the secondary dex files do.  Rather than computing the CRC of
+ * the APK on every launch to find out whether the dex files extracted
+ * earlier are stale, {@link MultiDexExtractor} compares the id with that of
+ * the last extraction.  Each extraction goes in its own directory, named
+ * after the id, and the dex files are extracted in parallel.
+ *
+ */
+final class DexManifest {
+  static final String ASSET_NAME = "multidex.manifest";
+
+  private static final String ID = "id";
+  private static final String EXTRACTED_PREFIX = "classes";
+  private static final String EXTRACTED_SUFFIX = ".zip";
+  private static final int BUFFER_SIZE = 0x4000;
+
+  /**
+   * A secondary dex file.
+   */
+  static final class Entry {
+    final String name;
+    final long size;
+    final String sha256;
+
+    Entry(String name, long size, String sha256) {
+      this.name = name;
+      this.size = size;
+      this.sha256 = sha256;
+    }
+  }
+
+  final String id;
+  final List<Entry> entries;
+
+  private DexManifest(String id, List<Entry> entries) {
+    this.id = id;
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Reads a manifest.
+   *
+   * @throws IOException if the manifest can't be read or is malformed
+   */
+  static DexManifest read(InputStream in) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    String line = reader.readLine();
+    String[] fields = line == null ? null : line.split(" ");
+    if (fields == null || fields.length != 2 || !ID.equals(fields[0])) {
+      throw new IOException("Missing multidex manifest id");
+    }
+    String id = fields[1];
+    List<Entry> entries = new ArrayList<Entry>();
+    while ((line = reader.readLine()) != null) {
+      if (line.length() == 0) {
+        continue;
+      }
+      fields = line.split(" ");
+      if (fields.length != 3) {
+        throw new IOException("Malformed multidex manifest line: " + line);
+      }
+      try {
+        entries.add(new Entry(fields[0], Long.parseLong(fields[1]), fields[2]));
+      } catch (NumberFormatException e) {
+        throw new IOException("Malformed multidex manifest line: " + line);
+      }
+    }
+    return new DexManifest(id, entries);
+  }
+
+  /**
+   * Returns the directory that the dex files of this manifest are extracted
+   * to.
+   */
+  File getVersionDir(File dexDir) {
+    return new File(dexDir, id);
+  }
+
+  /**
+   * Returns the file that the given entry is extracted to.
+   */
+  private File getExtractedFile(File versionDir, int index) {
+    // The secondary dex files start at classes2
+    return new File(versionDir, EXTRACTED_PREFIX + (index + 2) + EXTRACTED_SUFFIX);
+  }
+
+  /**
+   * Returns the files extracted earlier for this manifest, or null if any is
+   * missing or too short to hold its dex file.
+   */
+  List<File> findExtracted(File dexDir) {
+    File versionDir = getVersionDir(dexDir);
+    List<File> files = new ArrayList<File>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      File file = getExtractedFile(versionDir, i);
+      // The dex files are stored uncompressed, so each zip is longer than its dex file.
+      if (!file.isFile() || file.length() <= entries.get(i).size) {
+        return null;
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * Extracts the secondary dex files from the APK into the directory for
+   * this manifest, each into a zip file of its own as {@code classes.dex},
+   * and deletes the directories of other manifests.  The dex files are
+   * extracted in parallel, and each is checked against its size and SHA-256
+   * digest.
+   *
+   * @return the extracted files, in order
+   * @throws IOException if a dex file is missing from the APK, doesn't match
+   *         the manifest, or can't be extracted
+   */
+  List<File> extract(final File apk, File dexDir) throws IOException {
+    final File versionDir = getVersionDir(dexDir);
+    versionDir.mkdirs();
+    if (!versionDir.isDirectory()) {
+      throw new IOException("Failed to create dex directory " + versionDir.getPath());
+    }
+    deleteOtherVersions(dexDir);
+
+    List<File> files = new ArrayList<File>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      files.add(getExtractedFile(versionDir, i));
+    }
+    int threads = Math.min(entries.size(), Runtime.getRuntime().availableProcessors());
+    if (threads <= 1) {
+      for (int i = 0; i < entries.size(); i++) {
+        extract(apk, entries.get(i), files.get(i));
+      }
+      return files;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<Future<?>>(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        final Entry entry = entries.get(i);
+        final File file = files.get(i);
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            extract(apk, entry, file);
+            return null;
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new IOException("Failed to extract secondary dex: " + cause);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted extracting secondary dex files");
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return files;
+  }
+
+  /*
+   * Copies a dex file from the APK into a zip of its own.  Each thread opens the APK for itself,
+   * so that reading one dex file doesn't wait for another.
+   */
+  private static void extract(File apk, Entry entry, File extractTo) throws IOException {
+    ZipFile zip = new ZipFile(apk);
+    File tmp = null;
+    try {
+      ZipEntry dexEntry = zip.getEntry(entry.name);
+      if (dexEntry == null) {
+        throw new IOException("Missing " + entry.name + " in " + apk.getPath());
+      }
+      if (dexEntry.getSize() != entry.size) {
+        throw new IOException(entry.name + " is " + dexEntry.getSize() + " bytes, expected " +
+            entry.size);
+      }
+      tmp = File.createTempFile(extractTo.getName(), ".tmp", extractTo.getParentFile());
+      MessageDigest digest = newSha256();
+      InputStream in = zip.getInputStream(dexEntry);
+      try {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE);
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        try {
+          // Stored rather than deflated, since the dex file is only read from here, and the CRC
+          // and size needed for that are known from the APK.
+          ZipEntry classesDex = new ZipEntry("classes.dex");
+          classesDex.setMethod(ZipEntry.STORED);
+          classesDex.setSize(dexEntry.getSize());
+          classesDex.setCompressedSize(dexEntry.getSize());
+          classesDex.setCrc(dexEntry.getCrc());
+          // keep zip entry time since it is the criteria used by Dalvik
+          classesDex.setTime(dexEntry.getTime());
+          zipOut.putNextEntry(classesDex);
+          byte[] buffer = new byte[BUFFER_SIZE];
+          int length;
+          while ((length = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, length);
+            zipOut.write(buffer, 0, length);
+          }
+          zipOut.closeEntry();
+        } finally {
+          zipOut.close();
+        }
+      } finally {
+        in.close();
+      }
+      if (!toHex(digest.digest()).equals(entry.sha256)) {
+        throw new IOException(entry.name + " does not match its SHA-256 digest");
+      }
+      if (!tmp.renameTo(extractTo)) {
+        throw new IOException("Failed to rename \"" + tmp.getAbsolutePath() + "\" to \"" +
+            extractTo.getAbsolutePath() + "\"");
+      }
+    } finally {
+      zip.close();
+      if (tmp != null) {
+        tmp.delete();  // return status ignored
+      }
+    }
+  }
+
+  /*
+   * Deletes the dex files extracted for other manifests, and those extracted before there was a
+   * manifest.
+   */
+  private void deleteOtherVersions(File dexDir) {
+    File[] files = dexDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        if (!file.getName().equals(id)) {
+          File[] extracted = file.listFiles();
+          if (extracted != null) {
+            for (File child : extracted) {
+              child.delete();
+            }
+          }
+          file.delete();
+        }
+      } else if (file.getName().endsWith(EXTRACTED_SUFFIX)) {
+        file.delete();
+      }
+    }
+  }
+
+  static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+}
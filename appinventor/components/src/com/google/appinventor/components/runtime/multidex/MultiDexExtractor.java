@@ -64,6 +64,7 @@ final class MultiDexExtractor {
     private static final String KEY_TIME_STAMP = "timestamp";
     private static final String KEY_CRC = "crc";
     private static final String KEY_DEX_NUMBER = "dex.number";
+    private static final String KEY_MANIFEST_ID = "manifest.id";
 
     /**
      * Size of reading buffers.
@@ -80,6 +81,12 @@ final class MultiDexExtractor {
      */
 
     public static boolean mustLoad(Context context, ApplicationInfo applicationInfo) {
+      DexManifest manifest = readManifest(context);
+      if (manifest != null) {
+          // The manifest id identifies the secondary dex files, so there's no need for the CRC.
+          return !manifest.id.equals(getMultiDexPreferences(context).getString(KEY_MANIFEST_ID,
+              null));
+      }
       File sourceApk = new File(applicationInfo.sourceDir);
       long currentCrc;
       try {
@@ -107,6 +114,11 @@ final class MultiDexExtractor {
         Log.i(TAG, "MultiDexExtractor.load(" + applicationInfo.sourceDir + ", " + forceReload + ")");
         final File sourceApk = new File(applicationInfo.sourceDir);
 
+        DexManifest manifest = readManifest(context);
+        if (manifest != null) {
+            return loadWithManifest(context, manifest, sourceApk, dexDir, forceReload);
+        }
+
         long currentCrc = getZipCrc(sourceApk);
 
         List<File> files;
@@ -130,6 +142,52 @@ final class MultiDexExtractor {
         return files;
     }
 
+    /*
+     * Loads the secondary dex files listed in the manifest the buildserver put in the APK, reusing
+     * those extracted for the same manifest if they're still there.
+     */
+    private static List<File> loadWithManifest(Context context, DexManifest manifest,
+            File sourceApk, File dexDir, boolean forceReload) throws IOException {
+        SharedPreferences prefs = getMultiDexPreferences(context);
+        if (!forceReload && manifest.id.equals(prefs.getString(KEY_MANIFEST_ID, null))) {
+            List<File> files = manifest.findExtracted(dexDir);
+            if (files != null) {
+                Log.i(TAG, "load found " + files.size() + " secondary dex files for manifest "
+                        + manifest.id);
+                return files;
+            }
+            Log.w(TAG, "Missing extracted secondary dex files, falling back to fresh extraction");
+        }
+        Log.i(TAG, "Extracting secondary dex files for manifest " + manifest.id);
+        List<File> files = manifest.extract(sourceApk, dexDir);
+        SharedPreferences.Editor edit = prefs.edit();
+        edit.putString(KEY_MANIFEST_ID, manifest.id);
+        edit.putInt(KEY_DEX_NUMBER, files.size() + 1);
+        apply(edit);
+        return files;
+    }
+
+    /*
+     * Returns the manifest of secondary dex files in the APK's assets, or null if the APK was
+     * built without one.
+     */
+    private static DexManifest readManifest(Context context) {
+        InputStream in;
+        try {
+            in = context.getAssets().open(DexManifest.ASSET_NAME);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            return DexManifest.read(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the multidex manifest", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(TAG, in);
+        }
+    }
+
     private static List<File> loadExistingExtractions(Context context, File sourceApk, File dexDir)
             throws IOException {
         Log.i(TAG, "loading existing secondary dex files");
@@ -18,6 +18,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 
@@ -124,6 +126,8 @@ public class AppInvHTTPD extends NanoHTTPD {
       int iseq = Integer.parseInt(inSeq);
       String blockid = parms.getProperty("blockid");
       String code = parms.getProperty("code");
+      // The code for several blocks at once, see ReplBatch
+      String batch = parms.getProperty("batch");
       String inMac = parms.getProperty("mac", "no key provided");
       String compMac = "";
       String input_code = code;
@@ -132,7 +136,8 @@ public class AppInvHTTPD extends NanoHTTPD {
           Mac hmacSha1 = Mac.getInstance("HmacSHA1");
           SecretKeySpec key = new SecretKeySpec(hmacKey, "RAW");
           hmacSha1.init(key);
-          byte [] tmpMac = hmacSha1.doFinal((code + inSeq + blockid).getBytes());
+          String signed = batch != null ? batch + inSeq : code + inSeq + blockid;
+          byte [] tmpMac = hmacSha1.doFinal(signed.getBytes());
           StringBuffer sb = new StringBuffer(tmpMac.length * 2);
           Formatter formatter = new Formatter(sb);
           for (byte b : tmpMac)
@@ -177,20 +182,32 @@ public class AppInvHTTPD extends NanoHTTPD {
         return(res);
       }
 
-      code = "(begin (require <com.google.youngandroid.runtime>) (process-repl-input " + blockid + " (begin " +
-        code + " )))";
-
-      Log.d(LOG_TAG, "To Eval: " + code);
+      if (batch == null) {
+        code = "(begin (require <com.google.youngandroid.runtime>) (process-repl-input " + blockid +
+          " (begin " + code + " )))";
+      }
 
       Response res;
       try {
-        // Don't evaluate a simple "#f" which is used by the poller
-        if (input_code.equals("#f")) {
+        if (batch != null) {
+          ReplBatch.eval(batch, new ReplBatch.Evaluator() {
+            @Override
+            public void eval(String yail) throws Throwable {
+              Log.d(LOG_TAG, "To Eval: " + yail);
+              scheme.eval("(begin (require <com.google.youngandroid.runtime>) " + yail + ")");
+            }
+          });
+        } else if (input_code.equals("#f")) {
+          // Don't evaluate a simple "#f" which is used by the poller
           Log.e(LOG_TAG, "Skipping evaluation of #f");
         } else {
+          Log.d(LOG_TAG, "To Eval: " + code);
           scheme.eval(code);
         }
         res = new Response(HTTP_OK, MIME_JSON, RetValManager.fetch(false));
+      } catch (JSONException e) {
+        Log.e(LOG_TAG, "newblocks: Malformed batch", e);
+        return error(e);
       } catch (Throwable ex) {
         Log.e(LOG_TAG, "newblocks: Scheme Failure", ex);
         RetValManager.appendReturnValue(blockid, "BAD", ex.toString());
@@ -227,11 +244,15 @@ public class AppInvHTTPD extends NanoHTTPD {
           installer = "Not Known";
         // fcqn = true indicates we accept FullyQualifiedComponentNames (FQCN)
         // This informs the blocks editor whether or not we can accept the new style
-        // fully qualified component names
+        // fully qualified component names. channel = true indicates we accept
+        // block updates over a WebSocket at ReplChannel.PATH, and batch = true
+        // that /_newblocks accepts the code for several blocks at once.
+        // imageCache holds the counts of the Companion's decoded image cache.
         res = new Response(HTTP_OK, MIME_JSON, "{\"version\" : \"" + versionName +
           "\", \"fingerprint\" : \"" + Build.FINGERPRINT + "\"," +
           " \"installer\" : \"" + installer + "\", \"package\" : \"" +
-          packageName + "\", \"fqcn\" : true }");
+          packageName + "\", \"fqcn\" : true, \"channel\" : true, \"batch\" : true," +
+          " \"imageCache\" : " + MediaUtil.getBitmapCacheStats() + " }");
       } catch (NameNotFoundException n) {
         n.printStackTrace();
         res = new Response(HTTP_OK, MIME_JSON, "{\"verison\" : \"Unknown\"");
@@ -440,6 +461,80 @@ public class AppInvHTTPD extends NanoHTTPD {
     }
   }
 
+  /**
+   * Takes over a connection to {@link ReplChannel#PATH} that asks to upgrade
+   * to a WebSocket, and evaluates the block updates sent over it until it is
+   * closed.  Return values are pushed over the channel instead of waiting
+   * for /_values while it is open.
+   */
+  @Override
+  public boolean serveUpgrade(String uri, Properties header, Socket mySocket, InputStream in)
+      throws IOException {
+    if (!uri.equals(ReplChannel.PATH) || !ReplChannel.isUpgradeRequest(header)) {
+      return false;
+    }
+    if (secure && !mySocket.getInetAddress().getHostAddress().equals("127.0.0.1")) {
+      Log.d(LOG_TAG, "Debug: channel from " + mySocket.getInetAddress().getHostAddress() +
+          " while in secure mode, closing connection.");
+      return true;
+    }
+    mySocket.setTcpNoDelay(true);
+    OutputStream out = mySocket.getOutputStream();
+    ReplChannel.acceptUpgrade(out, header.getProperty("sec-websocket-key"));
+    ReplChannel channel = new ReplChannel(in, out, new ReplChannel.Evaluator() {
+      @Override
+      public void eval(String blockid, String code) {
+        adoptMainThreadClassLoader();
+        // Don't evaluate a simple "#f" which is used by the poller
+        if (code.equals("#f")) {
+          return;
+        }
+        try {
+          scheme.eval("(begin (require <com.google.youngandroid.runtime>) (process-repl-input " +
+              blockid + " (begin " + code + " )))");
+        } catch (Throwable ex) {
+          Log.e(LOG_TAG, "channel: Scheme Failure", ex);
+          RetValManager.appendReturnValue(blockid, "BAD", ex.toString());
+        }
+      }
+
+      @Override
+      public void evalBatch(String batch) {
+        adoptMainThreadClassLoader();
+        try {
+          ReplBatch.eval(batch, new ReplBatch.Evaluator() {
+            @Override
+            public void eval(String yail) throws Throwable {
+              scheme.eval("(begin (require <com.google.youngandroid.runtime>) " + yail + ")");
+            }
+          });
+        } catch (JSONException e) {
+          Log.e(LOG_TAG, "channel: Malformed batch", e);
+        }
+      }
+
+      @Override
+      public void securityError(String message) {
+        Log.e(LOG_TAG, "channel: " + message);
+        form.dispatchErrorOccurredEvent(form, "AppInvHTTPD",
+            ErrorMessages.ERROR_REPL_SECURITY_ERROR, message);
+      }
+    }, hmacKey, seq);
+    RetValManager.setListener(channel);
+    try {
+      channel.run();
+    } catch (IOException e) {
+      Log.d(LOG_TAG, "channel closed: " + e);
+    } finally {
+      // A channel the Blocks Editor has already replaced leaves the newer one's state alone.
+      if (RetValManager.clearListener(channel)) {
+        // Picks up where the channel left off if the Blocks Editor falls back to /_newblocks
+        seq = channel.getSeq();
+      }
+    }
+    return true;
+  }
+
   private Response processLoadExtensionsRequest(Properties parms) {
     try {
       JSONArray array = new JSONArray(parms.getProperty("extensions", "[]"));
@@ -0,0 +1,115 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+/**
+ * A fixed-size circular buffer of bytes, written by one thread and read by
+ * another without locking.
+ *
+ * The writer only changes the count of bytes written, after copying the
+ * bytes in, and the reader only changes the count of bytes read, after
+ * copying the bytes out.  Each thread therefore sees a consistent state
+ * of the buffer.  Only one thread may write and only one thread may read.
+ *
+ */
+public final class ByteRingBuffer {
+  private final byte[] buffer;
+  private final int mask;
+
+  // The total numbers of bytes written and read.
+  private volatile long written;
+  private volatile long read;
+
+  /**
+   * Creates a buffer.
+   *
+   * @param capacity the capacity in bytes, which must be a power of two
+   */
+  public ByteRingBuffer(int capacity) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("capacity must be a power of two");
+    }
+    buffer = new byte[capacity];
+    mask = capacity - 1;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Returns the number of bytes that can be read.
+   */
+  public int available() {
+    return (int) (written - read);
+  }
+
+  /**
+   * Writes as many of the given bytes as there is room for.  This may only be
+   * called by the writing thread.
+   *
+   * @return the number of bytes written
+   */
+  public int write(byte[] bytes, int offset, int length) {
+    long w = written;
+    int n = Math.min(length, buffer.length - (int) (w - read));
+    int start = (int) w & mask;
+    int first = Math.min(n, buffer.length - start);
+    System.arraycopy(bytes, offset, buffer, start, first);
+    System.arraycopy(bytes, offset + first, buffer, 0, n - first);
+    written = w + n;
+    return n;
+  }
+
+  /**
+   * Reads up to the given number of bytes.  This may only be called by the
+   * reading thread.
+   *
+   * @return the number of bytes read
+   */
+  public int read(byte[] bytes, int offset, int length) {
+    long r = read;
+    int n = Math.min(length, (int) (written - r));
+    int start = (int) r & mask;
+    int first = Math.min(n, buffer.length - start);
+    System.arraycopy(buffer, start, bytes, offset, first);
+    System.arraycopy(buffer, 0, bytes, offset + first, n - first);
+    read = r + n;
+    return n;
+  }
+
+  /**
+   * Returns the position of the first occurrence of the given byte among the
+   * bytes that can be read, counting from 0, or -1 if there is none.  This
+   * may only be called by the reading thread.
+   */
+  public int indexOf(byte b) {
+    long r = read;
+    int n = (int) (written - r);
+    for (int i = 0; i < n; i++) {
+      if (buffer[(int) (r + i) & mask] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of occurrences of the given byte among the bytes that
+   * can be read.  This may only be called by the reading thread.
+   */
+  public int count(byte b) {
+    long r = read;
+    int n = (int) (written - r);
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      if (buffer[(int) (r + i) & mask] == b) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,312 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * A queue of Redis commands for CloudDB that are sent to the server
+ * together.
+ *
+ * Each CloudDB operation used to be its own round trip to the server, so an
+ * app reading 50 tags when its screen opens waited for 50 round trips, one
+ * after another.  Instead, operations are added to this queue, and the
+ * background thread sends all of the commands queued so far in one Jedis
+ * pipeline and reads all of their replies at once.  Commands queued while a
+ * round trip is under way go together in the next one.
+ *
+ * A script is sent with EVAL the first time it is used on a connection,
+ * which also has the server cache it, and with EVALSHA after that, even
+ * later in the same round trip.  If the server has forgotten its scripts,
+ * the command that failed and the commands after it are sent again, in
+ * order, before their replies are handed out; the first use of each script
+ * is sent with EVAL, which loads it again.  So that commands that have
+ * already run can safely be sent again, a script is never sent with EVAL
+ * after a command sent with EVALSHA in the same round trip.
+ *
+ * The queue keeps count of the round trips and how long they took.
+ *
+ */
+public final class CloudDBPipeline {
+
+  // The most commands sent in one round trip
+  public static final int MAX_COMMANDS = 1000;
+
+  /**
+   * A command to send to the server.
+   */
+  public abstract static class Command {
+    /**
+     * Adds the command to the pipeline, returning the response that will hold
+     * its reply.
+     */
+    protected abstract Response<?> send(Pipeline pipeline);
+
+    /**
+     * Called on the background thread with the reply to the command.
+     */
+    protected void done(Object reply) {
+    }
+
+    /**
+     * Called on the background thread if the server returned an error for
+     * the command.
+     */
+    protected abstract void failed(JedisDataException e);
+
+    /**
+     * Combines the given command, which is being queued right after this one,
+     * into this one if possible.
+     *
+     * @return true if the command was combined and needn't be queued
+     */
+    protected boolean merge(Command next) {
+      return false;
+    }
+  }
+
+  /**
+   * A command that runs a Lua script.
+   */
+  public abstract static class ScriptCommand extends Command {
+    private final String script;
+    private final String scriptSha1;
+    private boolean evaluated;
+
+    protected ScriptCommand(String script, String scriptSha1) {
+      this.script = script;
+      this.scriptSha1 = scriptSha1;
+    }
+
+    /**
+     * Returns the keys for the script, which are followed by the arguments.
+     */
+    protected abstract int keyCount();
+
+    /**
+     * Returns the keys and arguments for the script.
+     */
+    protected abstract String[] arguments();
+
+    @Override
+    protected final Response<?> send(Pipeline pipeline) {
+      return evaluated
+          ? pipeline.evalsha(scriptSha1, keyCount(), arguments())
+          : pipeline.eval(script, keyCount(), arguments());
+    }
+  }
+
+  private final LinkedList<Command> queue = new LinkedList<Command>();
+  private boolean running;
+
+  // The scripts that have been evaluated on the current connection, by SHA1
+  private final Set<String> scripts = new HashSet<String>();
+
+  private long roundTrips;
+  private long commands;
+  private long totalNanos;
+  private long maxNanos;
+
+  /**
+   * Queues a command.
+   *
+   * @return true if the caller must start a task that calls
+   *         {@link #execute} until it returns false
+   */
+  public synchronized boolean add(Command command) {
+    return addAll(Collections.singletonList(command));
+  }
+
+  /**
+   * Queues several commands at once, so that they are sent in the same
+   * round trip unless there are too many.
+   *
+   * @return true if the caller must start a task that calls
+   *         {@link #execute} until it returns false
+   */
+  public synchronized boolean addAll(List<? extends Command> commands) {
+    for (Command command : commands) {
+      if (queue.isEmpty() || !queue.getLast().merge(command)) {
+        queue.add(command);
+      }
+    }
+    if (running) {
+      return false;
+    }
+    running = true;
+    return true;
+  }
+
+  /**
+   * Sends the queued commands to the server in one round trip, then passes
+   * each reply to its command.
+   *
+   * @param jedis the connection to the server
+   * @return false if there were no commands to send
+   * @throws redis.clients.jedis.exceptions.JedisException if the commands
+   *         could not be sent, in which case the queue is cleared
+   */
+  public boolean execute(Jedis jedis) {
+    List<Command> batch;
+    synchronized (this) {
+      if (queue.isEmpty()) {
+        running = false;
+        return false;
+      }
+      int count = Math.min(queue.size(), MAX_COMMANDS);
+      batch = new ArrayList<Command>(count);
+      // The server runs the commands in order, so once a script is sent with EVAL, the
+      // commands after it can use EVALSHA.
+      Set<String> sent = new HashSet<String>(scripts);
+      boolean calledBySha1 = false;
+      for (int i = 0; i < count; i++) {
+        Command command = queue.getFirst();
+        if (command instanceof ScriptCommand) {
+          ScriptCommand scriptCommand = (ScriptCommand) command;
+          boolean evaluated = sent.contains(scriptCommand.scriptSha1);
+          if (!evaluated && calledBySha1) {
+            // If the server has forgotten its scripts, the commands after the first one called by
+            // its SHA1 are sent again, and this one would have run already.
+            break;
+          }
+          sent.add(scriptCommand.scriptSha1);
+          scriptCommand.evaluated = evaluated;
+          calledBySha1 |= evaluated;
+        }
+        batch.add(queue.removeFirst());
+      }
+    }
+
+    List<Response<?>> responses = new ArrayList<Response<?>>(batch.size());
+    long start = System.nanoTime();
+    try {
+      Pipeline pipeline = jedis.pipelined();
+      for (Command command : batch) {
+        responses.add(command.send(pipeline));
+      }
+      pipeline.sync();
+    } catch (RuntimeException e) {
+      clear();
+      throw e;
+    }
+    long elapsed = System.nanoTime() - start;
+    synchronized (this) {
+      roundTrips++;
+      commands += batch.size();
+      totalNanos += elapsed;
+      maxNanos = Math.max(maxNanos, elapsed);
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      Command command = batch.get(i);
+      Object reply;
+      try {
+        reply = responses.get(i).get();
+      } catch (JedisNoScriptException e) {
+        // The server has been restarted or its scripts flushed since the script was evaluated,
+        // so neither this command nor the scripts called by SHA1 after it have run.  The other
+        // commands after it only read or delete keys.  Send them all again, ahead of the commands
+        // queued since, so that they run and are answered in the order they were queued.
+        synchronized (this) {
+          scripts.clear();
+          queue.addAll(0, batch.subList(i, batch.size()));
+        }
+        return true;
+      } catch (JedisDataException e) {
+        command.failed(e);
+        continue;
+      }
+      if (command instanceof ScriptCommand) {
+        synchronized (this) {
+          scripts.add(((ScriptCommand) command).scriptSha1);
+        }
+      }
+      command.done(reply);
+    }
+    return true;
+  }
+
+  /**
+   * Discards the queued commands.  This must be called if the task calling
+   * {@link #execute} is stopped before it returns false.
+   */
+  public synchronized void clear() {
+    queue.clear();
+    running = false;
+  }
+
+  /**
+   * Forgets which scripts the server has.  This must be called when the
+   * connection is replaced, since it may be to a different server.
+   */
+  public synchronized void reset() {
+    scripts.clear();
+  }
+
+  public synchronized long getRoundTrips() {
+    return roundTrips;
+  }
+
+  public synchronized long getCommandCount() {
+    return commands;
+  }
+
+  /**
+   * Returns the average time of a round trip in milliseconds.
+   */
+  public synchronized double getAverageLatency() {
+    return roundTrips == 0 ? 0 : totalNanos / 1e6 / roundTrips;
+  }
+
+  /**
+   * Returns the longest time of a round trip in milliseconds.
+   */
+  public synchronized double getMaxLatency() {
+    return maxNanos / 1e6;
+  }
+
+  /**
+   * The counts of the round trips made so far and how long they took,
+   * taken together.
+   */
+  public static final class Stats {
+    public final long roundTrips;
+    public final long commands;
+    // In milliseconds
+    public final double averageLatency;
+    public final double maxLatency;
+
+    Stats(long roundTrips, long commands, double averageLatency, double maxLatency) {
+      this.roundTrips = roundTrips;
+      this.commands = commands;
+      this.averageLatency = averageLatency;
+      this.maxLatency = maxLatency;
+    }
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(roundTrips, commands, getAverageLatency(), getMaxLatency());
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("CloudDBPipeline[roundTrips=%d,commands=%d,averageLatency=%.1fms," +
+        "maxLatency=%.1fms,queued=%d]", roundTrips, commands, getAverageLatency(),
+        getMaxLatency(), queue.size());
+  }
+}
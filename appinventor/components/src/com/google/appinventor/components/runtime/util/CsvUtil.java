@@ -11,6 +11,7 @@ import com.google.appinventor.components.runtime.collect.Lists;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -23,11 +24,34 @@ import java.util.regex.Pattern;
  */
 public final class CsvUtil {
 
+  /**
+   * Receives the rows of a CSV table read by {@link #readCsvRows} in
+   * batches.
+   */
+  public interface RowHandler {
+    /**
+     * Called with each batch of rows, in order.
+     *
+     * @param rows a list of the rows in the batch, each a list of strings
+     * @param last true if there are no more rows after these
+     * @throws Exception to stop reading the table
+     */
+    void gotRows(YailList rows, boolean last) throws Exception;
+  }
+
   private CsvUtil() {
   }
 
   public static YailList fromCsvTable(String csvString) throws Exception {
-    CsvParser csvParser = new CsvParser(new StringReader(csvString));
+    return fromCsvTable(new StringReader(csvString));
+  }
+
+  /**
+   * Reads a CSV table from the given reader, which is read to its end but
+   * not closed.
+   */
+  public static YailList fromCsvTable(Reader csvReader) throws Exception {
+    CsvParser csvParser = new CsvParser(csvReader);
     ArrayList<YailList> csvList = new ArrayList<YailList>();
     while (csvParser.hasNext()) {
       csvList.add(YailList.makeList(csvParser.next()));
@@ -36,6 +60,40 @@ public final class CsvUtil {
     return YailList.makeList(csvList);
   }
 
+  /**
+   * Reads a CSV table from the given reader, giving its rows to the handler
+   * in batches as they are read, so that only one batch of the table is held
+   * in memory at a time. The handler is called at least once, with an empty
+   * batch for an empty table. The reader is read up to the end of the table
+   * or the first problem, and is not closed.
+   *
+   * @param csvReader the CSV table to read
+   * @param batchSize the most rows in each batch
+   * @param handler receives the batches of rows
+   * @throws Exception if the table can't be read or parsed, or the handler
+   *     throws an exception, after the handler has been given the full
+   *     batches of rows before the problem
+   */
+  public static void readCsvRows(Reader csvReader, int batchSize, RowHandler handler)
+      throws Exception {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    CsvParser csvParser = new CsvParser(csvReader);
+    ArrayList<YailList> batch = new ArrayList<YailList>();
+    boolean more = csvParser.hasNext();
+    while (more) {
+      batch.add(YailList.makeList(csvParser.next()));
+      more = csvParser.hasNext();
+      if (batch.size() == batchSize && more) {
+        handler.gotRows(YailList.makeList(batch), false);
+        batch = new ArrayList<YailList>();
+      }
+    }
+    csvParser.throwAnyProblem();
+    handler.gotRows(YailList.makeList(batch), true);
+  }
+
   public static YailList fromCsvRow(String csvString) throws Exception {
     CsvParser csvParser = new CsvParser(new StringReader(csvString));
     if (csvParser.hasNext()) {
@@ -72,6 +130,23 @@ public final class CsvUtil {
     return csvStringBuilder.toString();
   }
 
+  /**
+   * Writes a CSV table to the given writer a row at a time, as
+   * {@link #toCsvTable(YailList)} does, without building the whole table as
+   * a string. The writer is not closed.
+   *
+   * Requires: elements of rows are strings
+   */
+  public static void toCsvTable(YailList csvList, Writer writer) throws IOException {
+    StringBuilder csvStringBuilder = new StringBuilder();
+    for (Object rowObj : csvList.toArray()) {
+      csvStringBuilder.setLength(0);
+      makeCsvRow((YailList) rowObj, csvStringBuilder);
+      csvStringBuilder.append("\r\n");
+      writer.append(csvStringBuilder);
+    }
+  }
+
   private static void makeCsvRow(YailList row, StringBuilder csvStringBuilder) {
     String fieldDelim = "";
     for (Object fieldObj : row.toArray()) {
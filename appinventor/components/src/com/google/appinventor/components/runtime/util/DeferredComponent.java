@@ -0,0 +1,112 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import com.google.appinventor.components.runtime.HVArrangement;
+import com.google.appinventor.components.runtime.TableArrangement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stands in the form environment for a component that hasn't been created
+ * yet because it is inside an arrangement that was hidden when the screen
+ * started.
+ *
+ * The YAIL runtime calls {@link #create} when the component is looked up,
+ * which creates all of the components in the arrangement, replacing their
+ * stand-ins with the components themselves.
+ *
+ */
+public final class DeferredComponent {
+  // Whether components of each class can be put off, and whether they can hold components that
+  // are, by class name.  A screen usually has many components of the same few classes.
+  private static final Map<String, Boolean> canDefer = new HashMap<String, Boolean>();
+  private static final Map<String, Boolean> canHoldDeferred = new HashMap<String, Boolean>();
+
+  private final Runnable create;
+
+  /**
+   * Creates a stand-in for a component in a hidden arrangement.
+   *
+   * @param create creates the components in the arrangement, if they
+   *     haven't been created already
+   */
+  public DeferredComponent(Runnable create) {
+    this.create = create;
+  }
+
+  /**
+   * Creates the components in the hidden arrangement, including this one,
+   * if they haven't been created already.
+   */
+  public void create() {
+    create.run();
+  }
+
+  /**
+   * Returns whether components of the given class can be created later than
+   * the other components of the screen.  Those whose Initialize method or
+   * {@link OnInitializeListener} must run when the screen starts can't be.
+   *
+   * @param className the fully qualified name of the component's class
+   */
+  public static boolean canDefer(String className) {
+    synchronized (canDefer) {
+      Boolean result = canDefer.get(className);
+      if (result == null) {
+        Class<?> componentClass = findClass(className);
+        result = componentClass != null
+            && !OnInitializeListener.class.isAssignableFrom(componentClass)
+            && !hasInitialize(componentClass);
+        canDefer.put(className, result);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Returns whether components of the given class are arrangements whose
+   * components can be put off while they are hidden.
+   *
+   * @param className the fully qualified name of the component's class
+   */
+  public static boolean canHoldDeferred(String className) {
+    synchronized (canHoldDeferred) {
+      Boolean result = canHoldDeferred.get(className);
+      if (result == null) {
+        Class<?> componentClass = findClass(className);
+        result = componentClass != null
+            && (HVArrangement.class.isAssignableFrom(componentClass)
+                || TableArrangement.class.isAssignableFrom(componentClass));
+        canHoldDeferred.put(className, result);
+      }
+      return result;
+    }
+  }
+
+  private static Class<?> findClass(String className) {
+    try {
+      return Class.forName(className);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static boolean hasInitialize(Class<?> componentClass) {
+    try {
+      componentClass.getMethod("Initialize", (Class<?>[]) null);
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DeferredComponent[" + create + "]";
+  }
+}
@@ -98,6 +98,47 @@ class DummyMapController implements MapController {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public void setClusterMarkersEnabled(boolean enable) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isClusterMarkersEnabled() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setTileCacheSize(long bytes) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getTileCacheSize() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setCacheOnly(boolean cacheOnly) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isCacheOnly() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setTileFetcher(TileDownloader.TileFetcher fetcher) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void downloadRegion(double north, double west, double south, double east, int minZoom,
+      int maxZoom) {
+    throw new UnsupportedOperationException();
+  }
+
   public void setPanEnabled(boolean enable) {
     throw new UnsupportedOperationException();
   }
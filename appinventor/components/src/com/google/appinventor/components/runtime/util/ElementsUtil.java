@@ -62,9 +62,10 @@ public class ElementsUtil {
     // If multiple Selections have the same SelectionIndex, use the first.
     // If none do, arbitrarily set the SelectionIndex to its default value
     // of 0.
-    for (int i = 0; i < items.size(); i++) {
+    Object[] elements = items.toArray();
+    for (int i = 0; i < elements.length; i++) {
       // The comparison is case-sensitive to be consistent with yail-equal?.
-      if (items.getString(i).equals(value)) {
+      if (elements[i].toString().equals(value)) {
         return i + 1;
       }
     }
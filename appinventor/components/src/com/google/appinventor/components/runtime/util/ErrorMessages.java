@@ -131,6 +131,7 @@ public final class ErrorMessages {
   public static final int ERROR_WEB_BUILD_REQUEST_DATA_NOT_TWO_ELEMENTS = 1113;
   public static final int ERROR_WEB_UNABLE_TO_DELETE = 1114;
   public static final int ERROR_WEB_XML_TEXT_DECODE_FAILED = 1115;
+  public static final int ERROR_WEB_REQUEST_TIMED_OUT = 1116;
   // Contact picker (and PhoneNumberPicker) errors
   public static final int ERROR_PHONE_UNSUPPORTED_CONTACT_PICKER = 1107;
   public static final int ERROR_PHONE_UNSUPPORTED_SEARCH_IN_CONTACT_PICKING = 1108;
@@ -167,6 +168,9 @@ public final class ErrorMessages {
   public static final int ERROR_CANNOT_WRITE_TO_FILE = 2104;
   public static final int ERROR_CANNOT_DELETE_ASSET = 2105;
   public static final int ERROR_CANNOT_WRITE_ASSET = 2106;
+  public static final int ERROR_CANNOT_PARSE_CSV = 2107;
+  public static final int ERROR_INVALID_LINE_RANGE = 2108;
+  public static final int ERROR_INVALID_BATCH_SIZE = 2109;
 
   // Yandex.Translate errors
   public static final int ERROR_TRANSLATE_NO_KEY_FOUND = 2201;
@@ -232,8 +236,13 @@ public final class ErrorMessages {
   public static final int ERROR_INVALID_LATITUDE_IN_POINT_AT_INDEX = 3418;
   public static final int ERROR_INVALID_LONGITUDE_IN_POINT_AT_INDEX = 3419;
   public static final int ERROR_EXPECTED_ARRAY_AT_INDEX = 3420;
+  public static final int ERROR_INVALID_ZOOM_RANGE = 3421;
+  public static final int ERROR_TOO_MANY_TILES = 3422;
 
-  // Start the next group of errors at 3500
+  // Sensor errors
+  public static final int ERROR_BAD_VALUE_FOR_SENSOR_AXIS = 3501;
+
+  // Start the next group of errors at 3600
 
   // Mapping of error numbers to error message format strings.
   private static final Map<Integer, String> errorMessages;
@@ -464,6 +473,8 @@ public final class ErrorMessages {
         "Unable to build request data: element %s does not contain two elements");
     errorMessages.put(ERROR_WEB_UNABLE_TO_DELETE,
             "Unable to delete a resource with the specified URL: %s");
+    errorMessages.put(ERROR_WEB_REQUEST_TIMED_OUT,
+        "Timed out while waiting for a response from the specified URL: %s");
     // Contact picker (and PhoneNumberPicker) errors
     errorMessages.put(ERROR_PHONE_UNSUPPORTED_CONTACT_PICKER,
         "The software used in this app cannot extract contacts from this type of phone.");
@@ -511,6 +522,10 @@ public final class ErrorMessages {
     errorMessages.put(ERROR_CANNOT_WRITE_TO_FILE, "Cannot write to file %s");
     errorMessages.put(ERROR_CANNOT_DELETE_ASSET, "Cannot delete asset file at %s");
     errorMessages.put(ERROR_CANNOT_WRITE_ASSET, "Cannot write asset file at %s");
+    errorMessages.put(ERROR_CANNOT_PARSE_CSV, "The file %s is not a valid CSV table: %s");
+    errorMessages.put(ERROR_INVALID_LINE_RANGE,
+        "The start line must be at least 1 and the count at least 0, not %s and %s");
+    errorMessages.put(ERROR_INVALID_BATCH_SIZE, "The batch size must be at least 1, not %s");
     //Yandex.Translate translate Errors
     errorMessages.put(ERROR_TRANSLATE_NO_KEY_FOUND, "Missing API key for the Yandex.Translate " +
         "service.");
@@ -583,6 +598,15 @@ public final class ErrorMessages {
         "Invalid longitude %2$s in point at index %1$d. Expected a value between [-180, 180].");
     errorMessages.put(ERROR_EXPECTED_ARRAY_AT_INDEX,
         "Expected an array of values at index %1$d, but got %2$s.");
+    errorMessages.put(ERROR_INVALID_ZOOM_RANGE,
+        "Invalid zoom levels %1$d to %2$d. Expected levels between %3$d and %4$d.");
+    errorMessages.put(ERROR_TOO_MANY_TILES,
+        "The region covers %1$d tiles, more than the limit of %2$d. Choose a smaller region " +
+        "or fewer zoom levels.");
+
+    // Sensor errors
+    errorMessages.put(ERROR_BAD_VALUE_FOR_SENSOR_AXIS,
+        "The value -- %s -- provided for the axis was bad. The only legal values are 1, 2, or 3.");
   }
 
   private ErrorMessages() {
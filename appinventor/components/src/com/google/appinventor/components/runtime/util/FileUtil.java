@@ -10,8 +10,7 @@ import com.google.appinventor.components.runtime.errors.RuntimeError;
 
 import android.os.Environment;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -20,7 +19,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Utilities for reading and writing files to the external storage.
@@ -47,6 +49,9 @@ public class FileUtil {
 
   private static final String DIRECTORY_DOWNLOADS = "Downloads";
 
+  // Size of the buffer used when copying streams.
+  private static final int BUFFER_LENGTH = 0x2000;
+
   private FileUtil() {
   }
 
@@ -75,6 +80,42 @@ public class FileUtil {
     return out.toByteArray();
   }
 
+  /**
+   * Reads up to count lines from the given reader, starting at the given
+   * line, without holding the lines before it.  Lines may end with a line
+   * feed, a carriage return, or both, and the line ends are not included.
+   * The reader is not closed.
+   *
+   * @param reader the text to read
+   * @param startLine the number of the first line to read, where the first
+   *     line of the text is 1
+   * @param count the most lines to read
+   * @return the lines read, which are fewer than count if the text ends
+   *     first
+   */
+  public static List<String> readLines(Reader reader, int startLine, int count)
+      throws IOException {
+    if (startLine < 1) {
+      throw new IllegalArgumentException("startLine must be at least 1");
+    }
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative");
+    }
+    BufferedReader in = reader instanceof BufferedReader
+        ? (BufferedReader) reader : new BufferedReader(reader);
+    List<String> lines = new ArrayList<String>();
+    for (int skipped = 1; skipped < startLine; skipped++) {
+      if (in.readLine() == null) {
+        return lines;
+      }
+    }
+    String line;
+    while (lines.size() < count && (line = in.readLine()) != null) {
+      lines.add(line);
+    }
+    return lines;
+  }
+
   /**
    * Downloads the resource with the given URL and writes it as a local file.
    *
@@ -150,16 +191,12 @@ public class FileUtil {
   }
 
   private static void copy(InputStream in, OutputStream out) throws IOException {
-    out = new BufferedOutputStream(out, 0x1000);
-    in = new BufferedInputStream(in, 0x1000);
 
     // Copy the contents from the input stream to the output stream.
-    while (true) {
-      int b = in.read();
-      if (b == -1) {
-        break;
-      }
-      out.write(b);
+    byte[] buffer = new byte[BUFFER_LENGTH];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
     }
     out.flush();
   }
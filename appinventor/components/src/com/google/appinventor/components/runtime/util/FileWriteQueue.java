@@ -0,0 +1,338 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes text to files on a single background thread, so that writes are
+ * made in the order they are requested and never block the caller.
+ *
+ * Appended text goes to a buffered writer that is kept open for each file,
+ * rather than opening and closing the file for every append, which makes
+ * appending a line at a time cheap.  Buffered text is written to the file
+ * a short time after it is appended, when {@link #flush()} is called, and
+ * before any later save of the same file or task queued with
+ * {@link #afterWrites}.
+ *
+ * Files are told apart by their canonical paths, so that the same file
+ * named in different ways is kept open once, and its writes are made in
+ * order.  The queue can therefore be shared by everything writing files in
+ * the app.  Each write is given the name the app used for the file and a
+ * listener for its results.  The writers are only used on the queue's
+ * thread, so they need no locks.
+ *
+ */
+public final class FileWriteQueue {
+  // The most files kept open for appending.  The least recently appended file is closed to make
+  // room for another.
+  static final int MAX_OPEN_FILES = 8;
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final long IDLE_TIMEOUT_MS = 10000;
+
+  /**
+   * Receives the results of writes.  The methods are called on the queue's
+   * thread.
+   */
+  public interface Listener {
+    /**
+     * Called when text has been saved to a file, or appended to the file's
+     * buffer.
+     *
+     * @param fileName the name of the file written
+     * @param append true if the text was appended
+     */
+    void onWritten(String fileName, boolean append);
+
+    /**
+     * Called when text can't be written to a file.  Text appended to the
+     * file's buffer since it was last flushed may have been lost.
+     *
+     * @param fileName the name of the file that couldn't be written
+     * @param append true if the text was being appended, or flushed after
+     *     being appended
+     * @param e the problem, which is a FileNotFoundException if the file
+     *     couldn't be created or opened
+     */
+    void onError(String fileName, boolean append, IOException e);
+  }
+
+  private static class OpenFile {
+    final Writer writer;
+    // The name and listener of the last append, which are told if the text can't be written
+    String fileName;
+    Listener listener;
+
+    OpenFile(String fileName, Writer writer, Listener listener) {
+      this.fileName = fileName;
+      this.writer = writer;
+      this.listener = listener;
+    }
+  }
+
+  // The file open for appending at each canonical path, in order of use.
+  private final LinkedHashMap<String, OpenFile> openFiles =
+      new LinkedHashMap<String, OpenFile>(16, 0.75f, true);
+  private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+  private final long flushDelayMs;
+  // Only used on the queue's thread
+  private boolean flushScheduled = false;
+  // Done when the files have been closed by shutdown
+  private Future<?> closed;
+
+  /**
+   * Creates a queue that writes appended text to the files at most a given
+   * time after it was appended.
+   *
+   * @param flushDelayMs how long appended text may stay buffered before
+   *     it is written, in milliseconds
+   */
+  public FileWriteQueue(long flushDelayMs) {
+    this.flushDelayMs = flushDelayMs;
+    // The files are closed on shutdown, so a flush still waiting then isn't needed.
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    // Let the thread end when there is nothing to write, as a queue shared by the app is never
+    // shut down.
+    executor.setKeepAliveTime(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Queues the text to be appended to the file, creating the file if it
+   * doesn't exist.
+   *
+   * @param file the file to append to
+   * @param fileName the name of the file, for the listener
+   * @param text the text to append
+   * @param listener receives the result of the write
+   */
+  public void append(final File file, final String fileName, final String text,
+      final Listener listener) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        String path = canonicalPath(file);
+        OpenFile openFile = openFiles.get(path);
+        try {
+          if (openFile == null) {
+            openFile = open(file, path, fileName, listener);
+          }
+          openFile.fileName = fileName;
+          openFile.listener = listener;
+          openFile.writer.write(text);
+          scheduleFlush();
+        } catch (IOException e) {
+          openFiles.remove(path);
+          if (openFile != null) {
+            closeQuietly(openFile.writer);
+          }
+          listener.onError(fileName, true, e);
+          return;
+        }
+        listener.onWritten(fileName, true);
+      }
+    });
+  }
+
+  /**
+   * Queues the text to be saved to the file, replacing its contents.  Text
+   * appended to the file before this is written first.
+   *
+   * @param file the file to save to
+   * @param fileName the name of the file, for the listener
+   * @param text the text to save
+   * @param listener receives the result of the write
+   */
+  public void save(final File file, final String fileName, final String text,
+      final Listener listener) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        close(canonicalPath(file));
+        try {
+          Writer writer = new OutputStreamWriter(new FileOutputStream(file, false));
+          try {
+            writer.write(text);
+          } finally {
+            writer.close();
+          }
+        } catch (IOException e) {
+          listener.onError(fileName, false, e);
+          return;
+        }
+        listener.onWritten(fileName, false);
+      }
+    });
+  }
+
+  /**
+   * Queues a task to be run on the queue's thread once the writes queued
+   * before it are done, such as reading or deleting the file.  The text
+   * appended to the file is written and the file is closed before the task
+   * runs.
+   *
+   * @param file the file the task uses
+   * @param task the task to run
+   * @return a future that is done when the task has run
+   */
+  public Future<?> afterWrites(final File file, final Runnable task) {
+    return executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        close(canonicalPath(file));
+        task.run();
+      }
+    });
+  }
+
+  /**
+   * Queues the text appended to every file to be written to the files.
+   *
+   * @return a future that is done when the text has been written
+   */
+  public Future<?> flush() {
+    return executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        flushAll();
+      }
+    });
+  }
+
+  /**
+   * Closes the files once the writes already queued are done, writing the
+   * text appended to them, and stops the queue's thread.  Nothing more can
+   * be queued.  Calling this again has no effect.
+   *
+   * @return a future that is done when the files have been closed
+   */
+  public synchronized Future<?> shutdown() {
+    if (closed != null) {
+      return closed;
+    }
+    closed = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        for (String path : new ArrayList<String>(openFiles.keySet())) {
+          close(path);
+        }
+      }
+    });
+    executor.shutdown();
+    return closed;
+  }
+
+  /**
+   * Waits at most the given time for a future returned by the queue.
+   *
+   * @return true if the future is done
+   */
+  public static boolean await(Future<?> future, long timeoutMs) {
+    try {
+      future.get(timeoutMs, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  // The number of files open for appending once the queued writes are done, for tests.
+  int openFileCount() throws Exception {
+    return executor.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return openFiles.size();
+      }
+    }).get();
+  }
+
+  private OpenFile open(File file, String path, String fileName, Listener listener)
+      throws IOException {
+    if (openFiles.size() >= MAX_OPEN_FILES) {
+      // The first file is the least recently used.
+      close(openFiles.keySet().iterator().next());
+    }
+    OpenFile openFile = new OpenFile(fileName, new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file, true)), BUFFER_SIZE), listener);
+    openFiles.put(path, openFile);
+    return openFile;
+  }
+
+  /*
+   * Returns the path that names the file however it was named, or its absolute path if that
+   * can't be found.
+   */
+  private static String canonicalPath(File file) {
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException e) {
+      return file.getAbsolutePath();
+    }
+  }
+
+  /*
+   * Closes the file open at the given path, if there is one, writing the text appended to it.
+   */
+  private void close(String path) {
+    OpenFile openFile = openFiles.remove(path);
+    if (openFile != null) {
+      try {
+        openFile.writer.close();
+      } catch (IOException e) {
+        openFile.listener.onError(openFile.fileName, true, e);
+      }
+    }
+  }
+
+  private static void closeQuietly(Writer writer) {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      // The problem has already been reported.
+    }
+  }
+
+  private void flushAll() {
+    flushScheduled = false;
+    Iterator<OpenFile> it = openFiles.values().iterator();
+    while (it.hasNext()) {
+      OpenFile openFile = it.next();
+      try {
+        openFile.writer.flush();
+      } catch (IOException e) {
+        it.remove();
+        closeQuietly(openFile.writer);
+        openFile.listener.onError(openFile.fileName, true, e);
+      }
+    }
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        flushAll();
+      }
+    }, flushDelayMs, TimeUnit.MILLISECONDS);
+  }
+}
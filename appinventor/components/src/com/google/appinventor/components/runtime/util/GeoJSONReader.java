@@ -0,0 +1,336 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Reads a GeoJSON feature collection from a stream, handing each feature
+ * to a {@link FeatureHandler} as soon as it has been read.
+ *
+ * Unlike parsing the document with org.json, the document is never held in
+ * memory as a whole, neither as text nor as JSON objects, and the features
+ * can be put to use while the rest of the document is still being
+ * downloaded.  Each feature is given as a list of (key, value) pairs, with
+ * JSON objects as lists of pairs and JSON arrays as lists, the form taken by
+ * {@link GeoJSONUtil#processGeoJSONFeature}.  Members of objects whose value
+ * is null are left out, as if they were absent, and nulls in arrays are
+ * given as the string "null".
+ *
+ */
+public final class GeoJSONReader {
+  private static final String GEOJSON_TYPE = "type";
+  private static final String GEOJSON_FEATURES = "features";
+  private static final String GEOJSON_FEATURECOLLECTION = "FeatureCollection";
+  private static final String GEOJSON_GEOMETRYCOLLECTION = "GeometryCollection";
+
+  /**
+   * Receives the features read.
+   */
+  public interface FeatureHandler {
+    /**
+     * Called with each feature, in the order of the document.
+     *
+     * @param feature the feature as a list of (key, value) pairs
+     */
+    void onFeature(YailList feature);
+  }
+
+  private final Reader reader;
+  private int next = -2;  // The next character, or -2 if it hasn't been read yet
+  private long position;
+
+  public GeoJSONReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Returns whether type is the type of a GeoJSON document that can hold
+   * features.
+   */
+  public static boolean isCollectionType(String type) {
+    return GEOJSON_FEATURECOLLECTION.equals(type) || GEOJSON_GEOMETRYCOLLECTION.equals(type);
+  }
+
+  /**
+   * Reads a feature collection, passing each of its features to the
+   * handler.  No feature is passed until the type of the document has been
+   * read and found to be a collection.  If the type comes first, as it
+   * usually does, the features are passed as they are read.  Otherwise the
+   * features read before it are held until it is read, and are never passed
+   * if it isn't a collection or the document has no type.  If the type is
+   * read before the features and isn't a collection, the features aren't
+   * read.
+   *
+   * @return the type of the document, or the empty string if it has none
+   * @throws JSONException if the document isn't a JSON object
+   * @throws IOException if the document can't be read
+   */
+  public String readFeatureCollection(FeatureHandler handler) throws IOException, JSONException {
+    String type = null;
+    List<YailList> heldFeatures = null;
+    expect('{');
+    if (peekToken() == '}') {
+      read();
+      return "";
+    }
+    do {
+      String key = readString();
+      expect(':');
+      if (GEOJSON_TYPE.equals(key)) {
+        Object value = readValue();
+        type = value instanceof String ? (String) value : "";
+        if (!isCollectionType(type)) {
+          return type;
+        }
+        if (heldFeatures != null) {
+          for (YailList feature : heldFeatures) {
+            handler.onFeature(feature);
+          }
+          heldFeatures = null;
+        }
+      } else if (GEOJSON_FEATURES.equals(key) && peekToken() == '[') {
+        if (type == null) {
+          heldFeatures = new ArrayList<YailList>();
+          readFeatures(heldFeatures);
+        } else {
+          readFeatures(handler);
+        }
+      } else {
+        readValue();
+      }
+    } while (readSeparator('}'));
+    return type == null ? "" : type;
+  }
+
+  private void readFeatures(final List<YailList> heldFeatures)
+      throws IOException, JSONException {
+    readFeatures(new FeatureHandler() {
+      @Override
+      public void onFeature(YailList feature) {
+        heldFeatures.add(feature);
+      }
+    });
+  }
+
+  private void readFeatures(FeatureHandler handler) throws IOException, JSONException {
+    expect('[');
+    if (peekToken() == ']') {
+      read();
+      return;
+    }
+    do {
+      Object feature = readValue();
+      if (!(feature instanceof YailList)) {
+        throw syntaxError("Expected a feature object");
+      }
+      handler.onFeature((YailList) feature);
+    } while (readSeparator(']'));
+  }
+
+  private Object readValue() throws IOException, JSONException {
+    int c = peekToken();
+    switch (c) {
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        readWord("true");
+        return Boolean.TRUE;
+      case 'f':
+        readWord("false");
+        return Boolean.FALSE;
+      case 'n':
+        readWord("null");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw syntaxError("Unexpected " + describe(c));
+    }
+  }
+
+  private YailList readObject() throws IOException, JSONException {
+    expect('{');
+    List<YailList> pairs = new ArrayList<YailList>();
+    if (peekToken() == '}') {
+      read();
+      return YailList.makeList(pairs);
+    }
+    do {
+      String key = readString();
+      expect(':');
+      Object value = readValue();
+      if (value != null) {
+        pairs.add(YailList.makeList(new Object[] { key, value }));
+      }
+    } while (readSeparator('}'));
+    return YailList.makeList(pairs);
+  }
+
+  private YailList readArray() throws IOException, JSONException {
+    expect('[');
+    List<Object> items = new ArrayList<Object>();
+    if (peekToken() == ']') {
+      read();
+      return YailList.makeList(items);
+    }
+    do {
+      Object value = readValue();
+      // A list can't hold null, so it becomes the string "null", as in JsonUtil.
+      items.add(value == null ? "null" : value);
+    } while (readSeparator(']'));
+    return YailList.makeList(items);
+  }
+
+  private String readString() throws IOException, JSONException {
+    expect('"');
+    StringBuilder sb = new StringBuilder();
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return sb.toString();
+      } else if (c == '\\') {
+        c = read();
+        switch (c) {
+          case 'b': sb.append('\b'); break;
+          case 'f': sb.append('\f'); break;
+          case 'n': sb.append('\n'); break;
+          case 'r': sb.append('\r'); break;
+          case 't': sb.append('\t'); break;
+          case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(read(), 16);
+              if (digit < 0) {
+                throw syntaxError("Invalid escape");
+              }
+              code = code * 16 + digit;
+            }
+            sb.append((char) code);
+            break;
+          case '"':
+          case '\\':
+          case '/':
+            sb.append((char) c);
+            break;
+          default:
+            throw syntaxError("Invalid escape");
+        }
+      } else if (c == -1) {
+        throw syntaxError("Unterminated string");
+      } else {
+        sb.append((char) c);
+      }
+    }
+  }
+
+  /*
+   * Reads a number as org.json would: an Integer or Long if it is a whole number that fits,
+   * otherwise a Double.
+   */
+  private Object readNumber() throws IOException, JSONException {
+    StringBuilder sb = new StringBuilder();
+    boolean decimal = false;
+    int c = peek();
+    while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+      decimal |= c == '.' || c == 'e' || c == 'E';
+      sb.append((char) read());
+      c = peek();
+    }
+    String number = sb.toString();
+    try {
+      if (!decimal) {
+        long value = Long.parseLong(number);
+        if (value == (int) value) {
+          return (int) value;
+        }
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // Too large for a long
+    }
+    try {
+      return Double.valueOf(number);
+    } catch (NumberFormatException e) {
+      throw syntaxError("Invalid number " + number);
+    }
+  }
+
+  private void readWord(String word) throws IOException, JSONException {
+    for (int i = 0; i < word.length(); i++) {
+      if (read() != word.charAt(i)) {
+        throw syntaxError("Expected " + word);
+      }
+    }
+  }
+
+  /*
+   * Reads the comma between two members of an object or array, returning true, or the end of
+   * the object or array, returning false.
+   */
+  private boolean readSeparator(char end) throws IOException, JSONException {
+    int c = peekToken();
+    read();
+    if (c == ',') {
+      return true;
+    } else if (c == end) {
+      return false;
+    }
+    throw syntaxError("Expected , or " + end + " but found " + describe(c));
+  }
+
+  private void expect(char expected) throws IOException, JSONException {
+    int c = peekToken();
+    if (c != expected) {
+      throw syntaxError("Expected " + expected + " but found " + describe(c));
+    }
+    read();
+  }
+
+  /*
+   * Skips white space and returns the next character without reading it.
+   */
+  private int peekToken() throws IOException {
+    int c = peek();
+    while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+      read();
+      c = peek();
+    }
+    return c;
+  }
+
+  private int peek() throws IOException {
+    if (next == -2) {
+      next = reader.read();
+    }
+    return next;
+  }
+
+  private int read() throws IOException {
+    int c = peek();
+    next = -2;
+    position++;
+    return c;
+  }
+
+  private static String describe(int c) {
+    return c == -1 ? "end of input" : "'" + (char) c + "'";
+  }
+
+  private JSONException syntaxError(String message) {
+    return new JSONException(message + " at character " + position);
+  }
+}
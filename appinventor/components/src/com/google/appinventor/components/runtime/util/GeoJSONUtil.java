@@ -677,6 +677,7 @@ public final class GeoJSONUtil {
     i.next();
     while (i.hasNext()) {
       YailList coordinate = (YailList) i.next();
+      YailListIndex.changed(coordinate);
       Object temp = coordinate.get(1);
       Pair p = (Pair) coordinate.getCdr();
       p.setCar(coordinate.get(2));
@@ -0,0 +1,169 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups points that would be drawn close together on a map into clusters.
+ *
+ * The map at the given zoom level is divided into square cells of a fixed size in pixels, and
+ * the points falling in each cell make up a cluster. Since the cells cover less of the world as
+ * the map zooms in, clusters split up as the user zooms in and merge as the user zooms out.
+ *
+ * Pixels are those of the map's tiles, of which there are 256 across the world at zoom level 0,
+ * doubling with each zoom level, using the spherical Mercator projection of the tiles.
+ *
+ * @param <T> the type of the items being clustered
+ */
+public final class GridClusterer<T> {
+  private static final int TILE_SIZE = 256;
+  private static final double MAX_LATITUDE = 85.05112878;
+
+  /**
+   * Gets the location of an item being clustered.
+   *
+   * @param <T> the type of the items being clustered
+   */
+  public interface Locator<T> {
+    double getLatitude(T item);
+    double getLongitude(T item);
+  }
+
+  /**
+   * A group of items that lie in the same cell of the grid.
+   *
+   * @param <T> the type of the items being clustered
+   */
+  public static final class Cluster<T> {
+    private final List<T> items = new ArrayList<T>();
+    private double latitudeSum = 0;
+    private double longitudeSum = 0;
+    private double north = -90;
+    private double south = 90;
+    private double east = -180;
+    private double west = 180;
+
+    private void add(T item, double latitude, double longitude) {
+      items.add(item);
+      latitudeSum += latitude;
+      longitudeSum += longitude;
+      north = Math.max(north, latitude);
+      south = Math.min(south, latitude);
+      east = Math.max(east, longitude);
+      west = Math.min(west, longitude);
+    }
+
+    /**
+     * Returns the items in the cluster, in the order they were given.
+     */
+    public List<T> getItems() {
+      return Collections.unmodifiableList(items);
+    }
+
+    public int size() {
+      return items.size();
+    }
+
+    /**
+     * Returns the mean latitude of the items, where the cluster is shown.
+     */
+    public double getLatitude() {
+      return latitudeSum / items.size();
+    }
+
+    /**
+     * Returns the mean longitude of the items, where the cluster is shown.
+     */
+    public double getLongitude() {
+      return longitudeSum / items.size();
+    }
+
+    public double getNorth() {
+      return north;
+    }
+
+    public double getSouth() {
+      return south;
+    }
+
+    public double getEast() {
+      return east;
+    }
+
+    public double getWest() {
+      return west;
+    }
+  }
+
+  private final int cellSize;
+  private final Locator<T> locator;
+
+  /**
+   * Creates a clusterer.
+   *
+   * @param cellSize the width and height of the cells of the grid, in pixels
+   * @param locator gets the location of the items to cluster
+   */
+  public GridClusterer(int cellSize, Locator<T> locator) {
+    if (cellSize <= 0) {
+      throw new IllegalArgumentException("cellSize must be positive.");
+    }
+    this.cellSize = cellSize;
+    this.locator = locator;
+  }
+
+  /**
+   * Clusters the items as they would be drawn at the given zoom level. Every item is in exactly
+   * one cluster, and an item that isn't near any other is in a cluster of its own. The clusters
+   * are in the order of their first items.
+   *
+   * @param items the items to cluster
+   * @param zoom the zoom level of the map
+   * @return the clusters
+   */
+  public List<Cluster<T>> cluster(Iterable<? extends T> items, int zoom) {
+    double worldSize = (double) TILE_SIZE * Math.pow(2, Math.max(0, zoom));
+    Map<Long, Cluster<T>> cells = new LinkedHashMap<Long, Cluster<T>>();
+    for (T item : items) {
+      double latitude = locator.getLatitude(item);
+      double longitude = locator.getLongitude(item);
+      long column = (long) Math.floor(toX(longitude) * worldSize / cellSize);
+      long row = (long) Math.floor(toY(latitude) * worldSize / cellSize);
+      Long cell = (column << 32) | (row & 0xffffffffL);
+      Cluster<T> cluster = cells.get(cell);
+      if (cluster == null) {
+        cluster = new Cluster<T>();
+        cells.put(cell, cluster);
+      }
+      cluster.add(item, latitude, longitude);
+    }
+    return new ArrayList<Cluster<T>>(cells.values());
+  }
+
+  /*
+   * Returns the distance of the longitude from the west edge of the world map, as a fraction of
+   * the width of the map.
+   */
+  static double toX(double longitude) {
+    double x = (longitude + 180) / 360;
+    return x - Math.floor(x);  // Wrap around the antimeridian
+  }
+
+  /*
+   * Returns the distance of the latitude from the north edge of the world map, as a fraction of
+   * the height of the map.
+   */
+  static double toY(double latitude) {
+    double phi = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+    double y = (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2;
+    return Math.max(0, Math.min(1, y));
+  }
+}
@@ -0,0 +1,157 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+/**
+ * The HTTP client shared by the components that make web requests: Web,
+ * and through {@link WebServiceUtil}, TinyWebDB, GameClient and Voting.
+ *
+ * Requests are made with HttpURLConnection, which itself keeps a pool of
+ * connections to servers and reuses them for later requests, so that an app
+ * that polls a server doesn't set up a new TCP (and TLS) connection each
+ * time.  HttpUtil doesn't pool connections; it only avoids defeating the
+ * platform's pool.  A connection goes back to the pool once its response has
+ * been read to the end and closed, but not if it is disconnected, so
+ * {@link #finish(HttpURLConnection, boolean)} only disconnects connections
+ * whose response wasn't read.
+ *
+ * Requests made with useCache set may also use an on-disk cache of
+ * responses, which is limited in size and discards the least recently used
+ * responses first.  The cache follows the Cache-Control headers of the
+ * responses, and revalidates stale responses with conditional requests
+ * based on their ETag and Last-Modified headers.  Other requests, including
+ * those made by the rest of the app without HttpUtil, don't use the cache;
+ * see {@link ScopedResponseCache}.  The cache requires Android 4.0 or later.
+ *
+ */
+public final class HttpUtil {
+  private static final String LOG_TAG = "HttpUtil";
+
+  private static final String CACHE_DIRECTORY = "http";
+  private static final long CACHE_SIZE = 10 * 1024 * 1024;  // 10 MB
+
+  private static boolean keepAliveConfigured = false;
+  private static boolean cacheInstalled = false;
+
+  private HttpUtil() {
+  }
+
+  /**
+   * Installs the response cache used by requests made with useCache set,
+   * if it isn't installed already.  If the app has installed its own
+   * response cache, that is used instead.
+   *
+   * @param context the context whose cache directory holds the responses
+   * @return true if the cache is installed, false if it isn't supported or
+   *         couldn't be created
+   */
+  public static synchronized boolean installCache(Context context) {
+    if (!cacheInstalled && SdkLevel.getLevel() >= SdkLevel.LEVEL_ICE_CREAM_SANDWICH) {
+      try {
+        if (ResponseCache.getDefault() == null) {
+          ResponseCache cache = IceCreamSandwichUtil.createHttpResponseCache(
+              new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE);
+          ResponseCache.setDefault(new ScopedResponseCache(cache));
+        }
+        cacheInstalled = true;
+      } catch (IOException e) {
+        Log.w(LOG_TAG, "Unable to install the HTTP response cache", e);
+      }
+    }
+    return cacheInstalled;
+  }
+
+  /**
+   * Opens a connection to the given URL.  Until the connection is passed to
+   * {@link #finish(HttpURLConnection, boolean)}, the current thread must
+   * not make other requests.
+   *
+   * @param url the URL, which must be an http or https URL
+   * @param timeout the connect and read timeout in milliseconds, or 0 to
+   *        wait indefinitely
+   * @param useCache whether the response may come from, and be stored in,
+   *        the response cache installed by {@link #installCache(Context)}
+   * @return the connection
+   * @throws IOException if the connection can't be opened
+   * @throws ClassCastException if the URL is not an http or https URL
+   */
+  public static HttpURLConnection openConnection(URL url, int timeout, boolean useCache)
+      throws IOException {
+    configureKeepAlive();
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (timeout > 0) {
+      connection.setConnectTimeout(timeout);
+      connection.setReadTimeout(timeout);
+    }
+    synchronized (HttpUtil.class) {
+      useCache = useCache && cacheInstalled;
+    }
+    connection.setUseCaches(useCache);
+    ScopedResponseCache.setEnabled(useCache);
+    return connection;
+  }
+
+  /**
+   * Finishes with a connection.  If its response has been read to the end
+   * and closed, the connection is left to be reused by a later request to
+   * the same server.  Otherwise it is disconnected.
+   *
+   * @param connection the connection
+   * @param responseRead whether the response has been read and closed
+   */
+  public static void finish(HttpURLConnection connection, boolean responseRead) {
+    ScopedResponseCache.setEnabled(false);
+    if (!responseRead) {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Returns the stream from which to read the response of a connection,
+   * which is the error stream if the response indicates an error, or an
+   * empty stream if there is no response body.
+   *
+   * @throws SocketTimeoutException if the server didn't respond in time
+   */
+  public static InputStream getResponseStream(HttpURLConnection connection)
+      throws SocketTimeoutException {
+    // According to the Android reference documentation for HttpURLConnection: If the HTTP response
+    // indicates that an error occurred, getInputStream() will throw an IOException. Use
+    // getErrorStream() to read the error response.
+    InputStream in;
+    try {
+      in = connection.getInputStream();
+    } catch (SocketTimeoutException e) {
+      throw e;
+    } catch (IOException e) {
+      in = connection.getErrorStream();
+    }
+    return (in != null) ? in : new ByteArrayInputStream(new byte[0]);
+  }
+
+  private static synchronized void configureKeepAlive() {
+    if (!keepAliveConfigured) {
+      // Reusing connections doesn't work reliably before Android 2.2.
+      // See http://android-developers.blogspot.com/2011/09/androids-http-clients.html
+      if (SdkLevel.getLevel() < SdkLevel.LEVEL_FROYO) {
+        System.setProperty("http.keepAlive", "false");
+      }
+      keepAliveConfigured = true;
+    }
+  }
+}
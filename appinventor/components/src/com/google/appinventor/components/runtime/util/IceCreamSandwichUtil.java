@@ -5,10 +5,15 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import android.net.http.HttpResponseCache;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.ResponseCache;
+
 /**
  * IceCreamSandwichUtil provides implementation of functionality that was added in Android Ice Cream
  * Sandwich 4.0 (API 14).
@@ -29,4 +34,19 @@ public final class IceCreamSandwichUtil {
       view.setAllCaps(allCaps);
     }
   }
+
+  /**
+   * Creates an on-disk cache for the responses to HttpURLConnection
+   * requests.  The cache is installed as the default cache, which the
+   * caller may replace.
+   *
+   * @param directory the directory in which to keep the cache
+   * @param maxSize the maximum size of the cache in bytes
+   * @return the cache
+   * @throws IOException if the cache can't be created
+   */
+  public static ResponseCache createHttpResponseCache(File directory, long maxSize)
+      throws IOException {
+    return HttpResponseCache.install(directory, maxSize);
+  }
 }
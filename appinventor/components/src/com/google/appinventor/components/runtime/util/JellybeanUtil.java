@@ -9,6 +9,7 @@ import android.graphics.Point;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Display;
+import android.view.View;
 
 /**
  * Helper methods for calling methods added in Jellybean
@@ -23,4 +24,12 @@ public class JellybeanUtil {
     display.getRealSize(outSize);
   }
 
+  /**
+   * Schedules the runnable to run on the next animation frame of the view, as
+   * driven by the display's vsync signal.
+   */
+  public static void postOnAnimation(View view, Runnable action) {
+    view.postOnAnimation(action);
+  }
+
 }
@@ -6,6 +6,7 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import gnu.kawa.functions.Arithmetic;
 import gnu.lists.FString;
 import gnu.math.IntFraction;
 
@@ -18,6 +19,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Provides utility functions to convert between Java object and JSON.
@@ -218,5 +221,147 @@ public class JsonUtil {
       throw new JSONException("Invalid JSON string.");
     }
   }
-}
 
+  /**
+   * Decodes a JSON text to the value that the blocks see.  The result is the
+   * same as that of {@link #getObjectFromJson(String)} once the runtime has
+   * sanitized it, but JSON arrays and objects are read from the text straight
+   * into YailLists of sanitized items, instead of into JSONArrays and
+   * JSONObjects that are copied into Java lists and then again into YailLists
+   * by the runtime.
+   *
+   * As in {@link #getObjectFromJson(String)}, a JSON object decodes to a list
+   * of [key, value] pairs sorted by key, the strings "true" and "false" inside
+   * an array or object decode to booleans and null inside an array or object
+   * decodes to the string "null".
+   *
+   * @param jsonString The JSON text to decode.
+   * @return A YailList for a JSON array or object, otherwise the same value
+   * as getObjectFromJson.
+   * @throws JSONException if the text is not a legal JSON value.
+   */
+  public static Object getYailObjectFromJson(String jsonString) throws JSONException {
+    if (jsonString == null || jsonString.equals("")) {
+      return "";
+    }
+    JSONTokener tokener = new JSONTokener(jsonString);
+    switch (tokener.nextClean()) {
+      case '[':
+        return readYailList(tokener);
+      case '{':
+        return readYailPairs(tokener);
+      default:
+        // Values other than arrays and objects aren't converted the same way as the items in
+        // arrays and objects are.
+        return getObjectFromJson(jsonString);
+    }
+  }
+
+  // The two methods below follow the reading of arrays and objects by Android's JSONTokener,
+  // including its leniencies, so that the results are the same as with JSONArray and JSONObject.
+
+  private static YailList readYailList(JSONTokener tokener) throws JSONException {
+    List<Object> items = new ArrayList<Object>();
+    // A separator right before the closing bracket means a trailing null.
+    boolean hasTrailingSeparator = false;
+    while (true) {
+      char c = tokener.nextClean();
+      if (c == 0) {
+        throw tokener.syntaxError("Unterminated array");
+      } else if (c == ']') {
+        if (hasTrailingSeparator) {
+          items.add(convertJsonItem(null));
+        }
+        return YailList.makeList(items);
+      } else if (c == ',' || c == ';') {
+        // A separator without a value first means null.
+        items.add(convertJsonItem(null));
+        hasTrailingSeparator = true;
+        continue;
+      }
+      tokener.back();
+      items.add(readYailItem(tokener, false));
+
+      c = tokener.nextClean();
+      if (c == ']') {
+        return YailList.makeList(items);
+      } else if (c == ',' || c == ';') {
+        hasTrailingSeparator = true;
+      } else {
+        throw tokener.syntaxError("Unterminated array");
+      }
+    }
+  }
+
+  private static YailList readYailPairs(JSONTokener tokener) throws JSONException {
+    // The pairs are sorted by key, and a repeated key replaces the earlier value.
+    Map<String, Object> pairs = new TreeMap<String, Object>();
+    char c = tokener.nextClean();
+    if (c != '}') {
+      if (c == 0) {
+        throw tokener.syntaxError("End of input");
+      }
+      tokener.back();
+      while (true) {
+        Object name = tokener.nextValue();
+        if (!(name instanceof String)) {
+          throw tokener.syntaxError("Names must be strings, but " + name + " is not");
+        }
+        // The name may also be followed by = or =>.
+        c = tokener.nextClean();
+        if (c != ':' && c != '=') {
+          throw tokener.syntaxError("Expected ':' after " + name);
+        }
+        if (tokener.more() && tokener.next() != '>') {
+          tokener.back();
+        }
+        pairs.put((String) name, readYailItem(tokener, true));
+
+        c = tokener.nextClean();
+        if (c == '}') {
+          break;
+        } else if (c != ',' && c != ';') {
+          throw tokener.syntaxError("Unterminated object");
+        }
+      }
+    }
+
+    List<Object> list = new ArrayList<Object>(pairs.size());
+    for (Map.Entry<String, Object> pair : pairs.entrySet()) {
+      list.add(YailList.makeList(new Object[] { pair.getKey(), pair.getValue() }));
+    }
+    return YailList.makeList(list);
+  }
+
+  private static Object readYailItem(JSONTokener tokener, boolean inObject)
+      throws JSONException {
+    switch (tokener.nextClean()) {
+      case 0:
+        throw tokener.syntaxError("End of input");
+      case '[':
+        return readYailList(tokener);
+      case '{':
+        return readYailPairs(tokener);
+      default:
+        tokener.back();
+        Object value = tokener.nextValue();
+        if (inObject && value instanceof Double
+            && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+          // JSONObject doesn't allow these.
+          throw new JSONException("Forbidden numeric value: " + value);
+        }
+        return sanitizeJsonItem(convertJsonItem(value));
+    }
+  }
+
+  /**
+   * Converts a number in a converted JSON item to the numeric type of the
+   * YAIL runtime, as the runtime does for the values returned by components.
+   */
+  static Object sanitizeJsonItem(Object item) {
+    if (item instanceof Number) {
+      return Arithmetic.asNumeric(item);
+    }
+    return item;
+  }
+}
@@ -0,0 +1,133 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache that holds values up to a total size, discarding the least
+ * recently used values to make room for new ones.  This is like
+ * android.util.LruCache, which isn't available before Honeycomb MR1.
+ *
+ * The methods are synchronized, so the cache can be shared by threads.
+ *
+ */
+public abstract class LruMemoryCache<K, V> {
+  private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true);
+  private final long maxSize;
+  private long size;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxSize the largest total size of the values, in the units of
+   *                {@link #sizeOf}
+   */
+  protected LruMemoryCache(long maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the size of the given value.  This must not change while the
+   * value is in the cache.
+   */
+  protected abstract long sizeOf(V value);
+
+  /**
+   * Returns the value for the given key, making it the most recently used,
+   * or null if it isn't in the cache.
+   */
+  public synchronized V get(K key) {
+    V value = map.get(key);
+    if (value != null) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return value;
+  }
+
+  /**
+   * Adds a value to the cache, replacing any value for the same key, and
+   * discards the least recently used values until the cache is no larger
+   * than its maximum size.  A value larger than the maximum size isn't
+   * cached.
+   */
+  public synchronized void put(K key, V value) {
+    long valueSize = sizeOf(value);
+    V previous = map.remove(key);
+    if (previous != null) {
+      size -= sizeOf(previous);
+    }
+    if (valueSize > maxSize) {
+      return;
+    }
+    map.put(key, value);
+    size += valueSize;
+    trimToSize(maxSize);
+  }
+
+  /**
+   * Discards the least recently used values until the cache is no larger than
+   * the given size.
+   */
+  public synchronized void trimToSize(long targetSize) {
+    Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+    while (size > targetSize && it.hasNext()) {
+      size -= sizeOf(it.next().getValue());
+      it.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Discards all of the values.
+   */
+  public synchronized void clear() {
+    trimToSize(0);
+  }
+
+  public synchronized int count() {
+    return map.size();
+  }
+
+  public synchronized long size() {
+    return size;
+  }
+
+  public long maxSize() {
+    return maxSize;
+  }
+
+  public synchronized long hitCount() {
+    return hits;
+  }
+
+  public synchronized long missCount() {
+    return misses;
+  }
+
+  public synchronized long evictionCount() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    long lookups = hits + misses;
+    return String.format("LruMemoryCache[count=%d,size=%d,maxSize=%d,hits=%d,misses=%d," +
+        "hitRate=%d%%,evictions=%d]", map.size(), size, maxSize, hits, misses,
+        lookups == 0 ? 0 : (int) (100 * hits / lookups), evictions);
+  }
+}
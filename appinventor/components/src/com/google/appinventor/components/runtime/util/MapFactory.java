@@ -120,6 +120,34 @@ public final class MapFactory {
      * @param feature The map feature the user has released from dragging.
      */
     void onFeatureStopDrag(MapFeature feature);
+
+    /**
+     * onClusterClick is raised when the user single-taps on a cluster of markers, when markers
+     * are being clustered.
+     *
+     * @param markers The markers in the cluster.
+     * @param latitude The latitude of the cluster.
+     * @param longitude The longitude of the cluster.
+     */
+    void onClusterClick(List<MapMarker> markers, double latitude, double longitude);
+
+    /**
+     * onRegionDownloadProgress is raised as the tiles of a region requested with
+     * {@link MapController#downloadRegion} are downloaded.
+     *
+     * @param done The number of tiles that have been downloaded or were already cached.
+     * @param total The number of tiles in the region.
+     */
+    void onRegionDownloadProgress(int done, int total);
+
+    /**
+     * onRegionDownloaded is raised when every tile of a region requested with
+     * {@link MapController#downloadRegion} has been tried.
+     *
+     * @param downloaded The number of tiles that were downloaded.
+     * @param failed The number of tiles that could not be downloaded.
+     */
+    void onRegionDownloaded(int downloaded, int failed);
   }
 
   /**
@@ -264,6 +292,73 @@ public final class MapFactory {
      */
     boolean isRotationEnabled();
 
+    /**
+     * Set whether markers that would be drawn close together are shown as a cluster.
+     *
+     * @param enable true if the map should cluster markers, false otherwise. Implementations
+     *               that do not support clustering need not honor this flag.
+     */
+    void setClusterMarkersEnabled(boolean enable);
+
+    /**
+     * Get whether markers are clustered on the map.
+     *
+     * @return true if markers are clustered, otherwise false.
+     */
+    boolean isClusterMarkersEnabled();
+
+    /**
+     * Set the largest total size of the map tiles kept on the device. The least recently used
+     * tiles are deleted to make room for new ones.
+     *
+     * @param bytes the size of the tile cache, in bytes
+     */
+    void setTileCacheSize(long bytes);
+
+    /**
+     * Get the largest total size of the map tiles kept on the device.
+     *
+     * @return the size of the tile cache, in bytes, or 0 if tiles can't be cached
+     */
+    long getTileCacheSize();
+
+    /**
+     * Set whether the map shows only tiles that are already cached, without using the network.
+     *
+     * @param cacheOnly true if tiles should not be downloaded, otherwise false.
+     */
+    void setCacheOnly(boolean cacheOnly);
+
+    /**
+     * Get whether the map shows only tiles that are already cached.
+     *
+     * @return true if tiles are not downloaded, otherwise false.
+     */
+    boolean isCacheOnly();
+
+    /**
+     * Set the fetcher used to download tiles. Tests use this to serve tiles without going to the
+     * network.
+     *
+     * @param fetcher the fetcher for tiles
+     */
+    void setTileFetcher(TileDownloader.TileFetcher fetcher);
+
+    /**
+     * Download the tiles covering a region at the given zoom levels into the tile cache, so
+     * that the map can be used there without a data connection. The download happens in the
+     * background, reporting progress to the event listeners.
+     *
+     * @param north the northern edge of the region
+     * @param west the western edge of the region
+     * @param south the southern edge of the region
+     * @param east the eastern edge of the region
+     * @param minZoom the lowest zoom level to download
+     * @param maxZoom the highest zoom level to download
+     */
+    void downloadRegion(double north, double west, double south, double east, int minZoom,
+        int maxZoom);
+
     /**
      * Set whether panning gestures are enabled on the map.
      *
@@ -809,6 +904,13 @@ public final class MapFactory {
      * @param feature the feature to remove
      */
     void removeFeature(MapFeature feature);
+
+    /**
+     * Called when the geometry of a feature in the container changes, such as when a marker is
+     * moved, so that the container can keep its spatial index up to date.
+     * @param feature the feature that changed
+     */
+    void onFeatureGeometryChanged(MapFeature feature);
   }
 
   /**
@@ -1477,14 +1579,16 @@ public final class MapFactory {
    * other than OpenStreetMaps by providing another implementation here.
    *
    * @param form the form to use as a context.
+   * @param features the map's spatial index of its features, which the map keeps up to date and
+   * the controller uses to find the features in view.
    * @return a new {@link MapController} instance. the actual instance will be a function of the
    * device's build SDK.
    */
-  public static MapController newMap(Form form) {
+  public static MapController newMap(Form form, MapFeatureIndex features) {
     if (Build.VERSION.SDK_INT < 8) {
       return new DummyMapController();
     } else {
-      return new NativeOpenStreetMapController(form);
+      return new NativeOpenStreetMapController(form, features);
     }
   }
 }
@@ -0,0 +1,269 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import com.google.appinventor.components.runtime.util.MapFactory.MapCircle;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeatureVisitor;
+import com.google.appinventor.components.runtime.util.MapFactory.MapLineString;
+import com.google.appinventor.components.runtime.util.MapFactory.MapMarker;
+import com.google.appinventor.components.runtime.util.MapFactory.MapPolygon;
+import com.google.appinventor.components.runtime.util.MapFactory.MapRectangle;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A spatial index over the features of a
+ * {@link com.google.appinventor.components.runtime.MapFeatureContainerBase}, so that finding the
+ * features in an area or near a point doesn't have to look at every feature.
+ *
+ * The features are kept in a JTS {@link STRtree}, which can't change once it has been built.
+ * Features added or moved since the tree was built are kept in a short list that is searched
+ * linearly, and their entries in the tree are ignored. The tree is rebuilt when that list grows
+ * to an eighth of the size of the tree, so dragging a marker or adding a few features doesn't
+ * rebuild it each time.
+ *
+ */
+public final class MapFeatureIndex {
+  private static final int MIN_PENDING = 32;
+  private static final double INITIAL_SEARCH_DEGREES = 0.001;
+
+  private static final MapFeatureVisitor<Double> DISTANCE_TO_POINT =
+      new MapFeatureVisitor<Double>() {
+        @Override
+        public Double visit(MapMarker marker, Object... arguments) {
+          return GeometryUtil.distanceBetween(marker, (GeoPoint) arguments[0]);
+        }
+
+        @Override
+        public Double visit(MapLineString lineString, Object... arguments) {
+          return GeometryUtil.distanceBetweenEdges(lineString, (GeoPoint) arguments[0]);
+        }
+
+        @Override
+        public Double visit(MapPolygon polygon, Object... arguments) {
+          return GeometryUtil.distanceBetweenEdges(polygon, (GeoPoint) arguments[0]);
+        }
+
+        @Override
+        public Double visit(MapCircle circle, Object... arguments) {
+          return GeometryUtil.distanceBetweenEdges(circle, (GeoPoint) arguments[0]);
+        }
+
+        @Override
+        public Double visit(MapRectangle rectangle, Object... arguments) {
+          return GeometryUtil.distanceBetweenEdges(rectangle, (GeoPoint) arguments[0]);
+        }
+      };
+
+  private STRtree tree = null;
+  private int treeSize = 0;
+
+  // The features whose entries in the tree are current
+  private final Set<MapFeature> indexed = new HashSet<MapFeature>();
+
+  // The features added or moved since the tree was built
+  private final Set<MapFeature> pending = new LinkedHashSet<MapFeature>();
+
+  /**
+   * Adds a feature to the index.
+   */
+  public synchronized void add(MapFeature feature) {
+    indexed.remove(feature);
+    pending.add(feature);
+  }
+
+  /**
+   * Removes a feature from the index.
+   */
+  public synchronized void remove(MapFeature feature) {
+    indexed.remove(feature);
+    pending.remove(feature);
+  }
+
+  /**
+   * Updates the index after the geometry of a feature has changed. Features that aren't in the
+   * index are ignored.
+   */
+  public synchronized void update(MapFeature feature) {
+    if (indexed.remove(feature)) {
+      pending.add(feature);
+    }
+  }
+
+  /**
+   * Removes all of the features from the index.
+   */
+  public synchronized void clear() {
+    tree = null;
+    treeSize = 0;
+    indexed.clear();
+    pending.clear();
+  }
+
+  public synchronized int size() {
+    return indexed.size() + pending.size();
+  }
+
+  /**
+   * Returns the features whose bounding boxes intersect the given envelope, in no particular
+   * order.
+   */
+  public synchronized List<MapFeature> query(Envelope envelope) {
+    if (pending.size() > Math.max(MIN_PENDING, indexed.size() / 8)
+        || treeSize - indexed.size() > Math.max(MIN_PENDING, indexed.size())) {
+      rebuild();
+    }
+    List<MapFeature> result = new ArrayList<MapFeature>();
+    if (tree != null) {
+      for (Object item : tree.query(envelope)) {
+        if (indexed.contains(item)) {
+          result.add((MapFeature) item);
+        }
+      }
+    }
+    for (MapFeature feature : pending) {
+      if (envelopeOf(feature).intersects(envelope)) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the features that intersect the area bounded by the given latitudes and longitudes,
+   * in no particular order.
+   */
+  public List<MapFeature> featuresInBoundingBox(double north, double west, double south,
+      double east) {
+    Geometry box = GeometryUtil.createGeometry(north, east, south, west);
+    List<MapFeature> result = new ArrayList<MapFeature>();
+    for (MapFeature feature : query(box.getEnvelopeInternal())) {
+      if (feature instanceof MapCircle) {
+        // The geometry of a circle is its center
+        double distance = GeometryUtil.ONE_DEG_IN_METERS * box.distance(feature.getGeometry());
+        if (distance <= ((MapCircle) feature).Radius()) {
+          result.add(feature);
+        }
+      } else if (box.intersects(feature.getGeometry())) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the <code>count</code> features nearest to the given point, nearest first, measuring
+   * the distance to the edges of the features as
+   * {@link com.google.appinventor.components.runtime.MapFeatureBase#DistanceToPoint} does.
+   */
+  public synchronized List<MapFeature> nearestFeatures(double latitude, double longitude,
+      int count) {
+    if (count <= 0 || size() == 0) {
+      return new ArrayList<MapFeature>();
+    }
+    final GeoPoint point = new GeoPoint(latitude, longitude);
+    // Widen the search until it finds enough features, or covers the whole world.
+    double degrees = INITIAL_SEARCH_DEGREES;
+    List<MapFeature> candidates = query(searchEnvelope(point, degrees));
+    while (candidates.size() < count && degrees < 180) {
+      degrees *= 4;
+      candidates = query(searchEnvelope(point, degrees));
+    }
+    final java.util.Map<MapFeature, Double> distances = new HashMap<MapFeature, Double>();
+    sortByDistance(candidates, point, distances);
+    if (candidates.size() >= count) {
+      // A feature outside of the area searched may still be nearer than the count-th feature
+      // found, if it is nearer than the edge of the area. Searching as far as that feature finds
+      // any that are.
+      double farthest = distances.get(candidates.get(count - 1));
+      double needed = farthest / GeometryUtil.ONE_DEG_IN_METERS;
+      if (needed > degrees) {
+        candidates = query(searchEnvelope(point, needed));
+        sortByDistance(candidates, point, distances);
+      }
+    }
+    return candidates.size() > count ? new ArrayList<MapFeature>(candidates.subList(0, count))
+        : candidates;
+  }
+
+  /*
+   * Sorts features by their distance from the point, nearest first, remembering the distances.
+   */
+  private static void sortByDistance(List<MapFeature> features, GeoPoint point,
+      final java.util.Map<MapFeature, Double> distances) {
+    for (MapFeature feature : features) {
+      if (!distances.containsKey(feature)) {
+        distances.put(feature, feature.accept(DISTANCE_TO_POINT, point));
+      }
+    }
+    Collections.sort(features, new Comparator<MapFeature>() {
+      @Override
+      public int compare(MapFeature a, MapFeature b) {
+        return Double.compare(distances.get(a), distances.get(b));
+      }
+    });
+  }
+
+  /*
+   * Returns an envelope containing every point within the given number of degrees of latitude
+   * of the point, allowing for degrees of longitude being shorter away from the equator.
+   */
+  private static Envelope searchEnvelope(GeoPoint point, double degrees) {
+    double latitude = point.getLatitude();
+    double longitude = point.getLongitude();
+    double farthestLatitude = Math.min(90, Math.abs(latitude) + degrees);
+    double cos = Math.cos(Math.toRadians(farthestLatitude));
+    double longitudeDegrees = cos < 1e-6 ? 360 : degrees / cos;
+    if (longitudeDegrees >= 180 || longitude - longitudeDegrees < -180
+        || longitude + longitudeDegrees > 180) {
+      // Across the antimeridian, so search every longitude
+      return new Envelope(-360, 360, latitude - degrees, latitude + degrees);
+    }
+    return new Envelope(longitude - longitudeDegrees, longitude + longitudeDegrees,
+        latitude - degrees, latitude + degrees);
+  }
+
+  /*
+   * Returns the bounding box of a feature in degrees, with x being longitude and y latitude.
+   */
+  private static Envelope envelopeOf(MapFeature feature) {
+    Envelope envelope = new Envelope(feature.getGeometry().getEnvelopeInternal());
+    if (feature instanceof MapCircle) {
+      double degrees = ((MapCircle) feature).Radius() / GeometryUtil.ONE_DEG_IN_METERS;
+      double cos = Math.cos(Math.toRadians(Math.min(90, Math.abs(envelope.getMinY()) + degrees)));
+      envelope.expandBy(cos < 1e-6 ? 360 : degrees / cos, degrees);
+    }
+    return envelope;
+  }
+
+  private void rebuild() {
+    indexed.addAll(pending);
+    pending.clear();
+    if (indexed.isEmpty()) {
+      tree = null;
+      treeSize = 0;
+      return;
+    }
+    tree = new STRtree();
+    for (MapFeature feature : indexed) {
+      tree.insert(envelopeOf(feature), feature);
+    }
+    tree.build();
+    treeSize = indexed.size();
+  }
+}
@@ -9,10 +9,13 @@ package com.google.appinventor.components.runtime.util;
 import com.google.appinventor.components.runtime.Form;
 import com.google.appinventor.components.runtime.ReplForm;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.media.MediaPlayer;
@@ -36,10 +39,15 @@ import java.io.InputStream;
 import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 /**
  * Utilities for loading media.
  *
@@ -55,6 +63,18 @@ public class MediaUtil {
   // tempFileMap maps cached media (assets, etc) to their respective temp files.
   private static final Map<String, File> tempFileMap = new HashMap<String, File>();
 
+  // The decoded images, shared by all forms and components.  The cache is created when the first
+  // image is loaded, with room for an eighth of the app's memory class.  Only images that can't
+  // change without their key changing are cached; see bitmapCacheKey.
+  private static final int BITMAP_CACHE_FRACTION = 8;
+  private static LruMemoryCache<String, Bitmap> bitmapCache;
+
+  // The callbacks waiting for each image that is being loaded, by cache key, so that an image
+  // requested again while it is loading is only loaded once.  Also used to synchronize access to
+  // bitmapCache.
+  private static final Map<String, List<AsyncCallbackPair<BitmapDrawable>>> pendingBitmaps =
+      new HashMap<String, List<AsyncCallbackPair<BitmapDrawable>>>();
+
   // this class is used by getBitmapDrawable so it can call the asynchronous version
   // (getBitMapDrawableAsync) and await the result (blocking the UI Thread :-()
   private static class Synchronizer<T> {
@@ -273,6 +293,61 @@ public class MediaUtil {
     return openMedia(form, mediaPath, determineMediaSource(form, mediaPath));
   }
 
+  /**
+   * Returns the length in bytes of the media specified by mediaPath, or -1
+   * if it can't be determined without reading the media, e.g., because it
+   * is a URL or a compressed asset.
+   *
+   * @param form the Form
+   * @param mediaPath the path to the media
+   */
+  public static long getMediaLength(Form form, String mediaPath) {
+    try {
+      switch (determineMediaSource(form, mediaPath)) {
+        case ASSET:
+          AssetFileDescriptor fd = form.getAssets().openFd(mediaPath);
+          try {
+            return fd.getLength();
+          } finally {
+            fd.close();
+          }
+
+        case REPL_ASSET:
+          return fileLength(new File(replAssetPath(mediaPath)));
+
+        case SDCARD:
+          return fileLength(new File(mediaPath));
+
+        case FILE_URL:
+          return fileLength(new File(fileUrlToFilePath(mediaPath)));
+
+        case CONTENT_URI:
+          AssetFileDescriptor contentFd =
+              form.getContentResolver().openAssetFileDescriptor(Uri.parse(mediaPath), "r");
+          if (contentFd == null) {
+            return -1;
+          }
+          try {
+            return contentFd.getLength();  // UNKNOWN_LENGTH is -1
+          } finally {
+            contentFd.close();
+          }
+
+        default:
+          return -1;
+      }
+    } catch (IOException e) {
+      // Compressed assets can't be opened as file descriptors.
+      return -1;
+    } catch (SecurityException e) {
+      return -1;
+    }
+  }
+
+  private static long fileLength(File file) {
+    return file.isFile() ? file.length() : -1;
+  }
+
   /**
    * Copies the media specified by mediaPath to a temp file and returns the
    * File.
@@ -379,19 +454,75 @@ public class MediaUtil {
    *
    * <p/>If mediaPath is null or empty, null is returned.
    *
+   * <p/>Images from assets and files are cached, so loading the same image
+   * again, or while it is still loading, doesn't decode it again.
+   *
    * @param form the Form
    * @param mediaPath the path to the media
-   * @param continuation An AsyncCallbackPair that will receive a
+   * @param callback An AsyncCallbackPair that will receive a
    * BitmapDrawable on success. On exception or failure the appropriate
    * handler will be triggered.
    */
-  public static void getBitmapDrawableAsync(final Form form, final String mediaPath, final AsyncCallbackPair<BitmapDrawable> continuation) {
+  public static void getBitmapDrawableAsync(final Form form, final String mediaPath, final AsyncCallbackPair<BitmapDrawable> callback) {
     if (mediaPath == null || mediaPath.length() == 0) {
-      continuation.onSuccess(null);
+      callback.onSuccess(null);
       return;
     }
 
     final MediaSource mediaSource = determineMediaSource(form, mediaPath);
+    final String cacheKey = bitmapCacheKey(form, mediaPath, mediaSource);
+    final AsyncCallbackPair<BitmapDrawable> continuation;
+    if (cacheKey == null) {
+      continuation = callback;
+    } else {
+      Bitmap bitmap;
+      synchronized (pendingBitmaps) {
+        bitmap = getBitmapCache(form).get(cacheKey);
+        if (bitmap == null) {
+          List<AsyncCallbackPair<BitmapDrawable>> waiting = pendingBitmaps.get(cacheKey);
+          if (waiting != null) {
+            // The image is already being loaded.
+            waiting.add(callback);
+            return;
+          }
+          waiting = new ArrayList<AsyncCallbackPair<BitmapDrawable>>();
+          waiting.add(callback);
+          pendingBitmaps.put(cacheKey, waiting);
+        }
+      }
+      if (bitmap != null) {
+        // Deliver a cached image on another thread, as a loaded one is, so that the callback never
+        // runs before this returns.  The UI thread may be blocked in getBitmapDrawable waiting for
+        // it, so it can't be posted there.
+        final BitmapDrawable drawable = makeBitmapDrawable(form, bitmap);
+        AsynchUtil.runAsynchronously(new Runnable() {
+          @Override
+          public void run() {
+            callback.onSuccess(drawable);
+          }
+        });
+        return;
+      }
+      continuation = new AsyncCallbackPair<BitmapDrawable>() {
+        @Override
+        public void onFailure(String message) {
+          for (AsyncCallbackPair<BitmapDrawable> waiter : finishPendingBitmap(cacheKey, null)) {
+            waiter.onFailure(message);
+          }
+        }
+
+        @Override
+        public void onSuccess(BitmapDrawable result) {
+          Bitmap bitmap = result.getBitmap();
+          boolean first = true;
+          for (AsyncCallbackPair<BitmapDrawable> waiter : finishPendingBitmap(cacheKey, bitmap)) {
+            // Each waiter gets its own drawable, since a drawable holds state such as its bounds.
+            waiter.onSuccess(first ? result : makeBitmapDrawable(form, bitmap));
+            first = false;
+          }
+        }
+      };
+    }
 
     Runnable loadImage = new Runnable() {
       @Override
@@ -498,6 +629,143 @@ public class MediaUtil {
     AsynchUtil.runAsynchronously(loadImage);
   }
 
+  /*
+   * Returns the bitmap cache, creating it if necessary.  The caller must hold the lock on
+   * pendingBitmaps.
+   */
+  private static LruMemoryCache<String, Bitmap> getBitmapCache(Form form) {
+    if (bitmapCache == null) {
+      int memoryClass = ((ActivityManager) form.getSystemService(Context.ACTIVITY_SERVICE))
+          .getMemoryClass();
+      bitmapCache = new LruMemoryCache<String, Bitmap>(
+          memoryClass * 1024L * 1024L / BITMAP_CACHE_FRACTION) {
+        @Override
+        protected long sizeOf(Bitmap bitmap) {
+          return (long) bitmap.getRowBytes() * bitmap.getHeight();
+        }
+      };
+    }
+    return bitmapCache;
+  }
+
+  /*
+   * Records the result of loading an image, caching the bitmap unless it is null, and returns the
+   * callbacks that were waiting for it.
+   */
+  private static List<AsyncCallbackPair<BitmapDrawable>> finishPendingBitmap(String cacheKey,
+      Bitmap bitmap) {
+    synchronized (pendingBitmaps) {
+      if (bitmap != null && bitmapCache != null) {
+        bitmapCache.put(cacheKey, bitmap);
+      }
+      return pendingBitmaps.remove(cacheKey);
+    }
+  }
+
+  /*
+   * Returns the key under which the image at mediaPath is cached, or null if it shouldn't be
+   * cached.  The key includes the size the image is sampled for and the density it is scaled for,
+   * which depend on the display, and, for a file, when the file was last modified.  Images from
+   * URLs, content providers and contacts are not cached, since they can change at any time.
+   */
+  private static String bitmapCacheKey(Form form, String mediaPath, MediaSource mediaSource) {
+    long modified = 0;
+    try {
+      switch (mediaSource) {
+        case ASSET:
+          break;
+        case REPL_ASSET:
+          modified = new File(replAssetPath(mediaPath)).lastModified();
+          break;
+        case SDCARD:
+          modified = new File(mediaPath).lastModified();
+          break;
+        case FILE_URL:
+          modified = new File(fileUrlToFilePath(mediaPath)).lastModified();
+          break;
+        default:
+          return null;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    if (modified == 0 && mediaSource != MediaSource.ASSET) {
+      // The file doesn't exist.  Let the load fail as usual.
+      return null;
+    }
+    Point maxSize = getMaxImageSize(form);
+    return mediaSource + ":" + mediaPath + ":" + modified + ":" + maxSize.x + "x" + maxSize.y +
+        ":" + form.deviceDensity();
+  }
+
+  private static BitmapDrawable makeBitmapDrawable(Form form, Bitmap bitmap) {
+    BitmapDrawable drawable = new BitmapDrawable(form.getResources(), bitmap);
+    drawable.setTargetDensity(form.getResources().getDisplayMetrics());
+    return drawable;
+  }
+
+  /**
+   * Discards the decoded images that are cached.
+   */
+  public static void clearBitmapCache() {
+    synchronized (pendingBitmaps) {
+      if (bitmapCache != null) {
+        bitmapCache.clear();
+      }
+    }
+  }
+
+  /**
+   * Discards some or all of the decoded images that are cached, depending
+   * on how much memory the system needs.
+   *
+   * @param level the level passed to onTrimMemory
+   */
+  public static void trimBitmapCache(int level) {
+    synchronized (pendingBitmaps) {
+      if (bitmapCache == null) {
+        return;
+      }
+      if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+          || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+        // The app is likely to be killed, or is about to slow down the foreground app.
+        bitmapCache.clear();
+      } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+          || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+        bitmapCache.trimToSize(bitmapCache.maxSize() / 2);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of images cached, their total size in bytes, the
+   * cache's maximum size and its hit, miss and eviction counts, for the
+   * companion to report.
+   */
+  public static JSONObject getBitmapCacheStats() {
+    synchronized (pendingBitmaps) {
+      return bitmapCacheStats(bitmapCache);
+    }
+  }
+
+  /*
+   * Returns the counts of the given cache, all 0 if no image has been loaded yet to create it.
+   */
+  static JSONObject bitmapCacheStats(LruMemoryCache<?, ?> cache) {
+    JSONObject stats = new JSONObject();
+    try {
+      stats.put("count", cache == null ? 0 : cache.count());
+      stats.put("size", cache == null ? 0 : cache.size());
+      stats.put("maxSize", cache == null ? 0 : cache.maxSize());
+      stats.put("hits", cache == null ? 0 : cache.hitCount());
+      stats.put("misses", cache == null ? 0 : cache.missCount());
+      stats.put("evictions", cache == null ? 0 : cache.evictionCount());
+    } catch (JSONException e) {
+      // Not possible, since the counts are all numbers
+    }
+    return stats;
+  }
+
   private static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options opts) {
     // We wrap a FlushedInputStream around the given InputStream. This works around a problem in
     // BitmapFactory.decodeStream where it fails to load the image if the InputStream's skip method
@@ -539,6 +807,25 @@ public class MediaUtil {
     int imageWidth = options.outWidth;
     int imageHeight = options.outHeight;
 
+    Point maxSize = getMaxImageSize(form);
+    int maxWidth = maxSize.x;
+    int maxHeight = maxSize.y;
+
+    int sampleSize = 1;
+    while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
+      sampleSize *= 2;
+    }
+    options = new BitmapFactory.Options();
+    Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
+      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight);
+    options.inSampleSize = sampleSize;
+    return options;
+  }
+
+  /*
+   * Returns the size beyond which an image is sampled down when it is loaded.
+   */
+  private static Point getMaxImageSize(Form form) {
     // Get the screen size.
     Display display = ((WindowManager) form.getSystemService(Context.WINDOW_SERVICE)).
         getDefaultDisplay();
@@ -549,26 +836,13 @@ public class MediaUtil {
     // smaller than the screen.
     // int maxWidth = 2 * display.getWidth();
     // int maxHeight = 2 * display.getHeight();
-    int maxWidth;
-    int maxHeight;
     if (form.getCompatibilityMode()) { // Compatibility Mode
-      maxWidth = 360 * 2;     // Originally used 2 times device size, continue to do so here
-      maxHeight = 420 * 2;
+      // Originally used 2 times device size, continue to do so here
+      return new Point(360 * 2, 420 * 2);
     } else {                    // Responsive Mode
-      maxWidth = (int) (display.getWidth() / form.deviceDensity());
-      maxHeight = (int) (display.getHeight() / form.deviceDensity());
-    }
-
-    int sampleSize = 1;
-    while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
-      sampleSize *= 2;
+      return new Point((int) (display.getWidth() / form.deviceDensity()),
+          (int) (display.getHeight() / form.deviceDensity()));
     }
-    options = new BitmapFactory.Options();
-    Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
-      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight +
-      " display width = " + display.getWidth() + " display height = " + display.getHeight());
-    options.inSampleSize = sampleSize;
-    return options;
   }
 
   // SoundPool related methods
@@ -13,6 +13,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.SequenceInputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URLEncoder;
@@ -130,6 +131,25 @@ public class NanoHTTPD
                 return serveFile( uri, header, myRootDir, true );
         }
 
+        /**
+         * Override this to take over connections that ask to upgrade to
+         * a WebSocket.  The subclass does the handshake and uses the
+         * connection until it is done with it, after which it is closed.
+         *
+         * (By default, upgrades are refused and the request goes to serve().)
+         *
+         * @param uri   Percent-decoded URI without parameters
+         * @param header        Header entries, percent decoded
+         * @param mySocket      The connection
+         * @param in    The rest of the input, following the header
+         * @return true if the connection was taken over
+         */
+        public boolean serveUpgrade( String uri, Properties header, Socket mySocket, InputStream in )
+                throws IOException
+        {
+                return false;
+        }
+
         /**
          * HTTP response.
          * Return one of these from serve().
@@ -396,6 +416,21 @@ public class NanoHTTPD
                                 }
                                 splitbyte++;
 
+                                // A connection upgraded to another protocol is handed over
+                                // with whatever has been read past the header.
+                                if ( "websocket".equalsIgnoreCase( header.getProperty( "upgrade", "" ).trim()))
+                                {
+                                        InputStream rest = is;
+                                        if (splitbyte < rlen)
+                                                rest = new SequenceInputStream(
+                                                        new ByteArrayInputStream(buf, splitbyte, rlen-splitbyte), is);
+                                        if ( serveUpgrade( uri, header, mySocket, rest ))
+                                        {
+                                                try { mySocket.close(); } catch( Throwable t ) {}
+                                                return;
+                                        }
+                                }
+
                                 // Write the part of body already read to ByteArrayOutputStream f
                                 OutputStream f;
                                 if ( method.equalsIgnoreCase( "PUT" ) )
@@ -5,11 +5,14 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -26,13 +29,22 @@ import android.support.v4.view.ViewCompat;
 import android.util.DisplayMetrics;
 import com.google.appinventor.components.common.ComponentConstants;
 import com.google.appinventor.components.runtime.LocationSensor;
+import com.google.appinventor.components.runtime.util.GridClusterer.Cluster;
+import org.locationtech.jts.geom.Envelope;
 import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapListener;
 import org.osmdroid.events.ScrollEvent;
 import org.osmdroid.events.ZoomEvent;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.MapTileProviderBase;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
@@ -69,8 +81,12 @@ import com.google.appinventor.components.runtime.util.MapFactory.MapType;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Picture;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
@@ -88,7 +104,20 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   /* end copied from SVG */
 
   private static final String TAG = NativeOpenStreetMapController.class.getSimpleName();
+
+  // The fraction of the map's width and height added on each side of the viewport when
+  // choosing the features to draw
+  private static final double VIEWPORT_MARGIN = 0.25;
+
+  // The default size of the tile cache, in bytes
+  private static final long DEFAULT_TILE_CACHE_SIZE = 50L * 1024 * 1024;
+  private static final int TILE_LOADER_THREADS = 2;
+  private static final int TILE_LOADER_QUEUE_SIZE = 40;
   private boolean caches;
+  private TileDiskCache tileCache = null;
+  private volatile TileDownloader.TileFetcher tileFetcher;
+  private volatile boolean cacheOnly = false;
+  private TileDownloader regionDownloader = null;
   private final Form form;
   private MapView view;
   private MapType tileType;
@@ -99,6 +128,50 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   private RotationGestureOverlay rotation = null;
   private Set<MapEventListener> eventListeners = new HashSet<MapEventListener>();
   private Map<MapFeature, OverlayWithIW> featureOverlays = new HashMap<MapFeature, OverlayWithIW>();
+
+  // The overlays of the features that are Visible, whether or not they are on screen, with the
+  // order in which they were shown, which is the order in which they are drawn.
+  private final Map<OverlayWithIW, Long> shownOverlays = new HashMap<OverlayWithIW, Long>();
+  private long showCount = 0;
+
+  // Only the overlays of the features near the viewport are given to the map, so that those off
+  // screen are neither drawn nor hit-tested. The features are found using the Map's spatial
+  // index of them, which it keeps up to date as they are added, removed and moved.
+  private final MapFeatureIndex featureIndex;
+  private final Set<Overlay> onScreenOverlays = new HashSet<Overlay>();
+
+  // Changes made since the last frame are applied together before the next frame, with one
+  // invalidation of the map. The map keeps its overlays in a CopyOnWriteArrayList, so adding
+  // them one at a time copies the whole list for each feature, which is slow when thousands of
+  // features are loaded, and each invalidation walks the view hierarchy.
+  private final Handler frameHandler = new Handler();
+  private final Runnable frameUpdate = new Runnable() {
+    @Override
+    public void run() {
+      updateFrame();
+    }
+  };
+  private boolean frameScheduled = false;
+  private boolean overlaysChanged = false;
+
+  // Marker clustering. The clusters are computed again when the zoom level changes or the
+  // markers change, and otherwise only culled to the viewport.
+  private static final int CLUSTER_CELL_SIZE = 64;
+  private boolean clusterMarkers = false;
+  private final GridClusterer<MapMarker> clusterer = new GridClusterer<MapMarker>(
+      CLUSTER_CELL_SIZE, new GridClusterer.Locator<MapMarker>() {
+        @Override
+        public double getLatitude(MapMarker marker) {
+          return marker.Latitude();
+        }
+
+        @Override
+        public double getLongitude(MapMarker marker) {
+          return marker.Longitude();
+        }
+      });
+  private List<Overlay> clusterOverlays = null;
+  private int clusterZoom = -1;
   private SVG defaultMarkerSVG = null;
   private TouchOverlay touch = null;
   private OverlayInfoWindow defaultInfoWindow = null;
@@ -227,21 +300,22 @@ class NativeOpenStreetMapController implements MapController, MapListener {
               }
             });
           }
-          view.invalidate();
+          invalidate();
           break;
       }
     }
   }
 
   private class CustomMapView extends MapView {
-    public CustomMapView(Context context) {
-      super(context, null, new MapReadyHandler());
+    public CustomMapView(Context context, MapTileProviderBase tileProvider) {
+      super(context, tileProvider, new MapReadyHandler());
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
       scrollTo(getScrollX() + (oldw - w) / 2, getScrollY() + (oldh - h) / 2);
       super.onSizeChanged(w, h, oldw, oldh);
+      overlaysChanged();
     }
 
     @Override
@@ -252,19 +326,31 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   private final AppInventorLocationSensorAdapter locationProvider;
 
-  NativeOpenStreetMapController(final Form form) {
+  NativeOpenStreetMapController(final Form form, MapFeatureIndex featureIndex) {
     File osmdroid = new File(form.getCacheDir(), "osmdroid");
     if (osmdroid.exists() || osmdroid.mkdirs()) {
       Configuration.getInstance().setOsmdroidBasePath(osmdroid);
       File osmdroidTiles = new File(osmdroid, "tiles");
       if (osmdroidTiles.exists() || osmdroidTiles.mkdirs()) {
         Configuration.getInstance().setOsmdroidTileCache(osmdroidTiles);
-        caches = true;
+        try {
+          tileCache = new TileDiskCache(osmdroidTiles, DEFAULT_TILE_CACHE_SIZE);
+          caches = true;
+        } catch (IOException e) {
+          Log.e(TAG, "Unable to create tile cache", e);
+        }
       }
     }
     this.form = form;
+    this.featureIndex = featureIndex;
+    this.tileFetcher =
+        new TileDownloader.HttpTileFetcher(Configuration.getInstance().getUserAgentValue());
     this.touch = new TouchOverlay();
-    view = new CustomMapView(form.getApplicationContext());
+    ITileSource tileSource = TileSourceFactory.DEFAULT_TILE_SOURCE;
+    MapTileProviderArray tileProvider = new MapTileProviderArray(tileSource,
+        new SimpleRegisterReceiver(form.getApplicationContext()),
+        new MapTileModuleProviderBase[] { new CachingTileModule(tileSource) });
+    view = new CustomMapView(form.getApplicationContext(), tileProvider);
     locationProvider = new AppInventorLocationSensorAdapter();
     defaultInfoWindow = new OverlayInfoWindow(view);
     view.setTilesScaledToDpi(true);
@@ -494,6 +580,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
           public void onMarkerDragEnd(Marker marker) {
             IGeoPoint point = marker.getPosition();
             aiMarker.updateLocation(point.getLatitude(), point.getLongitude());
+            featureMoved(aiMarker);
             for (MapEventListener listener : eventListeners) {
               listener.onFeatureStopDrag(aiMarker);
             }
@@ -558,6 +645,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
       @Override
       public void onDragEnd(Polyline polyline) {
         aiPolyline.updatePoints(polyline.getPoints());
+        featureMoved(aiPolyline);
         for (MapEventListener listener : eventListeners) {
           listener.onFeatureStopDrag(aiPolyline);
         }
@@ -639,6 +727,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
           holes.addAll(polygon.getHoles());
           ((MapPolygon) component).updateHolePoints(Collections.singletonList(holes));
         }
+        featureMoved(component);
         for (MapEventListener listener : eventListeners) {
           listener.onFeatureStopDrag(component);
         }
@@ -668,8 +757,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void removeFeature(MapFeature aiFeature) {
-    view.getOverlayManager().remove(featureOverlays.get(aiFeature));
-    featureOverlays.remove(aiFeature);
+    OverlayWithIW overlay = featureOverlays.remove(aiFeature);
+    if (overlay != null) {
+      hideOverlay(overlay);
+    }
   }
 
   @Override
@@ -677,7 +768,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     Marker marker = (Marker)featureOverlays.get(aiMarker);
     if (marker != null) {
       marker.setPosition(new GeoPoint(aiMarker.Latitude(), aiMarker.Longitude()));
-      view.invalidate();
+      featureMoved(aiMarker);
     }
   }
 
@@ -686,7 +777,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     Polyline overlay = (Polyline) featureOverlays.get(aiPolyline);
     if (overlay != null) {
       overlay.setPoints(aiPolyline.getPoints());
-      view.invalidate();
+      featureMoved(aiPolyline);
     }
   }
 
@@ -696,7 +787,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     if (polygon != null) {
       polygon.setMultiPoints(aiPolygon.getPoints());
       polygon.setMultiHoles(aiPolygon.getHolePoints());
-      view.invalidate();
+      featureMoved(aiPolygon);
     }
   }
 
@@ -707,7 +798,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     if (polygon != null) {
       List<GeoPoint> geopoints = Polygon.pointsAsCircle(center, aiCircle.Radius());
       polygon.setPoints(geopoints);
-      view.invalidate();
+      featureMoved(aiCircle);
     }
   }
 
@@ -719,7 +810,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
       List<GeoPoint> geopoints = (List) Polygon.pointsAsRect(new BoundingBox(aiRectangle.NorthLatitude(),
           aiRectangle.EastLongitude(), aiRectangle.SouthLatitude(), aiRectangle.WestLongitude()));
       polygon.setPoints(geopoints);
-      view.invalidate();
+      featureMoved(aiRectangle);
     }
   }
 
@@ -741,7 +832,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
           @Override
           public void onSuccess(Drawable result) {
             marker.setIcon(result);
-            view.invalidate();
+            invalidate();
           }
         });
       }
@@ -754,7 +845,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
       @Override
       public void visit(Polygon polygon) {
         polygon.setFillColor(aiFeature.FillColor());
-        view.invalidate();
+        invalidate();
       }
 
     });
@@ -778,7 +869,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
           @Override
           public void onSuccess(Drawable result) {
             marker.setIcon(result);
-            view.invalidate();
+            invalidate();
           }
         });
       }
@@ -789,7 +880,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
         form.getWindowManager().getDefaultDisplay().getMetrics(metrics);
         polyline.setColor(aiFeature.StrokeColor());
         polyline.setWidth(aiFeature.StrokeWidth() * metrics.density);
-        view.invalidate();
+        invalidate();
       }
 
       @Override
@@ -798,7 +889,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
         form.getWindowManager().getDefaultDisplay().getMetrics(metrics);
         polygon.setStrokeColor(aiFeature.StrokeColor());
         polygon.setStrokeWidth(aiFeature.StrokeWidth() * metrics.density);
-        view.invalidate();
+        invalidate();
       }
     });
   }
@@ -835,7 +926,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
       @Override
       public void onSuccess(Drawable result) {
         marker.setIcon(result);
-        view.invalidate();
+        invalidate();
       }
     });
   }
@@ -855,7 +946,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
       @Override
       public void onSuccess(Drawable result) {
         marker.setIcon(result);
-        view.invalidate();
+        invalidate();
       }
     });
   }
@@ -1094,7 +1185,15 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   }
 
   protected void showOverlay(OverlayWithIW overlay) {
-    view.getOverlayManager().add(overlay);
+    if (overlay == null) {
+      return;
+    }
+    if (onScreenOverlays.remove(overlay)) {
+      // Shown again, so it is drawn on top of the others
+      view.getOverlayManager().remove(overlay);
+    }
+    shownOverlays.put(overlay, showCount++);
+    markersChanged();
   }
 
   @Override
@@ -1103,13 +1202,212 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   }
 
   protected void hideOverlay(OverlayWithIW overlay) {
-    view.getOverlayManager().remove(overlay);
+    shownOverlays.remove(overlay);
+    if (onScreenOverlays.remove(overlay)) {
+      view.getOverlayManager().remove(overlay);
+    }
+    markersChanged();
   }
 
   @Override
   public boolean isFeatureVisible(MapFeature feature) {
     OverlayWithIW overlay = featureOverlays.get(feature);
-    return overlay != null && view.getOverlayManager().contains(overlay);
+    return overlay != null && shownOverlays.containsKey(overlay);
+  }
+
+  /*
+   * Redraws the map before the next frame, together with any other changes made before then.
+   */
+  private void invalidate() {
+    if (!frameScheduled) {
+      frameScheduled = true;
+      frameHandler.post(frameUpdate);
+    }
+  }
+
+  /*
+   * Chooses the overlays to give to the map again before the next frame, such as after the map
+   * has moved.
+   */
+  private void overlaysChanged() {
+    overlaysChanged = true;
+    invalidate();
+  }
+
+  /*
+   * Clusters the markers again before the next frame, if markers are being clustered.
+   */
+  private void markersChanged() {
+    clusterOverlays = null;
+    overlaysChanged();
+  }
+
+  private void featureMoved(MapFeature feature) {
+    if (feature instanceof MapMarker) {
+      markersChanged();
+    } else {
+      overlaysChanged();
+    }
+  }
+
+  private void updateFrame() {
+    frameHandler.removeCallbacks(frameUpdate);
+    frameScheduled = false;
+    if (overlaysChanged) {
+      overlaysChanged = false;
+      updateOverlays();
+    }
+    view.invalidate();
+  }
+
+  /*
+   * Gives the map the overlays of the features that are shown near the viewport, or the
+   * overlays of all of the features that are shown if the map hasn't been laid out yet.
+   */
+  private void updateOverlays() {
+    Envelope viewport = getViewport();
+    Collection<MapFeature> features =
+        viewport == null ? featureOverlays.keySet() : featureIndex.query(viewport);
+    List<OverlayWithIW> shapes = new ArrayList<OverlayWithIW>();
+    for (MapFeature feature : features) {
+      if (clusterMarkers && feature instanceof MapMarker) {
+        continue;
+      }
+      OverlayWithIW overlay = featureOverlays.get(feature);
+      if (overlay != null && shownOverlays.containsKey(overlay)) {
+        shapes.add(overlay);
+      }
+    }
+    Collections.sort(shapes, showOrder);
+    List<Overlay> wanted = new ArrayList<Overlay>(shapes);
+    if (clusterMarkers) {
+      for (Overlay overlay : getClusterOverlays()) {
+        GeoPoint position = ((Marker) overlay).getPosition();
+        if (viewport == null || viewport.contains(position.getLongitude(), position.getLatitude())) {
+          wanted.add(overlay);
+        }
+      }
+    }
+    if (wanted.size() == onScreenOverlays.size() && onScreenOverlays.containsAll(wanted)) {
+      return;
+    }
+    // Replace the features' overlays with the new ones in one go, keeping them where the first
+    // of them was among the other overlays, such as the compass.
+    List<Overlay> overlays = view.getOverlayManager().overlays();
+    List<Overlay> updated = new ArrayList<Overlay>(overlays.size() + wanted.size());
+    boolean placed = false;
+    for (Overlay overlay : overlays) {
+      if (!onScreenOverlays.contains(overlay)) {
+        updated.add(overlay);
+      } else if (!placed) {
+        updated.addAll(wanted);
+        placed = true;
+      }
+    }
+    if (!placed) {
+      updated.addAll(wanted);
+    }
+    overlays.clear();
+    overlays.addAll(updated);
+    onScreenOverlays.clear();
+    onScreenOverlays.addAll(wanted);
+  }
+
+  private final Comparator<OverlayWithIW> showOrder = new Comparator<OverlayWithIW>() {
+    @Override
+    public int compare(OverlayWithIW a, OverlayWithIW b) {
+      return shownOverlays.get(a).compareTo(shownOverlays.get(b));
+    }
+  };
+
+  /*
+   * Returns the area shown by the map with a margin around it, so that features just off screen
+   * are ready to be drawn as the map pans, or null if the map hasn't been laid out or is
+   * rotated, in which case the bounding box doesn't cover the corners of the view.
+   */
+  private Envelope getViewport() {
+    if (view.getWidth() == 0 || view.getHeight() == 0 || view.getMapOrientation() != 0) {
+      return null;
+    }
+    BoundingBox box = view.getBoundingBox();
+    double latMargin = box.getLatitudeSpan() * VIEWPORT_MARGIN;
+    double lonMargin = box.getLongitudeSpan() * VIEWPORT_MARGIN;
+    double west = box.getLonWest() - lonMargin;
+    double east = box.getLonEast() + lonMargin;
+    if (box.getLonWest() > box.getLonEast() || east - west >= 360) {
+      // The map shows the antimeridian, or the whole world
+      west = -360;
+      east = 360;
+    }
+    return new Envelope(west, east, box.getLatSouth() - latMargin,
+        box.getLatNorth() + latMargin);
+  }
+
+  /*
+   * Returns the overlays of the marker clusters at the current zoom level. A marker that isn't
+   * near any other is shown by its own overlay.
+   */
+  private List<Overlay> getClusterOverlays() {
+    int zoom = view.getZoomLevel();
+    if (clusterOverlays != null && zoom == clusterZoom) {
+      return clusterOverlays;
+    }
+    List<OverlayWithIW> shown = new ArrayList<OverlayWithIW>();
+    Map<OverlayWithIW, MapMarker> markers = new HashMap<OverlayWithIW, MapMarker>();
+    for (Map.Entry<MapFeature, OverlayWithIW> entry : featureOverlays.entrySet()) {
+      if (entry.getKey() instanceof MapMarker && shownOverlays.containsKey(entry.getValue())) {
+        shown.add(entry.getValue());
+        markers.put(entry.getValue(), (MapMarker) entry.getKey());
+      }
+    }
+    Collections.sort(shown, showOrder);
+    List<MapMarker> ordered = new ArrayList<MapMarker>(shown.size());
+    for (OverlayWithIW overlay : shown) {
+      ordered.add(markers.get(overlay));
+    }
+    clusterOverlays = new ArrayList<Overlay>();
+    for (Cluster<MapMarker> cluster : clusterer.cluster(ordered, zoom)) {
+      if (cluster.size() == 1) {
+        clusterOverlays.add(featureOverlays.get(cluster.getItems().get(0)));
+      } else {
+        clusterOverlays.add(createClusterOverlay(cluster));
+      }
+    }
+    clusterZoom = zoom;
+    return clusterOverlays;
+  }
+
+  private Marker createClusterOverlay(final Cluster<MapMarker> cluster) {
+    DisplayMetrics metrics = new DisplayMetrics();
+    form.getWindowManager().getDefaultDisplay().getMetrics(metrics);
+    Marker overlay = new Marker(view);
+    overlay.setPosition(new GeoPoint(cluster.getLatitude(), cluster.getLongitude()));
+    overlay.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_CENTER);
+    overlay.setIcon(new ClusterDrawable(cluster.size(), metrics.density));
+    overlay.setOnMarkerClickListener(new OnMarkerClickListener() {
+      @Override
+      public boolean onMarkerClick(Marker marker, MapView mapView) {
+        for (MapEventListener listener : eventListeners) {
+          listener.onClusterClick(cluster.getItems(), cluster.getLatitude(),
+              cluster.getLongitude());
+        }
+        return true;
+      }
+    });
+    return overlay;
+  }
+
+  @Override
+  public void setClusterMarkersEnabled(boolean enable) {
+    if (clusterMarkers != enable) {
+      clusterMarkers = enable;
+      markersChanged();
+    }
+  }
+
+  @Override
+  public boolean isClusterMarkersEnabled() {
+    return clusterMarkers;
   }
 
   @Override
@@ -1143,6 +1441,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public boolean onScroll(ScrollEvent event) {
+    overlaysChanged();
     for (MapEventListener listener : eventListeners) {
       listener.onBoundsChanged();
     }
@@ -1151,6 +1450,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public boolean onZoom(ZoomEvent event) {
+    overlaysChanged();
     for (MapEventListener listener : eventListeners) {
       listener.onZoom();
     }
@@ -1164,10 +1464,262 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public int getOverlayCount() {
-    System.err.println(view.getOverlays());
+    updateFrame();
     return view.getOverlays().size();
   }
 
+  @Override
+  public void setTileCacheSize(long bytes) {
+    if (tileCache != null) {
+      tileCache.setMaxSize(bytes);
+    }
+  }
+
+  @Override
+  public long getTileCacheSize() {
+    return tileCache == null ? 0 : tileCache.maxSize();
+  }
+
+  @Override
+  public void setCacheOnly(boolean cacheOnly) {
+    if (this.cacheOnly != cacheOnly) {
+      this.cacheOnly = cacheOnly;
+      if (!cacheOnly) {
+        // Load the tiles that couldn't be shown while offline.
+        view.getTileProvider().clearTileCache();
+        invalidate();
+      }
+    }
+  }
+
+  @Override
+  public boolean isCacheOnly() {
+    return cacheOnly;
+  }
+
+  @Override
+  public void setTileFetcher(TileDownloader.TileFetcher fetcher) {
+    tileFetcher = fetcher;
+  }
+
+  @Override
+  public void downloadRegion(final double north, final double west, final double south,
+      final double east, final int minZoom, final int maxZoom) {
+    final ITileSource source = view.getTileProvider().getTileSource();
+    if (regionDownloader != null) {
+      regionDownloader.cancel();
+    }
+    if (tileCache == null || !(source instanceof OnlineTileSourceBase)) {
+      for (MapEventListener listener : eventListeners) {
+        listener.onRegionDownloaded(0, TileDownloader.countTiles(north, west, south, east,
+            minZoom, maxZoom));
+      }
+      return;
+    }
+    final TileDownloader downloader = new TileDownloader(tileCache, tileFetcher);
+    regionDownloader = downloader;
+    AsynchUtil.runAsynchronously(new Runnable() {
+      @Override
+      public void run() {
+        downloader.download(source.name(), new TileDownloader.TileUrlProvider() {
+          @Override
+          public String getTileUrl(int zoom, int x, int y) {
+            return ((OnlineTileSourceBase) source).getTileURLString(new MapTile(zoom, x, y));
+          }
+        }, north, west, south, east, minZoom, maxZoom, new TileDownloader.ProgressListener() {
+          private int step = 0;
+
+          @Override
+          public void onProgress(final int done, final int total) {
+            // Report about every percent, rather than every tile
+            if (step == 0) {
+              step = Math.max(1, total / 100);
+            }
+            if (done % step != 0 && done != total) {
+              return;
+            }
+            form.runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                for (MapEventListener listener : eventListeners) {
+                  listener.onRegionDownloadProgress(done, total);
+                }
+              }
+            });
+          }
+
+          @Override
+          public void onFinished(final int downloaded, final int failed) {
+            form.runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                if (regionDownloader == downloader) {
+                  regionDownloader = null;
+                }
+                // Show the new tiles, which the map may have failed to load while offline.
+                view.getTileProvider().clearTileCache();
+                invalidate();
+                for (MapEventListener listener : eventListeners) {
+                  listener.onRegionDownloaded(downloaded, failed);
+                }
+              }
+            });
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Loads the map's tiles from the tile cache, fetching and caching those that aren't in it
+   * unless the map is only to use cached tiles.
+   */
+  private class CachingTileModule extends MapTileModuleProviderBase {
+    private volatile ITileSource tileSource;
+
+    CachingTileModule(ITileSource tileSource) {
+      super(TILE_LOADER_THREADS, TILE_LOADER_QUEUE_SIZE);
+      this.tileSource = tileSource;
+    }
+
+    @Override
+    protected String getName() {
+      return "App Inventor tile cache";
+    }
+
+    @Override
+    protected String getThreadGroupName() {
+      return "aitilecache";
+    }
+
+    @Override
+    public TileLoader getTileLoader() {
+      return new TileLoader() {
+        @Override
+        public Drawable loadTile(MapTile tile) throws CantContinueException {
+          ITileSource source = tileSource;
+          byte[] contents = tileCache == null ? null
+              : tileCache.get(source.name(), tile.getZoomLevel(), tile.getX(), tile.getY());
+          boolean stale = contents == null
+              || tileCache.isExpired(source.name(), tile.getZoomLevel(), tile.getX(), tile.getY());
+          if (stale && !cacheOnly && source instanceof OnlineTileSourceBase) {
+            // An expired tile is still shown if it can't be fetched again, such as when offline.
+            try {
+              TileDownloader.Tile fetched = tileFetcher.fetchTile(
+                  ((OnlineTileSourceBase) source).getTileURLString(tile));
+              contents = fetched.contents;
+              if (tileCache != null) {
+                tileCache.put(source.name(), tile.getZoomLevel(), tile.getX(), tile.getY(),
+                    fetched.contents, fetched.expires);
+              }
+            } catch (IOException e) {
+              Log.w(TAG, "Unable to fetch tile " + tile, e);
+            }
+          }
+          if (contents == null) {
+            return null;
+          }
+          try {
+            return source.getDrawable(new ByteArrayInputStream(contents));
+          } catch (LowMemoryException e) {
+            throw new CantContinueException(e);
+          }
+        }
+      };
+    }
+
+    @Override
+    public boolean getUsesDataConnection() {
+      // The map's tiles are always loaded from here, with CacheOnly deciding whether the network
+      // is used, so that cached tiles are still shown when the map is offline.
+      return false;
+    }
+
+    @Override
+    public int getMinimumZoomLevel() {
+      return tileSource.getMinimumZoomLevel();
+    }
+
+    @Override
+    public int getMaximumZoomLevel() {
+      return tileSource.getMaximumZoomLevel();
+    }
+
+    @Override
+    public void setTileSource(ITileSource tileSource) {
+      this.tileSource = tileSource;
+    }
+  }
+
+  /**
+   * Draws a marker cluster as a circle showing the number of markers in it.
+   */
+  private static class ClusterDrawable extends Drawable {
+    private static final int FILL_COLOR = 0xCC2196F3;
+    private static final float TEXT_SIZE = 14;
+    private static final float STROKE_WIDTH = 2;
+
+    private final String text;
+    private final int size;
+    private final Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    ClusterDrawable(int count, float density) {
+      text = Integer.toString(count);
+      fill.setColor(FILL_COLOR);
+      stroke.setColor(Color.WHITE);
+      stroke.setStyle(Paint.Style.STROKE);
+      stroke.setStrokeWidth(STROKE_WIDTH * density);
+      textPaint.setColor(Color.WHITE);
+      textPaint.setTextAlign(Paint.Align.CENTER);
+      textPaint.setTextSize(TEXT_SIZE * density);
+      // Large enough for the count, and larger for larger clusters
+      size = (int) Math.max((24 + 4 * text.length()) * density,
+          textPaint.measureText(text) + 12 * density);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+      Rect bounds = getBounds();
+      float radius = Math.min(bounds.width(), bounds.height()) / 2f;
+      canvas.drawCircle(bounds.exactCenterX(), bounds.exactCenterY(), radius, fill);
+      canvas.drawCircle(bounds.exactCenterX(), bounds.exactCenterY(),
+          radius - stroke.getStrokeWidth() / 2, stroke);
+      float baseline = bounds.exactCenterY() - (textPaint.ascent() + textPaint.descent()) / 2;
+      canvas.drawText(text, bounds.exactCenterX(), baseline, textPaint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+      return size;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+      return size;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+      fill.setAlpha(alpha);
+      stroke.setAlpha(alpha);
+      textPaint.setAlpha(alpha);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+      fill.setColorFilter(colorFilter);
+      stroke.setColorFilter(colorFilter);
+      textPaint.setColorFilter(colorFilter);
+    }
+
+    @Override
+    public int getOpacity() {
+      return PixelFormat.TRANSLUCENT;
+    }
+  }
+
   static class MultiPolygon extends Polygon {
 
     private List<Polygon> children = new ArrayList<Polygon>();
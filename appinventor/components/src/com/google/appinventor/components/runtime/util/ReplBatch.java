@@ -0,0 +1,158 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The code for several blocks, sent by the Blocks Editor to /_newblocks in
+ * one request rather than one request each.
+ *
+ * The batch is a JSON array of objects with the blockid and code that
+ * would otherwise have been sent as the parameters of separate requests:
+ *
+ * <pre>
+ * [{"blockid": "\"a1\"", "code": "(def g$x 1)"},
+ *  {"blockid": "\"b2\"", "code": "(def (p$f) (get-var g$x))"}]
+ * </pre>
+ *
+ * All of the blocks are evaluated as one unit, and each block's result is
+ * returned to it as before.  If a block appears more than once, only its
+ * last code is evaluated, since that replaces what came before.  The Blocks
+ * Editor coalesces its batches the same way before sending them.
+ *
+ * If the batch can't be evaluated as a unit, such as when the code of one
+ * of its blocks can't be compiled, its blocks are evaluated one at a time
+ * instead, so that the error is returned to the block it came from.
+ *
+ */
+public final class ReplBatch {
+
+  /**
+   * Evaluates YAIL, as the Companion's Scheme interpreter does.
+   */
+  public interface Evaluator {
+    void eval(String yail) throws Throwable;
+  }
+
+  /**
+   * The code for a block.
+   */
+  static final class Block {
+    final String blockid;
+    final String code;
+
+    Block(String blockid, String code) {
+      this.blockid = blockid;
+      this.code = code;
+    }
+  }
+
+  // Prevent instantiation
+  private ReplBatch() {
+  }
+
+  /**
+   * Parses a batch, keeping only the last code for each block.  A block
+   * whose code is replaced moves to where its last code was in the batch,
+   * so that it is evaluated after the blocks that came before that code.
+   * Code that isn't for a particular block, whose blockid is -1, is always
+   * kept.
+   *
+   * @throws JSONException if the batch is malformed
+   */
+  static List<Block> parse(String batch) throws JSONException {
+    JSONArray array = new JSONArray(batch);
+    List<Block> blocks = new ArrayList<Block>(array.length());
+    Map<String, Integer> positions = new HashMap<String, Integer>();
+    for (int i = 0; i < array.length(); i++) {
+      JSONObject block = array.getJSONObject(i);
+      String blockid = block.getString("blockid");
+      // Block ids are sent quoted, as for /_newblocks
+      if (blockid.startsWith("\"")) {
+        Integer replaced = positions.put(blockid, blocks.size());
+        if (replaced != null) {
+          blocks.set(replaced, null);
+        }
+      }
+      blocks.add(new Block(blockid, block.getString("code")));
+    }
+    List<Block> result = new ArrayList<Block>(blocks.size());
+    for (Block block : blocks) {
+      if (block != null) {
+        result.add(block);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Evaluates the blocks of a batch together, or one at a time if they
+   * can't be evaluated together.  Each block's result, or the error
+   * evaluating it, is returned to it through {@link RetValManager}.
+   *
+   * @throws JSONException if the batch is malformed
+   */
+  public static void eval(String batch, Evaluator evaluator) throws JSONException {
+    List<Block> blocks = parse(batch);
+    try {
+      evaluator.eval(toYail(blocks));
+      return;
+    } catch (Throwable e) {
+      // Nothing in the batch has run, since each block's errors are caught when it runs.
+    }
+    for (Block block : blocks) {
+      if (block.code.equals("#f")) {
+        continue;
+      }
+      try {
+        evaluator.eval("(process-repl-input " + block.blockid + " (begin " + block.code + " ))");
+      } catch (Throwable e) {
+        RetValManager.appendReturnValue(unquote(block.blockid), "BAD", e.toString());
+      }
+    }
+  }
+
+  /*
+   * Returns the blockid as process-repl-input returns it, which is the value of the quoted
+   * string sent.  Blockly's block ids have no quotes or backslashes to escape.
+   */
+  private static String unquote(String blockid) {
+    if (blockid.length() >= 2 && blockid.startsWith("\"") && blockid.endsWith("\"")) {
+      return blockid.substring(1, blockid.length() - 1);
+    }
+    return blockid;
+  }
+
+  /**
+   * Returns the YAIL evaluating the blocks of a batch, each as
+   * process-repl-input would.
+   *
+   * @throws JSONException if the batch is malformed
+   */
+  public static String toYail(String batch) throws JSONException {
+    return toYail(parse(batch));
+  }
+
+  private static String toYail(List<Block> blocks) {
+    StringBuilder sb = new StringBuilder("(process-repl-batch");
+    for (Block block : blocks) {
+      if (block.code.equals("#f")) {
+        continue;  // Used by the poller, as with /_newblocks
+      }
+      sb.append(" (").append(block.blockid).append(" (begin ").append(block.code)
+          .append(" ))");
+    }
+    return sb.append(')').toString();
+  }
+}
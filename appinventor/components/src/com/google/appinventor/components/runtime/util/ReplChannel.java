@@ -0,0 +1,531 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A persistent connection between the Blocks Editor and the Companion,
+ * made by upgrading a request for {@link #PATH} to a WebSocket (RFC 6455).
+ *
+ * Over HTTP, each block update is a request to /_newblocks on a session
+ * thread of its own, and return values wait for the next long poll of
+ * /_values.  Over the channel, each update is a text frame holding a JSON
+ * object with the same fields as the parameters of /_newblocks:
+ *
+ * <pre>
+ * {"seq": 12, "blockid": "23", "code": "(+ 1 2)", "mac": "9f2c..."}
+ * {"seq": 13, "batch": "[{\"blockid\": ...}]", "mac": "07be..."}
+ * </pre>
+ *
+ * The second form carries the code of several blocks at once, as a batch
+ * of {@link ReplBatch}, so a queue of updates is evaluated together.  The
+ * mac is computed with the Companion's HMAC key as for /_newblocks,
+ * and the seq must follow that of the previous update, so every frame is
+ * authenticated.  Return values and errors are pushed to the Blocks Editor
+ * as soon as they are made, each in a text frame shaped like the response
+ * to /_values: {@code {"status": "OK", "values": [...]}}.  An update that
+ * fails authentication is answered with {@code {"status": "BAD"}} and the
+ * message and seq of the update.
+ *
+ * Frames are written on a thread of the channel's own, so that pushing
+ * values never waits for the connection.
+ *
+ */
+public final class ReplChannel implements RetValManager.Listener {
+  public static final String PATH = "/_channel";
+
+  private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+  // How long to wait for the frames already sent to be written once the channel is closed
+  private static final long CLOSE_TIMEOUT_MS = 5000;
+
+  static final int OPCODE_CONTINUATION = 0x0;
+  static final int OPCODE_TEXT = 0x1;
+  static final int OPCODE_BINARY = 0x2;
+  static final int OPCODE_CLOSE = 0x8;
+  static final int OPCODE_PING = 0x9;
+  static final int OPCODE_PONG = 0xA;
+
+  /**
+   * Evaluates the code received over the channel.
+   */
+  public interface Evaluator {
+    /**
+     * Evaluates the code of a block update that has been authenticated.
+     * The results are expected to be reported to {@link RetValManager}.
+     */
+    void eval(String blockid, String code);
+
+    /**
+     * Evaluates a batch of block updates, as described by {@link ReplBatch},
+     * that has been authenticated.
+     */
+    void evalBatch(String batch);
+
+    /**
+     * Called when an update fails authentication, after the Blocks Editor
+     * has been told so.
+     */
+    void securityError(String message);
+  }
+
+  /**
+   * A frame read from the connection.
+   */
+  static final class Frame {
+    final int opcode;
+    final byte[] payload;
+
+    Frame(int opcode, byte[] payload) {
+      this.opcode = opcode;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * Reads messages from a connection, joining the fragments of fragmented
+   * ones.  Control frames may arrive between the fragments of a message,
+   * so the fragments read so far are kept while they are returned.
+   */
+  static final class FrameReader {
+    private final InputStream in;
+    private final boolean requireMask;
+    // The fragments of the message being read, or null between messages
+    private ByteArrayOutputStream message;
+    private int messageOpcode;
+
+    /**
+     * @param requireMask true if the frames must be masked, as those sent to
+     *        a server are
+     */
+    FrameReader(InputStream in, boolean requireMask) {
+      this.in = in;
+      this.requireMask = requireMask;
+    }
+
+    /**
+     * Reads the next control frame or whole message.
+     *
+     * @throws EOFException if the connection is closed
+     */
+    Frame read() throws IOException {
+      while (true) {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        boolean masked = (b1 & 0x80) != 0;
+        if (requireMask && !masked) {
+          throw new IOException("Unmasked frame from client");
+        }
+        long length = b1 & 0x7F;
+        if (length == 126) {
+          length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+          length = 0;
+          for (int i = 0; i < 8; i++) {
+            length = (length << 8) | readByte(in);
+          }
+        }
+        if (length > MAX_PAYLOAD) {
+          throw new IOException("Frame too large: " + length);
+        }
+        byte[] mask = null;
+        if (masked) {
+          mask = new byte[4];
+          readFully(in, mask);
+        }
+        byte[] payload = new byte[(int) length];
+        readFully(in, payload);
+        if (mask != null) {
+          for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i & 3];
+          }
+        }
+        if (opcode >= OPCODE_CLOSE) {
+          return new Frame(opcode, payload);
+        }
+        if (opcode != OPCODE_CONTINUATION) {
+          if (message != null) {
+            throw new IOException("New message before the last one ended");
+          }
+          message = new ByteArrayOutputStream(payload.length);
+          messageOpcode = opcode;
+        } else if (message == null) {
+          throw new IOException("Continuation frame without a message");
+        }
+        message.write(payload);
+        if (message.size() > MAX_PAYLOAD) {
+          throw new IOException("Message too large");
+        }
+        if (fin) {
+          Frame frame = new Frame(messageOpcode, message.toByteArray());
+          message = null;
+          return frame;
+        }
+      }
+    }
+  }
+
+  private final FrameReader reader;
+  private final OutputStream out;
+  // Writes the frames, in the order they are sent
+  private final ExecutorService writer = Executors.newSingleThreadExecutor();
+  private final Evaluator evaluator;
+  private final Mac mac;
+  private int seq;
+  private boolean closed;
+
+  /**
+   * Creates a channel over a connection whose upgrade has been accepted.
+   *
+   * @param hmacKey the key authenticating the updates, or null if there is
+   *        none, in which case every update is refused
+   * @param seq the sequence number of the next update
+   */
+  public ReplChannel(InputStream in, OutputStream out, Evaluator evaluator, byte[] hmacKey,
+      int seq) {
+    this.reader = new FrameReader(in, true);
+    this.out = out;
+    this.evaluator = evaluator;
+    this.seq = seq;
+    Mac mac = null;
+    if (hmacKey != null) {
+      try {
+        // Initialized once for the channel, rather than for each update
+        mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(hmacKey, "RAW"));
+      } catch (Exception e) {
+        mac = null;
+      }
+    }
+    this.mac = mac;
+  }
+
+  /**
+   * Returns whether the request with the given headers asks to upgrade to a
+   * WebSocket.  The header names are expected in lower case.
+   */
+  public static boolean isUpgradeRequest(Properties header) {
+    return "websocket".equalsIgnoreCase(header.getProperty("upgrade", "").trim())
+        && header.getProperty("sec-websocket-key") != null;
+  }
+
+  /**
+   * Writes the response accepting an upgrade to a WebSocket.
+   *
+   * @param key the value of the Sec-WebSocket-Key header of the request
+   */
+  public static void acceptUpgrade(OutputStream out, String key) throws IOException {
+    String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+        "Upgrade: websocket\r\n" +
+        "Connection: Upgrade\r\n" +
+        "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+    out.write(response.getBytes("US-ASCII"));
+    out.flush();
+  }
+
+  /**
+   * Computes the Sec-WebSocket-Accept value for a Sec-WebSocket-Key.
+   */
+  static String acceptKey(String key) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      return base64(sha1.digest((key.trim() + WEBSOCKET_GUID).getBytes("US-ASCII")));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads block updates and evaluates them until the Blocks Editor closes
+   * the channel or the connection is lost.
+   */
+  public void run() throws IOException {
+    try {
+      while (!isClosed()) {
+        Frame frame = reader.read();
+        switch (frame.opcode) {
+          case OPCODE_TEXT:
+            receive(new String(frame.payload, "UTF-8"));
+            break;
+          case OPCODE_PING:
+            send(OPCODE_PONG, frame.payload);
+            break;
+          case OPCODE_CLOSE:
+            close();
+            break;
+          default:
+            // Binary frames and unsolicited pongs are ignored.
+            break;
+        }
+      }
+    } finally {
+      synchronized (this) {
+        closed = true;
+        writer.shutdown();
+      }
+      // Let the frames already sent be written, such as the reply to a close, before the
+      // caller closes the connection.
+      try {
+        writer.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void receive(String text) throws IOException {
+    String blockid;
+    String code;
+    String batch;
+    String inSeq;
+    String inMac;
+    try {
+      JSONObject update = new JSONObject(text);
+      inSeq = update.optString("seq", "0");
+      blockid = update.optString("blockid");
+      code = update.optString("code");
+      batch = update.has("batch") ? update.getString("batch") : null;
+      inMac = update.optString("mac", "no key provided");
+    } catch (JSONException e) {
+      refuse("Malformed update", null);
+      return;
+    }
+    if (mac == null) {
+      refuse("No HMAC Key", inSeq);
+      return;
+    }
+    String computedMac = batch != null
+        ? computeMac(batch + inSeq)
+        : computeMac(code + inSeq + blockid);
+    if (!inMac.equals(computedMac)) {
+      refuse("Invalid MAC", inSeq);
+      return;
+    }
+    int iseq;
+    try {
+      iseq = Integer.parseInt(inSeq);
+    } catch (NumberFormatException e) {
+      refuse("Invalid Seq", inSeq);
+      return;
+    }
+    // As for /_newblocks, a seq one behind is tolerated.
+    if (seq != iseq && seq != iseq + 1) {
+      refuse("Invalid Seq", inSeq);
+      return;
+    }
+    synchronized (this) {
+      seq = iseq + 1;
+    }
+    if (batch != null) {
+      evaluator.evalBatch(batch);
+    } else {
+      evaluator.eval(blockid, code);
+    }
+  }
+
+  /*
+   * Tells the Blocks Editor that the update with the given seq, if known, was refused.
+   */
+  private void refuse(String message, String inSeq) throws IOException {
+    JSONObject response = new JSONObject();
+    try {
+      response.put("status", "BAD");
+      response.put("message", "Security Error: " + message);
+      response.putOpt("seq", inSeq);
+    } catch (JSONException e) {
+      throw new IOException(e.getMessage());
+    }
+    send(OPCODE_TEXT, response.toString().getBytes("UTF-8"));
+    evaluator.securityError(message);
+  }
+
+  private String computeMac(String message) throws IOException {
+    byte[] digest = mac.doFinal(message.getBytes("UTF-8"));
+    StringBuilder sb = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the sequence number expected of the next update.
+   */
+  public synchronized int getSeq() {
+    return seq;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Pushes return values to the Blocks Editor.  This may be called from any
+   * thread, and doesn't wait for them to be written.
+   */
+  @Override
+  public void onValues(JSONArray values) {
+    JSONObject output = new JSONObject();
+    try {
+      output.put("status", "OK");
+      output.put("values", values);
+      send(OPCODE_TEXT, output.toString().getBytes("UTF-8"));
+    } catch (JSONException e) {
+      // Not possible, since the values are already JSON
+    } catch (IOException e) {
+      // Not possible, since UTF-8 is always supported
+    }
+  }
+
+  /**
+   * Closes the channel, telling the Blocks Editor so.
+   */
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      send(OPCODE_CLOSE, new byte[0]);
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          closeOutput();
+        }
+      });
+      writer.shutdown();
+    }
+  }
+
+  /*
+   * Queues a frame to be written.  Frames sent once the channel has been
+   * closed are dropped.
+   */
+  private synchronized void send(final int opcode, final byte[] payload) {
+    if (writer.isShutdown()) {
+      return;
+    }
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writeFrame(out, opcode, payload, null);
+        } catch (IOException e) {
+          // Closing the connection lets the reading thread find out that it is lost.
+          closeOutput();
+        }
+      }
+    });
+  }
+
+  private void closeOutput() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      // Already lost
+    }
+  }
+
+  /**
+   * Writes a frame, masked with the given key if it isn't null, as frames
+   * from a client must be.
+   */
+  static void writeFrame(OutputStream out, int opcode, byte[] payload, byte[] mask)
+      throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream(14);
+    header.write(0x80 | opcode);
+    int maskBit = mask == null ? 0 : 0x80;
+    if (payload.length < 126) {
+      header.write(maskBit | payload.length);
+    } else if (payload.length <= 0xFFFF) {
+      header.write(maskBit | 126);
+      header.write(payload.length >> 8);
+      header.write(payload.length);
+    } else {
+      header.write(maskBit | 127);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        header.write((int) ((long) payload.length >> shift));
+      }
+    }
+    if (mask != null) {
+      header.write(mask);
+      byte[] masked = new byte[payload.length];
+      for (int i = 0; i < payload.length; i++) {
+        masked[i] = (byte) (payload[i] ^ mask[i & 3]);
+      }
+      payload = masked;
+    }
+    header.writeTo(out);
+    out.write(payload);
+    out.flush();
+  }
+
+  private static int readByte(InputStream in) throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  private static void readFully(InputStream in, byte[] buffer) throws IOException {
+    int offset = 0;
+    while (offset < buffer.length) {
+      int count = in.read(buffer, offset, buffer.length - offset);
+      if (count < 0) {
+        throw new EOFException();
+      }
+      offset += count;
+    }
+  }
+
+  private static final char[] BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  /*
+   * android.util.Base64 isn't available on every API level App Inventor supports.
+   */
+  private static String base64(byte[] data) {
+    StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+    for (int i = 0; i < data.length; i += 3) {
+      int b = (data[i] & 0xFF) << 16;
+      if (i + 1 < data.length) {
+        b |= (data[i + 1] & 0xFF) << 8;
+      }
+      if (i + 2 < data.length) {
+        b |= data[i + 2] & 0xFF;
+      }
+      sb.append(BASE64[(b >> 18) & 0x3F]);
+      sb.append(BASE64[(b >> 12) & 0x3F]);
+      sb.append(i + 1 < data.length ? BASE64[(b >> 6) & 0x3F] : '=');
+      sb.append(i + 2 < data.length ? BASE64[b & 0x3F] : '=');
+    }
+    return sb.toString();
+  }
+}
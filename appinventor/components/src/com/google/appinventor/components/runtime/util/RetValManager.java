@@ -29,6 +29,19 @@ public class RetValManager {
   // There can be only one!
   private static ArrayList<JSONObject> currentArray = new ArrayList<JSONObject>(10);
 
+  // When set, values are handed to it as they are made rather than waiting to be fetched
+  private static Listener listener = null;
+
+  /*
+   * Listener -- Receives return values as soon as they are made, as
+   * ReplChannel does to push them to the Blocks Editor. It is called with
+   * the semaphore held, so it must hand the values off rather than wait
+   * for them to be sent.
+   */
+  public interface Listener {
+    void onValues(JSONArray values);
+  }
+
   // Need a better place for this version string, but for various reasons, this is how we
   // are going to do this for now...
 
@@ -36,6 +49,60 @@ public class RetValManager {
   private RetValManager() {
   }
 
+  /*
+   * setListener -- Set the listener that values are pushed to, or null to
+   * go back to keeping them until they are fetched.  Any values already
+   * pending are handed to the new listener.
+   *
+   * @param newListener The listener
+   */
+  public static void setListener(Listener newListener) {
+    synchronized (semaphore) {
+      listener = newListener;
+      if (listener != null && !currentArray.isEmpty()) {
+        listener.onValues(new JSONArray(currentArray));
+        currentArray.clear();
+      }
+    }
+  }
+
+  /*
+   * clearListener -- Stop pushing values to the given listener, if it is
+   * still the one they are pushed to. A listener that has been replaced,
+   * such as a channel the Blocks Editor has since reconnected over, leaves
+   * its replacement alone.
+   *
+   * @param oldListener The listener
+   * @return true if it was the listener and has been cleared
+   */
+  public static boolean clearListener(Listener oldListener) {
+    synchronized (semaphore) {
+      if (listener != oldListener) {
+        return false;
+      }
+      listener = null;
+      return true;
+    }
+  }
+
+  /*
+   * add -- Push a value to the listener if there is one, otherwise keep
+   * it for fetch. Called with the semaphore held.
+   */
+  private static void add(JSONObject retval) {
+    if (listener != null) {
+      JSONArray values = new JSONArray();
+      values.put(retval);
+      listener.onValues(values);
+      return;
+    }
+    boolean sendNotify = currentArray.isEmpty();
+    currentArray.add(retval);
+    if (sendNotify) {
+      semaphore.notifyAll();
+    }
+  }
+
   /*
    * appendReturnValue -- Add a result, already encoded as a String to
    * the array of pending values.
@@ -56,11 +123,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -75,11 +138,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -102,11 +161,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -128,11 +183,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -0,0 +1,73 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.IOException;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.ResponseCache;
+import java.net.URI;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response cache that is only used by the requests that ask for it.
+ *
+ * HttpURLConnection only has a single, process-wide response cache, and it
+ * uses it for every connection that doesn't turn caching off, which is the
+ * default.  Installing a cache for Web's UseCache property would therefore
+ * also cache the requests made by the rest of the app and its libraries.
+ * This cache is installed as the process-wide one instead, and passes
+ * requests on to the real cache only while the thread making them has
+ * enabled it with {@link #setEnabled(boolean)}.  Each request is made and
+ * its response read on a single thread, so this scopes the cache to the
+ * requests made between enabling and disabling it.
+ *
+ */
+final class ScopedResponseCache extends ResponseCache {
+  private static final ThreadLocal<Boolean> enabled = new ThreadLocal<Boolean>() {
+    @Override
+    protected Boolean initialValue() {
+      return false;
+    }
+  };
+
+  private final ResponseCache delegate;
+
+  /**
+   * Creates a cache that passes the requests that enabled it on to the
+   * given cache.
+   */
+  ScopedResponseCache(ResponseCache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets whether requests made by the current thread use the cache.
+   */
+  static void setEnabled(boolean enable) {
+    enabled.set(enable);
+  }
+
+  /**
+   * Returns whether requests made by the current thread use the cache.
+   */
+  static boolean isEnabled() {
+    return enabled.get();
+  }
+
+  @Override
+  public CacheResponse get(URI uri, String requestMethod, Map<String, List<String>> requestHeaders)
+      throws IOException {
+    return isEnabled() ? delegate.get(uri, requestMethod, requestHeaders) : null;
+  }
+
+  @Override
+  public CacheRequest put(URI uri, URLConnection connection) throws IOException {
+    return isEnabled() ? delegate.put(uri, connection) : null;
+  }
+}
@@ -0,0 +1,251 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the samples of a sensor that reports three values, such as an
+ * accelerometer or a gyroscope, and decides when they should be delivered
+ * to the app.
+ *
+ * A sensor can report samples much faster than an app can handle an event
+ * for each one.  The component passes every sample to {@link #add}, which
+ * returns true once the delivery interval has passed since the last
+ * delivery.  Only then does the component raise an event, either for the
+ * latest sample or, when batching, for all of the samples collected since
+ * the last delivery.  The last samples are also kept in a window, over
+ * which the mean, minimum, maximum and variance of each axis can be asked
+ * for at any time, so the app can follow the whole stream of samples
+ * without an event for each one.
+ *
+ * Adding a sample only copies its values into arrays.  The statistics are
+ * computed when they are asked for, and the batch is turned into a list
+ * when it is delivered.
+ *
+ */
+public final class SensorPipeline {
+  public static final int AXES = 3;
+
+  // The largest window, and the most samples kept for a batch.  When a batch is full, the oldest
+  // samples are dropped.
+  public static final int MAX_WINDOW_SIZE = 1000;
+  public static final int MAX_BATCH_SIZE = 1000;
+
+  // The window, as a circular buffer of samples.
+  private float[] window;
+  private int windowCount;
+  private int windowNext;
+
+  // The batch, as a circular buffer of samples and their timestamps.
+  private final float[] batch = new float[MAX_BATCH_SIZE * AXES];
+  private final long[] batchTimestamps = new long[MAX_BATCH_SIZE];
+  private int batchCount;
+  private int batchNext;
+  private boolean batching;
+
+  private long interval;  // nanoseconds
+  private boolean delivered;
+  private long lastDelivery;
+
+  /**
+   * Creates a pipeline.
+   *
+   * @param windowSize the number of samples in the window
+   */
+  public SensorPipeline(int windowSize) {
+    setWindowSize(windowSize);
+  }
+
+  /**
+   * Sets the number of samples in the window, which is kept between 1 and
+   * {@link #MAX_WINDOW_SIZE}.  The samples in the window are discarded.
+   */
+  public void setWindowSize(int windowSize) {
+    windowSize = Math.max(1, Math.min(windowSize, MAX_WINDOW_SIZE));
+    window = new float[windowSize * AXES];
+    windowCount = 0;
+    windowNext = 0;
+  }
+
+  public int getWindowSize() {
+    return window.length / AXES;
+  }
+
+  /**
+   * Sets the shortest time between deliveries.  With an interval of 0,
+   * every sample is delivered.
+   *
+   * @param interval the interval in milliseconds
+   */
+  public void setInterval(int interval) {
+    this.interval = Math.max(0, interval) * 1000000L;
+  }
+
+  public int getInterval() {
+    return (int) (interval / 1000000L);
+  }
+
+  /**
+   * Sets whether samples are collected for delivery as a batch.  Turning
+   * batching off discards the samples collected.
+   */
+  public void setBatching(boolean batching) {
+    this.batching = batching;
+    if (!batching) {
+      batchCount = 0;
+      batchNext = 0;
+    }
+  }
+
+  public boolean isBatching() {
+    return batching;
+  }
+
+  /**
+   * Adds a sample.
+   *
+   * @param timestamp the time of the sample in nanoseconds, as given by
+   *                  SensorEvent.timestamp
+   * @return true if the samples should be delivered now
+   */
+  public boolean add(long timestamp, float x, float y, float z) {
+    int i = windowNext * AXES;
+    window[i] = x;
+    window[i + 1] = y;
+    window[i + 2] = z;
+    windowNext = (windowNext + 1) % getWindowSize();
+    if (windowCount < getWindowSize()) {
+      windowCount++;
+    }
+
+    if (batching) {
+      i = batchNext * AXES;
+      batch[i] = x;
+      batch[i + 1] = y;
+      batch[i + 2] = z;
+      batchTimestamps[batchNext] = timestamp;
+      batchNext = (batchNext + 1) % MAX_BATCH_SIZE;
+      if (batchCount < MAX_BATCH_SIZE) {
+        batchCount++;
+      }
+    }
+
+    if (delivered && timestamp - lastDelivery < interval) {
+      return false;
+    }
+    delivered = true;
+    lastDelivery = timestamp;
+    return true;
+  }
+
+  /**
+   * Returns the samples collected since the last call, oldest first, and
+   * starts a new batch.  Each sample is a list of its three values and its
+   * timestamp.
+   */
+  public YailList takeBatch() {
+    List<Object> samples = new ArrayList<Object>(batchCount);
+    int first = (batchNext - batchCount + MAX_BATCH_SIZE) % MAX_BATCH_SIZE;
+    for (int n = 0; n < batchCount; n++) {
+      int j = (first + n) % MAX_BATCH_SIZE;
+      int i = j * AXES;
+      samples.add(YailList.makeList(new Object[] {
+          (double) batch[i], (double) batch[i + 1], (double) batch[i + 2], batchTimestamps[j] }));
+    }
+    batchCount = 0;
+    batchNext = 0;
+    return YailList.makeList(samples);
+  }
+
+  /**
+   * Discards the samples in the window and the batch, and forgets the time
+   * of the last delivery, so that the next sample is delivered.  This should
+   * be called when the sensor stops reporting.
+   */
+  public void clear() {
+    windowCount = 0;
+    windowNext = 0;
+    batchCount = 0;
+    batchNext = 0;
+    delivered = false;
+  }
+
+  /**
+   * Returns the number of samples in the window, which is less than the
+   * window size until enough samples have been added.
+   */
+  public int count() {
+    return windowCount;
+  }
+
+  /**
+   * Returns the mean of the given axis over the window, or 0 if the window
+   * is empty.
+   *
+   * @param axis the axis, from 0 to 2
+   */
+  public double mean(int axis) {
+    if (windowCount == 0) {
+      return 0;
+    }
+    double sum = 0;
+    for (int n = 0; n < windowCount; n++) {
+      sum += window[n * AXES + axis];
+    }
+    return sum / windowCount;
+  }
+
+  /**
+   * Returns the smallest value of the given axis in the window, or 0 if the
+   * window is empty.
+   */
+  public double minimum(int axis) {
+    if (windowCount == 0) {
+      return 0;
+    }
+    float min = window[axis];
+    for (int n = 1; n < windowCount; n++) {
+      min = Math.min(min, window[n * AXES + axis]);
+    }
+    return min;
+  }
+
+  /**
+   * Returns the largest value of the given axis in the window, or 0 if the
+   * window is empty.
+   */
+  public double maximum(int axis) {
+    if (windowCount == 0) {
+      return 0;
+    }
+    float max = window[axis];
+    for (int n = 1; n < windowCount; n++) {
+      max = Math.max(max, window[n * AXES + axis]);
+    }
+    return max;
+  }
+
+  /**
+   * Returns the (population) variance of the given axis over the window, or
+   * 0 if the window is empty.
+   */
+  public double variance(int axis) {
+    if (windowCount == 0) {
+      return 0;
+    }
+    // Two passes, which is more accurate than keeping sums of squares for values, like
+    // acceleration under gravity, whose variance is small compared with their size.
+    double mean = mean(axis);
+    double sum = 0;
+    for (int n = 0; n < windowCount; n++) {
+      double d = window[n * AXES + axis] - mean;
+      sum += d * d;
+    }
+    return sum / windowCount;
+  }
+}
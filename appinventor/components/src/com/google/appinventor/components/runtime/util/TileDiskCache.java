@@ -0,0 +1,463 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of map tiles in a directory that holds tiles up to a total size
+ * in bytes, deleting the least recently used tiles to make room for new
+ * ones.  This is like {@link LruMemoryCache}, but the tiles are kept in
+ * files, so they survive the app being restarted.
+ *
+ * Each tile is kept in a file of its own, which starts with the time the
+ * tile expires.  Expired tiles are still returned, so that the map can be
+ * shown offline, but {@link #isExpired} tells the caller to fetch them again
+ * when it can.  The time a tile was last used is kept as the file's
+ * modification time, so that the order in which tiles are evicted is kept
+ * across restarts as well.
+ *
+ * The cache can be shared by the threads loading tiles for the map and
+ * downloading regions.  Only the bookkeeping of which tiles are cached is
+ * done under the cache's lock; the files are read, written and deleted
+ * outside it, so a slow disk holds up just the thread using it.  The cache
+ * is created and sized on the UI thread, so the tiles already in the
+ * directory are found, and evicted tiles deleted, on a thread of the
+ * cache's own.  Using the tiles waits for them to have been found.
+ *
+ */
+public final class TileDiskCache {
+  private static final String SUFFIX = ".tile";
+  private static final String TEMP_SUFFIX = ".tmp";
+  // The length of the expiry time at the start of each file
+  private static final int HEADER_SIZE = 8;
+  private static final long UNKNOWN_EXPIRY = -1;
+  // How long the cache's thread is kept once it has nothing to do
+  private static final long IDLE_SECONDS = 5;
+
+  private static class Entry {
+    final long size;
+    // Tiles found when the cache is created have their expiry read from the file when it is
+    // first needed, rather than reading every file at startup.
+    long expires;
+
+    Entry(long size, long expires) {
+      this.size = size;
+      this.expires = expires;
+    }
+  }
+
+  // The tile in each file, by the file's name, with the least recently used first.  A tile is
+  // moved to the end when used, so that it can be looked up without changing the order.
+  private final LinkedHashMap<String, Entry> files = new LinkedHashMap<String, Entry>();
+  private final File directory;
+  // Finds the tiles already in the directory, then deletes the files of evicted tiles
+  private final ExecutorService disk = new ThreadPoolExecutor(0, 1, IDLE_SECONDS,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+  private long maxSize;
+  private long size;
+  private boolean loaded;
+  // Set when the maximum size is changed before the tiles have been found
+  private boolean trimWhenLoaded;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a cache of the tiles in the given directory, which is created
+   * if it doesn't exist.  Tiles already in the directory are kept, in the
+   * order in which they were last used.  They aren't trimmed to the maximum
+   * size until a tile is put or the maximum size is set again, since the
+   * size given here may only be a default.
+   *
+   * @param directory the directory in which to keep the tiles
+   * @param maxSize the largest total size of the tiles, in bytes
+   * @throws IOException if the directory can't be created
+   */
+  public TileDiskCache(File directory, long maxSize) throws IOException {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create tile cache directory " + directory);
+    }
+    this.directory = directory;
+    this.maxSize = maxSize;
+    disk.execute(new Runnable() {
+      @Override
+      public void run() {
+        load();
+      }
+    });
+  }
+
+  /*
+   * A tile file found when the cache is created, with its time read once rather than each time
+   * the sort compares it.
+   */
+  private static class Found {
+    final String name;
+    final long size;
+    final long lastModified;
+
+    Found(String name, long size, long lastModified) {
+      this.name = name;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+
+  private void load() {
+    List<Found> found = new ArrayList<Found>();
+    File[] existing = directory.listFiles();
+    if (existing != null) {
+      for (File file : existing) {
+        if (file.getName().endsWith(TEMP_SUFFIX)) {
+          // Left by a write that didn't finish
+          file.delete();
+        } else if (file.isFile() && file.getName().endsWith(SUFFIX)) {
+          long length = file.length();
+          if (length < HEADER_SIZE) {
+            file.delete();
+          } else {
+            found.add(new Found(file.getName(), length - HEADER_SIZE, file.lastModified()));
+          }
+        }
+      }
+    }
+    Collections.sort(found, new Comparator<Found>() {
+      @Override
+      public int compare(Found a, Found b) {
+        return a.lastModified < b.lastModified ? -1 : a.lastModified > b.lastModified ? 1 : 0;
+      }
+    });
+    List<String> evicted = null;
+    synchronized (this) {
+      for (Found file : found) {
+        files.put(file.name, new Entry(file.size, UNKNOWN_EXPIRY));
+        size += file.size;
+      }
+      loaded = true;
+      if (trimWhenLoaded) {
+        evicted = evict(maxSize);
+      }
+      notifyAll();
+    }
+    if (evicted != null) {
+      delete(evicted);
+    }
+  }
+
+  /*
+   * Waits for the tiles already in the directory to have been found. Called with the lock held.
+   */
+  private void awaitLoaded() {
+    boolean interrupted = false;
+    while (!loaded) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the contents of the given tile, making it the most recently
+   * used, or null if it isn't in the cache.  The contents of an expired tile
+   * are returned as well.
+   *
+   * @param source the name of the tile source, such as "Mapnik"
+   * @param zoom the zoom level of the tile
+   * @param x the column of the tile
+   * @param y the row of the tile
+   */
+  public byte[] get(String source, int zoom, int x, int y) {
+    String name = fileName(source, zoom, x, y);
+    Entry entry;
+    synchronized (this) {
+      awaitLoaded();
+      entry = files.remove(name);
+      if (entry == null) {
+        misses++;
+        return null;
+      }
+      files.put(name, entry);
+    }
+    File file = new File(directory, name);
+    try {
+      FileInputStream stream = new FileInputStream(file);
+      DataInputStream in = new DataInputStream(stream);
+      byte[] contents;
+      long expires;
+      try {
+        // The length of the file opened, which may since have been replaced by a newer tile
+        contents = new byte[(int) stream.getChannel().size() - HEADER_SIZE];
+        expires = in.readLong();
+        in.readFully(contents);
+      } finally {
+        in.close();
+      }
+      file.setLastModified(System.currentTimeMillis());
+      synchronized (this) {
+        entry.expires = expires;
+        hits++;
+      }
+      return contents;
+    } catch (IOException e) {
+      // The file has gone, such as when the system cleared the app's cache, or the tile was
+      // evicted while it was being read.
+      synchronized (this) {
+        forget(name, entry);
+        misses++;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether the given tile is in the cache, without making it the
+   * most recently used.
+   */
+  public synchronized boolean contains(String source, int zoom, int x, int y) {
+    awaitLoaded();
+    return files.containsKey(fileName(source, zoom, x, y));
+  }
+
+  /**
+   * Returns whether the given tile is in the cache but has expired, or
+   * can't be read, and so should be fetched again.  This doesn't make the
+   * tile the most recently used.
+   */
+  public boolean isExpired(String source, int zoom, int x, int y) {
+    String name = fileName(source, zoom, x, y);
+    Entry entry;
+    synchronized (this) {
+      awaitLoaded();
+      entry = files.get(name);
+      if (entry == null) {
+        return false;
+      }
+      if (entry.expires != UNKNOWN_EXPIRY) {
+        return entry.expires <= System.currentTimeMillis();
+      }
+    }
+    long expires;
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(new File(directory, name)));
+      try {
+        expires = in.readLong();
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return true;
+    }
+    synchronized (this) {
+      entry.expires = expires;
+    }
+    return expires <= System.currentTimeMillis();
+  }
+
+  /**
+   * Adds a tile to the cache, replacing any tile with the same coordinates,
+   * and deletes the least recently used tiles until the cache is no larger
+   * than its maximum size.  A tile larger than the maximum size isn't
+   * cached.
+   *
+   * @param expires the time after which the tile should be fetched again,
+   *     in milliseconds since the epoch
+   * @throws IOException if the tile can't be written
+   */
+  public void put(String source, int zoom, int x, int y, byte[] contents, long expires)
+      throws IOException {
+    String name = fileName(source, zoom, x, y);
+    File file = new File(directory, name);
+    if (contents.length > maxSize()) {
+      synchronized (this) {
+        awaitLoaded();
+        forget(name, files.get(name));
+      }
+      file.delete();
+      return;
+    }
+    // Write to a file of this put's own first, so that a partly written tile is never read,
+    // even when two threads are caching the same tile.
+    File temp = File.createTempFile(name, TEMP_SUFFIX, directory);
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+    try {
+      out.writeLong(expires);
+      out.write(contents);
+    } finally {
+      out.close();
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      throw new IOException("Unable to write tile " + file);
+    }
+    List<String> evicted;
+    synchronized (this) {
+      awaitLoaded();
+      forget(name, files.get(name));
+      files.put(name, new Entry(contents.length, expires));
+      size += contents.length;
+      evicted = evict(maxSize);
+    }
+    delete(evicted);
+  }
+
+  /**
+   * Changes the maximum size of the cache, deleting the least recently
+   * used tiles if the cache is now too large.  This doesn't wait for the
+   * tiles to be found or deleted, so it may be called on the UI thread.
+   */
+  public void setMaxSize(long maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    List<String> evicted;
+    synchronized (this) {
+      this.maxSize = maxSize;
+      if (!loaded) {
+        trimWhenLoaded = true;
+        return;
+      }
+      evicted = evict(maxSize);
+    }
+    delete(evicted);
+  }
+
+  /**
+   * Deletes the least recently used tiles until the cache is no larger than
+   * the given size.
+   */
+  public void trimToSize(long targetSize) {
+    List<String> evicted;
+    synchronized (this) {
+      awaitLoaded();
+      evicted = evict(targetSize);
+    }
+    delete(evicted);
+  }
+
+  /**
+   * Deletes all of the tiles.
+   */
+  public void clear() {
+    trimToSize(0);
+  }
+
+  public synchronized int count() {
+    awaitLoaded();
+    return files.size();
+  }
+
+  public synchronized long size() {
+    awaitLoaded();
+    return size;
+  }
+
+  public synchronized long maxSize() {
+    return maxSize;
+  }
+
+  public synchronized long hitCount() {
+    return hits;
+  }
+
+  public synchronized long missCount() {
+    return misses;
+  }
+
+  public synchronized long evictionCount() {
+    return evictions;
+  }
+
+  /*
+   * Removes the least recently used tiles until the cache is no larger than the given size,
+   * returning the names of their files for the caller to delete once it has released the lock.
+   * A tile put again before its old file is deleted loses its new file, and is then treated as
+   * a miss like any other tile whose file has gone.
+   */
+  private List<String> evict(long targetSize) {
+    List<String> evicted = new ArrayList<String>();
+    Iterator<Map.Entry<String, Entry>> it = files.entrySet().iterator();
+    while (size > targetSize && it.hasNext()) {
+      Map.Entry<String, Entry> entry = it.next();
+      evicted.add(entry.getKey());
+      size -= entry.getValue().size;
+      it.remove();
+      evictions++;
+    }
+    return evicted;
+  }
+
+  private void delete(final List<String> names) {
+    if (names.isEmpty()) {
+      return;
+    }
+    disk.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (String name : names) {
+          new File(directory, name).delete();
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for the files of the tiles evicted so far to be deleted, as
+   * tests do before looking at the directory.
+   */
+  void awaitDeletes() throws InterruptedException {
+    try {
+      disk.submit(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /*
+   * Removes the given entry for the file if it is still the file's entry, and not one put since.
+   */
+  private void forget(String name, Entry entry) {
+    if (entry != null && files.get(name) == entry) {
+      files.remove(name);
+      size -= entry.size;
+    }
+  }
+
+  private static String fileName(String source, int zoom, int x, int y) {
+    // Tile source names are chosen by us, but keep them from naming other directories.
+    return source.replaceAll("[^A-Za-z0-9-]", "_") + "_" + zoom + "_" + x + "_" + y + SUFFIX;
+  }
+}
@@ -0,0 +1,255 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+
+/**
+ * Downloads the map tiles covering a region into a {@link TileDiskCache},
+ * so that the map can be used there without a data connection.
+ *
+ * Tiles are numbered as in the spherical Mercator tiling used by
+ * OpenStreetMap, with 2^zoom columns and rows of tiles at each zoom level.
+ *
+ */
+public final class TileDownloader {
+  /**
+   * The most tiles that a region may cover. OpenStreetMap's tile usage
+   * policy forbids bulk downloading, and a region of a few city blocks at
+   * the highest zoom levels covers many thousands of tiles.
+   */
+  public static final int MAX_TILES = 10000;
+
+  /**
+   * The zoom levels of the tiles, as for the Map.
+   */
+  public static final int MIN_ZOOM = 0;
+  public static final int MAX_ZOOM = 20;
+
+  private static final int CONNECT_TIMEOUT = 15000;
+  private static final int READ_TIMEOUT = 30000;
+
+  /**
+   * A fetched tile: its contents, and the time after which it should be
+   * fetched again, in milliseconds since the epoch.
+   */
+  public static final class Tile {
+    public final byte[] contents;
+    public final long expires;
+
+    public Tile(byte[] contents, long expires) {
+      this.contents = contents;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Fetches the contents of a tile. Tests use a fetcher that serves tiles
+   * without going to the network.
+   */
+  public interface TileFetcher {
+    /**
+     * Returns the tile at the given url.
+     *
+     * @throws IOException if the tile can't be fetched
+     */
+    Tile fetchTile(String url) throws IOException;
+  }
+
+  /**
+   * Gives the url of a tile of a tile source.
+   */
+  public interface TileUrlProvider {
+    String getTileUrl(int zoom, int x, int y);
+  }
+
+  /**
+   * Receives the progress of a download. The methods are called on the
+   * thread doing the download.
+   */
+  public interface ProgressListener {
+    /**
+     * Called after each tile has been downloaded, or found in the cache.
+     *
+     * @param done the number of tiles done so far
+     * @param total the number of tiles in the region
+     */
+    void onProgress(int done, int total);
+
+    /**
+     * Called when every tile has been tried.
+     *
+     * @param downloaded the number of tiles that were downloaded
+     * @param failed the number of tiles that couldn't be downloaded
+     */
+    void onFinished(int downloaded, int failed);
+  }
+
+  /**
+   * Fetches tiles with HTTP. Each tile expires when the server's Expires
+   * header says, or a week after it was fetched if there is none, as with
+   * osmdroid's own downloader.
+   */
+  public static final class HttpTileFetcher implements TileFetcher {
+    private final String userAgent;
+
+    /**
+     * Creates a fetcher that identifies the app to tile servers with the
+     * given User-Agent, which the map takes from osmdroid's configuration.
+     */
+    public HttpTileFetcher(String userAgent) {
+      this.userAgent = userAgent;
+    }
+
+    @Override
+    public Tile fetchTile(String url) throws IOException {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setConnectTimeout(CONNECT_TIMEOUT);
+      connection.setReadTimeout(READ_TIMEOUT);
+      connection.setRequestProperty("User-Agent", userAgent);
+      try {
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+          throw new IOException("Unexpected response " + responseCode + " for " + url);
+        }
+        long expires = connection.getExpiration();
+        if (expires == 0) {
+          expires = System.currentTimeMillis()
+              + OpenStreetMapTileProviderConstants.DEFAULT_MAXIMUM_CACHED_FILE_AGE;
+        }
+        InputStream in = connection.getInputStream();
+        try {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          byte[] buffer = new byte[8192];
+          int read;
+          while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+          }
+          return new Tile(out.toByteArray(), expires);
+        } finally {
+          in.close();
+        }
+      } finally {
+        connection.disconnect();
+      }
+    }
+  }
+
+  private final TileDiskCache cache;
+  private final TileFetcher fetcher;
+  private volatile boolean cancelled = false;
+
+  public TileDownloader(TileDiskCache cache, TileFetcher fetcher) {
+    this.cache = cache;
+    this.fetcher = fetcher;
+  }
+
+  /**
+   * Stops a download in progress after the tile being downloaded.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Downloads the tiles of the given source covering the region at each of
+   * the zoom levels from minZoom to maxZoom, skipping tiles that are already
+   * cached and haven't expired. The download is done on the calling thread.
+   *
+   * @param source the name of the tile source, used as the cache key
+   * @param urls gives the url of each tile
+   * @param north the northern edge of the region
+   * @param west the western edge of the region, which is east of the eastern
+   *             edge if the region crosses the antimeridian
+   * @param south the southern edge of the region
+   * @param east the eastern edge of the region
+   * @param minZoom the lowest zoom level to download
+   * @param maxZoom the highest zoom level to download
+   * @param listener receives the progress of the download
+   */
+  public void download(String source, TileUrlProvider urls, double north, double west,
+      double south, double east, int minZoom, int maxZoom, ProgressListener listener) {
+    int total = countTiles(north, west, south, east, minZoom, maxZoom);
+    int done = 0;
+    int downloaded = 0;
+    int failed = 0;
+    for (int zoom = minZoom; zoom <= maxZoom && !cancelled; zoom++) {
+      int tiles = 1 << zoom;
+      int firstColumn = column(west, zoom);
+      int columns = columnCount(west, east, zoom);
+      int firstRow = row(north, zoom);
+      int lastRow = row(south, zoom);
+      for (int i = 0; i < columns && !cancelled; i++) {
+        int x = (firstColumn + i) % tiles;
+        for (int y = firstRow; y <= lastRow && !cancelled; y++) {
+          if (!cache.contains(source, zoom, x, y) || cache.isExpired(source, zoom, x, y)) {
+            try {
+              Tile tile = fetcher.fetchTile(urls.getTileUrl(zoom, x, y));
+              cache.put(source, zoom, x, y, tile.contents, tile.expires);
+              downloaded++;
+            } catch (IOException e) {
+              failed++;
+            }
+          }
+          listener.onProgress(++done, total);
+        }
+      }
+    }
+    listener.onFinished(downloaded, failed);
+  }
+
+  /**
+   * Returns the number of tiles covering the region at each of the zoom
+   * levels from minZoom to maxZoom, or Integer.MAX_VALUE if there are more
+   * than that.
+   */
+  public static int countTiles(double north, double west, double south, double east,
+      int minZoom, int maxZoom) {
+    long count = 0;
+    for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+      count += (long) columnCount(west, east, zoom) * (row(south, zoom) - row(north, zoom) + 1);
+      if (count > Integer.MAX_VALUE) {
+        return Integer.MAX_VALUE;
+      }
+    }
+    return (int) count;
+  }
+
+  /*
+   * Returns the column of tiles containing the longitude, with 180 in the
+   * last column rather than the first.
+   */
+  static int column(double longitude, int zoom) {
+    int tiles = 1 << zoom;
+    return (int) Math.min(tiles - 1, Math.floor((longitude + 180) / 360 * tiles));
+  }
+
+  /*
+   * Returns the row of tiles containing the latitude, with latitudes beyond
+   * the edges of the Mercator projection in the first or last row.
+   */
+  static int row(double latitude, int zoom) {
+    int tiles = 1 << zoom;
+    return (int) Math.min(tiles - 1, Math.floor(GridClusterer.toY(latitude) * tiles));
+  }
+
+  private static int columnCount(double west, double east, int zoom) {
+    int first = column(west, zoom);
+    int last = column(east, zoom);
+    if (west <= east) {
+      return last - first + 1;
+    }
+    // A region crossing the antimeridian wraps around from the last column to the first, which
+    // at low zoom levels may be every column.
+    return Math.min(1 << zoom, (1 << zoom) - first + last + 1);
+  }
+}
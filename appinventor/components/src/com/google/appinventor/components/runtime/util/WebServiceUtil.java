@@ -9,29 +9,17 @@ package com.google.appinventor.components.runtime.util;
 import android.util.Log;
 
 import org.apache.http.NameValuePair;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.params.ConnManagerParams;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.protocol.HTTP;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
 import java.util.List;
 
 /**
@@ -46,8 +34,8 @@ public class WebServiceUtil {
 
   private static final WebServiceUtil INSTANCE = new WebServiceUtil();
   private static final String LOG_TAG = "WebServiceUtil";
-  private static HttpClient httpClient = null;
-  private static Object httpClientSynchronizer = new Object();
+  private static final int TIMEOUT = 20 * 1000;  // milliseconds
+  private static final String ENCODING = "UTF-8";
 
   private WebServiceUtil(){
   }
@@ -57,23 +45,8 @@ public class WebServiceUtil {
    * @return the one <code>WebServiceUtil</code> instance
    */
   public static WebServiceUtil getInstance() {
-    // This needs to be here instead of in the constructor because
-    // it uses classes that are in the AndroidSDK and thus would
-    // cause Stub! errors when running the component descriptor.
-    synchronized(httpClientSynchronizer) {
-      if (httpClient == null) {
-        SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-        schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-        BasicHttpParams params = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(params, 20 * 1000);
-        HttpConnectionParams.setSoTimeout(params, 20 * 1000);
-        ConnManagerParams.setMaxTotalConnections(params, 20);
-        ThreadSafeClientConnManager manager = new ThreadSafeClientConnManager(params,
-            schemeRegistry);
-        WebServiceUtil.httpClient = new DefaultHttpClient(manager, params);
-      }
-    }
+    // Requests are made through HttpUtil with HttpURLConnection, which pools
+    // connections to the service itself, so there is no client to set up here.
     return INSTANCE;
   }
 
@@ -150,28 +123,83 @@ public class WebServiceUtil {
 
     if (serviceURL == null || serviceURL.equals("")) {
       callback.onFailure("No service url to post command to.");
+      return;
     }
-    final HttpPost httpPost = new HttpPost(serviceURL + "/" + commandName);
 
-    if (params == null) {
-      params = new ArrayList<NameValuePair>();
-    }
     try {
-      String httpResponseString;
-      ResponseHandler<String> responseHandler = new BasicResponseHandler();
-      httpPost.setEntity(new UrlEncodedFormEntity(params, HTTP.UTF_8));
-      httpPost.setHeader("Accept", "application/json");
-      httpResponseString = httpClient.execute(httpPost, responseHandler);
-      callback.onSuccess(httpResponseString);
+      byte[] content = encodeParams(params).getBytes(ENCODING);
+      HttpURLConnection connection =
+          HttpUtil.openConnection(new URL(serviceURL + "/" + commandName), TIMEOUT, false);
+      boolean responseRead = false;
+      try {
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(content.length);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Content-Type",
+            "application/x-www-form-urlencoded; charset=" + ENCODING);
+        OutputStream out = connection.getOutputStream();
+        try {
+          out.write(content);
+        } finally {
+          out.close();
+        }
+
+        int responseCode = connection.getResponseCode();
+        String httpResponseString = readResponse(connection);
+        responseRead = true;
+        if (responseCode >= 300) {
+          // Like the BasicResponseHandler used before, treat anything but a success as a
+          // protocol error.
+          Log.w(LOG_TAG, "Web service responded with " + responseCode + " "
+              + connection.getResponseMessage());
+          callback.onFailure(
+              "Communication with the web service encountered a protocol exception.");
+          return;
+        }
+        callback.onSuccess(httpResponseString);
+      } finally {
+        HttpUtil.finish(connection, responseRead);
+      }
     } catch (UnsupportedEncodingException e) {
       Log.w(LOG_TAG, e);
       callback.onFailure("Failed to encode params for web service call.");
-    } catch (ClientProtocolException e) {
-      Log.w(LOG_TAG, e);
-      callback.onFailure("Communication with the web service encountered a protocol exception.");
     } catch (IOException e) {
       Log.w(LOG_TAG, e);
       callback.onFailure("Communication with the web service timed out.");
     }
   }
+
+  private static String encodeParams(List<NameValuePair> params)
+      throws UnsupportedEncodingException {
+    StringBuilder sb = new StringBuilder();
+    if (params != null) {
+      for (NameValuePair param : params) {
+        if (sb.length() > 0) {
+          sb.append('&');
+        }
+        sb.append(URLEncoder.encode(param.getName(), ENCODING));
+        if (param.getValue() != null) {
+          sb.append('=').append(URLEncoder.encode(param.getValue(), ENCODING));
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String readResponse(HttpURLConnection connection) throws IOException {
+    InputStreamReader reader =
+        new InputStreamReader(HttpUtil.getResponseStream(connection), ENCODING);
+    try {
+      StringBuilder sb = new StringBuilder();
+      char[] buf = new char[1024];
+      int read;
+      while ((read = reader.read(buf)) != -1) {
+        sb.append(buf, 0, read);
+      }
+      return sb.toString();
+    } finally {
+      reader.close();
+    }
+  }
 }
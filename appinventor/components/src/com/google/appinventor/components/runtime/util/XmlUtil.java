@@ -0,0 +1,257 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.XML;
+import org.json.XMLTokener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decodes XML to the list structure used by the Web component's
+ * XMLTextDecode block.
+ *
+ * The decoding used to convert the XML to a JSONObject with
+ * {@link XML#toJSONObject(String)}, write that out as JSON text and then
+ * decode the text with {@link JsonUtil}.  Here the XML is read with the same
+ * tokenizer and the same rules as XML.toJSONObject, but each element is
+ * turned into a YailList of sorted [name, value] pairs as soon as it ends,
+ * and the values are converted as the trip through JSON text would have
+ * converted them.
+ *
+ */
+public final class XmlUtil {
+
+  private XmlUtil() {
+  }
+
+  /**
+   * Decodes the given XML text.  An element decodes to a pair of its tag and
+   * its contents, and the pairs for the attributes and child elements of an
+   * element are sorted by name.  See Web.XMLTextDecode for the details.
+   *
+   * @param xml the XML text
+   * @return a list of pairs, one for each distinct top-level tag
+   * @throws JSONException if the text is not well-formed
+   */
+  public static YailList getYailListFromXml(String xml) throws JSONException {
+    Element top = new Element();
+    XMLTokener x = new XMLTokener(xml);
+    while (x.more() && x.skipPast("<")) {
+      parse(x, top, null);
+    }
+    return top.toYailList();
+  }
+
+  /*
+   * The contents of an element, like the JSONObject used by XML.toJSONObject.
+   * Repeated names accumulate their values in a list, and the pairs are
+   * sorted by name as JsonUtil sorts the keys of a JSON object.
+   */
+  private static class Element {
+    private final Map<String, Object> values = new TreeMap<String, Object>();
+
+    void accumulate(String name, Object value) {
+      Object current = values.get(name);
+      if (current == null) {
+        values.put(name, value);
+      } else if (current instanceof Accumulation) {
+        ((Accumulation) current).add(value);
+      } else {
+        Accumulation accumulation = new Accumulation();
+        accumulation.add(current);
+        accumulation.add(value);
+        values.put(name, accumulation);
+      }
+    }
+
+    int length() {
+      return values.size();
+    }
+
+    Object opt(String name) {
+      return values.get(name);
+    }
+
+    YailList toYailList() throws JSONException {
+      List<Object> pairs = new ArrayList<Object>(values.size());
+      for (Map.Entry<String, Object> entry : values.entrySet()) {
+        pairs.add(YailList.makeList(new Object[] { entry.getKey(), convert(entry.getValue()) }));
+      }
+      return YailList.makeList(pairs);
+    }
+  }
+
+  // The values of a name that is repeated in an element.
+  private static class Accumulation extends ArrayList<Object> {
+  }
+
+  /*
+   * Parses the markup that follows a '<', adding what it finds to the given
+   * context.  This follows XML.parse, returning true if the markup is the
+   * close tag for the given name.
+   */
+  private static boolean parse(XMLTokener x, Element context, String name)
+      throws JSONException {
+    Object token = x.nextToken();
+
+    if (token == XML.BANG) {
+      // <!-- ... -->, <! ... >, or <![CDATA[ ... ]]>
+      char c = x.next();
+      if (c == '-') {
+        if (x.next() == '-') {
+          x.skipPast("-->");
+          return false;
+        }
+        x.back();
+      } else if (c == '[') {
+        token = x.nextToken();
+        if ("CDATA".equals(token) && x.next() == '[') {
+          String string = x.nextCDATA();
+          if (string.length() > 0) {
+            context.accumulate("content", string);
+          }
+          return false;
+        }
+        throw x.syntaxError("Expected 'CDATA['");
+      }
+      int depth = 1;
+      do {
+        token = x.nextMeta();
+        if (token == null) {
+          throw x.syntaxError("Missing '>' after '<!'.");
+        } else if (token == XML.LT) {
+          depth++;
+        } else if (token == XML.GT) {
+          depth--;
+        }
+      } while (depth > 0);
+      return false;
+
+    } else if (token == XML.QUEST) {
+      // <? ... ?>
+      x.skipPast("?>");
+      return false;
+
+    } else if (token == XML.SLASH) {
+      // Close tag </ ... >
+      token = x.nextToken();
+      if (name == null) {
+        throw x.syntaxError("Mismatched close tag " + token);
+      }
+      if (!token.equals(name)) {
+        throw x.syntaxError("Mismatched " + name + " and " + token);
+      }
+      if (x.nextToken() != XML.GT) {
+        throw x.syntaxError("Misshaped close tag");
+      }
+      return true;
+
+    } else if (token instanceof Character) {
+      throw x.syntaxError("Misshaped tag");
+    }
+
+    // Open tag < ... >
+    String tagName = (String) token;
+    Element element = new Element();
+    token = null;
+    for (;;) {
+      if (token == null) {
+        token = x.nextToken();
+      }
+
+      if (token instanceof String) {
+        // Attribute, with or without a value
+        String string = (String) token;
+        token = x.nextToken();
+        if (token == XML.EQ) {
+          token = x.nextToken();
+          if (!(token instanceof String)) {
+            throw x.syntaxError("Missing value");
+          }
+          element.accumulate(string, XML.stringToValue((String) token));
+          token = null;
+        } else {
+          element.accumulate(string, "");
+        }
+
+      } else if (token == XML.SLASH) {
+        // Empty tag < ... />
+        if (x.nextToken() != XML.GT) {
+          throw x.syntaxError("Misshaped tag");
+        }
+        if (element.length() > 0) {
+          context.accumulate(tagName, element.toYailList());
+        } else {
+          context.accumulate(tagName, "");
+        }
+        return false;
+
+      } else if (token == XML.GT) {
+        // Content, up to the close tag
+        for (;;) {
+          token = x.nextContent();
+          if (token == null) {
+            throw x.syntaxError("Unclosed tag " + tagName);
+          } else if (token instanceof String) {
+            String string = (String) token;
+            if (string.length() > 0) {
+              element.accumulate("content", XML.stringToValue(string));
+            }
+          } else if (token == XML.LT) {
+            if (parse(x, element, tagName)) {
+              if (element.length() == 0) {
+                context.accumulate(tagName, "");
+              } else if (element.length() == 1 && element.opt("content") != null) {
+                context.accumulate(tagName, element.opt("content"));
+              } else {
+                context.accumulate(tagName, element.toYailList());
+              }
+              return false;
+            }
+          }
+        }
+
+      } else {
+        throw x.syntaxError("Misshaped tag");
+      }
+    }
+  }
+
+  /*
+   * Converts a value to what it would have become after being written as
+   * JSON text by JSONObject and decoded by JsonUtil.
+   */
+  private static Object convert(Object value) throws JSONException {
+    if (value instanceof YailList) {
+      return value;
+    } else if (value instanceof Accumulation) {
+      List<Object> items = new ArrayList<Object>(((Accumulation) value).size());
+      for (Object item : (Accumulation) value) {
+        items.add(convert(item));
+      }
+      return YailList.makeList(items);
+    } else if (value instanceof Double) {
+      double d = (Double) value;
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        throw new JSONException("Forbidden numeric value: " + value);
+      }
+      // JSONObject writes a double with an integral value without its fraction, so it is read
+      // back as an integer.
+      if (d == (long) d) {
+        value = (long) d;
+      }
+    } else if (value == JSONObject.NULL) {
+      value = null;
+    }
+    return JsonUtil.sanitizeJsonItem(JsonUtil.convertJsonItem(value));
+  }
+}
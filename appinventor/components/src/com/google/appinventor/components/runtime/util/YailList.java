@@ -38,6 +38,14 @@ public class YailList extends Pair {
   // legitimate Yail data types.  See the definition of sanitization
   // in runtime.scm.
 
+  // Hash indexes for lookups by the runtime, maintained by YailListIndex.
+  transient YailListIndex itemIndex;
+  transient YailListIndex pairIndex;
+  // The number of times the runtime has changed this list, and whether it is
+  // a pair in an indexed list of pairs.
+  transient int modCount;
+  transient boolean inPairIndex;
+
   /**
    * Create an empty YailList.
    */
@@ -102,10 +110,11 @@ public class YailList extends Pair {
    */
 
   public String[] toStringArray() {
-    int size = this.size();
-    String[] objects = new String[size];
-    for (int i = 1; i <= size; i++) {
-      objects[i - 1] = YailListElementToString(get(i));
+    // get(i) walks the list from the start, so convert it to an array first.
+    Object[] elements = toArray();
+    String[] objects = new String[elements.length];
+    for (int i = 0; i < elements.length; i++) {
+      objects[i] = YailListElementToString(elements[i]);
     }
     return objects;
   }
@@ -0,0 +1,172 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index over the items of a YailList, used by the YAIL runtime to
+ * make repeated "index in list", "is in list?" and "look up in pairs"
+ * operations on a large list take constant rather than linear time.
+ *
+ * The runtime computes the hash key of each item so that any two items that
+ * are yail-equal? have equal keys (for example, 1, 1.0 and "1" all have the
+ * key 1.0).  Different items may also have equal keys, so the index only
+ * gives the position of the first item with a given key, and the runtime
+ * checks the items from there on with yail-equal?.
+ *
+ * An index is built only for a list that is searched at least twice without
+ * being changed in between, since a list that changes between lookups would
+ * have to be indexed again each time.  The runtime calls {@link
+ * #changed(Object)} whenever it changes a list, which counts the change on
+ * that list alone, so changing one list leaves the indexes of other lists
+ * alone.  The one exception is a list that is a pair in a list of pairs
+ * that has been indexed: changing it may change the pair's first item, so
+ * it invalidates the indexes of all lists of pairs.
+ *
+ */
+public final class YailListIndex {
+
+  // Incremented whenever a pair in an indexed list of pairs is changed.
+  private static int pairGeneration = 0;
+
+  // Whether this index finds pairs by their first items.
+  private final boolean pairs;
+
+  // The list's modification count, and for pair indexes the pair generation,
+  // at the last lookup that used this index.
+  private int lookupModCount = -1;
+  private int lookupPairGeneration = -1;
+  private final Map<Object, Integer> positions = new HashMap<Object, Integer>();
+  private final List<Object> items = new ArrayList<Object>();
+  private boolean built = false;
+  private boolean usable = true;
+
+  private YailListIndex(boolean pairs) {
+    this.pairs = pairs;
+  }
+
+  /**
+   * Invalidates the indexes that depend on the given list.  This must be
+   * called after any list is changed.  Anything other than a YailList is
+   * ignored, since only YailLists are indexed or can be pairs in an indexed
+   * list of pairs.
+   */
+  public static void changed(Object list) {
+    if (list instanceof YailList) {
+      YailList yailList = (YailList) list;
+      yailList.modCount++;
+      if (yailList.inPairIndex) {
+        pairGeneration++;
+      }
+    }
+  }
+
+  /**
+   * Returns the index used to find items in the given list, or null if the
+   * list should be searched linearly.  If the returned index has not been
+   * built yet, the caller must fill it in with {@link #add(Object, Object)}
+   * and then call {@link #setBuilt()}.
+   */
+  public static YailListIndex forItems(YailList list) {
+    if (list.itemIndex == null) {
+      list.itemIndex = new YailListIndex(false);
+    }
+    return list.itemIndex.lookup(list);
+  }
+
+  /**
+   * Returns the index used to find the pairs in the given list of pairs by
+   * their first item, or null if the list should be searched linearly.  If
+   * the returned index has not been built yet, the caller must fill it in
+   * with {@link #add(Object, Object)} and then call {@link #setBuilt()}.
+   */
+  public static YailListIndex forPairs(YailList list) {
+    if (list.pairIndex == null) {
+      list.pairIndex = new YailListIndex(true);
+    }
+    return list.pairIndex.lookup(list);
+  }
+
+  // Records a lookup, returning this index if it should be used for it.  The
+  // first lookup after a change discards the index and is done linearly, so
+  // the index is only built if a second lookup happens before the list
+  // changes.
+  private YailListIndex lookup(YailList list) {
+    int currentPairGeneration = pairs ? pairGeneration : 0;
+    if (lookupModCount != list.modCount || lookupPairGeneration != currentPairGeneration) {
+      lookupModCount = list.modCount;
+      lookupPairGeneration = currentPairGeneration;
+      positions.clear();
+      items.clear();
+      built = false;
+      usable = true;
+      return null;
+    }
+    return usable ? this : null;
+  }
+
+  public boolean isBuilt() {
+    return built;
+  }
+
+  /**
+   * Marks this index as complete, after all of the list's items have been
+   * added.
+   */
+  public void setBuilt() {
+    built = true;
+  }
+
+  /**
+   * Gives up on indexing this list, e.g., because it is not a well-formed
+   * list of pairs.  The list will be searched linearly until it changes.
+   */
+  public void setUnusable() {
+    usable = false;
+    positions.clear();
+    items.clear();
+  }
+
+  /**
+   * Adds the next item of the list.
+   *
+   * @param key the item's hash key
+   * @param item the item
+   */
+  public void add(Object key, Object item) {
+    if (pairs && item instanceof YailList) {
+      ((YailList) item).inPairIndex = true;
+    }
+    items.add(item);
+    if (!positions.containsKey(key)) {
+      positions.put(key, items.size());
+    }
+  }
+
+  /**
+   * Returns the 1-based position of the first item with the given hash key,
+   * or 0 if there is none.
+   */
+  public int positionOf(Object key) {
+    Integer position = positions.get(key);
+    return position == null ? 0 : position;
+  }
+
+  /**
+   * Returns the item at the given 1-based position.
+   */
+  public Object get(int position) {
+    return items.get(position - 1);
+  }
+
+  public int size() {
+    return items.size();
+  }
+}
@@ -0,0 +1,159 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A collection of items kept in increasing order of a floating-point layer
+ * (Z) value, such as the sprites on a Canvas.  Items with equal layers are
+ * ordered by when they were last added or moved, so an item whose layer
+ * changes goes behind nothing it did not go behind before.
+ *
+ * Adding, removing, and moving an item take O(log n) time.  Iteration runs
+ * over an array-backed snapshot that is rebuilt lazily after a change, so
+ * the frequent passes made for drawing and hit-testing don't walk the tree,
+ * and the collection may be modified while it is being iterated.
+ *
+ * @param <T> the type of item
+ */
+public final class ZOrderedList<T> implements Iterable<T> {
+
+  private static final class Key implements Comparable<Key> {
+    final double z;
+    final long sequence;
+
+    Key(double z, long sequence) {
+      this.z = z;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Key other) {
+      int result = Double.compare(z, other.z);
+      if (result == 0) {
+        result = sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+      }
+      return result;
+    }
+  }
+
+  private final TreeMap<Key, T> ordered = new TreeMap<Key, T>();
+  private final Map<T, Key> keys = new HashMap<T, Key>();
+  private long nextSequence = 0;
+
+  // Items in increasing layer order, or null if it needs to be rebuilt.
+  private List<T> snapshot;
+
+  /**
+   * Adds an item in front of all items with the same or a lower layer.  If the
+   * item is already present, it is moved instead.
+   *
+   * @param item the item to add
+   * @param z the item's layer
+   */
+  public void add(T item, double z) {
+    remove(item);
+    Key key = new Key(z, nextSequence++);
+    ordered.put(key, item);
+    keys.put(item, key);
+    snapshot = null;
+  }
+
+  /**
+   * Removes an item.
+   *
+   * @param item the item to remove
+   * @return {@code true} if the item was present, {@code false} otherwise
+   */
+  public boolean remove(T item) {
+    Key key = keys.remove(item);
+    if (key == null) {
+      return false;
+    }
+    ordered.remove(key);
+    snapshot = null;
+    return true;
+  }
+
+  /**
+   * Moves an item to a new layer, placing it in front of all items with the
+   * same or a lower layer.
+   *
+   * @param item the item to move
+   * @param z the item's new layer
+   */
+  public void move(T item, double z) {
+    add(item, z);
+  }
+
+  public boolean contains(T item) {
+    return keys.containsKey(item);
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  public boolean isEmpty() {
+    return keys.isEmpty();
+  }
+
+  /**
+   * Returns the items from back to front.  The returned list is unmodifiable
+   * and is not affected by later changes to this collection.
+   */
+  public List<T> asList() {
+    if (snapshot == null) {
+      snapshot = Collections.unmodifiableList(new ArrayList<T>(ordered.values()));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Iterates over the items from back to front, i.e., in drawing order.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return asList().iterator();
+  }
+
+  /**
+   * Returns the items from front to back, i.e., in hit-testing order.
+   */
+  public Iterable<T> frontToBack() {
+    final List<T> items = asList();
+    return new Iterable<T>() {
+      @Override
+      public Iterator<T> iterator() {
+        final ListIterator<T> it = items.listIterator(items.size());
+        return new Iterator<T>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasPrevious();
+          }
+
+          @Override
+          public T next() {
+            return it.previous();
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+}
@@ -13,10 +13,14 @@ import junit.framework.TestCase;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Tests BluetoothConnectionBase.java.
@@ -28,19 +32,41 @@ public class BluetoothConnectionBaseTest extends TestCase {
   private ByteArrayOutputStream outputStream;
   private int recordedErrorNumber;
   private PipedOutputStream pipe;
+  private Queue<Runnable> uiThreadQueue;
+  private List<Integer> dataReceivedCounts;
 
   @Override
   protected void setUp() throws Exception {
 
     outputStream = new ByteArrayOutputStream();
     pipe = new PipedOutputStream();
+    uiThreadQueue = new ConcurrentLinkedQueue<Runnable>();
+    dataReceivedCounts = new ArrayList<Integer>();
 
-    connection = new BluetoothConnectionBase(outputStream, new PipedInputStream(pipe)) {
+    connection = newConnection(new PipedInputStream(pipe));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    // Stop the background thread, if there is one.
+    connection.ReceiveInBackground(false);
+  }
+
+  private BluetoothConnectionBase newConnection(InputStream inputStream) {
+    return new BluetoothConnectionBase(outputStream, inputStream) {
       @Override
       protected void bluetoothError(String functionName, int errorNumber, Object... messageArgs) {
         recordedErrorNumber = errorNumber;
       }
       @Override
+      protected void runOnUiThread(Runnable runnable) {
+        uiThreadQueue.add(runnable);
+      }
+      @Override
+      public void DataReceived(int messageCount) {
+        dataReceivedCounts.add(messageCount);
+      }
+      @Override
       protected void write(String functionName, byte b) {
         super.write(functionName, b);
         try {
@@ -454,4 +480,217 @@ public class BluetoothConnectionBaseTest extends TestCase {
     assertEquals((byte) 0xFF, bytes[i++]);  // 0xFF
     assertEquals((byte) 0xAB, bytes[i++]);  // 0xab
   }
+
+  private void waitForBytes(int count) throws InterruptedException {
+    for (int i = 0; i < 500 && connection.BytesAvailableToReceive() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, connection.BytesAvailableToReceive());
+  }
+
+  // The event is posted just after the bytes are put in the buffer, so wait for it too.
+  private void waitForEvent() throws InterruptedException {
+    for (int i = 0; i < 500 && uiThreadQueue.isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+    assertFalse(uiThreadQueue.isEmpty());
+  }
+
+  private void runUiThreadQueue() {
+    Runnable runnable;
+    while ((runnable = uiThreadQueue.poll()) != null) {
+      runnable.run();
+    }
+  }
+
+  public void testReceiveInBackground() throws Exception {
+    connection.ReceiveInBackground(true);
+
+    // Nothing is returned until all of the requested bytes have been received.
+    connection.SendText("Hel");
+    waitForBytes(3);
+    assertEquals("", connection.ReceiveText(-1));
+    assertEquals(0, connection.ReceiveSigned4ByteNumber());
+    assertEquals(0, connection.ReceiveSignedBytes(6).size());
+    assertEquals(3, connection.BytesAvailableToReceive());
+    connection.SendText("lo");
+    waitForBytes(5);
+    runUiThreadQueue();
+    assertTrue(dataReceivedCounts.isEmpty());
+
+    connection.Send1ByteNumber("0"); // send delimiter
+    waitForBytes(6);
+    waitForEvent();
+    runUiThreadQueue();
+    assertEquals(1, dataReceivedCounts.size());
+    assertEquals(1, dataReceivedCounts.get(0).intValue());
+    assertEquals("Hello", connection.ReceiveText(-1));
+    assertEquals(0, connection.BytesAvailableToReceive());
+
+    connection.Send2ByteNumber("-2");
+    waitForBytes(2);
+    assertEquals(-2, connection.ReceiveSigned2ByteNumber());
+
+    assertEquals(0, recordedErrorNumber);
+  }
+
+  public void testDataReceivedCoalesced() throws Exception {
+    connection.ReceiveInBackground(true);
+    connection.SendText("a\u0000b\u0000c\u0000");
+    waitForBytes(6);
+    waitForEvent();
+    // The messages arrived before the first event was handled, so one event reports them all.
+    assertTrue(uiThreadQueue.size() <= 1);
+    runUiThreadQueue();
+    assertEquals(1, dataReceivedCounts.size());
+    assertEquals(3, dataReceivedCounts.get(0).intValue());
+    assertEquals("a", connection.ReceiveText(-1));
+    assertEquals("b", connection.ReceiveText(-1));
+    assertEquals("c", connection.ReceiveText(-1));
+    assertEquals("", connection.ReceiveText(-1));
+    assertEquals(0, recordedErrorNumber);
+  }
+
+  public void testReadWaitsInBackground() throws Exception {
+    connection.ReceiveInBackground(true);
+    // Internal reads, such as the replies read by the LEGO components, still wait for all of the
+    // bytes to arrive.
+    final byte[][] result = new byte[1][];
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        result[0] = connection.read("read", 3);
+      }
+    };
+    reader.start();
+    connection.Send1ByteNumber("1");
+    Thread.sleep(50);
+    connection.Send2ByteNumber("0x0302");
+    reader.join(5000);
+    assertNotNull(result[0]);
+    assertEquals(3, result[0].length);
+    assertEquals(1, result[0][0]);
+    assertEquals(2, result[0][1]);
+    assertEquals(3, result[0][2]);
+    assertEquals(0, recordedErrorNumber);
+  }
+
+  /**
+   * A stream of the bytes fed to it, which unlike a pipe can be read by any
+   * thread.
+   */
+  private static class FeedInputStream extends InputStream {
+    private final Queue<Byte> bytes = new ConcurrentLinkedQueue<Byte>();
+
+    void feed(byte[] data) {
+      for (byte b : data) {
+        bytes.add(b);
+      }
+    }
+
+    @Override
+    public int available() {
+      return bytes.size();
+    }
+
+    @Override
+    public int read() throws IOException {
+      Byte b;
+      while ((b = bytes.poll()) == null) {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          throw new IOException(e.getMessage());
+        }
+      }
+      return b & 0xFF;
+    }
+  }
+
+  private static int receiverThreadCount() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("BluetoothReceiver")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public void testLargeRequestIsReadThrough() throws Exception {
+    final FeedInputStream in = new FeedInputStream();
+    connection = newConnection(in);
+    connection.ReceiveInBackground(true);
+    // More than the background buffer holds, sent while it is being received.
+    Thread sender = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 10; i++) {
+          byte[] chunk = new byte[10000];
+          for (int j = 0; j < chunk.length; j++) {
+            chunk[j] = (byte) (i * chunk.length + j);
+          }
+          in.feed(chunk);
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    };
+    sender.start();
+    List<Integer> received = connection.ReceiveUnsignedBytes(100000);
+    sender.join();
+    assertEquals(100000, received.size());
+    for (int i = 0; i < received.size(); i++) {
+      assertEquals(i & 0xFF, received.get(i).intValue());
+    }
+    assertEquals(0, recordedErrorNumber);
+  }
+
+  public void testLongMessageIsReadThrough() throws Exception {
+    FeedInputStream in = new FeedInputStream();
+    connection = newConnection(in);
+    connection.ReceiveInBackground(true);
+    byte[] message = new byte[70001];
+    Arrays.fill(message, (byte) 'a');
+    message[70000] = 0;  // the delimiter
+    in.feed(message);
+    // The buffer fills up without a complete message.
+    waitForBytes(0x10000);
+    String text = connection.ReceiveText(-1);
+    assertEquals(70000, text.length());
+    assertEquals(0, connection.BytesAvailableToReceive());
+    assertEquals(0, recordedErrorNumber);
+  }
+
+  public void testReadTimesOutInBackground() throws Exception {
+    FeedInputStream in = new FeedInputStream();
+    connection = newConnection(in);
+    connection.ReceiveInBackground(true);
+    in.feed(new byte[] { 1 });
+    waitForBytes(1);
+    // The other two bytes never arrive.
+    assertEquals(0, connection.read("read", 3).length);
+    assertEquals(ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ, recordedErrorNumber);
+    // The byte that did arrive is left to be read.
+    assertEquals(1, connection.BytesAvailableToReceive());
+  }
+
+  public void testStopReceivingInBackgroundKeepsUnreadBytes() throws Exception {
+    FeedInputStream in = new FeedInputStream();
+    connection = newConnection(in);
+    int threads = receiverThreadCount();
+    connection.ReceiveInBackground(true);
+    in.feed("abc".getBytes());
+    waitForBytes(3);
+    connection.ReceiveInBackground(false);
+    // The thread has ended, and the bytes it received are read before the rest of the stream.
+    assertEquals(threads, receiverThreadCount());
+    in.feed("de".getBytes());
+    assertEquals("abc", connection.ReceiveText(3));
+    assertEquals("de", connection.ReceiveText(2));
+    assertEquals(0, recordedErrorNumber);
+  }
 }
@@ -0,0 +1,120 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the Canvas component.
+ */
+public class CanvasTest extends RobolectricTestBase {
+  private static final double DELTA = .0001;  // for floating-point comparisons
+
+  private Canvas canvas;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    canvas = new Canvas(getForm());
+  }
+
+  private Ball createBall(double x, double y, float speed, int interval) {
+    Ball ball = new Ball(canvas);
+    ball.MoveTo(x, y);
+    ball.Speed(speed);
+    ball.Interval(interval);
+    ball.Initialize();
+    return ball;
+  }
+
+  @Test
+  public void testGameLoopDefault() {
+    assertFalse(canvas.GameLoop());
+  }
+
+  @Test
+  public void testGameLoopPreservesIntervalAndSpeed() {
+    Ball ball = createBall(0, 0, 5, 50);
+    canvas.GameLoop(true);
+    canvas.advanceFrame(16);
+    assertEquals(0, ball.X(), DELTA);
+    canvas.advanceFrame(40);   // 56 ms accumulated, one move
+    assertEquals(5, ball.X(), DELTA);
+    canvas.advanceFrame(100);  // 106 ms accumulated, two moves
+    assertEquals(15, ball.X(), DELTA);
+    assertEquals(0, ball.Y(), DELTA);
+  }
+
+  @Test
+  public void testGameLoopStopsWhilePaused() {
+    canvas.GameLoop(true);
+    assertTrue(canvas.isFrameLoopRunning());
+    canvas.onPause();
+    assertFalse(canvas.isFrameLoopRunning());
+    canvas.onResume();
+    assertTrue(canvas.isFrameLoopRunning());
+  }
+
+  @Test
+  public void testGameLoopNotStartedOnResumeWhenOff() {
+    canvas.onPause();
+    canvas.onResume();
+    assertFalse(canvas.isFrameLoopRunning());
+  }
+
+  @Test
+  public void testGameLoopSkipsDisabledSprites() {
+    Ball ball = createBall(0, 0, 5, 10);
+    ball.Enabled(false);
+    canvas.GameLoop(true);
+    canvas.advanceFrame(100);
+    assertEquals(0, ball.X(), DELTA);
+    assertFalse(ball.Enabled());
+  }
+
+  @Test
+  public void testGameLoopDetectsCollisions() {
+    Ball mover = createBall(0, 0, 10, 10);
+    Ball target = createBall(15, 0, 0, 10);
+    canvas.GameLoop(true);
+    assertFalse(mover.CollidingWith(target));
+    canvas.advanceFrame(10);
+    assertTrue(mover.CollidingWith(target));
+    assertTrue(target.CollidingWith(mover));
+  }
+
+  @Test
+  public void testSpriteDirtyBoundsCoverOldAndNewPositions() {
+    Ball ball = createBall(10, 10, 0, 100);
+    float density = getForm().deviceDensity();
+    Rect bounds = new Rect();
+    ball.getDrawBounds(bounds);
+    ball.setDrawnBounds(bounds);  // as if the canvas had been drawn
+    ball.MoveTo(50, 10);
+    Rect dirty = new Rect();
+    ball.getDirtyBounds(dirty);
+    assertTrue(dirty.contains(bounds));
+    ball.getDrawBounds(bounds);
+    assertTrue(dirty.contains(bounds));
+    assertEquals((int) Math.floor(10 * density) - 1, dirty.left);
+    assertEquals((int) Math.ceil(60 * density) + 1, dirty.right);
+  }
+
+  @Test
+  public void testInvisibleSpriteHasNoDrawBounds() {
+    Ball ball = createBall(10, 10, 0, 100);
+    ball.Visible(false);
+    Rect bounds = new Rect();
+    ball.getDrawBounds(bounds);
+    assertTrue(bounds.isEmpty());
+  }
+}
@@ -0,0 +1,50 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import org.junit.Test;
+import org.robolectric.Robolectric;
+
+/**
+ * Benchmarks for starting a screen with 500 components in a hidden
+ * arrangement, run by the AndroidRuntimeBenchmarks target.  The time in the
+ * test report to start the screen that puts the components off should be a
+ * small part of the time to start the one that creates them all, as the
+ * runtime did before.  DeferredComponentsTest checks that the components
+ * are created when the arrangement is shown.
+ *
+ */
+public class DeferredComponentsBenchmark extends RobolectricTestBase {
+  private static final int RUNS = 5;
+
+  /*
+   * Creates all of the components in the hidden arrangement when the screen starts.
+   */
+  public static class EagerScreen extends Form {
+    @Override
+    protected void $define() {
+      VerticalArrangement arrangement = new VerticalArrangement(this);
+      arrangement.Visible(false);
+      DeferredComponentsTest.createComponents(arrangement);
+    }
+  }
+
+  private static void startScreen(Class<? extends Form> screen) {
+    for (int i = 0; i < RUNS; i++) {
+      Robolectric.buildActivity(screen).create();
+    }
+  }
+
+  @Test
+  public void testStartScreenCreatingHiddenComponents() {
+    startScreen(EagerScreen.class);
+  }
+
+  @Test
+  public void testStartScreenDeferringHiddenComponents() {
+    startScreen(DeferredComponentsTest.DeferredScreen.class);
+  }
+}
@@ -0,0 +1,150 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appinventor.components.runtime.util.DeferredComponent;
+import org.junit.Test;
+import org.robolectric.Robolectric;
+
+/**
+ * Tests putting off creating the components inside arrangements that are
+ * hidden when the screen starts.
+ *
+ */
+public class DeferredComponentsTest extends RobolectricTestBase {
+  static final int COMPONENTS = 500;
+
+  static int componentsCreated;
+
+  private static class CountingRunnable implements Runnable {
+    int runs = 0;
+
+    @Override
+    public void run() {
+      runs++;
+    }
+  }
+
+  @Test
+  public void testShowingArrangementCreatesComponents() {
+    VerticalArrangement arrangement = new VerticalArrangement(getForm());
+    arrangement.Visible(false);
+    CountingRunnable create = new CountingRunnable();
+    getForm().$deferComponents(arrangement, create);
+
+    arrangement.Visible(false);
+    assertEquals(0, create.runs);
+    arrangement.Visible(true);
+    assertEquals(1, create.runs);
+    assertTrue(arrangement.Visible());
+
+    // The components are only created once.
+    arrangement.Visible(false);
+    arrangement.Visible(true);
+    assertEquals(1, create.runs);
+  }
+
+  @Test
+  public void testLookingUpComponentCreatesComponents() {
+    final TableArrangement arrangement = new TableArrangement(getForm());
+    arrangement.Visible(false);
+    CountingRunnable create = new CountingRunnable();
+    getForm().$deferComponents(arrangement, create);
+
+    Runnable createInArrangement = new Runnable() {
+      @Override
+      public void run() {
+        getForm().$createDeferredComponents(arrangement);
+      }
+    };
+    DeferredComponent label = new DeferredComponent(createInArrangement);
+    DeferredComponent button = new DeferredComponent(createInArrangement);
+    label.create();
+    assertEquals(1, create.runs);
+    assertFalse(arrangement.Visible());
+    button.create();
+    arrangement.Visible(true);
+    assertEquals(1, create.runs);
+  }
+
+  @Test
+  public void testOtherArrangementsAreUnaffected() {
+    HorizontalArrangement hidden = new HorizontalArrangement(getForm());
+    HorizontalArrangement other = new HorizontalArrangement(getForm());
+    CountingRunnable create = new CountingRunnable();
+    getForm().$deferComponents(hidden, create);
+    other.Visible(true);
+    getForm().$createDeferredComponents(other);
+    assertEquals(0, create.runs);
+  }
+
+  @Test
+  public void testCanDefer() {
+    assertTrue(DeferredComponent.canDefer(Label.class.getName()));
+    assertTrue(DeferredComponent.canDefer(VerticalArrangement.class.getName()));
+    // Components whose initialization must happen when the screen starts
+    assertFalse(DeferredComponent.canDefer(ImageSprite.class.getName()));
+    assertFalse(DeferredComponent.canDefer(Texting.class.getName()));
+    assertFalse(DeferredComponent.canDefer("com.example.NoSuchComponent"));
+  }
+
+  @Test
+  public void testCanHoldDeferred() {
+    assertTrue(DeferredComponent.canHoldDeferred(VerticalArrangement.class.getName()));
+    assertTrue(DeferredComponent.canHoldDeferred(HorizontalScrollArrangement.class.getName()));
+    assertTrue(DeferredComponent.canHoldDeferred(TableArrangement.class.getName()));
+    assertFalse(DeferredComponent.canHoldDeferred(Canvas.class.getName()));
+    assertFalse(DeferredComponent.canHoldDeferred(Label.class.getName()));
+    assertFalse(DeferredComponent.canHoldDeferred("com.example.NoSuchComponent"));
+  }
+
+  @Test
+  public void testShowingArrangementOfScreenCreatesComponents() {
+    componentsCreated = 0;
+    DeferredScreen screen = Robolectric.buildActivity(DeferredScreen.class).create().get();
+    assertEquals(0, componentsCreated);
+    screen.arrangement.Visible(true);
+    assertEquals(COMPONENTS, componentsCreated);
+  }
+
+  /*
+   * Puts off creating the components in the hidden arrangement until it is shown.
+   */
+  public static class DeferredScreen extends Form {
+    VerticalArrangement arrangement;
+
+    @Override
+    protected void $define() {
+      arrangement = new VerticalArrangement(this);
+      arrangement.Visible(false);
+      $deferComponents(arrangement, new Runnable() {
+        @Override
+        public void run() {
+          createComponents(arrangement);
+        }
+      });
+    }
+  }
+
+  static void createComponents(VerticalArrangement arrangement) {
+    for (int i = 0; i < COMPONENTS; i++) {
+      if (i % 2 == 0) {
+        Label label = new Label(arrangement);
+        label.Text("Hello");
+        label.FontSize(18);
+      } else {
+        Button button = new Button(arrangement);
+        button.Text("Hello");
+        button.FontSize(18);
+      }
+      componentsCreated++;
+    }
+  }
+}
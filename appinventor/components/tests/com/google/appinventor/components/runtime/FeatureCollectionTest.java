@@ -5,6 +5,7 @@
 
 package com.google.appinventor.components.runtime;
 
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
 import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
 import com.google.appinventor.components.runtime.shadows.org.osmdroid.views.ShadowMapView;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
@@ -14,7 +15,14 @@ import com.google.appinventor.components.runtime.util.YailList;
 import org.junit.Before;
 import org.junit.Test;
 import org.robolectric.shadow.api.Shadow;
-
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.Scheduler.IdleState;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Collections;
 
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
@@ -202,6 +210,85 @@ public class FeatureCollectionTest extends MapTestBase {
     assertEquals(getMap(), collection.getMap());
   }
 
+  @Test
+  public void testAddFeaturesFromURLInOneBatch() throws IOException {
+    String url = writeGeoJSON(3, true);
+    // Hold the UI thread while the features are read, so they are handled in one batch.
+    ShadowLooper.getShadowMainLooper().getScheduler().setIdleState(IdleState.PAUSED);
+    collection.AddFeaturesFromURL(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    assertEquals(0, collection.Features().size());
+    runAllEvents();
+    assertEquals(3, collection.Features().size());
+    assertEventFired(collection, "LoadProgress", url, 3);
+    assertEventFiredAny(collection, "FeaturesAdded");
+  }
+
+  @Test
+  public void testAddFeaturesFromURLAsTheyAreRead() throws IOException {
+    String url = writeGeoJSON(3, true);
+    // The UI thread is idle, so each feature is handled in a batch of its own as it is read.
+    collection.AddFeaturesFromURL(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    assertEquals(3, collection.Features().size());
+    assertEventFired(collection, "LoadProgress", url, 1);
+    assertEventFired(collection, "LoadProgress", url, 2);
+    assertEventFired(collection, "LoadProgress", url, 3);
+    assertEventFiredAny(collection, "FeaturesAdded");
+  }
+
+  @Test
+  public void testAddFeaturesFromURLCutShort() throws IOException {
+    String url = writeGeoJSON(2, false);
+    collection.AddFeaturesFromURL(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    // The features read before the error are kept.
+    assertEquals(2, collection.Features().size());
+    assertEventFired(collection, "LoadProgress", url, 2);
+    ShadowEventDispatcher.assertErrorOccurred();
+  }
+
+  @Test
+  public void testAddFeaturesFromURLWrongTypeLast() throws IOException {
+    // The features come before the type, which turns out not to be a collection.
+    String url = writeFile("{\"features\":[{\"type\":\"Feature\",\"geometry\":" +
+        "{\"type\":\"Point\",\"coordinates\":[0,0]}}],\"type\":\"Garbage\"}");
+    collection.AddFeaturesFromURL(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    assertEquals(0, collection.Features().size());
+    assertEventFiredAny(collection, "LoadError");
+  }
+
+  /*
+   * Writes a feature collection of points to a temporary file, returning its URL. If complete
+   * is false, the document stops after the last feature.
+   */
+  private static String writeGeoJSON(int count, boolean complete) throws IOException {
+    StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < count; i++) {
+      sb.append(i == 0 ? "" : ",").append("{\"type\":\"Feature\",\"geometry\":")
+          .append("{\"type\":\"Point\",\"coordinates\":[").append(i).append(",0]}}");
+    }
+    sb.append(complete ? "]}" : ",");
+    return writeFile(sb.toString());
+  }
+
+  /*
+   * Writes a document to a temporary file, returning its URL.
+   */
+  private static String writeFile(String content) throws IOException {
+    File file = File.createTempFile("features", ".geojson");
+    file.deleteOnExit();
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+    return file.toURI().toString();
+  }
+
   private void testFeatureListSetter(MapFeature feature) {
     ShadowMapView view = Shadow.extract(getMap().getView());
     view.clearWasInvalidated();
@@ -0,0 +1,236 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.FileUtil;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the File component.
+ */
+public class FileTest extends RobolectricTestBase {
+  private static final long TIMEOUT_MS = 5000;
+
+  private File file;
+  private final List<String> batches = new ArrayList<String>();
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    file = new File(getForm()) {
+      @Override
+      public void GotCsvRows(String fileName, YailList rows, boolean lastBatch) {
+        super.GotCsvRows(fileName, rows, lastBatch);
+        batches.add(rows.size() + (lastBatch ? " last" : ""));
+      }
+    };
+  }
+
+  private void writePrivateFile(String fileName, String contents) throws IOException {
+    FileOutputStream out = new FileOutputStream(new java.io.File(getForm().getFilesDir(),
+        fileName));
+    try {
+      out.write(contents.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  private String readPrivateFile(String fileName) throws IOException {
+    return new String(FileUtil.readFile(new java.io.File(getForm().getFilesDir(), fileName)
+        .getPath()), "UTF-8");
+  }
+
+  /*
+   * Waits for the files to be opened after the writes before them, then reads them and runs the
+   * events.
+   */
+  private void runReads() {
+    awaitWrites();
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+  }
+
+  private static void awaitWrites() {
+    assertTrue(File.awaitWrites(TIMEOUT_MS));
+  }
+
+  private static String table(int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; i++) {
+      sb.append(i).append(",\"row, ").append(i).append("\"\r\n");
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testReadCsvRows() throws IOException {
+    writePrivateFile("table.csv", table(5));
+    file.ReadCsvRows("table.csv", 2);
+    runReads();
+    assertEquals("[2, 2, 1 last]", batches.toString());
+    ShadowEventDispatcher.assertEventFired(file, "GotCsvRows", "table.csv",
+        YailList.makeList(new Object[] {
+            YailList.makeList(new Object[] { "4", "row, 4" })
+        }), true);
+  }
+
+  @Test
+  public void testReadCsvRowsEmptyFile() throws IOException {
+    writePrivateFile("empty.csv", "");
+    file.ReadCsvRows("empty.csv", 10);
+    runReads();
+    assertEquals("[0 last]", batches.toString());
+  }
+
+  @Test
+  public void testReadCsvRowsMissingFile() {
+    file.ReadCsvRows("missing.csv", 10);
+    runReads();
+    assertEquals(0, batches.size());
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_CANNOT_FIND_FILE);
+  }
+
+  @Test
+  public void testReadCsvRowsSyntaxError() throws IOException {
+    writePrivateFile("bad.csv", table(4) + "\"unclosed\r\n");
+    file.ReadCsvRows("bad.csv", 2);
+    runReads();
+    assertEquals("[2, 2]", batches.toString());
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_CANNOT_PARSE_CSV);
+  }
+
+  @Test
+  public void testReadCsvRowsInvalidBatchSize() {
+    file.ReadCsvRows("table.csv", 0);
+    runReads();
+    assertEquals(0, batches.size());
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_BATCH_SIZE);
+  }
+
+  @Test
+  public void testAppendIsBufferedUntilFlush() throws IOException {
+    writePrivateFile("log.txt", "");
+    for (int i = 0; i < 100; i++) {
+      file.AppendToFile("line " + i + "\n", "log.txt");
+    }
+    file.Flush();
+    awaitWrites();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      expected.append("line ").append(i).append('\n');
+    }
+    assertEquals(expected.toString(), readPrivateFile("log.txt"));
+    runAllEvents();
+    ShadowEventDispatcher.assertEventFired(file, "AfterFileSaved", "log.txt");
+  }
+
+  @Test
+  public void testFlushedOnPause() throws IOException {
+    file.AppendToFile("paused\n", "log.txt");
+    file.onPause();
+    awaitWrites();
+    assertEquals("paused\n", readPrivateFile("log.txt"));
+  }
+
+  @Test
+  public void testFlushedOnDestroy() throws IOException {
+    file.AppendToFile("destroyed\n", "log.txt");
+    file.onDestroy();
+    awaitWrites();
+    assertEquals("destroyed\n", readPrivateFile("log.txt"));
+  }
+
+  @Test
+  public void testComponentsShareWrites() throws IOException {
+    File other = new File(getForm());
+    file.AppendToFile("first\n", "shared.txt");
+    other.AppendToFile("second\n", "shared.txt");
+    file.AppendToFile("third\n", "shared.txt");
+    file.Flush();
+    awaitWrites();
+    assertEquals("first\nsecond\nthird\n", readPrivateFile("shared.txt"));
+  }
+
+  @Test
+  public void testWritesAreOrdered() throws IOException {
+    file.AppendToFile("replaced\n", "data.txt");
+    file.SaveFile("first\n", "data.txt");
+    file.AppendToFile("second\n", "data.txt");
+    file.ReadFrom("data.txt");
+    runReads();
+    // The read sees the writes made before it without an explicit flush.
+    ShadowEventDispatcher.assertEventFired(file, "GotText", "first\nsecond\n");
+    file.AppendToFile("third\n", "data.txt");
+    file.Flush();
+    awaitWrites();
+    assertEquals("first\nsecond\nthird\n", readPrivateFile("data.txt"));
+  }
+
+  @Test
+  public void testDeleteAfterAppend() {
+    file.AppendToFile("gone\n", "deleted.txt");
+    file.Delete("deleted.txt");
+    awaitWrites();
+    assertFalse(new java.io.File(getForm().getFilesDir(), "deleted.txt").exists());
+  }
+
+  @Test
+  public void testReadLines() throws IOException {
+    writePrivateFile("lines.txt", "one\ntwo\r\nthree\nfour");
+    file.ReadLines("lines.txt", 2, 2);
+    runReads();
+    ShadowEventDispatcher.assertEventFired(file, "GotLines", "lines.txt", 2,
+        YailList.makeList(Arrays.asList("two", "three")));
+  }
+
+  @Test
+  public void testReadLinesPastEnd() throws IOException {
+    writePrivateFile("lines.txt", "one\ntwo\n");
+    file.ReadLines("lines.txt", 2, 5);
+    runReads();
+    ShadowEventDispatcher.assertEventFired(file, "GotLines", "lines.txt", 2,
+        YailList.makeList(Arrays.asList("two")));
+  }
+
+  @Test
+  public void testReadLinesSeesAppendedLines() {
+    file.AppendToFile("first\n", "log.txt");
+    file.AppendToFile("second\n", "log.txt");
+    file.ReadLines("log.txt", 1, 10);
+    runReads();
+    ShadowEventDispatcher.assertEventFired(file, "GotLines", "log.txt", 1,
+        YailList.makeList(Arrays.asList("first", "second")));
+  }
+
+  @Test
+  public void testReadLinesInvalidRange() {
+    file.ReadLines("lines.txt", 0, 5);
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_LINE_RANGE);
+  }
+
+  @Test
+  public void testReadLinesMissingFile() {
+    file.ReadLines("missing.txt", 1, 5);
+    runReads();
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_CANNOT_FIND_FILE);
+  }
+}
@@ -0,0 +1,87 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.graphics.Color;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.style.AbsoluteSizeSpan;
+import android.text.style.ForegroundColorSpan;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ListAdapter;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for showing large lists in a ListView, run by the
+ * AndroidRuntimeBenchmarks target.  Setting the Elements and showing the
+ * first screen of rows only formats the rows shown, so its time in the
+ * test report should stay about the same from 10,000 to 100,000 items, and
+ * be well under the time taken to style every item as ListView did before.
+ * ListViewTest checks the rows themselves.
+ *
+ */
+public class ListViewBenchmark extends RobolectricTestBase {
+  private static final int ROWS_ON_SCREEN = 20;
+
+  private ListView listView;
+  private android.widget.ListView view;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    listView = new ListView(getForm());
+    view = (android.widget.ListView) ((ViewGroup) listView.getView()).getChildAt(1);
+  }
+
+  /*
+   * Sets the Elements to the list and gets the views for the first screen of rows.
+   */
+  private void showElements(YailList items) {
+    listView.Elements(items);
+    ListAdapter adapter = view.getAdapter();
+    View row = null;
+    for (int i = 0; i < ROWS_ON_SCREEN; i++) {
+      row = adapter.getView(i, row, view);
+    }
+  }
+
+  @Test
+  public void testElements10k() {
+    showElements(ListViewTest.makeItems(10000));
+  }
+
+  @Test
+  public void testElements100k() {
+    showElements(ListViewTest.makeItems(100000));
+  }
+
+  /*
+   * The way the Elements were converted before the adapter formatted rows as they are shown: a
+   * styled string for every item, and a copy of all of them for filtering.
+   */
+  @Test
+  public void testEagerFormatting10k() {
+    YailList items = ListViewTest.makeItems(10000);
+    int size = items.size();
+    Spannable[] objects = new Spannable[size];
+    for (int i = 1; i <= size; i++) {
+      Spannable chars = new SpannableString(YailList.YailListElementToString(items.get(i)));
+      chars.setSpan(new ForegroundColorSpan(Color.WHITE), 0, chars.length(), 0);
+      chars.setSpan(new AbsoluteSizeSpan(22), 0, chars.length(), 0);
+      objects[i - 1] = chars;
+    }
+    List<Spannable> copy = new ArrayList<Spannable>(size);
+    for (Spannable item : objects) {
+      copy.add(item);
+    }
+  }
+}
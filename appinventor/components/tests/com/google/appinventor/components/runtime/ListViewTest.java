@@ -0,0 +1,118 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Color;
+import android.view.ViewGroup;
+import android.widget.Filter;
+import android.widget.ListAdapter;
+import android.widget.TextView;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for the ListView component.
+ */
+public class ListViewTest extends RobolectricTestBase {
+  private ListView listView;
+  private android.widget.ListView view;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    listView = new ListView(getForm());
+    view = (android.widget.ListView) ((ViewGroup) listView.getView()).getChildAt(1);
+  }
+
+  static YailList makeItems(int count) {
+    List<Object> items = new ArrayList<Object>(count);
+    for (int i = 1; i <= count; i++) {
+      items.add("Item number " + i);
+    }
+    return YailList.makeList(items);
+  }
+
+  private void filter(String text) throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    ((android.widget.Filterable) view.getAdapter()).getFilter().filter(text,
+        new Filter.FilterListener() {
+          @Override
+          public void onFilterComplete(int count) {
+            done.countDown();
+          }
+        });
+    // The filter runs on a background thread and posts its results to the main thread.
+    for (int i = 0; i < 500 && done.getCount() > 0; i++) {
+      Thread.sleep(10);
+      ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+    assertEquals(0, done.getCount());
+  }
+
+  @Test
+  public void testElements() {
+    listView.ElementsFromString("Cheese,Fruit,Bacon");
+    ListAdapter adapter = view.getAdapter();
+    assertEquals(3, adapter.getCount());
+    assertEquals("Fruit", adapter.getItem(1));
+
+    listView.Elements(YailList.makeList(new Object[] { "one", 2, 3.5 }));
+    assertSame(adapter, view.getAdapter());
+    assertEquals(3, adapter.getCount());
+    assertEquals("2", adapter.getItem(1));
+    assertEquals("3.5", adapter.getItem(2));
+  }
+
+  @Test
+  public void testRowsShareStyleAndAreRecycled() {
+    listView.Elements(makeItems(100));
+    listView.TextColor(Color.RED);
+    ListAdapter adapter = view.getAdapter();
+    TextView row = (TextView) adapter.getView(0, null, view);
+    assertEquals("Item number 1", row.getText().toString());
+    assertEquals(Color.RED, row.getCurrentTextColor());
+
+    TextView recycled = (TextView) adapter.getView(57, row, view);
+    assertSame(row, recycled);
+    assertEquals("Item number 58", recycled.getText().toString());
+  }
+
+  @Test
+  public void testFilterAndSelect() throws InterruptedException {
+    listView.Elements(YailList.makeList(new Object[] { "Apple pie", "Banana", "Cherry apple" }));
+    filter("app");
+    ListAdapter adapter = view.getAdapter();
+    assertEquals(2, adapter.getCount());
+    assertEquals("Cherry apple", adapter.getItem(1));
+
+    listView.onItemClick(view, null, 1, adapter.getItemId(1));
+    assertEquals(3, listView.SelectionIndex());
+    assertEquals("Cherry apple", listView.Selection());
+    ShadowEventDispatcher.assertEventFired(listView, "AfterPicking");
+
+    filter("");
+    assertEquals(3, adapter.getCount());
+  }
+
+  @Test
+  public void testLargeList() {
+    listView.Elements(makeItems(100000));
+    ListAdapter adapter = view.getAdapter();
+    assertEquals(100000, adapter.getCount());
+    TextView row = (TextView) adapter.getView(99999, null, view);
+    assertEquals("Item number 100000", row.getText().toString());
+  }
+}
@@ -0,0 +1,60 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for finding the 10 features nearest a point among 10,000
+ * markers, run by the AndroidRuntimeBenchmarks target: with the map's
+ * NearestFeatures, which searches its spatial index, and by measuring the
+ * distance to every marker and sorting, as a scan of the features would.
+ * MapFeatureIndexTest checks that both give the same features.
+ *
+ */
+public class MapFeatureIndexBenchmark extends MapTestBase {
+  private static final int FEATURES = 10000;
+  private static final int QUERIES = 200;
+
+  private final Random random = new Random(2);
+  private final List<Marker> markers = new ArrayList<Marker>();
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    for (int i = 0; i < FEATURES; i++) {
+      Marker marker = new Marker(getMap());
+      marker.SetLocation(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10);
+      markers.add(marker);
+    }
+  }
+
+  @Test
+  public void testNearestFeaturesIndexed() {
+    for (int i = 0; i < QUERIES; i++) {
+      getMap().NearestFeatures(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, 10);
+    }
+  }
+
+  @Test
+  public void testNearestFeaturesScanning() {
+    for (int i = 0; i < QUERIES; i++) {
+      double lat = random.nextDouble() * 20 - 10;
+      double lon = random.nextDouble() * 20 - 10;
+      List<Double> distances = new ArrayList<Double>();
+      for (Marker marker : markers) {
+        distances.add(marker.DistanceToPoint(lat, lon));
+      }
+      Collections.sort(distances);
+    }
+  }
+}
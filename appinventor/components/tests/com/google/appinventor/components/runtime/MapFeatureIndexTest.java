@@ -0,0 +1,170 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.util.GeometryUtil;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.appinventor.components.runtime.util.GeometryUtil.ONE_DEG_IN_METERS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the FeaturesInBoundingBox and NearestFeatures methods of map feature containers, which
+ * use a spatial index of the features, by comparing them with a scan of every feature.
+ *
+ */
+public class MapFeatureIndexTest extends MapTestBase {
+  @Test
+  public void testFeaturesInBoundingBox() {
+    Marker inside = new Marker(getMap());
+    inside.SetLocation(0.5, 0.5);
+    Marker outside = new Marker(getMap());
+    outside.SetLocation(2.0, 2.0);
+    LineString crossing = makeLineString(getMap(), -2.0, 0.5, 2.0, 0.5);
+    Polygon away = makePolygon(getMap(), -2.0, -3.0, -3.0, -2.0);
+    Circle overlapping = makeCircle(getMap(), 0.5, 1.5, ONE_DEG_IN_METERS);
+    makeCircle(getMap(), 0.5, 1.5, ONE_DEG_IN_METERS / 4);  // Does not reach the box
+    Set<Object> result = asSet(getMap().FeaturesInBoundingBox(1.0, 0.0, 0.0, 1.0));
+    assertTrue(result.contains(inside));
+    assertTrue(result.contains(crossing));
+    assertTrue(result.contains(overlapping));
+    assertEquals(3, result.size());
+  }
+
+  @Test
+  public void testNearestFeatures() {
+    Marker near = new Marker(getMap());
+    near.SetLocation(0.1, 0.0);
+    Marker far = new Marker(getMap());
+    far.SetLocation(3.0, 0.0);
+    Polygon middle = makePolygon(getMap(), 1.5, -1.0, 1.0, 1.0);
+    YailList result = getMap().NearestFeatures(0.0, 0.0, 2);
+    assertEquals(2, result.size());
+    assertEquals(near, result.get(1));
+    assertEquals(middle, result.get(2));
+    assertEquals(3, getMap().NearestFeatures(0.0, 0.0, 10).size());
+  }
+
+  @Test
+  public void testIndexFollowsMovedFeature() {
+    Marker marker = new Marker(getMap());
+    marker.SetLocation(10.0, 10.0);
+    assertEquals(1, getMap().FeaturesInBoundingBox(11.0, 9.0, 9.0, 11.0).size());
+    marker.SetLocation(-10.0, -10.0);
+    assertEquals(0, getMap().FeaturesInBoundingBox(11.0, 9.0, 9.0, 11.0).size());
+    assertEquals(marker, getMap().FeaturesInBoundingBox(-9.0, -11.0, -11.0, -9.0).get(1));
+  }
+
+  @Test
+  public void testIndexFollowsResizedCircle() {
+    Circle circle = makeCircle(getMap(), 0.0, 0.0, 1.0);
+    assertEquals(0, getMap().FeaturesInBoundingBox(3.0, 1.0, 1.0, 3.0).size());
+    circle.Radius(2 * ONE_DEG_IN_METERS);
+    assertEquals(1, getMap().FeaturesInBoundingBox(3.0, 1.0, 1.0, 3.0).size());
+  }
+
+  @Test
+  public void testIndexFollowsRemovedFeatures() {
+    Marker marker1 = new Marker(getMap());
+    Marker marker2 = new Marker(getMap());
+    marker2.SetLocation(0.5, 0.5);
+    getMap().removeFeature(marker1);
+    assertEquals(1, getMap().FeaturesInBoundingBox(1.0, -1.0, -1.0, 1.0).size());
+    getMap().Features(YailList.makeList(Collections.singletonList(marker1)));
+    assertEquals(marker1, getMap().NearestFeatures(0.5, 0.5, 5).get(1));
+    assertEquals(1, getMap().NearestFeatures(0.5, 0.5, 5).size());
+  }
+
+  @Test
+  public void testFeatureCollectionIndex() {
+    FeatureCollection collection = new FeatureCollection(getMap());
+    Marker inCollection = new Marker(collection);
+    inCollection.SetLocation(1.0, 1.0);
+    Marker onMap = new Marker(getMap());
+    onMap.SetLocation(1.0, 1.0);
+    assertEquals(inCollection, collection.NearestFeatures(1.0, 1.0, 5).get(1));
+    assertEquals(1, collection.NearestFeatures(1.0, 1.0, 5).size());
+    assertEquals(2, getMap().NearestFeatures(1.0, 1.0, 5).size());
+    // Moving a feature in a collection updates the map's index as well as the collection's.
+    inCollection.SetLocation(5.0, 5.0);
+    assertEquals(1, collection.FeaturesInBoundingBox(6.0, 4.0, 4.0, 6.0).size());
+    assertEquals(1, getMap().FeaturesInBoundingBox(6.0, 4.0, 4.0, 6.0).size());
+  }
+
+  @Test
+  public void testMatchesScanOfAllFeatures() {
+    Random random = new Random(1);
+    List<MapFeature> features = new ArrayList<MapFeature>();
+    for (int i = 0; i < 500; i++) {
+      double lat = random.nextDouble() * 20 - 10;
+      double lon = random.nextDouble() * 20 - 10;
+      switch (i % 3) {
+        case 0:
+          Marker marker = new Marker(getMap());
+          marker.SetLocation(lat, lon);
+          features.add(marker);
+          break;
+        case 1:
+          features.add(makeCircle(getMap(), lat, lon, random.nextDouble() * 50000));
+          break;
+        default:
+          features.add(makeRectangle(getMap(), lat + 0.1, lon - 0.1, lat - 0.1, lon + 0.1));
+      }
+    }
+    for (int i = 0; i < 50; i++) {
+      double lat = random.nextDouble() * 20 - 10;
+      double lon = random.nextDouble() * 20 - 10;
+      List<Double> expected = new ArrayList<Double>();
+      for (MapFeature feature : features) {
+        expected.add(distance(feature, lat, lon));
+      }
+      Collections.sort(expected);
+      YailList nearest = getMap().NearestFeatures(lat, lon, 10);
+      assertEquals(10, nearest.size());
+      for (int j = 0; j < 10; j++) {
+        assertEquals(expected.get(j), distance((MapFeature) nearest.get(j + 1), lat, lon), M_TOL);
+      }
+
+      Geometry box = GeometryUtil.createGeometry(lat + 1, lon + 1, lat - 1, lon - 1);
+      Set<Object> inBox = new HashSet<Object>();
+      for (MapFeature feature : features) {
+        if (feature instanceof Circle) {
+          if (ONE_DEG_IN_METERS * box.distance(feature.getGeometry())
+              <= ((Circle) feature).Radius()) {
+            inBox.add(feature);
+          }
+        } else if (box.intersects(feature.getGeometry())) {
+          inBox.add(feature);
+        }
+      }
+      assertEquals(inBox, asSet(getMap().FeaturesInBoundingBox(lat + 1, lon - 1, lat - 1,
+          lon + 1)));
+    }
+  }
+
+  private static double distance(MapFeature feature, double latitude, double longitude) {
+    return ((MapFeatureBase) feature).DistanceToPoint(latitude, longitude, false);
+  }
+
+  private static Set<Object> asSet(YailList list) {
+    Set<Object> result = new HashSet<Object>();
+    for (int i = 1; i <= list.size(); i++) {
+      result.add(list.get(i));
+    }
+    return result;
+  }
+}
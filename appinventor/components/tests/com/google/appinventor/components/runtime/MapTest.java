@@ -9,6 +9,8 @@ import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
 import com.google.appinventor.components.runtime.shadows.org.osmdroid.views.ShadowMapView;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.GeometryUtil;
+import com.google.appinventor.components.runtime.util.MapFactory.MapMarker;
+import com.google.appinventor.components.runtime.util.TileDownloader;
 import com.google.appinventor.components.runtime.util.YailList;
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -16,8 +18,13 @@ import org.junit.Test;
 import org.osmdroid.util.GeoPoint;
 import org.robolectric.shadow.api.Shadow;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertErrorOccurred;
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
@@ -336,4 +343,129 @@ public class MapTest extends MapTestBase {
     assertEquals(0, map.Features().size());
     assertEquals(1, map.getController().getOverlayCount());
   }
+
+  @Test
+  public void testOffScreenFeaturesNotGivenToMap() {
+    Marker near = new Marker(map);
+    near.SetLocation(map.Latitude(), map.Longitude());
+    Marker far = new Marker(map);
+    far.SetLocation(-map.Latitude(), -map.Longitude());
+    assertTrue(map.getController().isFeatureVisible(far));
+    // The touch overlay and the marker in view
+    assertEquals(2, map.getController().getOverlayCount());
+    far.SetLocation(map.Latitude(), map.Longitude());
+    assertEquals(3, map.getController().getOverlayCount());
+    far.Visible(false);
+    assertEquals(2, map.getController().getOverlayCount());
+  }
+
+  @Test
+  public void testClusterMarkers() {
+    assertFalse(map.ClusterMarkers());
+    for (int i = 0; i < 3; i++) {
+      Marker marker = new Marker(map);
+      marker.SetLocation(map.Latitude() + i * 1.0E-4, map.Longitude());
+    }
+    assertEquals(4, map.getController().getOverlayCount());
+    map.ClusterMarkers(true);
+    assertTrue(map.ClusterMarkers());
+    assertEquals(2, map.getController().getOverlayCount());
+    map.ClusterMarkers(false);
+    assertEquals(4, map.getController().getOverlayCount());
+  }
+
+  @Test
+  public void testOnClusterClick() {
+    Marker marker1 = new Marker(map);
+    Marker marker2 = new Marker(map);
+    map.onClusterClick(Arrays.<MapMarker>asList(marker1, marker2), 1.0, 2.0);
+    runAllEvents();
+    assertEventFired(map, "ClusterClick", YailList.makeList(new Object[] { marker1, marker2 }),
+        1.0, 2.0);
+  }
+
+  @Test
+  public void testInvalidationCoalesced() {
+    Marker marker = new Marker(map);
+    runAllEvents();
+    ShadowMapView view = Shadow.extract(map.getView());
+    int invalidateCalls = view.invalidateCalls;
+    for (int i = 0; i < 10; i++) {
+      marker.SetLocation(map.Latitude() + i * 1.0E-4, map.Longitude());
+    }
+    assertEquals(invalidateCalls, view.invalidateCalls);
+    runAllEvents();
+    assertEquals(invalidateCalls + 1, view.invalidateCalls);
+  }
+
+  @Test
+  public void testCacheProperties() {
+    assertFalse(map.CacheOnly());
+    map.CacheOnly(true);
+    assertTrue(map.CacheOnly());
+    map.CacheSize(10);
+    assertEquals(10, map.CacheSize());
+    map.CacheSize(0);
+    assertEquals(1, map.CacheSize());
+  }
+
+  @Test
+  public void testCacheSizeAboveDefaultKeptAcrossRestart() throws Exception {
+    // 60 megabytes of tiles left by an earlier run, more than the default size of 50
+    File tiles = new File(getForm().getCacheDir(), "osmdroid/tiles");
+    for (int i = 0; i < 60; i++) {
+      RandomAccessFile tile = new RandomAccessFile(new File(tiles, "Mapnik_10_0_" + i + ".tile"),
+          "rw");
+      tile.setLength(8 + 1024 * 1024);  // The expiry, then the tile
+      tile.close();
+    }
+    Map restarted = new Map(getForm());
+    restarted.CacheSize(100);
+    assertEquals(100, restarted.CacheSize());
+    // Shrinking the cache shows which tiles it kept.
+    restarted.CacheSize(55);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (tiles.list().length > 55 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(55, tiles.list().length);
+  }
+
+  @Test
+  public void testDownloadRegion() {
+    final List<String> urls = Collections.synchronizedList(new ArrayList<String>());
+    map.getController().setTileFetcher(new TileDownloader.TileFetcher() {
+      @Override
+      public TileDownloader.Tile fetchTile(String url) {
+        urls.add(url);
+        return new TileDownloader.Tile(new byte[] { 1 }, Long.MAX_VALUE);
+      }
+    });
+    int tiles = TileDownloader.countTiles(42.37, -71.10, 42.35, -71.08, 12, 14);
+    map.DownloadRegion(42.37, -71.10, 42.35, -71.08, 12, 14);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    assertEquals(tiles, urls.size());
+    assertEventFired(map, "DownloadProgress", tiles, tiles);
+    assertEventFired(map, "RegionDownloaded", tiles, 0);
+
+    // The tiles are now cached, so downloading the region again fetches nothing.
+    map.DownloadRegion(42.37, -71.10, 42.35, -71.08, 12, 14);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    assertEquals(tiles, urls.size());
+    assertEventFired(map, "RegionDownloaded", 0, 0);
+  }
+
+  @Test
+  public void testDownloadRegionTooManyTiles() {
+    map.DownloadRegion(85, -180, -85, 180, 0, 18);
+    assertErrorOccurred(ErrorMessages.ERROR_TOO_MANY_TILES);
+  }
+
+  @Test
+  public void testDownloadRegionInvalidZoom() {
+    map.DownloadRegion(1, -1, -1, 1, 5, 4);
+    assertErrorOccurred(ErrorMessages.ERROR_INVALID_ZOOM_RANGE);
+  }
 }
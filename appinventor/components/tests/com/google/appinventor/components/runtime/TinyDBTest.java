@@ -0,0 +1,102 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.google.appinventor.components.runtime.errors.YailRuntimeError;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the TinyDB component.
+ */
+public class TinyDBTest extends RobolectricTestBase {
+  private TinyDB tinyDB;
+  private SharedPreferences preferences;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    tinyDB = new TinyDB(getForm());
+    tinyDB.ClearAll();
+    tinyDB.Flush();
+    preferences = getForm().getSharedPreferences("TinyDB1", Context.MODE_PRIVATE);
+  }
+
+  @Test
+  public void testStoredValuesAreReadBeforeFlush() {
+    tinyDB.StoreValue("name", "Ada");
+    tinyDB.StoreValue("scores", YailList.makeList(new Object[] { 1, 2, 3 }));
+    assertEquals("Ada", tinyDB.GetValue("name", ""));
+    assertEquals(Arrays.asList(1, 2, 3), tinyDB.GetValue("scores", ""));
+    assertEquals(Arrays.asList("name", "scores"), tinyDB.GetTags());
+
+    tinyDB.Flush();
+    assertEquals("\"Ada\"", preferences.getString("name", null));
+    assertEquals("[1,2,3]", preferences.getString("scores", null));
+  }
+
+  @Test
+  public void testClearTagAndClearAll() {
+    tinyDB.StoreValue("a", 1);
+    tinyDB.StoreValue("b", 2);
+    tinyDB.Flush();
+
+    tinyDB.ClearTag("a");
+    assertEquals("gone", tinyDB.GetValue("a", "gone"));
+    assertEquals(Arrays.asList("b"), tinyDB.GetTags());
+
+    tinyDB.ClearAll();
+    tinyDB.StoreValue("c", 3);
+    assertEquals("gone", tinyDB.GetValue("b", "gone"));
+    assertEquals(Arrays.asList("c"), tinyDB.GetTags());
+
+    tinyDB.Flush();
+    assertFalse(preferences.contains("a"));
+    assertFalse(preferences.contains("b"));
+    assertTrue(preferences.contains("c"));
+  }
+
+  @Test
+  public void testPauseFlushes() {
+    tinyDB.StoreValue("level", 7);
+    getForm().onPause();
+    assertEquals("7", preferences.getString("level", null));
+  }
+
+  @Test
+  public void testStoreAndGetValues() {
+    tinyDB.StoreValues(YailList.makeList(new Object[] { "x", "y" }),
+        YailList.makeList(new Object[] { "one", 2 }));
+    List<?> values = (List<?>) tinyDB.GetValues(YailList.makeList(new Object[] { "x", "z", "y" }),
+        "none");
+    assertEquals(Arrays.asList("one", "none", 2), values);
+  }
+
+  @Test(expected = YailRuntimeError.class)
+  public void testStoreValuesNeedsAValueForEachTag() {
+    tinyDB.StoreValues(YailList.makeList(new Object[] { "x", "y" }),
+        YailList.makeList(new Object[] { "one" }));
+  }
+
+  @Test
+  public void testDecodedValueFollowsChanges() {
+    tinyDB.StoreValue("list", YailList.makeList(new Object[] { "a" }));
+    tinyDB.Flush();
+    assertEquals(Arrays.asList("a"), tinyDB.GetValue("list", ""));
+    tinyDB.StoreValue("list", YailList.makeList(new Object[] { "b" }));
+    assertEquals(Arrays.asList("b"), tinyDB.GetValue("list", ""));
+  }
+}
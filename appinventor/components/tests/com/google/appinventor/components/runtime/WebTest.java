@@ -9,6 +9,8 @@ package com.google.appinventor.components.runtime;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.YailList;
 
+import gnu.math.IntNum;
+
 import junit.framework.TestCase;
 
 import java.util.ArrayList;
@@ -55,32 +57,32 @@ public class WebTest extends TestCase {
 
     // A JSON encoded object.
     Object decodedObject = web.decodeJsonText("{\"YaVersion\":\"41\",\"Source\":\"Form\"}");
-    assertTrue(decodedObject instanceof ArrayList);
-    ArrayList outerList = (ArrayList) decodedObject;
+    assertTrue(decodedObject instanceof YailList);
+    YailList outerList = (YailList) decodedObject;
     assertEquals(2, outerList.size());
     // The items are sorted by the field name, so Source comes before YaVersion
-    Object item0 = outerList.get(0);
-    assertTrue(item0 instanceof ArrayList);
-    ArrayList firstNameValuePair = (ArrayList) item0;
+    Object item0 = outerList.getObject(0);
+    assertTrue(item0 instanceof YailList);
+    YailList firstNameValuePair = (YailList) item0;
     assertEquals(2, firstNameValuePair.size());
-    assertEquals("Source", firstNameValuePair.get(0));
-    assertEquals("Form", firstNameValuePair.get(1));
-    Object item1 = outerList.get(1);
-    assertTrue(item1 instanceof ArrayList);
-    ArrayList secondNameValuePair = (ArrayList) item1;
+    assertEquals("Source", firstNameValuePair.getObject(0));
+    assertEquals("Form", firstNameValuePair.getObject(1));
+    Object item1 = outerList.getObject(1);
+    assertTrue(item1 instanceof YailList);
+    YailList secondNameValuePair = (YailList) item1;
     assertEquals(2, secondNameValuePair.size());
-    assertEquals("YaVersion", secondNameValuePair.get(0));
-    assertEquals("41", secondNameValuePair.get(1));
+    assertEquals("YaVersion", secondNameValuePair.getObject(0));
+    assertEquals("41", secondNameValuePair.getObject(1));
 
     // A JSON encoded array.
     Object decodedArray = web.decodeJsonText("[\"Billy\",\"Sam\",\"Bobby\",\"Fred\"]");
-    assertTrue(decodedArray instanceof ArrayList);
-    ArrayList list = (ArrayList) decodedArray;
+    assertTrue(decodedArray instanceof YailList);
+    YailList list = (YailList) decodedArray;
     assertEquals(4, list.size());
-    assertEquals("Billy", list.get(0));
-    assertEquals("Sam", list.get(1));
-    assertEquals("Bobby", list.get(2));
-    assertEquals("Fred", list.get(3));
+    assertEquals("Billy", list.getObject(0));
+    assertEquals("Sam", list.getObject(1));
+    assertEquals("Bobby", list.getObject(2));
+    assertEquals("Fred", list.getObject(3));
 
     try {
       web.decodeJsonText("{\"not\":\"valid\":\"json\"}");
@@ -93,16 +95,16 @@ public class WebTest extends TestCase {
   public void testDecodeXMLText() throws Exception {
     Object decodedObject = web.XMLTextDecode("<foo>123</foo>");
     // should be the list of one element, which is a pair of "foo" and 123
-    assertTrue(decodedObject instanceof ArrayList);
-    ArrayList outerList = (ArrayList) decodedObject;
+    assertTrue(decodedObject instanceof YailList);
+    YailList outerList = (YailList) decodedObject;
     assertEquals(1, outerList.size());
-    Object pairObject = outerList.get(0);
-    assertTrue(pairObject instanceof ArrayList);
-    ArrayList pair = (ArrayList) pairObject;
+    Object pairObject = outerList.getObject(0);
+    assertTrue(pairObject instanceof YailList);
+    YailList pair = (YailList) pairObject;
     assertEquals(2, pair.size());
-    assertEquals("foo", pair.get(0));
-    // check why this isn't actually the string 123
-    assertEquals(123, pair.get(1));
+    assertEquals("foo", pair.getObject(0));
+    // XML.stringToValue decodes the text 123 as a number
+    assertEquals(IntNum.make(123), pair.getObject(1));
   }
 
   public void testDecodeXMLText2() throws Exception {
@@ -112,28 +114,28 @@ public class WebTest extends TestCase {
     // "foo" and the string "1 2 3".
     // The order of these is bar before foo because it's alphabetical by according to
     // the tags.
-    assertTrue(decodedObject instanceof ArrayList);
-    ArrayList outerList = (ArrayList) decodedObject;
+    assertTrue(decodedObject instanceof YailList);
+    YailList outerList = (YailList) decodedObject;
     assertEquals(1, outerList.size());
-    Object pairObject = outerList.get(0);
-    assertTrue(pairObject instanceof ArrayList);
-    ArrayList pair = (ArrayList) pairObject;
+    Object pairObject = outerList.getObject(0);
+    assertTrue(pairObject instanceof YailList);
+    YailList pair = (YailList) pairObject;
     assertEquals(2, pair.size());
-    assertEquals("a", pair.get(0));
-    Object XObject = pair.get(1);
-    assertTrue(XObject instanceof ArrayList);
-    ArrayList X = (ArrayList) XObject;
+    assertEquals("a", pair.getObject(0));
+    Object XObject = pair.getObject(1);
+    assertTrue(XObject instanceof YailList);
+    YailList X = (YailList) XObject;
     assertEquals(2, X.size());
-    Object firstPairObject = X.get(0);
-    Object secondPairObject = X.get(1);
-    assertTrue(firstPairObject instanceof ArrayList);
-    assertTrue(secondPairObject instanceof ArrayList);
-    ArrayList firstPair = (ArrayList) firstPairObject;
-    ArrayList secondPair = (ArrayList) secondPairObject;
-    assertEquals("bar", firstPair.get(0));
-    assertEquals(456, firstPair.get(1));
-    assertEquals("foo", secondPair.get(0));
-    assertEquals("1 2 3", secondPair.get(1));
+    Object firstPairObject = X.getObject(0);
+    Object secondPairObject = X.getObject(1);
+    assertTrue(firstPairObject instanceof YailList);
+    assertTrue(secondPairObject instanceof YailList);
+    YailList firstPair = (YailList) firstPairObject;
+    YailList secondPair = (YailList) secondPairObject;
+    assertEquals("bar", firstPair.getObject(0));
+    assertEquals(IntNum.make(456), firstPair.getObject(1));
+    assertEquals("foo", secondPair.getObject(0));
+    assertEquals("1 2 3", secondPair.getObject(1));
   }
 
   public void testbuildRequestData() throws Exception {
@@ -0,0 +1,204 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.MediaUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Tests for uploading files with the Web component's PostFile and PutFile.
+ */
+public class WebUploadTest extends RobolectricTestBase {
+  // Larger than Web's buffer, so the file is copied in more than one block.
+  private static final int FILE_LENGTH = 20000;
+
+  private Web web;
+  private byte[] data;
+
+  /**
+   * Records the streaming mode and the data written to it, advancing the
+   * clock by the interval between UploadProgress events on every write.
+   */
+  private static class FakeConnection extends HttpURLConnection {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    int fixedLength = -1;
+    boolean chunked = false;
+    int writes = 0;
+    boolean closed = false;
+
+    FakeConnection() throws IOException {
+      super(new URL("http://localhost/upload"));
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+      fixedLength = contentLength;
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunkLength) {
+      chunked = true;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new OutputStream() {
+        @Override
+        public void write(int b) {
+          write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          sent.write(b, off, len);
+          writes++;
+          SystemClock.sleep(Web.UPLOAD_PROGRESS_INTERVAL);
+        }
+
+        @Override
+        public void close() {
+          closed = true;
+        }
+      };
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    web = new Web(getForm());
+    data = new byte[FILE_LENGTH];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+  }
+
+  private java.io.File writeTempFile(byte[] contents) throws IOException {
+    java.io.File file = java.io.File.createTempFile("upload", ".bin");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(contents);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testUploadWithKnownLengthUsesFixedLengthMode() throws IOException {
+    FakeConnection connection = new FakeConnection();
+    web.writeRequestFile(connection, new ByteArrayInputStream(data), FILE_LENGTH);
+    assertEquals(FILE_LENGTH, connection.fixedLength);
+    assertFalse(connection.chunked);
+    assertTrue(connection.getDoOutput());
+    assertArrayEquals(data, connection.sent.toByteArray());
+    assertTrue(connection.closed);
+  }
+
+  @Test
+  public void testUploadWithUnknownLengthIsChunked() throws IOException {
+    FakeConnection connection = new FakeConnection();
+    web.writeRequestFile(connection, new ByteArrayInputStream(data), -1);
+    assertTrue(connection.chunked);
+    assertEquals(-1, connection.fixedLength);
+    assertArrayEquals(data, connection.sent.toByteArray());
+  }
+
+  @Test
+  public void testUploadIsCopiedInBlocks() throws IOException {
+    FakeConnection connection = new FakeConnection();
+    web.writeRequestFile(connection, new ByteArrayInputStream(data), FILE_LENGTH);
+    // Three blocks rather than a write per byte.
+    assertEquals(3, connection.writes);
+  }
+
+  @Test
+  public void testUploadClosesTheFile() throws IOException {
+    final boolean[] closed = { false };
+    InputStream in = new ByteArrayInputStream(data) {
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+        super.close();
+      }
+    };
+    web.writeRequestFile(new FakeConnection(), in, FILE_LENGTH);
+    assertTrue(closed[0]);
+  }
+
+  @Test
+  public void testUploadProgress() throws IOException {
+    web.writeRequestFile(new FakeConnection(), new ByteArrayInputStream(data), FILE_LENGTH);
+    // The clock advances by the interval with every block, so each block is reported.
+    ShadowEventDispatcher.assertEventFired(web, "UploadProgress", 8192L, (long) FILE_LENGTH);
+    ShadowEventDispatcher.assertEventFired(web, "UploadProgress", 16384L, (long) FILE_LENGTH);
+    ShadowEventDispatcher.assertEventFired(web, "UploadProgress", (long) FILE_LENGTH,
+        (long) FILE_LENGTH);
+  }
+
+  @Test
+  public void testUploadProgressWithUnknownLength() throws IOException {
+    web.writeRequestFile(new FakeConnection(), new ByteArrayInputStream(data), -1);
+    ShadowEventDispatcher.assertEventFired(web, "UploadProgress", (long) FILE_LENGTH, -1L);
+  }
+
+  @Test
+  public void testUploadProgressOfEmptyFile() throws IOException {
+    FakeConnection connection = new FakeConnection();
+    web.writeRequestFile(connection, new ByteArrayInputStream(new byte[0]), 0);
+    assertEquals(0, connection.fixedLength);
+    ShadowEventDispatcher.assertEventFired(web, "UploadProgress", 0L, 0L);
+  }
+
+  @Test
+  public void testMediaLengthOfFileUrl() throws IOException {
+    java.io.File file = writeTempFile(data);
+    assertEquals(FILE_LENGTH, MediaUtil.getMediaLength(getForm(), file.toURI().toString()));
+  }
+
+  @Test
+  public void testMediaLengthOfMissingFile() throws IOException {
+    java.io.File file = writeTempFile(data);
+    assertTrue(file.delete());
+    assertEquals(-1, MediaUtil.getMediaLength(getForm(), file.toURI().toString()));
+  }
+
+  @Test
+  public void testMediaLengthOfUrlIsUnknown() {
+    assertEquals(-1, MediaUtil.getMediaLength(getForm(), "http://localhost/upload.bin"));
+  }
+}
@@ -0,0 +1,212 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.multidex;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests DexManifest with synthetic APKs.
+ *
+ */
+public class DexManifestTest extends TestCase {
+  private File tmpDir;
+  private File dexDir;
+  private final Random random = new Random(42);
+
+  @Override
+  protected void setUp() throws Exception {
+    tmpDir = File.createTempFile("DexManifestTest", "");
+    tmpDir.delete();
+    tmpDir.mkdirs();
+    dexDir = new File(tmpDir, "secondary-dexes");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(tmpDir);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private byte[] randomDex(int size) {
+    byte[] dex = new byte[size];
+    random.nextBytes(dex);
+    return dex;
+  }
+
+  private File makeApk(String name, byte[]... dexes) throws IOException {
+    File apk = new File(tmpDir, name);
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk));
+    try {
+      for (int i = 0; i < dexes.length; i++) {
+        out.putNextEntry(new ZipEntry(i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex"));
+        out.write(dexes[i]);
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+    return apk;
+  }
+
+  /*
+   * Makes the manifest the buildserver would for the secondary dex files.
+   */
+  private static DexManifest makeManifest(byte[]... secondaryDexes) throws IOException {
+    StringBuilder entries = new StringBuilder();
+    for (int i = 0; i < secondaryDexes.length; i++) {
+      entries.append("classes").append(i + 2).append(".dex ").append(secondaryDexes[i].length)
+          .append(' ').append(DexManifest.toHex(DexManifest.newSha256().digest(secondaryDexes[i])))
+          .append('\n');
+    }
+    String id = DexManifest.toHex(DexManifest.newSha256().digest(
+        entries.toString().getBytes("UTF-8")));
+    return read("id " + id + "\n" + entries);
+  }
+
+  private static DexManifest read(String manifest) throws IOException {
+    return DexManifest.read(new ByteArrayInputStream(manifest.getBytes("UTF-8")));
+  }
+
+  private static byte[] readClassesDex(File extracted) throws IOException {
+    ZipFile zip = new ZipFile(extracted);
+    try {
+      ZipEntry entry = zip.getEntry("classes.dex");
+      assertEquals(ZipEntry.STORED, entry.getMethod());
+      InputStream in = zip.getInputStream(entry);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int length;
+      while ((length = in.read(buffer)) != -1) {
+        out.write(buffer, 0, length);
+      }
+      in.close();
+      return out.toByteArray();
+    } finally {
+      zip.close();
+    }
+  }
+
+  public void testRead() throws Exception {
+    DexManifest manifest = read("id abc123\nclasses2.dex 10 ff00\n\nclasses3.dex 20 00ff\n");
+    assertEquals("abc123", manifest.id);
+    assertEquals(2, manifest.entries.size());
+    assertEquals("classes3.dex", manifest.entries.get(1).name);
+    assertEquals(20, manifest.entries.get(1).size);
+    assertEquals("00ff", manifest.entries.get(1).sha256);
+  }
+
+  public void testReadMalformed() throws Exception {
+    String[] manifests = { "", "classes2.dex 10 ff00\n", "id abc\nclasses2.dex ten ff00\n",
+        "id abc\nclasses2.dex 10\n" };
+    for (String manifest : manifests) {
+      try {
+        read(manifest);
+        fail("Expected an error reading " + manifest);
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testExtract() throws Exception {
+    byte[] primary = randomDex(1000);
+    byte[] second = randomDex(50000);
+    byte[] third = randomDex(70000);
+    byte[] fourth = randomDex(3);
+    File apk = makeApk("app.apk", primary, second, third, fourth);
+    DexManifest manifest = makeManifest(second, third, fourth);
+
+    assertNull(manifest.findExtracted(dexDir));
+    List<File> files = manifest.extract(apk, dexDir);
+    assertEquals(3, files.size());
+    for (File file : files) {
+      assertEquals(manifest.getVersionDir(dexDir), file.getParentFile());
+    }
+    assertTrue(Arrays.equals(second, readClassesDex(files.get(0))));
+    assertTrue(Arrays.equals(third, readClassesDex(files.get(1))));
+    assertTrue(Arrays.equals(fourth, readClassesDex(files.get(2))));
+    assertEquals(files, manifest.findExtracted(dexDir));
+    // Only the extracted files are left.
+    assertEquals(3, manifest.getVersionDir(dexDir).list().length);
+  }
+
+  public void testNewVersionReplacesOld() throws Exception {
+    byte[] primary = randomDex(1000);
+    byte[] oldDex = randomDex(20000);
+    DexManifest oldManifest = makeManifest(oldDex);
+    oldManifest.extract(makeApk("old.apk", primary, oldDex), dexDir);
+    // A file extracted before there was a manifest
+    File unversioned = new File(dexDir, "old.apk.classes2.zip");
+    assertTrue(unversioned.createNewFile());
+
+    byte[] newDex = randomDex(20000);
+    DexManifest newManifest = makeManifest(newDex);
+    assertFalse(oldManifest.id.equals(newManifest.id));
+    assertNull(newManifest.findExtracted(dexDir));
+    List<File> files = newManifest.extract(makeApk("new.apk", primary, newDex), dexDir);
+    assertTrue(Arrays.equals(newDex, readClassesDex(files.get(0))));
+    assertFalse(oldManifest.getVersionDir(dexDir).exists());
+    assertFalse(unversioned.exists());
+    assertNull(oldManifest.findExtracted(dexDir));
+  }
+
+  public void testMissingExtractionIsFound() throws Exception {
+    byte[] second = randomDex(20000);
+    DexManifest manifest = makeManifest(second);
+    List<File> files = manifest.extract(makeApk("app.apk", randomDex(10), second), dexDir);
+    assertTrue(files.get(0).delete());
+    assertNull(manifest.findExtracted(dexDir));
+  }
+
+  public void testMismatchedDex() throws Exception {
+    byte[] second = randomDex(20000);
+    DexManifest manifest = makeManifest(second);
+    byte[] corrupt = second.clone();
+    corrupt[100]++;
+    try {
+      manifest.extract(makeApk("app.apk", randomDex(10), corrupt), dexDir);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("SHA-256"));
+    }
+    assertNull(manifest.findExtracted(dexDir));
+
+    try {
+      manifest.extract(makeApk("short.apk", randomDex(10), randomDex(10)), dexDir);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      manifest.extract(makeApk("missing.apk", randomDex(10)), dexDir);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Missing classes2.dex"));
+    }
+  }
+}
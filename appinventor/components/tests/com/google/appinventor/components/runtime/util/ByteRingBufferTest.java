@@ -0,0 +1,52 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ByteRingBuffer.
+ *
+ */
+public class ByteRingBufferTest extends TestCase {
+
+  public void testWriteAndReadAroundTheEnd() {
+    ByteRingBuffer buffer = new ByteRingBuffer(8);
+    byte[] bytes = { 1, 2, 3, 4, 5, 6 };
+    assertEquals(6, buffer.write(bytes, 0, 6));
+    byte[] read = new byte[4];
+    assertEquals(4, buffer.read(read, 0, 4));
+    assertEquals(4, read[3]);
+
+    // Only 6 of these fit, and they wrap around the end of the array.
+    byte[] more = { 7, 8, 9, 10, 11, 12, 13 };
+    assertEquals(6, buffer.write(more, 0, 7));
+    assertEquals(8, buffer.available());
+    assertEquals(0, buffer.write(more, 6, 1));
+
+    assertEquals(4, buffer.indexOf((byte) 9));
+    assertEquals(-1, buffer.indexOf((byte) 13));
+    assertEquals(1, buffer.count((byte) 12));
+
+    byte[] all = new byte[10];
+    assertEquals(8, buffer.read(all, 1, 9));
+    assertEquals(0, all[0]);
+    for (int i = 0; i < 8; i++) {
+      assertEquals(i + 5, all[i + 1]);
+    }
+    assertEquals(0, buffer.available());
+    assertEquals(0, buffer.read(all, 0, 10));
+  }
+
+  public void testCapacityMustBePowerOfTwo() {
+    try {
+      new ByteRingBuffer(100);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,368 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Tests CloudDBPipeline against a stand-in for a Redis server.
+ *
+ */
+public class CloudDBPipelineTest extends TestCase {
+  // A script for the stand-in, which sets KEYS[1] to ARGV[1] and returns the value
+  private static final String SET_SCRIPT = "return redis.call('set', KEYS[1], ARGV[1]);";
+
+  private FakeRedis redis;
+  private Jedis jedis;
+  private CloudDBPipeline pipeline;
+
+  /*
+   * A stand-in for a Redis server, which understands just enough of the protocol and the
+   * commands for the tests, and logs the commands it is sent.
+   */
+  private static class FakeRedis extends Thread {
+    final ServerSocket server;
+    final Map<String, String> data = Collections.synchronizedMap(new HashMap<String, String>());
+    final Set<String> scripts = Collections.synchronizedSet(new HashSet<String>());
+    final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+    FakeRedis() throws IOException {
+      server = new ServerSocket(0);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        Socket socket = server.accept();
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+          String line = readLine(in);
+          if (line == null) {
+            return;
+          }
+          int count = Integer.parseInt(line.substring(1));
+          List<String> command = new ArrayList<String>(count);
+          for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] bytes = new byte[length + 2];
+            int read = 0;
+            while (read < bytes.length) {
+              read += in.read(bytes, read, bytes.length - read);
+            }
+            command.add(new String(bytes, 0, length, "UTF-8"));
+          }
+          log.add(command.get(0).toUpperCase());
+          out.write(reply(command).getBytes("UTF-8"));
+          out.flush();
+        }
+      } catch (IOException e) {
+        // The test is over
+      }
+    }
+
+    private String reply(List<String> command) {
+      String name = command.get(0).toUpperCase();
+      if (name.equals("GET")) {
+        return bulk(data.get(command.get(1)));
+      } else if (name.equals("MGET")) {
+        StringBuilder sb = new StringBuilder("*" + (command.size() - 1) + "\r\n");
+        for (String key : command.subList(1, command.size())) {
+          sb.append(bulk(data.get(key)));
+        }
+        return sb.toString();
+      } else if (name.equals("DEL")) {
+        return ":" + (data.remove(command.get(1)) == null ? 0 : 1) + "\r\n";
+      } else if (name.equals("EVAL") || name.equals("EVALSHA")) {
+        String sha1 = name.equals("EVAL") ? sha1(command.get(1)) : command.get(1);
+        if (name.equals("EVAL")) {
+          scripts.add(sha1);
+        } else if (!scripts.contains(sha1)) {
+          return "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+        }
+        data.put(command.get(3), command.get(4));
+        return bulk(command.get(4));
+      }
+      return "-ERR unknown command '" + command.get(0) + "'\r\n";
+    }
+
+    private static String bulk(String value) {
+      return value == null ? "$-1\r\n" : "$" + value.length() + "\r\n" + value + "\r\n";
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int c;
+      while ((c = in.read()) != '\n') {
+        if (c == -1) {
+          return null;
+        }
+        if (c != '\r') {
+          line.write(c);
+        }
+      }
+      return line.toString("UTF-8");
+    }
+  }
+
+  private static String sha1(String script) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes("UTF-8"));
+      return String.format("%040x", new BigInteger(1, digest));
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /*
+   * A command that gets a key, recording the reply or error.
+   */
+  private static class GetCommand extends CloudDBPipeline.Command {
+    final String key;
+    Object reply;
+    JedisDataException error;
+
+    GetCommand(String key) {
+      this.key = key;
+    }
+
+    @Override
+    protected Response<?> send(Pipeline pipeline) {
+      return pipeline.get(key);
+    }
+
+    @Override
+    protected void done(Object reply) {
+      this.reply = reply;
+    }
+
+    @Override
+    protected void failed(JedisDataException e) {
+      error = e;
+    }
+  }
+
+  /*
+   * A command that sets a key with the script, combining sets of the same key.
+   */
+  private static class SetCommand extends CloudDBPipeline.ScriptCommand {
+    final String key;
+    String value;
+    int done;
+
+    SetCommand(String key, String value) {
+      this(SET_SCRIPT, key, value);
+    }
+
+    SetCommand(String script, String key, String value) {
+      super(script, sha1(script));
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    protected int keyCount() {
+      return 1;
+    }
+
+    @Override
+    protected String[] arguments() {
+      return new String[] { key, value };
+    }
+
+    @Override
+    protected void done(Object reply) {
+      done++;
+    }
+
+    @Override
+    protected void failed(JedisDataException e) {
+      fail(e.getMessage());
+    }
+
+    @Override
+    protected boolean merge(CloudDBPipeline.Command next) {
+      if (next instanceof SetCommand && ((SetCommand) next).key.equals(key)) {
+        value = ((SetCommand) next).value;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    redis = new FakeRedis();
+    redis.start();
+    jedis = new Jedis("localhost", redis.server.getLocalPort());
+    pipeline = new CloudDBPipeline();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    jedis.close();
+    redis.server.close();
+  }
+
+  public void testQueuedCommandsShareOneRoundTrip() {
+    for (int i = 0; i < 50; i++) {
+      redis.data.put("tag" + i, "value" + i);
+    }
+    List<GetCommand> gets = new ArrayList<GetCommand>();
+    for (int i = 0; i < 50; i++) {
+      GetCommand get = new GetCommand("tag" + i);
+      gets.add(get);
+      // Only the first command needs a task to be started.
+      assertEquals(i == 0, pipeline.add(get));
+    }
+    assertTrue(pipeline.execute(jedis));
+    assertFalse(pipeline.execute(jedis));
+    assertEquals(1, pipeline.getRoundTrips());
+    assertEquals(50, pipeline.getCommandCount());
+    for (int i = 0; i < 50; i++) {
+      assertEquals("value" + i, gets.get(i).reply);
+    }
+    CloudDBPipeline.Stats stats = pipeline.getStats();
+    assertEquals(1, stats.roundTrips);
+    assertEquals(50, stats.commands);
+    assertTrue(stats.averageLatency > 0);
+    assertEquals(stats.averageLatency, stats.maxLatency, 1e-9);
+
+    // Once the task has stopped, the next command needs a new one.
+    assertTrue(pipeline.add(new GetCommand("tag0")));
+  }
+
+  public void testErrorsGoToTheirCommands() {
+    redis.data.put("a", "1");
+    GetCommand before = new GetCommand("a");
+    GetCommand bad = new GetCommand("b") {
+      @Override
+      protected Response<?> send(Pipeline pipeline) {
+        return pipeline.hkeys(key);
+      }
+    };
+    GetCommand after = new GetCommand("c");
+    pipeline.add(before);
+    pipeline.add(bad);
+    pipeline.add(after);
+    assertTrue(pipeline.execute(jedis));
+    assertEquals("1", before.reply);
+    assertNotNull(bad.error);
+    assertNull(after.reply);
+    assertNull(after.error);
+  }
+
+  public void testScriptsAndMerging() {
+    SetCommand first = new SetCommand("x", "1");
+    pipeline.add(first);
+    pipeline.add(new SetCommand("x", "2"));
+    pipeline.add(new SetCommand("y", "3"));
+    pipeline.execute(jedis);
+    assertEquals(1, first.done);
+    assertEquals("2", redis.data.get("x"));
+    assertEquals("3", redis.data.get("y"));
+    assertEquals(2, pipeline.getCommandCount());
+    // The script is evaluated the first time, then called by its SHA1.
+    assertEquals("EVAL", redis.log.get(0));
+    assertEquals("EVALSHA", redis.log.get(1));
+
+    // The server forgets the script, so the command is sent again with EVAL.
+    redis.scripts.clear();
+    redis.log.clear();
+    SetCommand again = new SetCommand("x", "4");
+    pipeline.add(again);
+    assertTrue(pipeline.execute(jedis));
+    assertEquals(0, again.done);
+    assertTrue(pipeline.execute(jedis));
+    assertEquals(1, again.done);
+    assertFalse(pipeline.execute(jedis));
+    assertEquals("4", redis.data.get("x"));
+    assertEquals(2, redis.log.size());
+    assertEquals("EVALSHA", redis.log.get(0));
+    assertEquals("EVAL", redis.log.get(1));
+  }
+
+  public void testCommandsAfterAForgottenScriptAreSentAgain() {
+    pipeline.add(new SetCommand("x", "1"));
+    pipeline.execute(jedis);
+
+    // The server forgets the script.  The get after the set has run, but its reply mustn't be
+    // handed out until the set has been sent again.
+    redis.scripts.clear();
+    redis.log.clear();
+    SetCommand set = new SetCommand("x", "2");
+    GetCommand get = new GetCommand("x");
+    pipeline.add(set);
+    pipeline.add(get);
+    GetCommand later = new GetCommand("x");
+    assertTrue(pipeline.execute(jedis));
+    assertEquals(0, set.done);
+    assertNull(get.reply);
+    pipeline.add(later);
+    assertTrue(pipeline.execute(jedis));
+    assertFalse(pipeline.execute(jedis));
+    assertEquals(1, set.done);
+    assertEquals("2", get.reply);
+    assertEquals("2", later.reply);
+    assertEquals(3, pipeline.getRoundTrips());
+    assertEquals(Arrays.asList("EVALSHA", "GET", "EVAL", "GET", "GET"), redis.log);
+  }
+
+  public void testNoScriptIsEvaluatedAfterOneCalledBySha1() {
+    String otherScript = "return redis.call('set', KEYS[1], ARGV[1]); -- other";
+    pipeline.add(new SetCommand("x", "1"));
+    pipeline.execute(jedis);
+    redis.log.clear();
+
+    // The second script hasn't been used, so it ends the round trip after the first.
+    pipeline.add(new SetCommand("x", "2"));
+    pipeline.add(new SetCommand(otherScript, "y", "3"));
+    pipeline.add(new SetCommand("x", "4"));
+    assertTrue(pipeline.execute(jedis));
+    assertEquals(Arrays.asList("EVALSHA"), redis.log);
+    assertTrue(pipeline.execute(jedis));
+    assertEquals(Arrays.asList("EVALSHA", "EVAL", "EVALSHA"), redis.log);
+    assertEquals("3", redis.data.get("y"));
+    assertEquals("4", redis.data.get("x"));
+  }
+
+  public void testAddAllQueuesTheCommandsTogether() {
+    List<GetCommand> gets = new ArrayList<GetCommand>();
+    for (int i = 0; i < 3; i++) {
+      gets.add(new GetCommand("tag" + i));
+    }
+    assertTrue(pipeline.addAll(gets));
+    assertFalse(pipeline.addAll(gets.subList(0, 1)));
+    assertTrue(pipeline.execute(jedis));
+    assertEquals(4, pipeline.getCommandCount());
+    assertEquals(1, pipeline.getRoundTrips());
+  }
+}
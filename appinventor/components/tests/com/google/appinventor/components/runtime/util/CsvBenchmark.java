@@ -0,0 +1,122 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.io.Reader;
+
+/**
+ * Benchmarks for reading about 50MB of CSV text with
+ * {@link CsvUtil#readCsvRows} a batch at a time, and a tenth of it as a whole
+ * table with {@link CsvUtil#fromCsvTable}, run by the AndroidRuntimeBenchmarks
+ * target.  The text is generated as it is read, so it is never held in
+ * memory itself.  Reading in batches must use a small fraction of the heap
+ * that holding the whole table would, which the batched benchmark checks;
+ * the times of the two are in the test report.  CsvUtilTest checks the rows
+ * themselves.
+ *
+ */
+public class CsvBenchmark extends TestCase {
+  // About 50MB of text.
+  private static final long SIZE = 50L * 1024 * 1024;
+  private static final int BATCH_SIZE = 1000;
+  // Sample the heap every few batches, as it costs more than reading a batch.
+  private static final int SAMPLE_EVERY = 10;
+
+  /*
+   * Generates rows of CSV text up to the given size, including quoted cells with delimiters,
+   * escaped quotes and line breaks.
+   */
+  private static class SyntheticCsvReader extends Reader {
+    private final long size;
+    private final StringBuilder row = new StringBuilder();
+    private long read = 0;
+    private int rows = 0;
+    private int offset = 0;
+
+    SyntheticCsvReader(long size) {
+      this.size = size;
+    }
+
+    @Override
+    public int read(char[] buffer, int start, int length) {
+      if (read >= size && offset == row.length()) {
+        return -1;
+      }
+      int count = 0;
+      while (count < length) {
+        if (offset == row.length()) {
+          if (read >= size) {
+            break;
+          }
+          nextRow();
+        }
+        int n = Math.min(length - count, row.length() - offset);
+        row.getChars(offset, offset + n, buffer, start + count);
+        offset += n;
+        count += n;
+        read += n;
+      }
+      return count;
+    }
+
+    private void nextRow() {
+      row.setLength(0);
+      offset = 0;
+      int i = rows++;
+      row.append(i).append(",Record number ").append(i)
+          .append(",\"Smith, Jane\",").append(i * 0.25)
+          .append(",\"She said \"\"hello\"\"\",\"line one\r\nline two\",true\r\n");
+    }
+
+    int rows() {
+      return rows;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long settledHeap() {
+    System.gc();
+    System.gc();
+    return usedHeap();
+  }
+
+  public void testReadCsvRowsInBatches() throws Exception {
+    final long baseline = settledHeap();
+    final long[] peak = { 0 };
+    final int[] counts = { 0, 0 };  // batches, rows
+    SyntheticCsvReader reader = new SyntheticCsvReader(SIZE);
+    CsvUtil.readCsvRows(reader, BATCH_SIZE, new CsvUtil.RowHandler() {
+      @Override
+      public void gotRows(YailList rows, boolean last) {
+        counts[1] += rows.size();
+        if (counts[0]++ % SAMPLE_EVERY == 0) {
+          peak[0] = Math.max(peak[0], settledHeap() - baseline);
+        }
+      }
+    });
+    assertEquals(reader.rows(), counts[1]);
+    // The table as YailLists would take several times the size of its text; a batch at a time
+    // should take well under a tenth of it.
+    assertTrue("Peak heap growth " + peak[0] + " bytes", peak[0] < SIZE / 10);
+  }
+
+  public void testFromCsvTableWhole() throws Exception {
+    // A tenth of the size, so that the whole table fits in the heap.
+    SyntheticCsvReader reader = new SyntheticCsvReader(SIZE / 10);
+    YailList table = CsvUtil.fromCsvTable(reader);
+    assertEquals(reader.rows(), table.size());
+  }
+}
@@ -10,7 +10,12 @@ import com.google.appinventor.components.runtime.util.YailList;
 
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Test CsvUtil methods (converting between YailLists and CSV-formatted strings.
@@ -171,4 +176,174 @@ public class CsvUtilTest extends TestCase {
     String expectedCSVString = "\"field0\",\"field1\",\"field2\"";
     assertEquals(expectedCSVString, CsvUtil.toCsvRow(YailList.makeList(row)));
   }
+
+  public void testFromCSVTableQuotedDelimiters() throws Exception {
+    YailList ylist = CsvUtil.fromCsvTable("a,\"b,c\",d\n\"x\r\ny\",z\r\n");
+    assertEquals(2, ylist.size());
+    YailList row1 = (YailList) ylist.get(1);
+    assertEquals(3, row1.size());
+    assertEquals("b,c", row1.getString(1));
+    YailList row2 = (YailList) ylist.get(2);
+    assertEquals("x\r\ny", row2.getString(0));
+    assertEquals("z", row2.getString(1));
+  }
+
+  public void testFromCSVTableQuotesOnly() throws Exception {
+    // An empty quoted cell, a cell that is only an escaped quote, and escaped quotes at both
+    // ends of a cell
+    YailList row = CsvUtil.fromCsvRow("\"\",\"\"\"\",\"\"\"q\"\"\"");
+    assertEquals(3, row.size());
+    assertEquals("", row.getString(0));
+    assertEquals("\"", row.getString(1));
+    assertEquals("\"q\"", row.getString(2));
+  }
+
+  public void testFromCSVTableEmptyCells() throws Exception {
+    YailList row = CsvUtil.fromCsvRow("a,,\n");
+    assertEquals(3, row.size());
+    assertEquals("", row.getString(1));
+    assertEquals("", row.getString(2));
+  }
+
+  public void testFromCSVTableWhitespaceAfterClosingQuote() throws Exception {
+    YailList row = CsvUtil.fromCsvRow("\"a\"  \t,b\n");
+    assertEquals(2, row.size());
+    assertEquals("a", row.getString(0));
+  }
+
+  public void testFromCSVTableMacLineEnds() throws Exception {
+    assertEquals(3, CsvUtil.fromCsvTable("a\rb\rc").size());
+  }
+
+  public void testFromCSVTableQuoteInUnquotedCell() {
+    try {
+      CsvUtil.fromCsvTable("a\"b\n");
+      fail();
+    } catch (Exception e) {
+      // expected
+    }
+  }
+
+  public void testFromCSVTableTextAfterClosingQuote() {
+    try {
+      CsvUtil.fromCsvTable("\"a\"b\n");
+      fail();
+    } catch (Exception e) {
+      // expected
+    }
+  }
+
+  public void testFromCSVTableQuotedCellAcrossBuffers() throws Exception {
+    // The parser reads 10240 characters at a time, so a quoted cell with escaped quotes that
+    // straddles the end of the first read must still be parsed whole.
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10230; i++) {
+      sb.append('x');
+    }
+    sb.append(",\"ab\"\"cd\"\"ef\"\r\nnext\r\n");
+    YailList ylist = CsvUtil.fromCsvTable(sb.toString());
+    assertEquals(2, ylist.size());
+    assertEquals("ab\"cd\"ef", ((YailList) ylist.get(1)).getString(1));
+    assertEquals("next", ((YailList) ylist.get(2)).getString(0));
+  }
+
+  public void testToCSVTableWriter() throws Exception {
+    List<YailList> list = new ArrayList<YailList>();
+    list.add(YailList.makeList(new Object[] { "plain", "with,comma", "with \"quotes\"" }));
+    list.add(YailList.makeList(new Object[] { "line1\nline2", "" }));
+    YailList table = YailList.makeList(list);
+    StringWriter writer = new StringWriter();
+    CsvUtil.toCsvTable(table, writer);
+    assertEquals(CsvUtil.toCsvTable(table), writer.toString());
+    // The table survives a round trip
+    YailList parsed = CsvUtil.fromCsvTable(writer.toString());
+    assertEquals(table.toString(), parsed.toString());
+  }
+
+  // Records the batches given to a RowHandler.
+  private static class Batches implements CsvUtil.RowHandler {
+    final List<Integer> sizes = new ArrayList<Integer>();
+    final List<YailList> rows = new ArrayList<YailList>();
+    int lastCalls = 0;
+
+    @Override
+    public void gotRows(YailList batch, boolean last) {
+      assertEquals("No batches after the last", 0, lastCalls);
+      sizes.add(batch.size());
+      for (Object row : batch.toArray()) {
+        rows.add((YailList) row);
+      }
+      if (last) {
+        lastCalls++;
+      }
+    }
+  }
+
+  private static String table(int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; i++) {
+      sb.append(i).append(",\"row ").append(i).append("\"\r\n");
+    }
+    return sb.toString();
+  }
+
+  public void testReadCSVRowsInBatches() throws Exception {
+    Batches batches = new Batches();
+    CsvUtil.readCsvRows(new StringReader(table(10)), 3, batches);
+    assertEquals("[3, 3, 3, 1]", batches.sizes.toString());
+    assertEquals(1, batches.lastCalls);
+    assertEquals(CsvUtil.fromCsvTable(table(10)).toString(),
+        YailList.makeList(batches.rows).toString());
+  }
+
+  public void testReadCSVRowsFullLastBatch() throws Exception {
+    Batches batches = new Batches();
+    CsvUtil.readCsvRows(new StringReader(table(9)), 3, batches);
+    assertEquals("[3, 3, 3]", batches.sizes.toString());
+    assertEquals(1, batches.lastCalls);
+  }
+
+  public void testReadCSVRowsEmpty() throws Exception {
+    Batches batches = new Batches();
+    CsvUtil.readCsvRows(new StringReader(""), 3, batches);
+    assertEquals("[0]", batches.sizes.toString());
+    assertEquals(1, batches.lastCalls);
+  }
+
+  public void testReadCSVRowsSyntaxError() {
+    Batches batches = new Batches();
+    try {
+      CsvUtil.readCsvRows(new StringReader(table(5) + "\"unclosed\n"), 2, batches);
+      fail();
+    } catch (Exception e) {
+      // expected
+    }
+    assertEquals("[2, 2]", batches.sizes.toString());
+    assertEquals(0, batches.lastCalls);
+  }
+
+  public void testReadCSVRowsReadError() {
+    Reader failing = new Reader() {
+      private final Reader in = new StringReader(table(3));
+
+      @Override
+      public int read(char[] buffer, int offset, int length) throws IOException {
+        int n = in.read(buffer, offset, length);
+        if (n < 0) {
+          throw new IOException("disk on fire");
+        }
+        return n;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    try {
+      CsvUtil.readCsvRows(failing, 10, new Batches());
+      fail();
+    } catch (Exception e) {
+      assertEquals("disk on fire", e.getMessage());
+    }
+  }
 }
@@ -0,0 +1,43 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Benchmarks for decoding about 2MB of JSON or XML to YailLists, run by the
+ * AndroidRuntimeBenchmarks target.  Each benchmark decodes the same response
+ * several times, either with the single-pass decoder in JsonUtil or XmlUtil
+ * or in the several passes Web used before, so the times in the test report
+ * can be compared.  DecodingTest checks that both give the same lists.
+ *
+ */
+public class DecodingBenchmark extends TestCase {
+  private static final int RECORDS = 12000;
+  private static final int RUNS = 5;
+
+  private static void decode(DecodingTest.Decoder decoder, String text) throws Exception {
+    for (int i = 0; i < RUNS; i++) {
+      decoder.decode(text);
+    }
+  }
+
+  public void testJsonSinglePass() throws Exception {
+    decode(DecodingTest.SINGLE_PASS_JSON, DecodingTest.makeJson(RECORDS));
+  }
+
+  public void testJsonMultiPass() throws Exception {
+    decode(DecodingTest.MULTI_PASS_JSON, DecodingTest.makeJson(RECORDS));
+  }
+
+  public void testXmlSinglePass() throws Exception {
+    decode(DecodingTest.SINGLE_PASS_XML, DecodingTest.makeXml(RECORDS));
+  }
+
+  public void testXmlMultiPass() throws Exception {
+    decode(DecodingTest.MULTI_PASS_XML, DecodingTest.makeXml(RECORDS));
+  }
+}
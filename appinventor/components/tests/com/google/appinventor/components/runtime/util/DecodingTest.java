@@ -0,0 +1,109 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import org.json.XML;
+
+import java.util.Random;
+
+/**
+ * Tests that the single-pass decoders in JsonUtil and XmlUtil decode a large
+ * JSON or XML response to the same YailLists as the way Web used to decode
+ * them: to org.json objects, then to Java lists, then to YailLists (for XML,
+ * with a trip through JSON text first).
+ *
+ */
+public class DecodingTest extends TestCase {
+  private static final int RECORDS = 500;
+
+  /**
+   * Decodes a response.
+   */
+  interface Decoder {
+    Object decode(String text) throws Exception;
+  }
+
+  static final Decoder MULTI_PASS_JSON = new Decoder() {
+    @Override
+    public Object decode(String text) throws Exception {
+      return JsonUtilTest.sanitize(JsonUtil.getObjectFromJson(text));
+    }
+  };
+
+  static final Decoder SINGLE_PASS_JSON = new Decoder() {
+    @Override
+    public Object decode(String text) throws Exception {
+      return JsonUtil.getYailObjectFromJson(text);
+    }
+  };
+
+  static final Decoder MULTI_PASS_XML = new Decoder() {
+    @Override
+    public Object decode(String text) throws Exception {
+      return JsonUtilTest.sanitize(
+          JsonUtil.getObjectFromJson(XML.toJSONObject(text).toString()));
+    }
+  };
+
+  static final Decoder SINGLE_PASS_XML = new Decoder() {
+    @Override
+    public Object decode(String text) throws Exception {
+      return XmlUtil.getYailListFromXml(text);
+    }
+  };
+
+  /**
+   * Returns a JSON response with the given number of records.
+   */
+  static String makeJson(int records) {
+    Random random = new Random(records);
+    StringBuilder sb = new StringBuilder("{\"status\": \"ok\", \"records\": [");
+    for (int i = 0; i < records; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append("{\"id\": ").append(i)
+          .append(", \"name\": \"Record number ").append(i).append('"')
+          .append(", \"value\": ").append(random.nextDouble() * 1000)
+          .append(", \"active\": ").append(random.nextBoolean())
+          .append(", \"tags\": [\"alpha\", \"beta\", \"gamma\"]")
+          .append(", \"location\": {\"lat\": ").append(random.nextDouble() * 180 - 90)
+          .append(", \"lon\": ").append(random.nextDouble() * 360 - 180).append("}}");
+    }
+    return sb.append("]}").toString();
+  }
+
+  /**
+   * Returns an XML response with the given number of records.
+   */
+  static String makeXml(int records) {
+    Random random = new Random(records);
+    StringBuilder sb = new StringBuilder("<response status=\"ok\">");
+    for (int i = 0; i < records; i++) {
+      sb.append("<record id=\"").append(i).append("\">")
+          .append("<name>Record number ").append(i).append("</name>")
+          .append("<value>").append(random.nextDouble() * 1000).append("</value>")
+          .append("<active>").append(random.nextBoolean()).append("</active>")
+          .append("<tag>alpha</tag><tag>beta</tag><tag>gamma</tag>")
+          .append("<location lat=\"").append(random.nextDouble() * 180 - 90)
+          .append("\" lon=\"").append(random.nextDouble() * 360 - 180).append("\"/>")
+          .append("</record>");
+    }
+    return sb.append("</response>").toString();
+  }
+
+  public void testJson() throws Exception {
+    String json = makeJson(RECORDS);
+    assertEquals(MULTI_PASS_JSON.decode(json), SINGLE_PASS_JSON.decode(json));
+  }
+
+  public void testXml() throws Exception {
+    String xml = makeXml(RECORDS);
+    assertEquals(MULTI_PASS_XML.decode(xml), SINGLE_PASS_XML.decode(xml));
+  }
+}
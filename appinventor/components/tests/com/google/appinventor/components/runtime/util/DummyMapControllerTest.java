@@ -118,6 +118,46 @@ public class DummyMapControllerTest {
     mapController.isRotationEnabled();
   }
 
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetClusterMarkersEnabled() {
+    mapController.setClusterMarkersEnabled(true);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testIsClusterMarkersEnabled() {
+    mapController.isClusterMarkersEnabled();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetTileCacheSize() {
+    mapController.setTileCacheSize(1024);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetTileCacheSize() {
+    mapController.getTileCacheSize();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetCacheOnly() {
+    mapController.setCacheOnly(true);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testIsCacheOnly() {
+    mapController.isCacheOnly();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetTileFetcher() {
+    mapController.setTileFetcher(new TileDownloader.HttpTileFetcher("test"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testDownloadRegion() {
+    mapController.downloadRegion(1, -1, -1, 1, 0, 1);
+  }
+
   @Test(expected = UnsupportedOperationException.class)
   public void testSetPanEnabled() {
     mapController.setPanEnabled(true);
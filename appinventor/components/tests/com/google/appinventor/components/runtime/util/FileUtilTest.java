@@ -0,0 +1,87 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests FileUtil.
+ *
+ */
+public class FileUtilTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  static String contents(File file) throws IOException {
+    return new String(FileUtil.readFile(file.getPath()), "UTF-8");
+  }
+
+  private static List<String> readLines(String text, int startLine, int count)
+      throws IOException {
+    return FileUtil.readLines(new StringReader(text), startLine, count);
+  }
+
+  @Test
+  public void testReadLines() throws IOException {
+    String text = "one\ntwo\r\nthree\rfour\n";
+    assertEquals(Arrays.asList("one", "two", "three", "four"), readLines(text, 1, 10));
+    assertEquals(Arrays.asList("two", "three"), readLines(text, 2, 2));
+    assertEquals(Arrays.asList("four"), readLines(text, 4, 2));
+    assertEquals(Collections.emptyList(), readLines(text, 5, 2));
+    assertEquals(Collections.emptyList(), readLines(text, 1, 0));
+  }
+
+  @Test
+  public void testReadLinesLastLineUnterminated() throws IOException {
+    assertEquals(Arrays.asList("b", ""), readLines("a\nb\n\nc", 2, 2));
+    assertEquals(Arrays.asList("c"), readLines("a\nb\n\nc", 4, 2));
+  }
+
+  @Test
+  public void testReadLinesFromLargeFile() throws IOException {
+    File file = folder.newFile("large.txt");
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      for (int i = 1; i <= 100000; i++) {
+        out.write(("line " + i + "\n").getBytes("UTF-8"));
+      }
+    } finally {
+      out.close();
+    }
+    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+    try {
+      assertEquals(Arrays.asList("line 99999", "line 100000"),
+          FileUtil.readLines(reader, 99999, 5));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadLinesStartsAtOne() throws IOException {
+    readLines("a\n", 0, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadLinesNegativeCount() throws IOException {
+    readLines("a\n", 1, -1);
+  }
+}
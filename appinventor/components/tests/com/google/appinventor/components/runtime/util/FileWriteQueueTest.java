@@ -0,0 +1,188 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests FileWriteQueue against files in a temporary directory.
+ *
+ */
+public class FileWriteQueueTest {
+  // Long enough that appended text is only written when the test asks.
+  private static final long FLUSH_DELAY_MS = 60000;
+  private static final long TIMEOUT_MS = 5000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+  private final FileWriteQueue.Listener listener = new FileWriteQueue.Listener() {
+    @Override
+    public void onWritten(String fileName, boolean append) {
+      results.add((append ? "appended " : "saved ") + fileName);
+    }
+
+    @Override
+    public void onError(String fileName, boolean append, IOException e) {
+      results.add((e instanceof FileNotFoundException ? "cannot open " : "cannot write ")
+          + fileName);
+    }
+  };
+  private FileWriteQueue queue;
+
+  @Before
+  public void setUp() {
+    queue = new FileWriteQueue(FLUSH_DELAY_MS);
+  }
+
+  @After
+  public void tearDown() {
+    queue.shutdown();
+  }
+
+  private String read(final File file) throws IOException {
+    final String[] text = new String[1];
+    assertTrue(FileWriteQueue.await(queue.afterWrites(file, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          text[0] = new String(FileUtil.readFile(file.getPath()), "UTF-8");
+        } catch (IOException e) {
+          text[0] = null;
+        }
+      }
+    }), TIMEOUT_MS));
+    return text[0];
+  }
+
+  @Test
+  public void testAppendIsBuffered() throws Exception {
+    File file = new File(folder.getRoot(), "log.txt");
+    queue.append(file, "log.txt", "one\n", listener);
+    queue.append(file, "log.txt", "two\n", listener);
+    assertEquals(1, queue.openFileCount());
+    assertEquals(0, file.length());
+
+    assertTrue(FileWriteQueue.await(queue.flush(), TIMEOUT_MS));
+    assertEquals("one\ntwo\n", FileUtilTest.contents(file));
+    assertEquals(1, queue.openFileCount());  // still open for more appends
+    assertEquals("[appended log.txt, appended log.txt]", results.toString());
+  }
+
+  @Test
+  public void testFlushedAfterDelay() throws Exception {
+    queue.shutdown();
+    queue = new FileWriteQueue(10);
+    File file = new File(folder.getRoot(), "log.txt");
+    queue.append(file, "log.txt", "line\n", listener);
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals("line\n", FileUtilTest.contents(file));
+  }
+
+  @Test
+  public void testWritesToSameFileAreOrdered() throws Exception {
+    File file = new File(folder.getRoot(), "data.txt");
+    queue.append(file, "data.txt", "lost\n", listener);
+    queue.save(file, "data.txt", "first\n", listener);
+    for (int i = 0; i < 1000; i++) {
+      queue.append(file, "data.txt", i + "\n", listener);
+    }
+    StringBuilder expected = new StringBuilder("first\n");
+    for (int i = 0; i < 1000; i++) {
+      expected.append(i).append('\n');
+    }
+    // The read waits for the appends before it, without an explicit flush.
+    assertEquals(expected.toString(), read(file));
+    assertEquals(0, queue.openFileCount());
+  }
+
+  @Test
+  public void testAppendsAcrossFiles() throws Exception {
+    int files = FileWriteQueue.MAX_OPEN_FILES + 3;
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < files; i++) {
+        queue.append(new File(folder.getRoot(), i + ".txt"), i + ".txt", "round " + round + "\n",
+            listener);
+      }
+    }
+    assertEquals(FileWriteQueue.MAX_OPEN_FILES, queue.openFileCount());
+    assertTrue(FileWriteQueue.await(queue.shutdown(), TIMEOUT_MS));
+    for (int i = 0; i < files; i++) {
+      assertEquals("round 0\nround 1\n", FileUtilTest.contents(new File(folder.getRoot(),
+          i + ".txt")));
+    }
+  }
+
+  @Test
+  public void testShutdownWritesAppendedText() throws Exception {
+    File file = new File(folder.getRoot(), "log.txt");
+    queue.append(file, "log.txt", "last words\n", listener);
+    assertTrue(FileWriteQueue.await(queue.shutdown(), TIMEOUT_MS));
+    assertEquals("last words\n", FileUtilTest.contents(file));
+  }
+
+  @Test
+  public void testFileNamedDifferentlyIsOneFile() throws Exception {
+    File directory = folder.newFolder("data");
+    File file = new File(directory, "log.txt");
+    queue.append(file, "log.txt", "one\n", listener);
+    queue.append(new File(directory, "../data/./log.txt"), "../data/./log.txt", "two\n",
+        listener);
+    assertEquals(1, queue.openFileCount());
+    assertEquals("one\ntwo\n", read(file));
+  }
+
+  @Test
+  public void testSharedByListeners() throws Exception {
+    final List<String> other = new ArrayList<String>();
+    FileWriteQueue.Listener otherListener = new FileWriteQueue.Listener() {
+      @Override
+      public void onWritten(String fileName, boolean append) {
+        other.add("appended " + fileName);
+      }
+
+      @Override
+      public void onError(String fileName, boolean append, IOException e) {
+        other.add("cannot write " + fileName);
+      }
+    };
+    File file = new File(folder.getRoot(), "log.txt");
+    queue.append(file, "log.txt", "one\n", listener);
+    queue.append(file, "log.txt", "two\n", otherListener);
+    assertEquals("one\ntwo\n", read(file));
+    assertEquals("[appended log.txt]", results.toString());
+    assertEquals("[appended log.txt]", other.toString());
+  }
+
+  @Test
+  public void testCannotOpen() throws Exception {
+    File missingDirectory = new File(folder.getRoot(), "missing");
+    queue.append(new File(missingDirectory, "a.txt"), "a.txt", "text", listener);
+    queue.save(new File(missingDirectory, "b.txt"), "b.txt", "text", listener);
+    assertEquals(0, queue.openFileCount());
+    assertEquals("[cannot open a.txt, cannot open b.txt]", results.toString());
+    assertFalse(missingDirectory.exists());
+  }
+}
@@ -0,0 +1,140 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Tests GeoJSONReader.
+ *
+ */
+public class GeoJSONReaderTest extends TestCase {
+  private final List<YailList> features = new ArrayList<YailList>();
+
+  private final GeoJSONReader.FeatureHandler collector = new GeoJSONReader.FeatureHandler() {
+    @Override
+    public void onFeature(YailList feature) {
+      features.add(feature);
+    }
+  };
+
+  private String read(String json) throws IOException, JSONException {
+    return new GeoJSONReader(new StringReader(json)).readFeatureCollection(collector);
+  }
+
+  private static YailList pair(String key, Object value) {
+    return YailList.makeList(new Object[] { key, value });
+  }
+
+  public void testFeatureCollection() throws Exception {
+    String type = read("{ \"type\": \"FeatureCollection\", \"bbox\": [0, 1, 2, 3],\n" +
+        "  \"features\": [\n" +
+        "    {\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-71.5,42]}," +
+        "\"properties\":{\"title\":\"Caf\\u00e9 \\\"A\\\"\",\"visible\":true,\"id\":null," +
+        "\"big\":12345678901,\"size\":-1.5e2}},\n" +
+        "    {\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\"," +
+        "\"coordinates\":[[1,2],[3,4]]},\"properties\":{}}\n" +
+        "  ] }");
+    assertEquals("FeatureCollection", type);
+    assertEquals(2, features.size());
+
+    YailList point = YailList.makeList(new Object[] {
+        pair("type", "Feature"),
+        pair("geometry", YailList.makeList(new Object[] {
+            pair("type", "Point"),
+            pair("coordinates", YailList.makeList(new Object[] { -71.5, 42 })) })),
+        pair("properties", YailList.makeList(new Object[] {
+            pair("title", "Caf\u00e9 \"A\""),
+            pair("visible", true),
+            pair("big", 12345678901L),
+            pair("size", -150.0) })) });
+    assertEquals(point, features.get(0));
+
+    YailList line = features.get(1);
+    YailList geometry = (YailList) ((YailList) line.getObject(1)).getObject(1);
+    assertEquals(YailList.makeList(new Object[] {
+        YailList.makeList(new Object[] { 1, 2 }),
+        YailList.makeList(new Object[] { 3, 4 }) }), ((YailList) geometry.getObject(1)).getObject(1));
+    assertEquals(YailList.makeEmptyList(), ((YailList) line.getObject(2)).getObject(1));
+  }
+
+  public void testTypeAfterFeatures() throws Exception {
+    assertEquals("FeatureCollection", read("{\"features\":[{\"type\":\"Feature\"}]," +
+        "\"type\":\"FeatureCollection\"}"));
+    assertEquals(1, features.size());
+  }
+
+  public void testFeaturesBeforeWrongTypeNotPassed() throws Exception {
+    assertEquals("Garbage", read("{\"features\":[{\"type\":\"Feature\"}]," +
+        "\"type\":\"Garbage\"}"));
+    assertEquals(0, features.size());
+    assertEquals("", read("{\"features\":[{\"type\":\"Feature\"}]}"));
+    assertEquals(0, features.size());
+  }
+
+  public void testWrongTypeStopsReading() throws Exception {
+    // The rest of the document isn't read, so its errors don't matter.
+    assertEquals("Garbage", read("{\"type\": \"Garbage\", \"features\": [ oops"));
+    assertEquals(0, features.size());
+    assertEquals("", read("{}"));
+  }
+
+  public void testNullInArray() throws Exception {
+    read("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\"," +
+        "\"properties\":{\"values\":[1,null,[null]]}}]}");
+    YailList properties = (YailList) ((YailList) features.get(0).getObject(1)).getObject(1);
+    assertEquals(pair("values", YailList.makeList(new Object[] {
+        1, "null", YailList.makeList(new Object[] { "null" }) })), properties.getObject(0));
+  }
+
+  public void testMalformed() throws Exception {
+    String[] documents = { "[bad]", "{\"type\":\"FeatureCollection\",\"features\":[1]}",
+        "{\"features\":[{\"type\":\"Feature\"", "{\"a\":tru}", "{\"a\":\"\\x\"}" };
+    for (String document : documents) {
+      try {
+        read(document);
+        fail("Expected an error reading " + document);
+      } catch (JSONException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testFeaturesArriveAsTheyAreRead() throws Exception {
+    // A reader that fails once the first feature has been read, like a download cut short
+    final String first = "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\"},";
+    Reader reader = new Reader() {
+      private int position = 0;
+
+      @Override
+      public int read(char[] buffer, int offset, int length) throws IOException {
+        if (position == first.length()) {
+          throw new IOException("Connection lost");
+        }
+        buffer[offset] = first.charAt(position++);
+        return 1;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    try {
+      new GeoJSONReader(reader).readFeatureCollection(collector);
+      fail();
+    } catch (IOException e) {
+      assertEquals(1, features.size());
+    }
+  }
+}
@@ -0,0 +1,52 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.appinventor.components.runtime.util.GridClustererTest.LOCATOR;
+import static com.google.appinventor.components.runtime.util.GridClustererTest.point;
+
+/**
+ * Benchmarks for grouping 10,000 markers spread over 20 degrees into
+ * clusters, run by the AndroidRuntimeBenchmarks target. Zoomed out, most
+ * markers share a few cells; zoomed in, nearly every marker is a cluster of
+ * its own, so the two show the cost of bucketing against the cost of
+ * building the clusters. GridClustererTest checks the clusters themselves.
+ *
+ */
+public class GridClustererBenchmark {
+  private static final int POINTS = 10000;
+  private static final int RUNS = 20;
+
+  private final GridClusterer<double[]> clusterer = new GridClusterer<double[]>(64, LOCATOR);
+  private final List<double[]> points = new ArrayList<double[]>();
+
+  public GridClustererBenchmark() {
+    Random random = new Random(2);
+    for (int i = 0; i < POINTS; i++) {
+      points.add(point(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10));
+    }
+  }
+
+  @Test
+  public void testClusterZoomedOut() {
+    for (int run = 0; run < RUNS; run++) {
+      clusterer.cluster(points, 8);
+    }
+  }
+
+  @Test
+  public void testClusterZoomedIn() {
+    for (int run = 0; run < RUNS; run++) {
+      clusterer.cluster(points, 16);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import com.google.appinventor.components.runtime.util.GridClusterer.Cluster;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link GridClusterer}.
+ */
+public class GridClustererTest {
+  private static final double TOLERANCE = 1.0E-9;
+
+  static final GridClusterer.Locator<double[]> LOCATOR =
+      new GridClusterer.Locator<double[]>() {
+        @Override
+        public double getLatitude(double[] item) {
+          return item[0];
+        }
+
+        @Override
+        public double getLongitude(double[] item) {
+          return item[1];
+        }
+      };
+
+  private final GridClusterer<double[]> clusterer = new GridClusterer<double[]>(64, LOCATOR);
+
+  static double[] point(double latitude, double longitude) {
+    return new double[] { latitude, longitude };
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCellSizeMustBePositive() {
+    new GridClusterer<double[]>(0, LOCATOR);
+  }
+
+  @Test
+  public void testNoItems() {
+    assertEquals(0, clusterer.cluster(Collections.<double[]>emptyList(), 10).size());
+  }
+
+  @Test
+  public void testNearbyPointsClusterWhenZoomedOut() {
+    double[] a = point(42.3601, -71.0942);
+    double[] b = point(42.3611, -71.0952);
+    List<Cluster<double[]>> clusters = clusterer.cluster(Arrays.asList(a, b), 10);
+    assertEquals(1, clusters.size());
+    assertEquals(Arrays.asList(a, b), clusters.get(0).getItems());
+  }
+
+  @Test
+  public void testNearbyPointsSplitWhenZoomedIn() {
+    double[] a = point(42.3601, -71.0942);
+    double[] b = point(42.3611, -71.0952);
+    List<Cluster<double[]>> clusters = clusterer.cluster(Arrays.asList(a, b), 18);
+    assertEquals(2, clusters.size());
+    assertEquals(Collections.singletonList(a), clusters.get(0).getItems());
+    assertEquals(Collections.singletonList(b), clusters.get(1).getItems());
+  }
+
+  @Test
+  public void testClusterLocationAndBounds() {
+    List<Cluster<double[]>> clusters = clusterer.cluster(Arrays.asList(point(1.0, 2.0),
+        point(3.0, 4.0), point(2.0, 0.0)), 0);
+    assertEquals(1, clusters.size());
+    Cluster<double[]> cluster = clusters.get(0);
+    assertEquals(3, cluster.size());
+    assertEquals(2.0, cluster.getLatitude(), TOLERANCE);
+    assertEquals(2.0, cluster.getLongitude(), TOLERANCE);
+    assertEquals(3.0, cluster.getNorth(), TOLERANCE);
+    assertEquals(1.0, cluster.getSouth(), TOLERANCE);
+    assertEquals(4.0, cluster.getEast(), TOLERANCE);
+    assertEquals(0.0, cluster.getWest(), TOLERANCE);
+  }
+
+  @Test
+  public void testAntimeridianIsOneColumn() {
+    assertEquals(1, clusterer.cluster(Arrays.asList(point(0.0, 180.0), point(0.0, -180.0)), 5)
+        .size());
+  }
+
+  @Test
+  public void testPolesAreClamped() {
+    List<Cluster<double[]>> clusters = clusterer.cluster(Arrays.asList(point(90.0, 0.0),
+        point(89.0, 0.0), point(-90.0, 0.0)), 3);
+    assertEquals(2, clusters.size());
+    assertEquals(2, clusters.get(0).size());
+  }
+
+  @Test
+  public void testEveryItemInOneCluster() {
+    Random random = new Random(1);
+    List<double[]> points = new ArrayList<double[]>();
+    for (int i = 0; i < 1000; i++) {
+      points.add(point(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180));
+    }
+    int previous = 0;
+    for (int zoom = 0; zoom <= 20; zoom++) {
+      List<Cluster<double[]>> clusters = clusterer.cluster(points, zoom);
+      Set<double[]> seen = new HashSet<double[]>();
+      for (Cluster<double[]> cluster : clusters) {
+        for (double[] p : cluster.getItems()) {
+          assertTrue("Point in more than one cluster", seen.add(p));
+        }
+      }
+      assertEquals(points.size(), seen.size());
+      // The cells of each zoom level lie within those of the level before, so clusters only
+      // ever split as the map zooms in.
+      assertTrue(clusters.size() >= previous);
+      previous = clusters.size();
+    }
+    assertEquals(points.size(), previous);
+  }
+}
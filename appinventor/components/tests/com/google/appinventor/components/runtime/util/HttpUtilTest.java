@@ -0,0 +1,145 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests reading responses and finishing connections with HttpUtil.
+ *
+ */
+public class HttpUtilTest {
+
+  /**
+   * A connection with a canned response.  A null input stream stands for an
+   * error response, whose body is the error stream.
+   */
+  private static class FakeConnection extends HttpURLConnection {
+    private final InputStream inputStream;
+    private final InputStream errorStream;
+    private final IOException inputException;
+    boolean disconnected = false;
+
+    FakeConnection(InputStream inputStream, InputStream errorStream,
+        IOException inputException) throws IOException {
+      super(new URL("http://localhost/"));
+      this.inputStream = inputStream;
+      this.errorStream = errorStream;
+      this.inputException = inputException;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      if (inputException != null) {
+        throw inputException;
+      }
+      return inputStream;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return errorStream;
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void disconnect() {
+      disconnected = true;
+    }
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+  }
+
+  private static InputStream stream(String text) {
+    return new ByteArrayInputStream(text.getBytes());
+  }
+
+  private static String read(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int b;
+    while ((b = in.read()) != -1) {
+      sb.append((char) b);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testResponseStream() throws IOException {
+    InputStream in = stream("ok");
+    assertSame(in, HttpUtil.getResponseStream(new FakeConnection(in, null, null)));
+  }
+
+  @Test
+  public void testErrorResponseStream() throws IOException {
+    HttpURLConnection connection = new FakeConnection(null, stream("not found"),
+        new FileNotFoundException());
+    assertEquals("not found", read(HttpUtil.getResponseStream(connection)));
+  }
+
+  @Test
+  public void testErrorResponseWithoutBodyIsEmpty() throws IOException {
+    HttpURLConnection connection = new FakeConnection(null, null, new IOException());
+    assertEquals("", read(HttpUtil.getResponseStream(connection)));
+  }
+
+  @Test
+  public void testResponseWithoutBodyIsEmpty() throws IOException {
+    assertEquals("", read(HttpUtil.getResponseStream(new FakeConnection(null, null, null))));
+  }
+
+  @Test
+  public void testTimeoutIsThrown() throws IOException {
+    HttpURLConnection connection = new FakeConnection(null, stream("late"),
+        new SocketTimeoutException());
+    try {
+      HttpUtil.getResponseStream(connection);
+      fail("Expected a SocketTimeoutException");
+    } catch (SocketTimeoutException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testFinishKeepsConnectionWhoseResponseWasRead() throws IOException {
+    FakeConnection connection = new FakeConnection(stream(""), null, null);
+    HttpUtil.finish(connection, true);
+    assertFalse(connection.disconnected);
+  }
+
+  @Test
+  public void testFinishDisconnectsConnectionWhoseResponseWasNotRead() throws IOException {
+    FakeConnection connection = new FakeConnection(stream("unread"), null, null);
+    HttpUtil.finish(connection, false);
+    assertTrue(connection.disconnected);
+  }
+
+  @Test
+  public void testFinishDisablesResponseCache() throws IOException {
+    ScopedResponseCache.setEnabled(true);
+    HttpUtil.finish(new FakeConnection(stream(""), null, null), true);
+    assertFalse(ScopedResponseCache.isEnabled());
+  }
+}
@@ -130,4 +130,52 @@ public class JsonUtilTest extends TestCase {
     Object shouldBeEmpty = JsonUtil.getObjectFromJson("");
     assertEquals("", JsonUtil.getObjectFromJson(""));
   }
+
+  public void testGetYailObjectFromJson() throws JSONException {
+    String[] jsonInputs = {
+      "[]",
+      "{}",
+      "[\"Hello.\", 9, -9.5, 123456789101112, true, \"faLse\", null, [1, [2, []]]]",
+      "{\"b\": \"boo\", \"a\": 1, \"d\": {\"e\": \"f\", \"c\": [\"TRUE\", null]}}",
+      "[{\"x\": 0.5}, {\"y\": -1.5e3}, \"\\u007E\"]"
+    };
+    for (String jsonInput : jsonInputs) {
+      Object expected = sanitize(JsonUtil.getObjectFromJson(jsonInput));
+      Object actual = JsonUtil.getYailObjectFromJson(jsonInput);
+      assertTrue(jsonInput, actual instanceof YailList);
+      assertEquals(jsonInput, expected, actual);
+    }
+  }
+
+  public void testGetYailObjectFromJsonAtoms() throws JSONException {
+    assertEquals("", JsonUtil.getYailObjectFromJson(""));
+    assertEquals(9, JsonUtil.getYailObjectFromJson("9"));
+    assertEquals("tRue", JsonUtil.getYailObjectFromJson("\"tRue\""));
+    assertEquals(true, JsonUtil.getYailObjectFromJson("true"));
+    assertNull(JsonUtil.getYailObjectFromJson("null"));
+  }
+
+  public void testGetYailObjectFromJsonInvalid() {
+    String[] jsonInputs = { "[1, 2", "{\"a\" 1}", "{\"a\": 1", "{1: 2}", "[1, 2 }" };
+    for (String jsonInput : jsonInputs) {
+      try {
+        JsonUtil.getYailObjectFromJson(jsonInput);
+        fail(jsonInput);
+      } catch (JSONException e) {
+        // Expected.
+      }
+    }
+  }
+
+  // Converts the Java lists returned by getObjectFromJson to YailLists, as the runtime does.
+  static Object sanitize(Object value) {
+    if (value instanceof List) {
+      List<Object> items = new ArrayList<Object>();
+      for (Object item : (List<?>) value) {
+        items.add(sanitize(item));
+      }
+      return YailList.makeList(items);
+    }
+    return JsonUtil.sanitizeJsonItem(value);
+  }
 }
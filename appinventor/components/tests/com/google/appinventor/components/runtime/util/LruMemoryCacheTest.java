@@ -0,0 +1,71 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests LruMemoryCache.
+ *
+ */
+public class LruMemoryCacheTest extends TestCase {
+
+  // A cache of byte arrays, sized by their lengths.
+  private static LruMemoryCache<String, byte[]> makeCache(long maxSize) {
+    return new LruMemoryCache<String, byte[]>(maxSize) {
+      @Override
+      protected long sizeOf(byte[] value) {
+        return value.length;
+      }
+    };
+  }
+
+  public void testEvictsLeastRecentlyUsed() {
+    LruMemoryCache<String, byte[]> cache = makeCache(100);
+    cache.put("a", new byte[40]);
+    cache.put("b", new byte[40]);
+    assertNotNull(cache.get("a"));  // b is now the least recently used
+
+    cache.put("c", new byte[40]);
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertEquals(80, cache.size());
+    assertEquals(1, cache.evictionCount());
+    assertEquals(3, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  public void testReplaceAndOversizedValues() {
+    LruMemoryCache<String, byte[]> cache = makeCache(100);
+    cache.put("a", new byte[40]);
+    cache.put("a", new byte[60]);
+    assertEquals(1, cache.count());
+    assertEquals(60, cache.size());
+
+    // A value that can never fit isn't cached, and doesn't push the others out.
+    cache.put("b", new byte[101]);
+    assertNull(cache.get("b"));
+    assertEquals(60, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.count());
+    assertEquals(0, cache.size());
+  }
+
+  public void testTrimToSize() {
+    LruMemoryCache<String, byte[]> cache = makeCache(100);
+    for (int i = 0; i < 10; i++) {
+      cache.put("key" + i, new byte[10]);
+    }
+    cache.trimToSize(35);
+    assertEquals(3, cache.count());
+    assertNull(cache.get("key6"));
+    assertNotNull(cache.get("key7"));
+    assertEquals("LruMemoryCache[count=3,size=30,maxSize=100,hits=1,misses=1,hitRate=50%,"
+        + "evictions=7]", cache.toString());
+  }
+}
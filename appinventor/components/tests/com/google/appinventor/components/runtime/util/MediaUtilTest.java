@@ -10,6 +10,8 @@ import junit.framework.TestCase;
 
 import java.io.IOException;
 
+import org.json.JSONObject;
+
 /**
  * Tests MediaUtil.java.
  *
@@ -87,4 +89,29 @@ public class MediaUtilTest extends TestCase {
       // Expected
     }
   }
+
+  public void testBitmapCacheStats() throws Exception {
+    LruMemoryCache<String, String> cache = new LruMemoryCache<String, String>(100) {
+      @Override
+      protected long sizeOf(String value) {
+        return value.length();
+      }
+    };
+    assertEquals(0, MediaUtil.bitmapCacheStats(null).getLong("hits"));
+
+    assertNull(cache.get("kitty.png"));
+    JSONObject stats = MediaUtil.bitmapCacheStats(cache);
+    assertEquals(0, stats.getLong("hits"));
+    assertEquals(1, stats.getLong("misses"));
+
+    cache.put("kitty.png", "meow");
+    assertEquals("meow", cache.get("kitty.png"));
+    stats = MediaUtil.bitmapCacheStats(cache);
+    assertEquals(1, stats.getLong("hits"));
+    assertEquals(1, stats.getLong("misses"));
+    assertEquals(1, stats.getInt("count"));
+    assertEquals(4, stats.getLong("size"));
+    assertEquals(100, stats.getLong("maxSize"));
+    assertEquals(0, stats.getLong("evictions"));
+  }
 }
@@ -0,0 +1,168 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static com.google.appinventor.components.runtime.util.ReplChannelTest.assertValue;
+import static com.google.appinventor.components.runtime.util.ReplChannelTest.mac;
+import static com.google.appinventor.components.runtime.util.ReplChannelTest.newMac;
+import static com.google.appinventor.components.runtime.util.ReplChannelTest.readHeader;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Mac;
+
+import org.json.JSONObject;
+
+/**
+ * Benchmarks for sending 1,000 block updates over loopback, run by the
+ * AndroidRuntimeBenchmarks target: one update at a time over a ReplChannel,
+ * and one request at a time to a server handling them as AppInvHTTPD does
+ * /_newblocks, with a connection for each.  The channel's time in the test
+ * report should be well under that of the requests.  ReplChannelTest checks
+ * the channel itself.
+ *
+ */
+public class ReplChannelBenchmark extends TestCase {
+  private static final int UPDATES = 1000;
+
+  private final ReplChannelTest.Echo echo = new ReplChannelTest.Echo();
+  private ServerSocket server;
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    executor = Executors.newCachedThreadPool();
+    RetValManager.fetch(false);  // Discard values left by other tests
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    RetValManager.setListener(null);
+    executor.shutdownNow();
+    server.close();
+  }
+
+  /*
+   * Handles each request on a connection of its own, as NanoHTTPD does, checking its MAC and
+   * returning the values made by the update in the response, as AppInvHTTPD does /_newblocks.
+   */
+  private void serveNewBlocks() {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        int[] seq = { 1 };
+        while (!server.isClosed()) {
+          final Socket socket;
+          try {
+            socket = server.accept();
+          } catch (IOException e) {
+            return;
+          }
+          try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Properties header = readHeader(in);
+            byte[] body = new byte[Integer.parseInt(header.getProperty("content-length"))];
+            int offset = 0;
+            while (offset < body.length) {
+              offset += in.read(body, offset, body.length - offset);
+            }
+            Map<String, String> parms = new HashMap<String, String>();
+            for (String parm : new String(body, "UTF-8").split("&")) {
+              String[] pair = parm.split("=", 2);
+              parms.put(pair[0], URLDecoder.decode(pair[1], "UTF-8"));
+            }
+            int iseq = Integer.parseInt(parms.get("seq"));
+            String response;
+            if (mac(newMac(), parms.get("code"), iseq, parms.get("blockid"))
+                .equals(parms.get("mac")) && (seq[0] == iseq || seq[0] == iseq + 1)) {
+              seq[0] = iseq + 1;
+              echo.eval(parms.get("blockid"), parms.get("code"));
+              response = RetValManager.fetch(false);
+            } else {
+              response = "{\"status\" : \"BAD\"}";
+            }
+            byte[] data = response.getBytes("UTF-8");
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.0 200 OK\r\nContent-Type: application/json\r\n" +
+                "Content-Length: " + data.length + "\r\n\r\n").getBytes("US-ASCII"));
+            out.write(data);
+            out.flush();
+            socket.close();
+          } catch (Exception e) {
+            return;
+          }
+        }
+      }
+    });
+  }
+
+  private JSONObject postNewBlocks(Mac mac, int seq, String blockid, String code)
+      throws Exception {
+    String body = "seq=" + seq + "&blockid=" + blockid +
+        "&code=" + URLEncoder.encode(code, "UTF-8") +
+        "&mac=" + mac(mac, code, seq, blockid);
+    Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+    try {
+      socket.setTcpNoDelay(true);
+      OutputStream out = socket.getOutputStream();
+      out.write(("POST /_newblocks HTTP/1.1\r\n" +
+          "Host: 127.0.0.1\r\n" +
+          "Content-Type: application/x-www-form-urlencoded\r\n" +
+          "Content-Length: " + body.length() + "\r\n\r\n" + body).getBytes("US-ASCII"));
+      out.flush();
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      readHeader(in);
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int length;
+      while ((length = in.read(buffer)) != -1) {
+        response.write(buffer, 0, length);
+      }
+      return new JSONObject(response.toString("UTF-8"));
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static String code(int i) {
+    return "(set-and-coerce-property! 'Label1 'Text \"" + i + "\" 'text)";
+  }
+
+  public void testUpdatesOverChannel() throws Exception {
+    ReplChannelTest.serveChannel(executor, server, echo);
+    ReplChannelTest.Client client = new ReplChannelTest.Client(server);
+    for (int i = 0; i < UPDATES; i++) {
+      client.send(i + 1, "12", code(i));
+      assertValue(client.receive(), "12", code(i));
+    }
+    client.close();
+  }
+
+  public void testUpdatesOverNewBlocks() throws Exception {
+    serveNewBlocks();
+    Mac mac = newMac();
+    for (int i = 0; i < UPDATES; i++) {
+      assertValue(postNewBlocks(mac, i + 1, "12", code(i)), "12", code(i));
+    }
+  }
+}
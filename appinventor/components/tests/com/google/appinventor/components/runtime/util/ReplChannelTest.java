@@ -0,0 +1,436 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Tests ReplChannel over loopback connections.
+ *
+ */
+public class ReplChannelTest extends TestCase {
+  static final byte[] KEY = "emulator".getBytes();
+  static final byte[] MASK = { 0x12, 0x34, 0x56, 0x78 };
+
+  private ServerSocket server;
+  private ExecutorService executor;
+
+  /*
+   * "Evaluates" code by returning it as the value of its block.
+   */
+  static class Echo implements ReplChannel.Evaluator {
+    final List<String> securityErrors = Collections.synchronizedList(new ArrayList<String>());
+    final List<String> batches = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public void eval(String blockid, String code) {
+      RetValManager.appendReturnValue(blockid, "OK", code);
+    }
+
+    @Override
+    public void evalBatch(String batch) {
+      batches.add(batch);
+      try {
+        for (ReplBatch.Block block : ReplBatch.parse(batch)) {
+          RetValManager.appendReturnValue(block.blockid, "OK", block.code);
+        }
+      } catch (JSONException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    @Override
+    public void securityError(String message) {
+      securityErrors.add(message);
+    }
+  }
+
+  private final Echo echo = new Echo();
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    executor = Executors.newCachedThreadPool();
+    RetValManager.fetch(false);  // Discard values left by other tests
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    RetValManager.setListener(null);
+    executor.shutdownNow();
+    server.close();
+  }
+
+  private void serveChannel() {
+    serveChannel(executor, server, echo);
+  }
+
+  /*
+   * Accepts a connection, upgrades it and runs a channel over it, as AppInvHTTPD does.
+   */
+  static void serveChannel(ExecutorService executor, final ServerSocket server,
+      final ReplChannel.Evaluator echo) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Socket socket = server.accept();
+          socket.setTcpNoDelay(true);
+          InputStream in = new BufferedInputStream(socket.getInputStream());
+          Properties header = readHeader(in);
+          assertTrue(ReplChannel.isUpgradeRequest(header));
+          ReplChannel.acceptUpgrade(socket.getOutputStream(),
+              header.getProperty("sec-websocket-key"));
+          ReplChannel channel = new ReplChannel(in, socket.getOutputStream(), echo, KEY, 1);
+          RetValManager.setListener(channel);
+          try {
+            channel.run();
+          } finally {
+            RetValManager.clearListener(channel);
+            socket.close();
+          }
+        } catch (IOException e) {
+          // The test closed the connection
+        }
+      }
+    });
+  }
+
+  static Properties readHeader(InputStream in) throws IOException {
+    Properties header = new Properties();
+    String line = readLine(in);
+    header.setProperty(":request", line);
+    while ((line = readLine(in)).length() > 0) {
+      int colon = line.indexOf(':');
+      header.setProperty(line.substring(0, colon).trim().toLowerCase(),
+          line.substring(colon + 1).trim());
+    }
+    return header;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        throw new IOException("Unexpected end of header");
+      }
+      if (c != '\r') {
+        sb.append((char) c);
+      }
+    }
+    return sb.toString();
+  }
+
+  static String mac(Mac mac, String code, int seq, String blockid) throws Exception {
+    byte[] digest = mac.doFinal((code + seq + blockid).getBytes("UTF-8"));
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  static Mac newMac() throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA1");
+    mac.init(new SecretKeySpec(KEY, "RAW"));
+    return mac;
+  }
+
+  /**
+   * The Blocks Editor's end of a channel.
+   */
+  static class Client {
+    final Socket socket;
+    final ReplChannel.FrameReader in;
+    final OutputStream out;
+    final Mac mac = newMac();
+
+    Client(ServerSocket server) throws Exception {
+      socket = new Socket(server.getInetAddress(), server.getLocalPort());
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      out = socket.getOutputStream();
+      String key = "dGhlIHNhbXBsZSBub25jZQ==";
+      out.write(("GET " + ReplChannel.PATH + " HTTP/1.1\r\n" +
+          "Host: 127.0.0.1\r\n" +
+          "Upgrade: websocket\r\n" +
+          "Connection: Upgrade\r\n" +
+          "Sec-WebSocket-Key: " + key + "\r\n" +
+          "Sec-WebSocket-Version: 13\r\n\r\n").getBytes("US-ASCII"));
+      Properties header = readHeader(in);
+      assertEquals("HTTP/1.1 101 Switching Protocols", header.getProperty(":request"));
+      assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", header.getProperty("sec-websocket-accept"));
+      this.in = new ReplChannel.FrameReader(in, false);
+    }
+
+    void send(int seq, String blockid, String code, String mac) throws Exception {
+      JSONObject update = new JSONObject();
+      update.put("seq", seq);
+      update.put("blockid", blockid);
+      update.put("code", code);
+      update.put("mac", mac);
+      ReplChannel.writeFrame(out, ReplChannel.OPCODE_TEXT, update.toString().getBytes("UTF-8"),
+          MASK);
+    }
+
+    void send(int seq, String blockid, String code) throws Exception {
+      send(seq, blockid, code, mac(mac, code, seq, blockid));
+    }
+
+    void sendBatch(int seq, String batch) throws Exception {
+      JSONObject update = new JSONObject();
+      update.put("seq", seq);
+      update.put("batch", batch);
+      update.put("mac", mac(mac, batch, seq, ""));
+      ReplChannel.writeFrame(out, ReplChannel.OPCODE_TEXT, update.toString().getBytes("UTF-8"),
+          MASK);
+    }
+
+    JSONObject receive() throws Exception {
+      ReplChannel.Frame frame = in.read();
+      assertEquals(ReplChannel.OPCODE_TEXT, frame.opcode);
+      return new JSONObject(new String(frame.payload, "UTF-8"));
+    }
+
+    void close() throws IOException {
+      ReplChannel.writeFrame(out, ReplChannel.OPCODE_CLOSE, new byte[0], MASK);
+      assertEquals(ReplChannel.OPCODE_CLOSE, in.read().opcode);
+      socket.close();
+    }
+  }
+
+  static void assertValue(JSONObject response, String blockid, String value)
+      throws Exception {
+    assertEquals("OK", response.getString("status"));
+    JSONArray values = response.getJSONArray("values");
+    assertEquals(1, values.length());
+    assertEquals(blockid, values.getJSONObject(0).getString("blockid"));
+    assertEquals(value, values.getJSONObject(0).getString("value"));
+  }
+
+  public void testAcceptKey() {
+    // The example from RFC 6455
+    assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", ReplChannel.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+  }
+
+  public void testFraming() throws Exception {
+    for (int length : new int[] { 0, 125, 126, 65535, 65536 }) {
+      byte[] payload = new byte[length];
+      Arrays.fill(payload, (byte) 'x');
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ReplChannel.writeFrame(out, ReplChannel.OPCODE_TEXT, payload, MASK);
+      ReplChannel.Frame frame = new ReplChannel.FrameReader(
+          new java.io.ByteArrayInputStream(out.toByteArray()), true).read();
+      assertEquals(ReplChannel.OPCODE_TEXT, frame.opcode);
+      assertTrue(Arrays.equals(payload, frame.payload));
+    }
+  }
+
+  public void testUnmaskedFrameRefused() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ReplChannel.writeFrame(out, ReplChannel.OPCODE_TEXT, "(+ 1 2)".getBytes(), null);
+    try {
+      new ReplChannel.FrameReader(new java.io.ByteArrayInputStream(out.toByteArray()), true)
+          .read();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testEvalAndPush() throws Exception {
+    serveChannel();
+    Client client = new Client(server);
+    client.send(1, "12", "(+ 1 2)");
+    assertValue(client.receive(), "12", "(+ 1 2)");
+    client.send(2, "13", "(* 2 3)");
+    assertValue(client.receive(), "13", "(* 2 3)");
+
+    // Values made outside of an update, such as by an event, are pushed too.
+    RetValManager.sendError("Something went wrong");
+    JSONObject error = client.receive().getJSONArray("values").getJSONObject(0);
+    assertEquals("error", error.getString("type"));
+    assertEquals("Something went wrong", error.getString("value"));
+    client.close();
+    assertTrue(echo.securityErrors.isEmpty());
+  }
+
+  public void testBatchEvaluatedOnce() throws Exception {
+    serveChannel();
+    Client client = new Client(server);
+    // Blocks queued together in the Blocks Editor, sent as one update
+    JSONArray batch = new JSONArray();
+    batch.put(new JSONObject().put("blockid", "12").put("code", "(+ 1 2)"));
+    batch.put(new JSONObject().put("blockid", "13").put("code", "(* 2 3)"));
+    batch.put(new JSONObject().put("blockid", "14").put("code", "(- 5 4)"));
+    client.sendBatch(1, batch.toString());
+    List<String> values = new ArrayList<String>();
+    while (values.size() < 3) {
+      JSONArray received = client.receive().getJSONArray("values");
+      for (int i = 0; i < received.length(); i++) {
+        values.add(received.getJSONObject(i).getString("value"));
+      }
+    }
+    assertEquals(Arrays.asList("(+ 1 2)", "(* 2 3)", "(- 5 4)"), values);
+    assertEquals(Arrays.asList(batch.toString()), echo.batches);
+
+    // The next update follows the batch's seq.
+    client.send(2, "15", "(+ 3 4)");
+    assertValue(client.receive(), "15", "(+ 3 4)");
+    client.close();
+    assertTrue(echo.securityErrors.isEmpty());
+  }
+
+  public void testReplacedChannelLeavesListener() throws Exception {
+    final List<JSONArray> pushed = Collections.synchronizedList(new ArrayList<JSONArray>());
+    RetValManager.Listener older = new RetValManager.Listener() {
+      @Override
+      public void onValues(JSONArray values) {
+        fail("Pushed to a replaced channel");
+      }
+    };
+    RetValManager.Listener newer = new RetValManager.Listener() {
+      @Override
+      public void onValues(JSONArray values) {
+        pushed.add(values);
+      }
+    };
+    RetValManager.setListener(older);
+    // The Blocks Editor reconnects before the older channel has finished closing.
+    RetValManager.setListener(newer);
+    assertFalse(RetValManager.clearListener(older));
+    RetValManager.appendReturnValue("12", "OK", "3");
+    assertEquals(1, pushed.size());
+    assertTrue(RetValManager.clearListener(newer));
+  }
+
+  public void testInvalidMacRefused() throws Exception {
+    serveChannel();
+    Client client = new Client(server);
+    client.send(1, "12", "(+ 1 2)", mac(newMac(), "(+ 1 3)", 1, "12"));
+    JSONObject response = client.receive();
+    assertEquals("BAD", response.getString("status"));
+    assertEquals("Security Error: Invalid MAC", response.getString("message"));
+    assertEquals("1", response.getString("seq"));
+    assertEquals(Arrays.asList("Invalid MAC"), echo.securityErrors);
+
+    // So is one out of sequence.
+    client.send(1, "12", "(+ 1 2)");
+    assertValue(client.receive(), "12", "(+ 1 2)");
+    client.send(5, "12", "(+ 1 2)");
+    assertEquals("Security Error: Invalid Seq", client.receive().getString("message"));
+    assertEquals(Arrays.asList("Invalid MAC", "Invalid Seq"), echo.securityErrors);
+    client.close();
+  }
+
+  public void testControlFrameBetweenFragments() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeFragment(out, ReplChannel.OPCODE_TEXT, false, "(+ 1 ");
+    ReplChannel.writeFrame(out, ReplChannel.OPCODE_PING, "ping".getBytes("UTF-8"), MASK);
+    writeFragment(out, ReplChannel.OPCODE_CONTINUATION, false, "2");
+    writeFragment(out, ReplChannel.OPCODE_CONTINUATION, true, ")");
+    ReplChannel.FrameReader reader =
+        new ReplChannel.FrameReader(new java.io.ByteArrayInputStream(out.toByteArray()), true);
+    ReplChannel.Frame ping = reader.read();
+    assertEquals(ReplChannel.OPCODE_PING, ping.opcode);
+    assertEquals("ping", new String(ping.payload, "UTF-8"));
+    ReplChannel.Frame message = reader.read();
+    assertEquals(ReplChannel.OPCODE_TEXT, message.opcode);
+    assertEquals("(+ 1 2)", new String(message.payload, "UTF-8"));
+  }
+
+  public void testPingBetweenFragmentsOfUpdate() throws Exception {
+    serveChannel();
+    Client client = new Client(server);
+    JSONObject update = new JSONObject();
+    update.put("seq", 1);
+    update.put("blockid", "12");
+    update.put("code", "(+ 1 2)");
+    update.put("mac", mac(client.mac, "(+ 1 2)", 1, "12"));
+    String text = update.toString();
+    int half = text.length() / 2;
+    writeFragment(client.out, ReplChannel.OPCODE_TEXT, false, text.substring(0, half));
+    ReplChannel.writeFrame(client.out, ReplChannel.OPCODE_PING, new byte[0], MASK);
+    writeFragment(client.out, ReplChannel.OPCODE_CONTINUATION, true, text.substring(half));
+    assertEquals(ReplChannel.OPCODE_PONG, client.in.read().opcode);
+    assertValue(client.receive(), "12", "(+ 1 2)");
+    client.close();
+  }
+
+  /*
+   * Writes a masked frame, setting FIN only on the last fragment of a message.
+   */
+  private static void writeFragment(OutputStream out, int opcode, boolean fin, String text)
+      throws IOException {
+    ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    ReplChannel.writeFrame(frame, opcode, text.getBytes("UTF-8"), MASK);
+    byte[] bytes = frame.toByteArray();
+    if (!fin) {
+      bytes[0] &= 0x7F;
+    }
+    out.write(bytes);
+    out.flush();
+  }
+
+  public void testPushDoesNotWaitForConnection() throws Exception {
+    final CountDownLatch written = new CountDownLatch(1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    // A connection whose writes wait until the test lets them go
+    OutputStream stalled = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e.getMessage());
+        }
+        written.countDown();
+      }
+    };
+    final ReplChannel channel = new ReplChannel(
+        new java.io.ByteArrayInputStream(new byte[0]), stalled, echo, KEY, 1);
+    RetValManager.setListener(channel);
+    Future<?> push = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        RetValManager.appendReturnValue("12", "OK", "3");
+        RetValManager.appendReturnValue("13", "OK", "6");
+      }
+    });
+    // Values are handed off while the connection is stalled.
+    push.get(5, TimeUnit.SECONDS);
+    unblock.countDown();
+    assertTrue(written.await(5, TimeUnit.SECONDS));
+    channel.close();
+  }
+}
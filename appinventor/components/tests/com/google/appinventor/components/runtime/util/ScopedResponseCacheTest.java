@@ -0,0 +1,148 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.ResponseCache;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that ScopedResponseCache only passes on the requests of threads
+ * that enabled it.
+ *
+ */
+public class ScopedResponseCacheTest {
+  private static final URI URI = java.net.URI.create("http://localhost/data");
+
+  private final CacheResponse response = new CacheResponse() {
+    @Override
+    public Map<String, List<String>> getHeaders() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public InputStream getBody() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+  };
+
+  private final CacheRequest request = new CacheRequest() {
+    @Override
+    public OutputStream getBody() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public void abort() {
+    }
+  };
+
+  private final ResponseCache delegate = new ResponseCache() {
+    @Override
+    public CacheResponse get(URI uri, String method, Map<String, List<String>> headers) {
+      return response;
+    }
+
+    @Override
+    public CacheRequest put(URI uri, URLConnection connection) {
+      return request;
+    }
+  };
+
+  private final ScopedResponseCache cache = new ScopedResponseCache(delegate);
+
+  @After
+  public void tearDown() {
+    ScopedResponseCache.setEnabled(false);
+  }
+
+  private static URLConnection connection() throws Exception {
+    return new URL("http://localhost/data").openConnection();
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    assertFalse(ScopedResponseCache.isEnabled());
+    assertNull(cache.get(URI, "GET", Collections.<String, List<String>>emptyMap()));
+    assertNull(cache.put(URI, connection()));
+  }
+
+  @Test
+  public void testEnabled() throws Exception {
+    ScopedResponseCache.setEnabled(true);
+    assertSame(response, cache.get(URI, "GET", Collections.<String, List<String>>emptyMap()));
+    assertSame(request, cache.put(URI, connection()));
+  }
+
+  @Test
+  public void testDisabledAgain() throws Exception {
+    ScopedResponseCache.setEnabled(true);
+    ScopedResponseCache.setEnabled(false);
+    assertNull(cache.get(URI, "GET", Collections.<String, List<String>>emptyMap()));
+    assertNull(cache.put(URI, connection()));
+  }
+
+  @Test
+  public void testOnlyEnabledOnItsThread() throws Exception {
+    ScopedResponseCache.setEnabled(true);
+    final Object[] results = new Object[2];
+    Thread other = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          results[0] = cache.get(URI, "GET", Collections.<String, List<String>>emptyMap());
+          results[1] = cache.put(URI, connection());
+        } catch (Exception e) {
+          results[0] = e;
+        }
+      }
+    });
+    other.start();
+    other.join();
+    assertNull(results[0]);
+    assertNull(results[1]);
+  }
+
+  @Test
+  public void testDisabledAfterFailedRequest() throws Exception {
+    // A request that fails after enabling the cache, as Web's does when setting its method fails,
+    // must not leave it enabled for the next request made by the thread.
+    HttpURLConnection connection = (HttpURLConnection) connection();
+    ScopedResponseCache.setEnabled(true);
+    try {
+      try {
+        connection.setRequestMethod("NOT A METHOD");
+        fail("Expected ProtocolException");
+      } finally {
+        HttpUtil.finish(connection, false);
+      }
+    } catch (ProtocolException expected) {
+      // The request failed, as expected.
+    }
+    assertFalse(ScopedResponseCache.isEnabled());
+    assertNull(cache.get(URI, "GET", Collections.<String, List<String>>emptyMap()));
+  }
+}
@@ -0,0 +1,100 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests SensorPipeline.
+ *
+ */
+public class SensorPipelineTest extends TestCase {
+  private static final long MS = 1000000L;
+
+  public void testStatisticsOverWindow() {
+    SensorPipeline pipeline = new SensorPipeline(4);
+    assertEquals(0.0, pipeline.mean(0));
+    assertEquals(0.0, pipeline.variance(2));
+
+    // The first two samples fall out of the window.
+    float[] xs = { 100, -100, 1, 2, 3, 6 };
+    for (int i = 0; i < xs.length; i++) {
+      pipeline.add(i * MS, xs[i], -xs[i], 9.8f);
+    }
+    assertEquals(4, pipeline.count());
+    assertEquals(3.0, pipeline.mean(0), 1e-9);
+    assertEquals(-3.0, pipeline.mean(1), 1e-9);
+    assertEquals(1.0, pipeline.minimum(0), 1e-9);
+    assertEquals(6.0, pipeline.maximum(0), 1e-9);
+    assertEquals(-6.0, pipeline.minimum(1), 1e-9);
+    assertEquals(3.5, pipeline.variance(0), 1e-9);
+    assertEquals(3.5, pipeline.variance(1), 1e-9);
+    assertEquals(0.0, pipeline.variance(2), 1e-9);
+
+    pipeline.setWindowSize(0);
+    assertEquals(1, pipeline.getWindowSize());
+    assertEquals(0, pipeline.count());
+  }
+
+  public void testInterval() {
+    SensorPipeline pipeline = new SensorPipeline(10);
+    assertTrue(pipeline.add(0, 1, 2, 3));
+    assertTrue(pipeline.add(1 * MS, 1, 2, 3));
+
+    pipeline.setInterval(100);
+    assertFalse(pipeline.add(50 * MS, 1, 2, 3));
+    assertTrue(pipeline.add(101 * MS, 1, 2, 3));
+    assertFalse(pipeline.add(200 * MS, 1, 2, 3));
+    assertTrue(pipeline.add(201 * MS, 1, 2, 3));
+
+    // After the sensor stops, the first new sample is delivered.
+    pipeline.clear();
+    assertTrue(pipeline.add(202 * MS, 1, 2, 3));
+  }
+
+  public void testBatch() {
+    SensorPipeline pipeline = new SensorPipeline(10);
+    pipeline.setInterval(10);
+    pipeline.setBatching(true);
+    assertTrue(pipeline.add(0, 1, 2, 3));
+    YailList batch = pipeline.takeBatch();
+    assertEquals(1, batch.size());
+    assertEquals(YailList.makeList(new Object[] { 1.0, 2.0, 3.0, 0L }), batch.getObject(0));
+
+    for (int i = 1; i <= 5; i++) {
+      assertEquals(i == 5, pipeline.add(i * 2 * MS, i, 0, 0));
+    }
+    batch = pipeline.takeBatch();
+    assertEquals(5, batch.size());
+    for (int i = 1; i <= 5; i++) {
+      YailList sample = (YailList) batch.getObject(i - 1);
+      assertEquals((double) i, sample.getObject(0));
+      assertEquals(i * 2 * MS, sample.getObject(3));
+    }
+    assertEquals(0, pipeline.takeBatch().size());
+  }
+
+  public void testBatchDropsOldest() {
+    SensorPipeline pipeline = new SensorPipeline(10);
+    pipeline.setInterval(Integer.MAX_VALUE);
+    pipeline.setBatching(true);
+    int total = SensorPipeline.MAX_BATCH_SIZE + 5;
+    for (int i = 0; i < total; i++) {
+      pipeline.add(i, i, 0, 0);
+    }
+    YailList batch = pipeline.takeBatch();
+    assertEquals(SensorPipeline.MAX_BATCH_SIZE, batch.size());
+    assertEquals(5.0, ((YailList) batch.getObject(0)).getObject(0));
+    assertEquals((double) (total - 1),
+        ((YailList) batch.getObject(batch.size() - 1)).getObject(0));
+
+    // Turning batching off discards the samples collected.
+    pipeline.add(total, 1, 1, 1);
+    pipeline.setBatching(false);
+    pipeline.add(total + 1, 1, 1, 1);
+    assertEquals(0, pipeline.takeBatch().size());
+  }
+}
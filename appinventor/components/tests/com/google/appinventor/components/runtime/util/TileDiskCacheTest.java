@@ -0,0 +1,208 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests TileDiskCache.
+ *
+ */
+public class TileDiskCacheTest {
+  private static final String SOURCE = "Mapnik";
+  private static final long NEVER = Long.MAX_VALUE;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] tile(int size, int fill) {
+    byte[] contents = new byte[size];
+    for (int i = 0; i < size; i++) {
+      contents[i] = (byte) fill;
+    }
+    return contents;
+  }
+
+  @Test
+  public void testPutAndGet() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 1000);
+    assertNull(cache.get(SOURCE, 1, 0, 1));
+    cache.put(SOURCE, 1, 0, 1, tile(10, 1), NEVER);
+    assertTrue(cache.contains(SOURCE, 1, 0, 1));
+    assertFalse(cache.contains(SOURCE, 1, 1, 0));
+    assertFalse(cache.contains("USGS", 1, 0, 1));
+    assertArrayEquals(tile(10, 1), cache.get(SOURCE, 1, 0, 1));
+    assertEquals(1, cache.count());
+    assertEquals(10, cache.size());
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  public void testReplace() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 1000);
+    cache.put(SOURCE, 1, 0, 0, tile(10, 1), NEVER);
+    cache.put(SOURCE, 1, 0, 0, tile(20, 2), NEVER);
+    assertArrayEquals(tile(20, 2), cache.get(SOURCE, 1, 0, 0));
+    assertEquals(1, cache.count());
+    assertEquals(20, cache.size());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 2, 0, 0, tile(40, 0), NEVER);
+    cache.put(SOURCE, 2, 0, 1, tile(40, 1), NEVER);
+    cache.get(SOURCE, 2, 0, 0);  // (0, 1) is now the least recently used
+
+    cache.put(SOURCE, 2, 0, 2, tile(40, 2), NEVER);
+    assertFalse(cache.contains(SOURCE, 2, 0, 1));
+    assertTrue(cache.contains(SOURCE, 2, 0, 0));
+    assertTrue(cache.contains(SOURCE, 2, 0, 2));
+    assertEquals(80, cache.size());
+    assertEquals(1, cache.evictionCount());
+    cache.awaitDeletes();
+    assertEquals(2, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testTileLargerThanCacheNotCached() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 0, 0, 0, tile(101, 0), NEVER);
+    assertFalse(cache.contains(SOURCE, 0, 0, 0));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testSetMaxSize() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 2, 0, 0, tile(40, 0), NEVER);
+    cache.put(SOURCE, 2, 0, 1, tile(40, 1), NEVER);
+    cache.setMaxSize(50);
+    assertEquals(1, cache.count());
+    assertTrue(cache.contains(SOURCE, 2, 0, 1));
+    assertEquals(50, cache.maxSize());
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 2, 0, 0, tile(40, 0), NEVER);
+    cache.clear();
+    assertEquals(0, cache.count());
+    cache.awaitDeletes();
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testTilesKeptAcrossRestart() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 3, 1, 2, tile(40, 1), NEVER);
+    cache.put(SOURCE, 3, 2, 1, tile(40, 2), NEVER);
+    // File times may be as coarse as a second, so set them to give the order of use.
+    new File(folder.getRoot(), "Mapnik_3_1_2.tile").setLastModified(2000000000000L);
+    new File(folder.getRoot(), "Mapnik_3_2_1.tile").setLastModified(1000000000000L);
+
+    cache = new TileDiskCache(folder.getRoot(), 100);
+    assertEquals(2, cache.count());
+    assertEquals(80, cache.size());
+    assertArrayEquals(tile(40, 1), cache.get(SOURCE, 3, 1, 2));
+    cache.put(SOURCE, 3, 0, 0, tile(40, 0), NEVER);
+    assertFalse(cache.contains(SOURCE, 3, 2, 1));
+    assertTrue(cache.contains(SOURCE, 3, 1, 2));
+  }
+
+  @Test
+  public void testNotTrimmedUntilSizeKnown() throws Exception {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 3, 0, 0, tile(30, 0), NEVER);
+    cache.put(SOURCE, 3, 0, 1, tile(30, 1), NEVER);
+    cache.put(SOURCE, 3, 0, 2, tile(30, 2), NEVER);
+
+    // Created with a default smaller than the tiles kept, before the real size is set
+    cache = new TileDiskCache(folder.getRoot(), 50);
+    assertEquals(3, cache.count());
+    cache.setMaxSize(100);
+    assertEquals(3, cache.count());
+    cache.setMaxSize(60);
+    assertEquals(2, cache.count());
+    cache.awaitDeletes();
+    assertEquals(2, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testSizeSetWhileTilesFound() throws Exception {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 3, 0, 0, tile(30, 0), NEVER);
+    cache.put(SOURCE, 3, 0, 1, tile(30, 1), NEVER);
+
+    cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.setMaxSize(40);
+    assertEquals(1, cache.count());
+    assertEquals(40, cache.maxSize());
+  }
+
+  @Test
+  public void testDeletedTileIsMiss() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 0, 0, 0, tile(40, 0), NEVER);
+    for (File file : folder.getRoot().listFiles()) {
+      assertTrue(file.delete());
+    }
+    assertNull(cache.get(SOURCE, 0, 0, 0));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.count());
+  }
+
+  @Test
+  public void testExpiredTileStillReturned() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 1, 0, 0, tile(10, 0), System.currentTimeMillis() - 1000);
+    cache.put(SOURCE, 1, 0, 1, tile(10, 1), System.currentTimeMillis() + 60000);
+    assertTrue(cache.isExpired(SOURCE, 1, 0, 0));
+    assertFalse(cache.isExpired(SOURCE, 1, 0, 1));
+    assertFalse(cache.isExpired(SOURCE, 1, 1, 1));  // Not cached
+    assertArrayEquals(tile(10, 0), cache.get(SOURCE, 1, 0, 0));
+    assertEquals(20, cache.size());
+  }
+
+  @Test
+  public void testExpiryKeptAcrossRestart() throws IOException {
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    cache.put(SOURCE, 1, 0, 0, tile(10, 0), System.currentTimeMillis() - 1000);
+    cache.put(SOURCE, 1, 0, 1, tile(10, 1), NEVER);
+
+    cache = new TileDiskCache(folder.getRoot(), 100);
+    assertEquals(20, cache.size());
+    assertTrue(cache.isExpired(SOURCE, 1, 0, 0));
+    assertFalse(cache.isExpired(SOURCE, 1, 0, 1));
+    assertArrayEquals(tile(10, 1), cache.get(SOURCE, 1, 0, 1));
+  }
+
+  @Test
+  public void testUnfinishedWritesRemoved() throws IOException {
+    assertTrue(new File(folder.getRoot(), "Mapnik_0_0_0.tile123.tmp").createNewFile());
+    TileDiskCache cache = new TileDiskCache(folder.getRoot(), 100);
+    assertEquals(0, cache.count());
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxSizeMustBePositive() throws IOException {
+    new TileDiskCache(folder.getRoot(), 0);
+  }
+}
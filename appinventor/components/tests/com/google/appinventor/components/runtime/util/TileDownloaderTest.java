@@ -0,0 +1,218 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests TileDownloader against a tile server running in the test.
+ *
+ */
+public class TileDownloaderTest {
+  private static final String SOURCE = "Test";
+  private static final String USER_AGENT = "TileDownloaderTest";
+  private static final TileDownloader.TileFetcher FETCHER =
+      new TileDownloader.HttpTileFetcher(USER_AGENT);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpServer server;
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private final List<String> userAgents = Collections.synchronizedList(new ArrayList<String>());
+  private TileDiskCache cache;
+  private TileDownloader.TileUrlProvider urls;
+
+  /*
+   * Serves each tile as the text of its path, and fails tiles in column 13. Tiles at zoom 4 have
+   * already expired when served.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.add(path);
+        userAgents.add(exchange.getRequestHeaders().getFirst("User-Agent"));
+        if (path.startsWith("/4/")) {
+          exchange.getResponseHeaders().add("Expires", "Thu, 01 Jan 2015 00:00:00 GMT");
+        }
+        if (path.contains("/13/")) {
+          exchange.sendResponseHeaders(404, -1);
+        } else {
+          byte[] body = path.getBytes("UTF-8");
+          exchange.sendResponseHeaders(200, body.length);
+          OutputStream out = exchange.getResponseBody();
+          out.write(body);
+          out.close();
+        }
+        exchange.close();
+      }
+    });
+    server.start();
+    final String base = "http://127.0.0.1:" + server.getAddress().getPort();
+    urls = new TileDownloader.TileUrlProvider() {
+      @Override
+      public String getTileUrl(int zoom, int x, int y) {
+        return base + "/" + zoom + "/" + x + "/" + y + ".png";
+      }
+    };
+    cache = new TileDiskCache(folder.getRoot(), 1024 * 1024);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private static class Progress implements TileDownloader.ProgressListener {
+    int lastDone = 0;
+    int total = -1;
+    int downloaded = -1;
+    int failed = -1;
+
+    @Override
+    public void onProgress(int done, int total) {
+      assertEquals(lastDone + 1, done);
+      lastDone = done;
+      this.total = total;
+    }
+
+    @Override
+    public void onFinished(int downloaded, int failed) {
+      this.downloaded = downloaded;
+      this.failed = failed;
+    }
+  }
+
+  @Test
+  public void testTileCoordinates() {
+    assertEquals(0, TileDownloader.column(-180, 1));
+    assertEquals(1, TileDownloader.column(0, 1));
+    assertEquals(1, TileDownloader.column(180, 1));
+    assertEquals(0, TileDownloader.row(90, 1));
+    assertEquals(1, TileDownloader.row(-90, 1));
+    // Boston at zoom 13
+    assertEquals(2478, TileDownloader.column(-71.0942, 13));
+    assertEquals(3029, TileDownloader.row(42.3601, 13));
+  }
+
+  @Test
+  public void testCountTiles() {
+    assertEquals(1, TileDownloader.countTiles(85, -180, -85, 180, 0, 0));
+    assertEquals(1 + 4 + 16, TileDownloader.countTiles(85, -180, -85, 180, 0, 2));
+    assertEquals(4, TileDownloader.countTiles(1, 170, -1, -170, 2, 2));  // Two columns by two rows
+    // Crossing the antimeridian at zoom 0 is the one tile, not twice over
+    assertEquals(1, TileDownloader.countTiles(1, 170, -1, -170, 0, 0));
+    assertEquals(Integer.MAX_VALUE, TileDownloader.countTiles(85, -180, -85, 180, 0, 30));
+  }
+
+  @Test
+  public void testDownload() {
+    Progress progress = new Progress();
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 85, -180, -85, 180, 0, 2, progress);
+    assertEquals(21, progress.total);
+    assertEquals(21, progress.lastDone);
+    assertEquals(21, progress.downloaded);
+    assertEquals(0, progress.failed);
+    assertEquals(21, requests.size());
+    assertArrayEquals("/2/3/1.png".getBytes(), cache.get(SOURCE, 2, 3, 1));
+  }
+
+  @Test
+  public void testCachedTilesSkipped() throws IOException {
+    cache.put(SOURCE, 1, 0, 0, new byte[1], Long.MAX_VALUE);
+    Progress progress = new Progress();
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 85, -180, -85, 180, 1, 1, progress);
+    assertEquals(4, progress.lastDone);
+    assertEquals(3, progress.downloaded);
+    assertEquals(3, requests.size());
+    assertTrue(!requests.contains("/1/0/0.png"));
+  }
+
+  @Test
+  public void testExpiredTilesFetchedAgain() throws IOException {
+    cache.put(SOURCE, 1, 0, 0, new byte[1], System.currentTimeMillis() - 1000);
+    Progress progress = new Progress();
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 85, -180, -85, 180, 1, 1, progress);
+    assertEquals(4, progress.downloaded);
+    assertArrayEquals("/1/0/0.png".getBytes(), cache.get(SOURCE, 1, 0, 0));
+    assertFalse(cache.isExpired(SOURCE, 1, 0, 0));
+  }
+
+  @Test
+  public void testExpiresHeader() {
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 1, -1, -1, 1, 3, 4, new Progress());
+    assertFalse(cache.isExpired(SOURCE, 3, 3, 3));
+    assertTrue(cache.isExpired(SOURCE, 4, 7, 7));
+  }
+
+  @Test
+  public void testUserAgent() {
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 85, -180, -85, 180, 0, 0,
+        new Progress());
+    assertEquals(Collections.singletonList(USER_AGENT), userAgents);
+  }
+
+  @Test
+  public void testFailedTilesCounted() {
+    // Columns 12 to 14 and rows 15 and 16 at zoom 5, around the column that the server fails
+    Progress progress = new Progress();
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 1, -44, -1, -12, 5, 5, progress);
+    assertEquals(6, progress.lastDone);
+    assertEquals(4, progress.downloaded);
+    assertEquals(2, progress.failed);
+    assertEquals(progress.downloaded, cache.count());
+  }
+
+  @Test
+  public void testAntimeridian() {
+    Progress progress = new Progress();
+    new TileDownloader(cache, FETCHER).download(SOURCE, urls, 1, 170, -1, -170, 3, 3, progress);
+    assertEquals(4, progress.downloaded);
+    assertNotNull(cache.get(SOURCE, 3, 7, 3));
+    assertNotNull(cache.get(SOURCE, 3, 0, 4));
+  }
+
+  @Test
+  public void testCancel() {
+    final TileDownloader downloader = new TileDownloader(cache, FETCHER);
+    Progress progress = new Progress() {
+      @Override
+      public void onProgress(int done, int total) {
+        super.onProgress(done, total);
+        if (done == 5) {
+          downloader.cancel();
+        }
+      }
+    };
+    downloader.download(SOURCE, urls, 85, -180, -85, 180, 0, 3, progress);
+    assertEquals(5, progress.lastDone);
+    assertEquals(5, progress.downloaded);
+  }
+}
@@ -0,0 +1,83 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import gnu.math.DFloNum;
+import gnu.math.IntNum;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.XML;
+
+/**
+ * Tests XmlUtil, comparing its results with those of converting the XML to
+ * JSON and decoding the JSON, which is how XML used to be decoded.
+ *
+ */
+public class XmlUtilTest extends TestCase {
+
+  private static Object decodeThroughJson(String xml) throws JSONException {
+    return JsonUtilTest.sanitize(JsonUtil.getObjectFromJson(XML.toJSONObject(xml).toString()));
+  }
+
+  private static void assertSameAsThroughJson(String xml) throws JSONException {
+    assertEquals(xml, decodeThroughJson(xml), XmlUtil.getYailListFromXml(xml));
+  }
+
+  public void testElements() throws JSONException {
+    assertSameAsThroughJson("");
+    assertSameAsThroughJson("<foo>123</foo>");
+    assertSameAsThroughJson("<a><foo>1 2 3</foo><bar>456</bar></a>");
+    assertSameAsThroughJson("<a><bar>456</bar>many<foo>1 2 3</foo>apples</a>");
+    assertSameAsThroughJson("<a><b>1</b><b>2</b><c/><b><d>3</d></b></a><e></e>");
+  }
+
+  public void testAttributes() throws JSONException {
+    assertSameAsThroughJson("<a x=\"1\" y='two' z>text</a>");
+    assertSameAsThroughJson("<a x=\"1\"/><a x=\"2\"><x>3</x></a>");
+  }
+
+  public void testValues() throws JSONException {
+    assertSameAsThroughJson("<a><b>2.0</b><c>2.5</c><d>-7</d><e>007</e><f>1e3</f></a>");
+    assertSameAsThroughJson("<a><b>TRUE</b><c>false</c><d>null</d><e>12345678901234567890</e></a>");
+    assertSameAsThroughJson("<a>&lt;b&gt; &amp; &#65;</a>");
+  }
+
+  public void testMarkup() throws JSONException {
+    assertSameAsThroughJson("<?xml version=\"1.0\"?><!DOCTYPE a><!-- comment --><a>1</a>");
+    assertSameAsThroughJson("<a><![CDATA[<b>True</b>]]></a>");
+  }
+
+  public void testSplitContent() throws JSONException {
+    // The JSONObject in the json.jar used for testing wraps an array of content in another array
+    // here, but Android's JSONObject, which XML.toJSONObject uses on a device, doesn't.
+    YailList list = XmlUtil.getYailListFromXml("<a><![CDATA[true]]>x<!-- comment -->y</a>");
+    YailList content = (YailList) ((YailList) list.getObject(0)).getObject(1);
+    assertEquals(3, content.size());
+    assertEquals(true, content.getObject(0));
+    assertEquals("x", content.getObject(1));
+    assertEquals("y", content.getObject(2));
+  }
+
+  public void testNumbers() throws JSONException {
+    YailList list = XmlUtil.getYailListFromXml("<a>2.0</a><b>2.5</b>");
+    assertEquals(IntNum.make(2), ((YailList) list.getObject(0)).getObject(1));
+    assertEquals(DFloNum.make(2.5), ((YailList) list.getObject(1)).getObject(1));
+  }
+
+  public void testMalformed() {
+    String[] inputs = { "<a>", "<a></b>", "</a>", "<a x=></a>", "<![FOO[x]]>" };
+    for (String xml : inputs) {
+      try {
+        XmlUtil.getYailListFromXml(xml);
+        fail(xml);
+      } catch (JSONException e) {
+        // Expected.
+      }
+    }
+  }
+}
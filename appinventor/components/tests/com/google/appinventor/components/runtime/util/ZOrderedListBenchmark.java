@@ -0,0 +1,84 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for changing the layers of hundreds of sprites, run by the
+ * AndroidRuntimeBenchmarks target.  Each benchmark makes the same layer
+ * changes, drawing the scene after every few of them, either with
+ * ZOrderedList or with the sorted LinkedList Canvas used before, so the
+ * times in the test report can be compared.  ZOrderedListTest checks that
+ * both give the same drawing order.
+ *
+ */
+public class ZOrderedListBenchmark extends TestCase {
+  // Layer changes between frames
+  private static final int CHANGES_PER_FRAME = 10;
+
+  private final String[] sprites = new String[ZOrderedListTest.SPRITES];
+  private final double[] layers = new double[ZOrderedListTest.SPRITES];
+  private final int[] changed = new int[ZOrderedListTest.LAYER_CHANGES];
+  private final double[] newLayers = new double[ZOrderedListTest.LAYER_CHANGES];
+
+  @Override
+  protected void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < sprites.length; i++) {
+      sprites[i] = "sprite" + i;
+      layers[i] = random.nextInt(10);
+    }
+    for (int i = 0; i < changed.length; i++) {
+      changed[i] = random.nextInt(sprites.length);
+      newLayers[i] = random.nextInt(10);
+    }
+  }
+
+  /*
+   * Visits the sprites in drawing order, as Canvas.onDraw does.
+   */
+  private static int draw(Iterable<String> sprites) {
+    int drawn = 0;
+    for (String sprite : sprites) {
+      drawn++;
+    }
+    return drawn;
+  }
+
+  public void testLayerChangesZOrderedList() {
+    ZOrderedList<String> ordered = new ZOrderedList<String>();
+    for (int i = 0; i < sprites.length; i++) {
+      ordered.add(sprites[i], layers[i]);
+    }
+    for (int i = 0; i < changed.length; i++) {
+      ordered.move(sprites[changed[i]], newLayers[i]);
+      if (i % CHANGES_PER_FRAME == 0) {
+        assertEquals(sprites.length, draw(ordered));
+      }
+    }
+  }
+
+  public void testLayerChangesSortedLinkedList() {
+    double[] linkedLayers = layers.clone();
+    List<String> linked = new LinkedList<String>();
+    for (int i = 0; i < sprites.length; i++) {
+      ZOrderedListTest.linkedInsert(linked, linkedLayers, sprites, i);
+    }
+    for (int i = 0; i < changed.length; i++) {
+      linked.remove(sprites[changed[i]]);
+      linkedLayers[changed[i]] = newLayers[i];
+      ZOrderedListTest.linkedInsert(linked, linkedLayers, sprites, changed[i]);
+      if (i % CHANGES_PER_FRAME == 0) {
+        assertEquals(sprites.length, draw(linked));
+      }
+    }
+  }
+}
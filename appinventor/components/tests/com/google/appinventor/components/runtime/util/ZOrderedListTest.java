@@ -0,0 +1,136 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright © 2018 Massachusetts Institute of Technology, All rights reserved.
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests ZOrderedList class.
+ *
+ */
+public class ZOrderedListTest extends TestCase {
+  static final int SPRITES = 500;
+  static final int LAYER_CHANGES = 20000;
+
+  static List<String> toList(Iterable<String> items) {
+    List<String> result = new ArrayList<String>();
+    for (String item : items) {
+      result.add(item);
+    }
+    return result;
+  }
+
+  public void testOrderedByLayer() {
+    ZOrderedList<String> list = new ZOrderedList<String>();
+    list.add("b", 2.0);
+    list.add("c", 3.0);
+    list.add("a", 1.0);
+    assertEquals(Arrays.asList("a", "b", "c"), toList(list));
+    assertEquals(Arrays.asList("c", "b", "a"), toList(list.frontToBack()));
+  }
+
+  public void testEqualLayersKeepInsertionOrder() {
+    ZOrderedList<String> list = new ZOrderedList<String>();
+    list.add("first", 1.0);
+    list.add("second", 1.0);
+    list.add("third", 1.0);
+    assertEquals(Arrays.asList("first", "second", "third"), toList(list));
+  }
+
+  public void testMoveGoesInFrontOfEqualLayers() {
+    ZOrderedList<String> list = new ZOrderedList<String>();
+    list.add("a", 1.0);
+    list.add("b", 1.0);
+    list.add("c", 2.0);
+    list.move("a", 1.0);
+    assertEquals(Arrays.asList("b", "a", "c"), toList(list));
+    list.move("c", 0.5);
+    assertEquals(Arrays.asList("c", "b", "a"), toList(list));
+    assertEquals(3, list.size());
+  }
+
+  public void testRemove() {
+    ZOrderedList<String> list = new ZOrderedList<String>();
+    list.add("a", 1.0);
+    list.add("b", 2.0);
+    assertTrue(list.remove("a"));
+    assertFalse(list.remove("a"));
+    assertFalse(list.contains("a"));
+    assertEquals(Arrays.asList("b"), toList(list));
+  }
+
+  public void testModificationDuringIteration() {
+    ZOrderedList<String> list = new ZOrderedList<String>();
+    list.add("a", 1.0);
+    list.add("b", 2.0);
+    List<String> seen = new ArrayList<String>();
+    for (String item : list) {
+      seen.add(item);
+      list.move(item, 5.0);
+      list.add(item + "'", 0.0);
+    }
+    assertEquals(Arrays.asList("a", "b"), seen);
+    assertEquals(Arrays.asList("a'", "b'", "a", "b"), toList(list));
+  }
+
+  /**
+   * Checks that frequent layer changes in a scene with hundreds of sprites
+   * give the same drawing order as the sorted LinkedList previously used by
+   * Canvas.
+   */
+  public void testManyLayerChangesMatchSortedList() {
+    Random random = new Random(42);
+    double[] layers = new double[SPRITES];
+    String[] sprites = new String[SPRITES];
+    for (int i = 0; i < SPRITES; i++) {
+      sprites[i] = "sprite" + i;
+      layers[i] = random.nextInt(10);
+    }
+    int[] changed = new int[LAYER_CHANGES];
+    double[] newLayers = new double[LAYER_CHANGES];
+    for (int i = 0; i < LAYER_CHANGES; i++) {
+      changed[i] = random.nextInt(SPRITES);
+      newLayers[i] = random.nextInt(10);
+    }
+
+    ZOrderedList<String> ordered = new ZOrderedList<String>();
+    double[] linkedLayers = layers.clone();
+    List<String> linked = new LinkedList<String>();
+    for (int i = 0; i < SPRITES; i++) {
+      ordered.add(sprites[i], layers[i]);
+      linkedInsert(linked, linkedLayers, sprites, i);
+    }
+    for (int i = 0; i < LAYER_CHANGES; i++) {
+      ordered.move(sprites[changed[i]], newLayers[i]);
+      linked.remove(sprites[changed[i]]);
+      linkedLayers[changed[i]] = newLayers[i];
+      linkedInsert(linked, linkedLayers, sprites, changed[i]);
+      if (i % 100 == 0) {
+        assertEquals(linked, toList(ordered));  // as drawn
+      }
+    }
+    assertEquals(linked, toList(ordered));
+  }
+
+  // The insertion loop formerly used by Canvas.addSprite.
+  static void linkedInsert(List<String> list, double[] layers, String[] sprites,
+      int index) {
+    for (int i = 0; i < list.size(); i++) {
+      String other = list.get(i);
+      if (layers[Integer.parseInt(other.substring(6))] > layers[index]) {
+        list.add(i, sprites[index]);
+        return;
+      }
+    }
+    list.add(sprites[index]);
+  }
+}